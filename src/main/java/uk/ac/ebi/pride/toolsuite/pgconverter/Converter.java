@@ -6,6 +6,12 @@ import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.ebi.pride.jmztab.model.MZTabFile;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.BigBedWriter;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.FileStager;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.MzIdentMLProBedConverter;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.MzTabStreamWriter;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.ProBedSorter;
+import uk.ac.ebi.pride.utilities.data.controller.DataAccessController;
 import uk.ac.ebi.pride.utilities.data.controller.impl.ControllerImpl.MzIdentMLControllerImpl;
 import uk.ac.ebi.pride.utilities.data.controller.impl.ControllerImpl.MzTabControllerImpl;
 import uk.ac.ebi.pride.utilities.data.controller.impl.ControllerImpl.PrideXmlControllerImpl;
@@ -13,8 +19,13 @@ import uk.ac.ebi.pride.utilities.data.exporters.*;
 
 import java.io.*;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static uk.ac.ebi.pride.toolsuite.pgconverter.utils.Utility.*;
 
@@ -35,6 +46,10 @@ public class Converter {
    */
   public static void startConversion(CommandLine cmd) throws IOException {
     log.info("Starting conversion...");
+    if (cmd.hasOption(ARG_BATCH)) {
+      startBatchConversion(cmd);
+      return;
+    }
     File inputFile;
     String inputFileType = null;
     if (cmd.hasOption(ARG_INPUTFILE)) {
@@ -46,81 +61,253 @@ public class Converter {
                 : null;
     }
     if (inputFile==null || inputFile.isDirectory()) {
-      log.error("Unable to convert whole directory.");
+      log.error("Unable to convert whole directory, please use the -" + ARG_BATCH + " parameter instead.");
     } else {
-      inputFileType = FilenameUtils.getExtension(inputFile.getAbsolutePath()).toLowerCase();
-      if (inputFileType.equals("xml")) {
-        inputFileType = ARG_PRIDEXML;
-      }
+      inputFileType = getInputFileType(inputFile);
     }
+    String outputFormat = getOutputFormat(cmd);
     File outputFile = null;
-    String outputFormat = null;
     if (cmd.hasOption(ARG_OUTPUTFILE)) {
       outputFile = new File(cmd.getOptionValue(ARG_OUTPUTFILE));
-      outputFormat = FilenameUtils.getExtension(outputFile.getAbsolutePath()).toLowerCase();
-    } else if (cmd.hasOption(ARG_OUTPUTTFORMAT)) {
-      outputFormat =  cmd.getOptionValue(ARG_OUTPUTTFORMAT).toLowerCase();
+    } else if (outputFormat != null) {
       if (inputFile != null) {
-        if (outputFormat.equalsIgnoreCase(ARG_PROBED)) {
-          outputFile = new File(FilenameUtils.removeExtension(inputFile.getAbsolutePath()) + "." + FileType.PROBED.toString().toLowerCase());
-        } else if (outputFormat.equalsIgnoreCase(ARG_BIGBED)) {
-          outputFile = new File(FilenameUtils.removeExtension(inputFile.getAbsolutePath()) + "." + FileType.BIGBED.toString().toLowerCase());
-        } else {
-          outputFile = new File(FilenameUtils.removeExtension(inputFile.getAbsolutePath()) + "." + outputFormat);
-        }
+        outputFile = getOutputFile(inputFile, outputFormat);
       }
     } else {
       log.error("No output file or output format specified.");
     }
     if (inputFile!=null && outputFile!=null) {
-      switch (inputFileType != null ? inputFileType : "") {
-        case ARG_MZID:
-        case ARG_PRIDEXML:
-          if (outputFormat.equals(ARG_MZTAB)) {
-            convertToMztab(inputFile, outputFile, inputFileType);
+      convertFile(inputFile, inputFileType, outputFile, outputFormat, cmd);
+    } else {
+      log.error("No output file or format defined.");
+    }
+  }
+
+  /**
+   * This method converts many input files, from a directory, a glob pattern, or a manifest file, to the output format.
+   * The files are converted by a fixed number of workers in this JVM, and a summary of the result for each file is
+   * logged, and saved to the report file if one is provided.
+   *
+   * @param cmd command line arguments.
+   * @throws IOException if there are problems reading or writing to the file system.
+   */
+  private static void startBatchConversion(CommandLine cmd) throws IOException {
+    if (!cmd.hasOption(ARG_OUTPUTTFORMAT)) {
+      log.error("No output format specified for the batch conversion.");
+      return;
+    }
+    String outputFormat = cmd.getOptionValue(ARG_OUTPUTTFORMAT).toLowerCase();
+    List<File> inputFiles = resolveBatchFiles(cmd.getOptionValue(ARG_BATCH));
+    int threads = cmd.hasOption(ARG_THREADS) ? Integer.parseInt(cmd.getOptionValue(ARG_THREADS)) : Runtime.getRuntime().availableProcessors();
+    threads = Math.max(1, Math.min(threads, inputFiles.size()));
+    log.info("Converting " + inputFiles.size() + " files to " + outputFormat + " using " + threads + " workers.");
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<String>> results = new ArrayList<>();
+    for (File inputFile : inputFiles) {
+      results.add(pool.submit(() -> convertBatchFile(inputFile, outputFormat, cmd)));
+    }
+    pool.shutdown();
+    StringBuilder summary = new StringBuilder();
+    int failed = 0;
+    for (int i = 0; i < results.size(); i++) {
+      String result;
+      try {
+        result = results.get(i).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        pool.shutdownNow();
+        throw new InterruptedIOException("Interrupted during batch conversion.");
+      } catch (ExecutionException e) {
+        result = "FAILED\t" + inputFiles.get(i).getPath() + "\t" + e.getCause();
+      }
+      failed += result.startsWith("FAILED") ? 1 : 0;
+      summary.append(result).append('\n');
+    }
+    log.info("Batch conversion finished: " + (inputFiles.size() - failed) + " files converted, " + failed + " failed.\n" + summary);
+    if (cmd.hasOption(ARG_REPORTFILE)) {
+      FileUtils.write(new File(cmd.getOptionValue(ARG_REPORTFILE)), summary.toString(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * This method converts one file of a batch, and summarises the result.
+   *
+   * @param inputFile the input file.
+   * @param outputFormat the output format.
+   * @param cmd command line arguments.
+   * @return the result of the conversion as a tab-separated line: OK or FAILED, the time taken, the input file,
+   * and the output file or the reason for the failure. A conversion only fails if it throws an exception.
+   */
+  private static String convertBatchFile(File inputFile, String outputFormat, CommandLine cmd) {
+    long start = System.currentTimeMillis();
+    File outputFile = getOutputFile(inputFile, outputFormat);
+    try {
+      convertFile(inputFile, getInputFileType(inputFile), outputFile, outputFormat, cmd);
+      return "OK\t" + (System.currentTimeMillis() - start) + " ms\t" + inputFile.getPath() + "\t" + outputFile.getPath();
+    } catch (Exception e) {
+      log.error("Unable to convert file: " + inputFile.getPath(), e);
+      return "FAILED\t" + (System.currentTimeMillis() - start) + " ms\t" + inputFile.getPath() + "\t" + e;
+    }
+  }
+
+  /**
+   * This method gets the type of an input file from its extension.
+   *
+   * @param inputFile the input file.
+   * @return the input file type, e.g. mzid, pridexml, mztab or probed.
+   */
+  private static String getInputFileType(File inputFile) {
+    String inputFileType = FilenameUtils.getExtension(inputFile.getAbsolutePath()).toLowerCase();
+    if (inputFileType.equals("xml")) {
+      inputFileType = ARG_PRIDEXML;
+    } else if (inputFile.getName().toLowerCase().endsWith("." + FileType.PROBED.toString().toLowerCase())) {
+      inputFileType = ARG_PROBED;
+    }
+    return inputFileType;
+  }
+
+  /**
+   * This method gets the output format, from the output file's extension or the output format argument.
+   *
+   * @param cmd command line arguments.
+   * @return the output format, e.g. mztab, probed or bb, or null if neither argument was provided.
+   */
+  static String getOutputFormat(CommandLine cmd) {
+    if (cmd.hasOption(ARG_OUTPUTFILE)) {
+      return FilenameUtils.getExtension(new File(cmd.getOptionValue(ARG_OUTPUTFILE)).getAbsolutePath()).toLowerCase();
+    } else if (cmd.hasOption(ARG_OUTPUTTFORMAT)) {
+      return cmd.getOptionValue(ARG_OUTPUTTFORMAT).toLowerCase();
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * This method gets the default output file for an input file, i.e. in the same directory with the output format's extension.
+   *
+   * @param inputFile the input file.
+   * @param outputFormat the output format.
+   * @return the output file.
+   */
+  static File getOutputFile(File inputFile, String outputFormat) {
+    String basePath = inputFile.getName().toLowerCase().endsWith("." + FileType.PROBED.toString().toLowerCase()) ?
+        inputFile.getAbsolutePath().substring(0, inputFile.getAbsolutePath().length() - FileType.PROBED.toString().length() - 1) :
+        FilenameUtils.removeExtension(inputFile.getAbsolutePath());
+    if (outputFormat.equalsIgnoreCase(ARG_PROBED)) {
+      return new File(basePath + "." + FileType.PROBED.toString().toLowerCase());
+    } else if (outputFormat.equalsIgnoreCase(ARG_BIGBED)) {
+      return new File(basePath + "." + FileType.BIGBED.toString().toLowerCase());
+    } else {
+      return new File(basePath + "." + outputFormat);
+    }
+  }
+
+  /**
+   * This method converts one input file to the output format.
+   *
+   * @param inputFile the input file.
+   * @param inputFileType the input file type.
+   * @param outputFile the output file.
+   * @param outputFormat the output format.
+   * @param cmd command line arguments.
+   * @throws IOException if there are problems reading or writing to the file system, or the file cannot be converted
+   * to the output format.
+   */
+  private static void convertFile(File inputFile, String inputFileType, File outputFile, String outputFormat, CommandLine cmd) throws IOException {
+    switch (inputFileType != null ? inputFileType : "") {
+      case ARG_MZID:
+      case ARG_PRIDEXML:
+        if (outputFormat.equals(ARG_MZTAB)) {
+          convertToMztab(inputFile, outputFile, inputFileType, Validator.getFileStager(cmd));
+        } else {
+          if ((inputFileType != null && inputFileType.equals(ARG_MZID)) && outputFormat.equals(ARG_PROBED)) {
+            startMzidToProbed(inputFile, outputFile, cmd);
           } else {
-            if ((inputFileType != null && inputFileType.equals(ARG_MZID)) && outputFormat.equals(ARG_PROBED)) {
-              File intermediateMztab = new File(FilenameUtils.removeExtension(inputFile.getAbsolutePath()) + "." + FileType.MZTAB.toString().toLowerCase());
-              convertToMztab(inputFile, intermediateMztab, inputFileType);
-              startMztabToProbed(intermediateMztab, outputFile, cmd);
+            if ((inputFileType != null && inputFileType.equals(ARG_MZID)) && outputFormat.equals(ARG_BIGBED)) {
+              File intermediateProbed = new File(FilenameUtils.removeExtension(inputFile.getAbsolutePath()) + "." + FileType.PROBED.toString().toLowerCase());
+              startMzidToProbed(inputFile, intermediateProbed, cmd);
+              startProbedToBigbed(intermediateProbed, outputFile, cmd);
             } else {
-              if ((inputFileType != null && inputFileType.equals(ARG_MZID)) && outputFormat.equals(ARG_BIGBED)) {
-                File intermediateMztab = new File(FilenameUtils.removeExtension(inputFile.getAbsolutePath()) + "." + FileType.MZTAB.toString().toLowerCase());
-                convertToMztab(inputFile, intermediateMztab, inputFileType);
-                File intermediateProbed = new File(FilenameUtils.removeExtension(inputFile.getAbsolutePath()) + "." + FileType.PROBED.toString().toLowerCase());
-                startMztabToProbed(intermediateMztab, intermediateProbed, cmd);
-                startProbedToBigbed(intermediateProbed, cmd);
-              } else {
-                log.error("Unable to convert input mzid/pride xml file into the target output format.");
-              }
+              throw new IOException("Unable to convert input mzid/pride xml file into the target output format: " + outputFormat);
             }
           }
-          break;
-        case ARG_MZTAB:
-          switch (outputFormat) {
-            case ARG_PROBED:
-              startMztabToProbed(inputFile, outputFile, cmd);
-              break;
-            case ARG_BIGBED:
-              File intermediateProbed = new File(FilenameUtils.removeExtension(inputFile.getAbsolutePath()) + "." + FileType.PROBED.toString().toLowerCase());
-              startMztabToProbed(inputFile, intermediateProbed, cmd);
-              startProbedToBigbed(intermediateProbed, cmd);
-              break;
-            default:
-              log.error("Unable to convert input mztab into the target output format.");
-              break;
-          }
-          break;
-        case ARG_PROBED:
-          if (outputFormat.equals(ARG_BIGBED)) {
-            startProbedToBigbed(inputFile, cmd);
-          }  else {
-            log.error("Unable to convert input probed into the target output format.");
-          }
-          break;
-      }
+        }
+        break;
+      case ARG_MZTAB:
+        switch (outputFormat) {
+          case ARG_PROBED:
+            startMztabToProbed(inputFile, outputFile, cmd);
+            break;
+          case ARG_BIGBED:
+            File intermediateProbed = new File(FilenameUtils.removeExtension(inputFile.getAbsolutePath()) + "." + FileType.PROBED.toString().toLowerCase());
+            startMztabToProbed(inputFile, intermediateProbed, cmd);
+            startProbedToBigbed(intermediateProbed, outputFile, cmd);
+            break;
+          default:
+            throw new IOException("Unable to convert input mztab into the target output format: " + outputFormat);
+        }
+        break;
+      case ARG_PROBED:
+        if (outputFormat.equals(ARG_BIGBED)) {
+          startProbedToBigbed(inputFile, outputFile, cmd);
+        }  else {
+          throw new IOException("Unable to convert input probed into the target output format: " + outputFormat);
+        }
+        break;
+      default:
+        throw new IOException("Unable to convert input file of unknown type: " + inputFile.getPath());
+    }
+  }
+
+  /**
+   * This method gets the proBed file to write for a conversion to proBed or bigBed, i.e. the output file itself, or
+   * the intermediate proBed file next to the input file.
+   *
+   * @param inputFile the input file.
+   * @param outputFile the output file.
+   * @param outputFormat the output format.
+   * @return the proBed file to write.
+   */
+  static File getProbedFile(File inputFile, File outputFile, String outputFormat) {
+    return outputFormat.equals(ARG_BIGBED) ?
+        new File(FilenameUtils.removeExtension(inputFile.getAbsolutePath()) + "." + FileType.PROBED.toString().toLowerCase()) :
+        outputFile;
+  }
+
+  /**
+   * This method finishes a conversion to proBed or bigBed, once the proBed file has been written: the proBed file is
+   * sorted, and then converted to bigBed if that is the output format.
+   *
+   * @param proBed the written proBed file.
+   * @param outputFile the output file.
+   * @param outputFormat the output format.
+   * @param cmd command line arguments.
+   * @throws IOException if there are problems reading or writing to the file system.
+   */
+  static void finishProbed(File proBed, File outputFile, String outputFormat, CommandLine cmd) throws IOException {
+    sortProbed(proBed, cmd);
+    if (outputFormat.equals(ARG_BIGBED)) {
+      startProbedToBigbed(proBed, outputFile, cmd);
+    }
+  }
+
+  /**
+   * This method begins the conversion from an input mzIdentML file to proBed. By default the mzIdentML file is
+   * streamed directly to proBed, or if requested it is first converted to an intermediate mzTab file.
+   *
+   * @param inputFile the input mzIdentML file.
+   * @param outputFile the output proBed file.
+   * @param cmd command line arguments
+   * @throws IOException if there are problems reading or writing to the file system.
+   */
+  private static void startMzidToProbed(File inputFile, File outputFile, CommandLine cmd) throws IOException {
+    if (cmd.hasOption(ARG_INTERMEDIATE_MZTAB)) {
+      File intermediateMztab = new File(FilenameUtils.removeExtension(inputFile.getAbsolutePath()) + "." + FileType.MZTAB.toString().toLowerCase());
+      convertToMztab(inputFile, intermediateMztab, ARG_MZID, Validator.getFileStager(cmd), true);
+      startMztabToProbed(intermediateMztab, outputFile, cmd);
     } else {
-      log.error("No output file or format defined.");
+      new MzIdentMLProBedConverter().convert(inputFile, outputFile);
+      sortProbed(outputFile, cmd);
     }
   }
 
@@ -134,86 +321,158 @@ public class Converter {
    */
   private static void startMztabToProbed(File inputFile, File outputFile, CommandLine cmd) throws IOException {
     convertMztabToProbed(inputFile, outputFile);
+    sortProbed(outputFile, cmd);
+  }
+
+  /**
+   * This method sorts and filters a proBed file in place, if a chromosome sizes file was provided.
+   *
+   * @param outputFile the proBed file.
+   * @param cmd command line arguments
+   * @throws IOException if there are problems reading or writing to the file system.
+   */
+  private static void sortProbed(File outputFile, CommandLine cmd) throws IOException {
     if (cmd.hasOption(ARG_CHROMSIZES)) {
       log.info("Sorting and filtering proBed file according to chrom sizes file: " + cmd.getOptionValue(ARG_CHROMSIZES));
-      try {
-        FileUtils.copyFile(outputFile, new File(outputFile.getPath() + "_unsorted"));
-        MzTabBedConverter.sortProBed(outputFile, new File(cmd.getOptionValue(ARG_CHROMSIZES)));
-      } catch (InterruptedException ie) {
-        log.error("Interrupted Exception: ", ie);
-        throw new IOException(ie);
-      }
+      int threads = cmd.hasOption(ARG_THREADS) ? Integer.parseInt(cmd.getOptionValue(ARG_THREADS)) : Runtime.getRuntime().availableProcessors();
+      long lines = new ProBedSorter(BigBedWriter.readChromSizes(new File(cmd.getOptionValue(ARG_CHROMSIZES))), threads)
+          .sort(outputFile.toPath(), outputFile.toPath());
+      log.info("Sorted proBed file has " + lines + " lines: " + outputFile.getAbsolutePath());
     } else {
       log.info("Chromosome sizes file was not provided, therefore not sorting BED file.");
     }
   }
 
   /**
-   * This method converts an input proBed file to bigBed.
+   * This method converts an input proBed file to bigBed. The bigBed file is written natively, unless the
+   * UCSC bedToBigBed tool is provided.
    *
    * @param inputFile the input proBed file to convert.
+   * @param outputFile the output bigBed file.
    * @param cmd command line arguments.
    * @throws IOException if there are problems reading or writing to the file system.
+   * @throws IllegalArgumentException if the column format is not a valid BED column format.
    */
-  private static void startProbedToBigbed (File inputFile, CommandLine cmd) throws IOException {
-    File aSQL = null;
+  private static void startProbedToBigbed (File inputFile, File outputFile, CommandLine cmd) throws IOException {
+    File aSQL;
     File chromSizes = null;
-    File bigBedConverter = null;
     if (cmd.hasOption(ARG_ASQLFILE)) {
       aSQL = new File(cmd.getOptionValue(ARG_ASQLFILE));
     } else if (cmd.hasOption(ARG_ASQLNAME)) {
       aSQL = new File(FilenameUtils.removeExtension(inputFile.getAbsolutePath()) + "." + FileType.ASQL.toString().toLowerCase());
       MzTabBedConverter.createAsql(cmd.getOptionValue(ARG_ASQLNAME), aSQL.getAbsolutePath());
+    } else {
+      aSQL = createDefaultProbedAsqlFile();
     }
     if (cmd.hasOption(ARG_CHROMSIZES)) {
       chromSizes =  new File(cmd.getOptionValue(ARG_CHROMSIZES));
     }
-    if (cmd.hasOption(ARG_BIGBEDCONVERTER)) {
-      bigBedConverter =  new File(cmd.getOptionValue(ARG_BIGBEDCONVERTER));
-    }
-    if (aSQL!=null && chromSizes!=null && bigBedConverter!=null) {
-      convertProbedToBigbed(inputFile, aSQL, chromSizes, bigBedConverter);
+    if (aSQL==null || chromSizes==null) {
+      throw new IOException("All supporting files have not been set correctly. Please double check the following have been provided properly:\n" +
+          "aSQL file, chromosome sizes file.");
+    } else if (cmd.hasOption(ARG_BIGBEDCONVERTER)) {
+      convertProbedToBigbed(inputFile, aSQL, chromSizes, new File(cmd.getOptionValue(ARG_BIGBEDCONVERTER)));
     } else {
-      log.error("All supporting files have not been set correctly. Please double check the following have been provided properly:\n" +
-          "aSQL file, chromosome sizes file, bigBedConverter tool.");
+      String columnFormat = cmd.hasOption(ARG_BED_COLUMN_FORMAT) ? cmd.getOptionValue(ARG_BED_COLUMN_FORMAT) : "BED12+13";
+      int definedFieldCount = parseBedColumnFormat(columnFormat)[0];
+      int fieldCount = Validator.extractDatatypesAsql(aSQL).size();
+      log.info("Writing bigBed file: " + outputFile.getAbsolutePath());
+      new BigBedWriter(FileUtils.readFileToString(aSQL, StandardCharsets.UTF_8), fieldCount, definedFieldCount,
+          BigBedWriter.readChromSizes(chromSizes)).write(inputFile.toPath(), outputFile.toPath());
+      log.info("Generated output bigBed file:" + outputFile.toPath());
     }
   }
 
   /**
-   * This method converts an input mzIdentML or PRIDE XML file to mzTab.
+   * This method converts an input mzIdentML or PRIDE XML file to mzTab, streaming the rows from the controller.
    * @param inputFile the input file.
    * @param outputMztabFile the output mzTab file.
    * @param inputFormat the input file format.
-   * @throws IOException if there are problems reading or writing to the file system.
+   * @param fileStager the file stager to extract the input file with.
+   * @throws IOException if there are problems reading or writing to the file system, or the file cannot be converted.
    */
-  private static void convertToMztab(File inputFile, File outputMztabFile, String inputFormat) throws IOException{
+  static void convertToMztab(File inputFile, File outputMztabFile, String inputFormat, FileStager fileStager) throws IOException{
+    convertToMztab(inputFile, outputMztabFile, inputFormat, fileStager, false);
+  }
+
+  /**
+   * This method converts an input mzIdentML or PRIDE XML file to mzTab. The rows are streamed from the controller,
+   * unless the mzTab file is for the proBed conversion, which needs the columns of the full mzTab converter. The full
+   * converter builds the whole mzTab file in memory before it is written, so the controller is closed first to free
+   * its caches.
+   * @param inputFile the input file.
+   * @param outputMztabFile the output mzTab file.
+   * @param inputFormat the input file format.
+   * @param fileStager the file stager to extract the input file with.
+   * @param forProbed true to use the full mzTab converter for the proBed conversion.
+   * @throws IOException if there are problems reading or writing to the file system, or the file cannot be converted.
+   */
+  private static void convertToMztab(File inputFile, File outputMztabFile, String inputFormat, FileStager fileStager, boolean forProbed) throws IOException{
     log.info("About to convert input file: " + inputFile.getAbsolutePath() + " to: " + outputMztabFile.getAbsolutePath());
     List<File> filesToConvert = new ArrayList<>();
     filesToConvert.add(inputFile);
-    filesToConvert = Validator.extractZipFiles(filesToConvert);
-    filesToConvert.forEach(file -> {
-    try {
-      AbstractMzTabConverter mzTabconverter = null;
+    filesToConvert = Validator.extractZipFiles(filesToConvert, fileStager);
+    for (File file : filesToConvert) {
+      DataAccessController controller = null;
       if (inputFormat.equals(FileType.MZID.toString())) {
-        MzIdentMLControllerImpl mzIdentMLController = new MzIdentMLControllerImpl(inputFile);
-        mzTabconverter = new HQMzIdentMLMzTabConverter(mzIdentMLController);
+        controller = new MzIdentMLControllerImpl(file);
       } else if (inputFormat.equals(FileType.PRIDEXML.toString()) || inputFormat.equals(ARG_PRIDEXML)) {
-        PrideXmlControllerImpl prideXmlController = new PrideXmlControllerImpl(inputFile);
-        mzTabconverter = new PRIDEMzTabConverter(prideXmlController);
+        controller = new PrideXmlControllerImpl(file);
       }
-      if (mzTabconverter != null) {
-        MZTabFile mzTabFile = mzTabconverter.getMZTabFile();
-        BufferedOutputStream writer = new BufferedOutputStream(new FileOutputStream(outputMztabFile));
-        mzTabFile.printMZTab(writer);
-        writer.close();
+      if (controller != null) {
+        if (forProbed) {
+          MZTabFile mzTabFile;
+          try {
+            mzTabFile = getMztabFile(controller);
+          } finally {
+            controller.close();
+          }
+          writeMztabFile(mzTabFile, outputMztabFile);
+        } else {
+          try {
+            new MzTabStreamWriter(controller, file.getName()).write(outputMztabFile);
+          } finally {
+            controller.close();
+          }
+        }
         log.info("Successfully written to mzTab file: " + outputMztabFile.getAbsolutePath());
       } else {
         throw new IOException("Unable to parse input file format correctly");
       }
-    } catch (IOException ioe) {
-      log.error("IOException: ", ioe);
     }
-    });
+  }
+
+  /**
+   * This method writes an mzTab file.
+   *
+   * @param mzTabFile the mzTab content.
+   * @param outputMztabFile the output mzTab file.
+   * @throws IOException if there are problems writing to the file system.
+   */
+  private static void writeMztabFile(MZTabFile mzTabFile, File outputMztabFile) throws IOException {
+    try (BufferedOutputStream writer = new BufferedOutputStream(new FileOutputStream(outputMztabFile))) {
+      mzTabFile.printMZTab(writer);
+    }
+  }
+
+  /**
+   * This method converts the content of an open mzIdentML or PRIDE XML controller to mzTab with the full mzTab
+   * converter.
+   *
+   * @param controller the mzIdentML or PRIDE XML controller, which is not closed.
+   * @return the mzTab content.
+   * @throws IOException if the controller is not for mzIdentML or PRIDE XML.
+   */
+  private static MZTabFile getMztabFile(DataAccessController controller) throws IOException {
+    AbstractMzTabConverter mzTabconverter;
+    if (controller instanceof MzIdentMLControllerImpl) {
+      mzTabconverter = new HQMzIdentMLMzTabConverter((MzIdentMLControllerImpl) controller);
+    } else if (controller instanceof PrideXmlControllerImpl) {
+      mzTabconverter = new PRIDEMzTabConverter((PrideXmlControllerImpl) controller);
+    } else {
+      throw new IOException("Unable to parse input file format correctly");
+    }
+    return mzTabconverter.getMZTabFile();
   }
 
   /**
@@ -264,8 +523,9 @@ public class Converter {
    * @param aSQL the supporting aSQL file (.as).
    * @param chromSizes the supporting chromosome sizes text file.
    * @param bigBedConverter the UCSC bedToBigBed tool.
+   * @throws IOException if the UCSC converter tool failed.
    */
-  private static void convertProbedToBigbed(File proBed, File aSQL, File chromSizes, File bigBedConverter) {
+  private static void convertProbedToBigbed(File proBed, File aSQL, File chromSizes, File bigBedConverter) throws IOException {
     try {
       File outputBigBed = MzTabBedConverter.convertProBedToBigBed(
                           aSQL,
@@ -275,8 +535,11 @@ public class Converter {
                           bigBedConverter
       );
       log.info("Generated output bigBed file:" + outputBigBed.toPath());
-      } catch (IOException|URISyntaxException|InterruptedException e) {
-      log.error("Error when converting to bigBed: ", e);
+      } catch (URISyntaxException e) {
+      throw new IOException("Error when converting to bigBed: " + proBed.getPath(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted when converting to bigBed: " + proBed.getPath());
     }
   }
 }
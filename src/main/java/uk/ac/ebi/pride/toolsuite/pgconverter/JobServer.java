@@ -0,0 +1,295 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.Utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static uk.ac.ebi.pride.toolsuite.pgconverter.utils.Utility.*;
+
+/**
+ * This class runs validation and conversion jobs from a spool directory, in one long-running JVM, so that the JVM
+ * start-up and the library initialization are only paid once. Each job is a file in the 'incoming' directory with
+ * the '.job' extension, which has the job's command line arguments, one argument per line, e.g.:
+ * <pre>
+ * -v
+ * -mzid
+ * /path/to/data/foo.mzid
+ * -peak
+ * /path/to/data/bar1.mgf
+ * </pre>
+ * A job file should be written under another name first, and then renamed, so that it is never read half written.
+ * Jobs are claimed in the order they were added by moving them to the 'running' directory, and are moved to the
+ * 'done' or 'failed' directory when they finish, with a '.status' file next to them. A job's Redis arguments are used
+ * to publish its completion, just like a single run. Each job reserves a memory budget before it starts, so
+ * the jobs running at once never reserve more than the maximum heap. The server stops once a 'stop' file is
+ * created in the spool directory, or when the JVM is shut down, after the running jobs have finished.
+ *
+ * @author Tobias Ternent
+ */
+public class JobServer {
+
+  private static final Logger log = LoggerFactory.getLogger(JobServer.class);
+  private static final String JOB_EXTENSION = ".job";
+  private static final String STATUS_EXTENSION = ".status";
+  private static final long POLL_INTERVAL_MS = 1000;
+  private static final long BYTES_PER_MB = 1024L * 1024L;
+
+  private final Path incoming;
+  private final Path running;
+  private final Path done;
+  private final Path failed;
+  private final Path stopFile;
+  private final int threads;
+  private final int totalMemoryMb;
+  private final int defaultJobMemoryMb;
+  private final Semaphore slots;
+  private final Semaphore memory;
+  private final JobRunner jobRunner;
+  private volatile boolean stopping = false;
+
+  /**
+   * The operation which runs a job's command line arguments.
+   */
+  interface JobRunner {
+    void run(CommandLine cmd) throws Exception;
+  }
+
+  /**
+   * Constructor, sets up the spool directory.
+   *
+   * @param cmd the command line arguments, with the spool directory, and optionally the number of threads and the memory budget of each job.
+   * @throws IOException if there are problems creating the spool directories.
+   * @throws IllegalArgumentException if the number of threads or the memory budget of each job is not a positive number.
+   */
+  public JobServer(CommandLine cmd) throws IOException {
+    this(cmd, MainApp::runJob);
+  }
+
+  /**
+   * Constructor, sets up the spool directory, with the operation which runs each job.
+   *
+   * @param cmd the command line arguments, with the spool directory, and optionally the number of threads and the memory budget of each job.
+   * @param jobRunner the operation which runs each job.
+   * @throws IOException if there are problems creating the spool directories.
+   * @throws IllegalArgumentException if the number of threads or the memory budget of each job is not a positive number.
+   */
+  JobServer(CommandLine cmd, JobRunner jobRunner) throws IOException {
+    this.jobRunner = jobRunner;
+    threads = cmd.hasOption(ARG_THREADS) ? parseThreads(cmd.getOptionValue(ARG_THREADS)) : Runtime.getRuntime().availableProcessors();
+    totalMemoryMb = (int) (Runtime.getRuntime().maxMemory() / BYTES_PER_MB);
+    defaultJobMemoryMb = cmd.hasOption(ARG_JOB_MEMORY) ? parseJobMemory(cmd.getOptionValue(ARG_JOB_MEMORY)) : Math.max(1, totalMemoryMb / threads);
+    Path spool = Paths.get(cmd.getOptionValue(ARG_SERVER));
+    incoming = Files.createDirectories(spool.resolve("incoming"));
+    running = Files.createDirectories(spool.resolve("running"));
+    done = Files.createDirectories(spool.resolve("done"));
+    failed = Files.createDirectories(spool.resolve("failed"));
+    stopFile = spool.resolve("stop");
+    slots = new Semaphore(threads);
+    memory = new Semaphore(totalMemoryMb);
+  }
+
+  /**
+   * This method runs jobs from the spool directory until the server is stopped. Jobs which were left running by
+   * a previous server are queued again first.
+   *
+   * @throws IOException if there are problems reading the spool directory.
+   * @throws InterruptedException if interrupted while waiting for jobs.
+   */
+  public void start() throws IOException, InterruptedException {
+    for (Path job : listJobs(running)) {
+      log.info("Queuing job again, which did not finish: " + job.getFileName());
+      Files.move(job, incoming.resolve(job.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    Thread mainThread = Thread.currentThread();
+    Thread shutdownHook = new Thread(() -> {
+      stopping = true;
+      try {
+        mainThread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+    log.info("Started job server on " + incoming.getParent() + " with " + threads + " threads, " + totalMemoryMb +
+        " MB of memory, and " + defaultJobMemoryMb + " MB for each job by default.");
+    try {
+      while (!stopping && !Files.exists(stopFile)) {
+        for (Path job : listJobs(incoming)) {
+          if (stopping || !dispatch(job, pool)) {
+            break;
+          }
+        }
+        Thread.sleep(POLL_INTERVAL_MS);
+      }
+    } finally {
+      log.info("Stopping job server, waiting for the running jobs to finish.");
+      pool.shutdown();
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      if (!stopping) {
+        Files.deleteIfExists(stopFile);
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+      }
+      log.info("Stopped job server.");
+    }
+  }
+
+  /**
+   * This method claims a job and submits it to run, if there is a free thread and enough free memory for its budget.
+   * Jobs which cannot be parsed, e.g. with an invalid memory budget, or which need more memory than the maximum heap,
+   * fail straight away.
+   *
+   * @param job the job file.
+   * @param pool the pool to run the job on.
+   * @return true if the job was claimed, false if it has to wait.
+   * @throws IOException if there are problems moving the job file.
+   */
+  private boolean dispatch(Path job, ExecutorService pool) throws IOException {
+    String[] args;
+    CommandLine cmd;
+    int jobMemoryMb;
+    try {
+      args = Files.readAllLines(job, StandardCharsets.UTF_8).stream()
+          .map(String::trim)
+          .filter(line -> !line.isEmpty())
+          .toArray(String[]::new);
+      cmd = MainApp.parseArgs(args);
+      jobMemoryMb = cmd.hasOption(ARG_JOB_MEMORY) ? parseJobMemory(cmd.getOptionValue(ARG_JOB_MEMORY)) : defaultJobMemoryMb;
+    } catch (IOException | ParseException | IllegalArgumentException e) {
+      log.error("Unable to read job: " + job.getFileName(), e);
+      finish(job, false, "FAILED\t0 ms\tUnable to read job: " + e.getMessage());
+      return true;
+    }
+    if (cmd.hasOption(ARG_SERVER) || jobMemoryMb > totalMemoryMb) {
+      String reason = cmd.hasOption(ARG_SERVER) ? "Jobs cannot start a server." :
+          "Job memory budget of " + jobMemoryMb + " MB is more than the maximum heap of " + totalMemoryMb + " MB.";
+      log.error(reason + " " + job.getFileName());
+      finish(job, false, "FAILED\t0 ms\t" + reason);
+      return true;
+    }
+    if (!slots.tryAcquire()) {
+      return false;
+    }
+    if (!memory.tryAcquire(jobMemoryMb)) {
+      slots.release();
+      return false;
+    }
+    Path claimed;
+    try {
+      claimed = Files.move(job, running.resolve(job.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      memory.release(jobMemoryMb);
+      slots.release();
+      log.warn("Unable to claim job, skipping it: " + job.getFileName(), e);
+      return true;
+    }
+    log.info("Starting job " + claimed.getFileName() + " with a memory budget of " + jobMemoryMb + " MB: " + Arrays.toString(args));
+    pool.submit(() -> {
+      long start = System.currentTimeMillis();
+      try {
+        jobRunner.run(cmd);
+        finish(claimed, true, "OK\t" + (System.currentTimeMillis() - start) + " ms");
+        Utility.notifyCompletion(cmd);
+      } catch (Throwable e) {
+        log.error("Exception while running job: " + claimed.getFileName(), e);
+        finish(claimed, false, "FAILED\t" + (System.currentTimeMillis() - start) + " ms\t" + e);
+      } finally {
+        memory.release(jobMemoryMb);
+        slots.release();
+      }
+      return null;
+    });
+    return true;
+  }
+
+  /**
+   * This method parses a memory budget, in MB.
+   *
+   * @param value the memory budget.
+   * @return the memory budget in MB.
+   * @throws IllegalArgumentException if the memory budget is not a positive number.
+   */
+  private static int parseJobMemory(String value) throws IllegalArgumentException {
+    int jobMemoryMb;
+    try {
+      jobMemoryMb = Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Job memory budget has to be a number of MB: " + value, e);
+    }
+    if (jobMemoryMb < 1) {
+      throw new IllegalArgumentException("Job memory budget has to be at least 1 MB: " + value);
+    }
+    return jobMemoryMb;
+  }
+
+  /**
+   * This method parses the number of threads.
+   *
+   * @param value the number of threads.
+   * @return the number of threads.
+   * @throws IllegalArgumentException if the number of threads is not a positive number.
+   */
+  private static int parseThreads(String value) throws IllegalArgumentException {
+    int threads;
+    try {
+      threads = Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Number of threads has to be a number: " + value, e);
+    }
+    if (threads < 1) {
+      throw new IllegalArgumentException("Number of threads has to be at least 1: " + value);
+    }
+    return threads;
+  }
+
+  /**
+   * This method moves a finished job to the 'done' or 'failed' directory, and writes its status next to it.
+   *
+   * @param job the job file.
+   * @param ok true if the job finished OK, false otherwise.
+   * @param status the status line of the job.
+   */
+  private void finish(Path job, boolean ok, String status) {
+    Path directory = ok ? done : failed;
+    String name = job.getFileName().toString();
+    try {
+      Files.move(job, directory.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+      Files.write(directory.resolve(name.substring(0, name.length() - JOB_EXTENSION.length()) + STATUS_EXTENSION),
+          Collections.singletonList(status), StandardCharsets.UTF_8);
+      log.info("Finished job " + name + ": " + status);
+    } catch (IOException e) {
+      log.error("Unable to record the status of job " + name + ": " + status, e);
+    }
+  }
+
+  /**
+   * This method lists the jobs in a directory, oldest first.
+   *
+   * @param directory the directory.
+   * @return the job files.
+   * @throws IOException if there are problems reading the directory.
+   */
+  private static List<Path> listJobs(Path directory) throws IOException {
+    List<File> jobs = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + JOB_EXTENSION)) {
+      stream.forEach(job -> jobs.add(job.toFile()));
+    }
+    return jobs.stream()
+        .sorted(Comparator.comparingLong(File::lastModified).thenComparing(File::getName))
+        .map(File::toPath)
+        .collect(Collectors.toList());
+  }
+}
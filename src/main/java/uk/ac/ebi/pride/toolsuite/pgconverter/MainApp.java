@@ -3,6 +3,8 @@ package uk.ac.ebi.pride.toolsuite.pgconverter;
 import org.apache.commons.cli.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.BoundedCachePolicy;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.FragmentIonMatcher;
 import uk.ac.ebi.pride.toolsuite.pgconverter.utils.Utility;
 import java.util.*;
 
@@ -27,23 +29,10 @@ public class MainApp {
     log.info("Program arguments: " + Arrays.toString(args));
     try {
       CommandLine cmd = MainApp.parseArgs(args);
-      if (args.length > 0) {
-        if (cmd.hasOption(ARG_VALIDATION)) {
-          Validator.startValidation(cmd);
-        } else if (cmd.hasOption(ARG_CONVERSION)) {
-          Converter.startConversion(cmd);
-        } else if (cmd.hasOption(ARG_MESSAGE)) {
-          if (cmd.hasOption(ARG_REDIS) && cmd.hasOption(ARG_REDIS_SERVER) && cmd.hasOption(ARG_REDIS_PORT) && cmd.hasOption(ARG_REDIS_CHANNEL) && cmd.hasOption(ARG_REDIS_MESSAGE)) {
-            Utility.notifyRedisChannel(cmd.getOptionValue(ARG_REDIS_SERVER), cmd.getOptionValue(ARG_REDIS_PORT),
-                cmd.hasOption(ARG_REDIS_PASSWORD) ? cmd.getOptionValue(ARG_REDIS_PASSWORD) : "", cmd.getOptionValue(ARG_REDIS_CHANNEL), cmd.getOptionValue(ARG_REDIS_MESSAGE));
-          } else {
-            log.error("Insufficient parameters provided for sending Redis message.");
-            Arrays.stream(args).forEach(log::error);
-          }
-        } else {
-          log.error("Did not find validation, conversion, or messaging mode arguments.");
-          Arrays.stream(args).forEach(log::error);
-        }
+      if (cmd.hasOption(ARG_SERVER)) {
+        new JobServer(cmd).start();
+      } else if (args.length > 0) {
+        runJob(cmd);
       }
       Utility.exitCleanly(cmd);
     } catch (Exception e) {
@@ -51,12 +40,39 @@ public class MainApp {
     }
   }
 
+  /**
+   * This method starts either the converter, validation, or messaging operation for parsed command line arguments.
+   *
+   * @param cmd the command line arguments.
+   * @throws Exception if there are problems performing the operation.
+   */
+  static void runJob(CommandLine cmd) throws Exception {
+    if (cmd.hasOption(ARG_VALIDATION) && cmd.hasOption(ARG_CONVERSION)) {
+      Validator.startValidationAndConversion(cmd);
+    } else if (cmd.hasOption(ARG_VALIDATION)) {
+      Validator.startValidation(cmd);
+    } else if (cmd.hasOption(ARG_CONVERSION)) {
+      Converter.startConversion(cmd);
+    } else if (cmd.hasOption(ARG_MESSAGE)) {
+      if (cmd.hasOption(ARG_REDIS) && cmd.hasOption(ARG_REDIS_SERVER) && cmd.hasOption(ARG_REDIS_PORT) && cmd.hasOption(ARG_REDIS_CHANNEL) && cmd.hasOption(ARG_REDIS_MESSAGE)) {
+        Utility.notifyRedisChannel(cmd.getOptionValue(ARG_REDIS_SERVER), cmd.getOptionValue(ARG_REDIS_PORT),
+            cmd.hasOption(ARG_REDIS_PASSWORD) ? cmd.getOptionValue(ARG_REDIS_PASSWORD) : "", cmd.getOptionValue(ARG_REDIS_CHANNEL), cmd.getOptionValue(ARG_REDIS_MESSAGE));
+      } else {
+        log.error("Insufficient parameters provided for sending Redis message.");
+        Arrays.stream(cmd.getOptions()).forEach(option -> log.error(option.toString()));
+      }
+    } else {
+      log.error("Did not find validation, conversion, or messaging mode arguments.");
+      Arrays.stream(cmd.getOptions()).forEach(option -> log.error(option.toString()));
+    }
+  }
+
   /**
    * This method parses sets up and all the command line arguments to a CommandLine object.
    *
    * @param args the command line arguments.
    * @return a CommandLine object of the parsed command line arguments.
-   * @throws ParseException if there are problems parsing the command line arguments.
+   * @throws ParseException if there are problems parsing the command line arguments, or an argument's value is not valid.
    */
   public static CommandLine parseArgs(String[] args) throws ParseException{
     Options options = new Options();
@@ -84,8 +100,41 @@ public class MainApp {
     options.addOption(ARG_SCHEMA_VALIDATION, false, "XML Schema validation");
     options.addOption(ARG_SCHEMA_ONLY_VALIDATION, false, "XML Schema-only validation");
     options.addOption(ARG_BED_COLUMN_FORMAT, true, "BED column format");
+    options.addOption(ARG_ASQLFILE, true, "ASQL schema file (.as) describing the BED columns");
+    options.addOption(ARG_ASQLNAME, true, "ASQL schema name, to create a proBed ASQL schema file with");
+    options.addOption(ARG_BIGBEDCONVERTER, true, "UCSC bedToBigBed tool, to use instead of the native bigBed writer");
     options.addOption(ARG_FAST_VALIDATION, false, "Fast Validation of MzIdentML files");
+    options.addOption(ARG_MAPPED_VALIDATION, false, "Memory-mapped, multi-threaded validation of proBed files");
+    options.addOption(ARG_THREADS, true, "Number of threads to use");
+    options.addOption(ARG_NAME_INDEX, true, "Index for unique proBed names: offheap (default), exact, heap, or disk");
+    options.addOption(ARG_INTERMEDIATE_MZTAB, false, "Convert mzIdentML to proBed through an intermediate mzTab file");
+    options.addOption(ARG_BATCH, true, "Directory, glob pattern, or manifest file of input files to convert together");
+    options.addOption(ARG_MANIFEST, true, "Submission manifest of result files and their peak files to validate together");
+    options.addOption(ARG_SERVER, true, "Spool directory to run validation and conversion jobs from, as a long-running server");
+    options.addOption(ARG_JOB_MEMORY, true, "Memory budget of each server job, in MB");
+    options.addOption(ARG_MAX_SCHEMA_ERRORS, true, "Number of XML schema errors to stop validating after (default 1000)");
+    options.addOption(ARG_EXHAUSTIVE_VALIDATION, false, "Check the fragment ions and precursor delta m/z of every PSM, not only a sample");
+    options.addOption(ARG_SAMPLE_SIZE, true, "Number of proteins to sample for the sampled validation checks (default 100)");
+    options.addOption(ARG_SAMPLE_SEED, true, "Seed for drawing the sample of the sampled validation checks");
+    options.addOption(ARG_FRAGMENT_TOLERANCE, true, "m/z tolerance for matching fragment ions, e.g. 10ppm or 0.02Da (default exact)");
+    options.addOption(ARG_CACHE_LIMITS, true, "Limits of the cached values while validating, e.g. PROTEIN=20000,SPECTRUM=5000 (default " +
+        BoundedCachePolicy.DEFAULT_LIMITS + ")");
     CommandLineParser parser = new DefaultParser();
-    return parser.parse(options, args);
+    CommandLine cmd = parser.parse(options, args);
+    if (cmd.hasOption(ARG_FRAGMENT_TOLERANCE)) {
+      try {
+        FragmentIonMatcher.Tolerance.parse(cmd.getOptionValue(ARG_FRAGMENT_TOLERANCE));
+      } catch (IllegalArgumentException e) {
+        throw new ParseException("Invalid -" + ARG_FRAGMENT_TOLERANCE + " value: " + e.getMessage());
+      }
+    }
+    if (cmd.hasOption(ARG_CACHE_LIMITS)) {
+      try {
+        BoundedCachePolicy.parseLimits(cmd.getOptionValue(ARG_CACHE_LIMITS));
+      } catch (IllegalArgumentException e) {
+        throw new ParseException("Invalid -" + ARG_CACHE_LIMITS + " value: " + e.getMessage());
+      }
+    }
+    return cmd;
   }
 }
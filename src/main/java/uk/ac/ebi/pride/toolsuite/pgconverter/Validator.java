@@ -2,8 +2,8 @@ package uk.ac.ebi.pride.toolsuite.pgconverter;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.NotImplementedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,13 +15,9 @@ import uk.ac.ebi.pride.archive.repo.assay.instrument.SourceInstrumentComponent;
 import uk.ac.ebi.pride.data.util.Constant;
 import uk.ac.ebi.pride.data.util.FileUtil;
 import uk.ac.ebi.pride.data.util.MassSpecFileFormat;
-import uk.ac.ebi.pride.tools.ErrorHandlerIface;
-import uk.ac.ebi.pride.tools.GenericSchemaValidator;
-import uk.ac.ebi.pride.tools.ValidationErrorHandler;
-import uk.ac.ebi.pride.tools.cl.PrideXmlClValidator;
-import uk.ac.ebi.pride.tools.cl.XMLValidationErrorHandler;
 import uk.ac.ebi.pride.toolsuite.pgconverter.utils.*;
 import uk.ac.ebi.pride.utilities.data.controller.DataAccessController;
+import uk.ac.ebi.pride.utilities.data.controller.cache.CacheEntry;
 import uk.ac.ebi.pride.utilities.data.controller.impl.ControllerImpl.*;
 import uk.ac.ebi.pride.utilities.data.controller.impl.Transformer.LightModelsTransformer;
 import uk.ac.ebi.pride.utilities.data.core.*;
@@ -31,16 +27,14 @@ import uk.ac.ebi.pride.utilities.util.StringUtils;
 import java.io.*;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
-import java.util.zip.GZIPInputStream;
 
 import static uk.ac.ebi.pride.toolsuite.pgconverter.utils.Utility.*;
 
@@ -56,9 +50,10 @@ public class Validator {
   private static final String PRIDE_XML_SCHEMA = "http://ftp.pride.ebi.ac.uk/pride/resources/schema/pride/pride.xsd";
   private static final String MZID_SCHEMA = "https://storage.googleapis.com/google-code-archive-downloads/v2/code.google.com/psi-pi/mzIdentML1.1.0.xsd";
   public static final String SCHEMA_OK_MESSAGE = "XML schema validation OK on: ";
+  private static final Map<String, Boolean> MZML_CHROMATOGRAMS = new ConcurrentHashMap<>();
+  private static final int FILE_TYPE_HEAD_SIZE = 64 * 1024;
+  private static final Map<Integer, FileStager> FILE_STAGERS = new ConcurrentHashMap<>();
   public static final String MISSING_SPECTRA_ERROR_MESSAGE = "Missing spectra Found. Hint: Please check your results file correctly referenced their peak files!";
-  private static final String LINE_CONTENT = " Line content: ";
-  private static final String FIELD_UNSIGNED_INTEGER = "field must not be empty and must be an unsigned integer containing at least one digit.";
 
   /**
    * This class parses the command line arguments and beings the file validation.
@@ -66,7 +61,9 @@ public class Validator {
    * @param cmd command line arguments.
    */
   public static Report startValidation(CommandLine cmd) {
-    if (cmd.hasOption(ARG_MZID)) {
+    if (cmd.hasOption(ARG_MANIFEST)) {
+      return validateSubmission(cmd);
+    } else if (cmd.hasOption(ARG_MZID)) {
       return validateMzIdentML(cmd);
     } else if (cmd.hasOption(ARG_PRIDEXML)) {
       return validatePrideXML(cmd);
@@ -80,6 +77,168 @@ public class Validator {
     }
   }
 
+  /**
+   * This method validates and converts an mzIdentML or PRIDE XML file, for -v and -c together, reading the input
+   * file only once. Other inputs are validated and then converted separately.
+   *
+   * @param cmd the command line arguments.
+   * @return the validation report.
+   * @throws IOException if there are problems reading or writing to the file system.
+   */
+  public static Report startValidationAndConversion(CommandLine cmd) throws IOException {
+    File inputFile = cmd.hasOption(ARG_MZID) ? new File(cmd.getOptionValue(ARG_MZID)) :
+        cmd.hasOption(ARG_PRIDEXML) ? new File(cmd.getOptionValue(ARG_PRIDEXML)) : null;
+    String outputFormat = Converter.getOutputFormat(cmd);
+    boolean toProbed = cmd.hasOption(ARG_MZID) && (ARG_PROBED.equals(outputFormat) || ARG_BIGBED.equals(outputFormat)) &&
+        !cmd.hasOption(ARG_INTERMEDIATE_MZTAB);
+    boolean toMztab = ARG_MZTAB.equals(outputFormat);
+    if (inputFile == null || inputFile.isDirectory() || cmd.hasOption(ARG_INPUTFILE) || cmd.hasOption(ARG_BATCH) ||
+        cmd.hasOption(ARG_SCHEMA_ONLY_VALIDATION) || !(toProbed || toMztab)) {
+      log.info("Validating and then converting separately.");
+      Report report = startValidation(cmd);
+      Converter.startConversion(cmd);
+      return report;
+    }
+    FileType fileType = getFileType(inputFile);
+    FileType expectedType = cmd.hasOption(ARG_MZID) ? FileType.MZID : FileType.PRIDEXML;
+    File outputFile = cmd.hasOption(ARG_OUTPUTFILE) ? new File(cmd.getOptionValue(ARG_OUTPUTFILE)) : Converter.getOutputFile(inputFile, outputFormat);
+    File reportFile = cmd.hasOption(ARG_REPORTFILE) ? new File(cmd.getOptionValue(ARG_REPORTFILE)) : null;
+    AssayFileSummary assayFileSummary = new AssayFileSummary();
+    Report report = new Report();
+    if (!fileType.equals(expectedType)) {
+      String message = expectedType.equals(FileType.MZID) ?
+          "ERROR: Supplied -mzid file is not a valid mzIdentML file: " + inputFile :
+          "Supplied -pridexml file is not a valid PRIDE XML file: " + inputFile.getAbsolutePath();
+      log.error(message);
+      report.setStatus(message);
+      outputReport(assayFileSummary, report, reportFile, cmd.hasOption(ARG_SKIP_SERIALIZATION));
+      return report;
+    }
+    File proBed = toProbed ? Converter.getProbedFile(inputFile, outputFile, outputFormat) : null;
+    File extractedFile = inputFile.getName().endsWith(".gz") ?
+        new File(inputFile.getAbsoluteFile().getParentFile(), inputFile.getName().replace(".gz", "")) : inputFile;
+    StreamTee tee = new StreamTee(inputFile);
+    ExecutorService pool = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "single-read-consumer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    List<String> failures = new ArrayList<>();
+    SchemaCheckResult schemaResult = null;
+    try {
+      Future<SchemaCheckResult> schemaCheck = null;
+      if (cmd.hasOption(ARG_SCHEMA_VALIDATION)) {
+        InputStream schemaBranch = tee.newBranch();
+        String schemaLocation = fileType.equals(FileType.MZID) ? MZID_SCHEMA : PRIDE_XML_SCHEMA;
+        schemaCheck = pool.submit(() -> {
+          try (InputStream in = schemaBranch) {
+            log.info("Validating XML schema for: " + inputFile.getPath() + " using schema: " + schemaLocation);
+            return validateSchema(schemaLocation, in, inputFile, getMaxSchemaErrors(cmd));
+          }
+        });
+      }
+      Future<Long> probedWrite = null;
+      if (toProbed) {
+        InputStream probedBranch = tee.newBranch();
+        probedWrite = pool.submit(() -> {
+          try (InputStream in = probedBranch) {
+            return new MzIdentMLProBedConverter().convert(in, inputFile, proBed);
+          }
+        });
+      }
+      Future<Long> extraction = null;
+      if (!extractedFile.equals(inputFile)) {
+        InputStream extractionBranch = tee.newBranch();
+        extraction = pool.submit(() -> {
+          File partFile = new File(extractedFile.getPath() + ".part");
+          try (InputStream in = extractionBranch) {
+            log.info("Unzipping file: " + inputFile.getAbsolutePath());
+            long bytes = Files.copy(in, partFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(partFile.toPath(), extractedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return bytes;
+          } finally {
+            Files.deleteIfExists(partFile.toPath());
+          }
+        });
+      }
+      try {
+        tee.read();
+      } catch (IOException e) {
+        log.error("Unable to read file: " + inputFile.getPath(), e);
+        failures.add("Unable to read file: " + inputFile.getPath() + " " + e.getMessage());
+      }
+      schemaResult = getConsumerResult(schemaCheck, failures);
+      getConsumerResult(probedWrite, failures);
+      getConsumerResult(extraction, failures);
+    } finally {
+      pool.shutdownNow();
+    }
+    if (schemaResult != null && !schemaResult.isValidAgainstSchema()) {
+      String message = "ERROR: Supplied -" + (fileType.equals(FileType.MZID) ? ARG_MZID : ARG_PRIDEXML) +
+          " file failed XML schema validation: " + inputFile + String.join(",", schemaResult.getErrorMessages());
+      log.error(message);
+      report.setStatus(message);
+    } else if (!failures.isEmpty()) {
+      report.setStatusError(String.join("\n", failures));
+    } else {
+      AtomicBoolean mztabWritten = new AtomicBoolean(false);
+      boolean fastValidation = cmd.hasOption(ARG_FAST_VALIDATION) && fileType.equals(FileType.MZID);
+      ValidationResult validationResult = validateAssayFile(extractedFile, fileType,
+          fileType.equals(FileType.MZID) ? getPeakFiles(cmd) : null, fastValidation, getSampler(cmd), getFragmentIonTolerance(cmd),
+          getCacheLimits(cmd), getFileStager(cmd), (controller, summary) -> {
+            getPsmVerification(cmd).accept(controller, summary);
+            if (toMztab && !fastValidation) {
+              try {
+                new MzTabStreamWriter(controller, extractedFile.getName()).write(outputFile);
+                mztabWritten.set(true);
+                log.info("Successfully written to mzTab file from the validated file: " + outputFile.getAbsolutePath());
+              } catch (IOException e) {
+                log.warn("Unable to convert the validated file to mzTab directly, converting it separately.", e);
+              }
+            }
+          });
+      report = validationResult.getReport();
+      assayFileSummary = validationResult.getAssayFileSummary();
+      if (report.getStatus().startsWith("OK")) {
+        if (toMztab && !mztabWritten.get()) {
+          Converter.convertToMztab(extractedFile, outputFile, fileType.toString(), getFileStager(cmd));
+        } else if (toProbed) {
+          Converter.finishProbed(proBed, outputFile, outputFormat, cmd);
+        }
+      }
+    }
+    if (proBed != null && !report.getStatus().startsWith("OK")) {
+      log.info("Input file is not valid, deleting converted proBed file " + proBed.getPath() + ": " + proBed.delete());
+    }
+    outputReport(assayFileSummary, report, reportFile, cmd.hasOption(ARG_SKIP_SERIALIZATION));
+    return report;
+  }
+
+  /**
+   * This method gets the result of a consumer of a file which has been read once for several consumers.
+   *
+   * @param consumer the consumer, or null if there was none.
+   * @param failures the failures so far, which a failure of the consumer is added to.
+   * @param <T> the type of the result.
+   * @return the result, or null if there was no consumer or it failed.
+   * @throws InterruptedIOException if interrupted while waiting for the consumer.
+   */
+  private static <T> T getConsumerResult(Future<T> consumer, List<String> failures) throws InterruptedIOException {
+    if (consumer == null) {
+      return null;
+    }
+    try {
+      return consumer.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while validating and converting.");
+    } catch (ExecutionException e) {
+      log.error("Exception when validating and converting: ", e.getCause());
+      failures.add(String.valueOf(e.getCause()));
+      return null;
+    }
+  }
+
   /**
    * This method identifies a file's format extension type.
    *
@@ -89,7 +248,9 @@ public class Validator {
   private static FileType getFileType(File file) {
     FileType result;
     log.info("Checking file type for : " + file);
-    if (PrideXmlControllerImpl.isValidFormat(file)) {
+    if (isGzipped(file)) {
+      result = getGzippedFileType(file);
+    } else if (PrideXmlControllerImpl.isValidFormat(file)) {
       result = FileType.PRIDEXML;
     } else if (MzIdentMLControllerImpl.isValidFormat(file)) {
       result = FileType.MZID;
@@ -102,26 +263,56 @@ public class Validator {
     return result;
   }
 
+  /**
+   * This method identifies a gzipped file's format, from the start of its decompressed content, without extracting it.
+   *
+   * @param file the input gzipped file.
+   * @return the corresponding FileType.
+   */
+  private static FileType getGzippedFileType(File file) {
+    FileType result = FileType.UNKNOWN;
+    try (InputStream in = newInputStream(file)) {
+      byte[] head = new byte[FILE_TYPE_HEAD_SIZE];
+      int length = IOUtils.read(in, head);
+      String start = new String(head, 0, length, StandardCharsets.ISO_8859_1);
+      if (start.contains("<ExperimentCollection")) {
+        result = FileType.PRIDEXML;
+      } else if (start.contains("<MzIdentML")) {
+        result = FileType.MZID;
+      } else if (start.startsWith("MTD\t") || start.contains("\nMTD\t")) {
+        result = FileType.MZTAB;
+      }
+    } catch (IOException e) {
+      log.error("Unable to read gzipped file: " + file, e);
+    }
+    if (result == FileType.UNKNOWN) {
+      log.error("Unrecognised file type: " + file);
+    }
+    return result;
+  }
+
   /**
    * This method validates an an mzIdentML file.
    *
    * @param cmd the command line arguments.
    */
   private static Report validateMzIdentML(CommandLine cmd) {
-    File file = new File(cmd.getOptionValue(ARG_MZID));
-    List<File> filesToValidate = getFilesToValidate(file);
-    File mzid = filesToValidate.get(0);
-    List<File> peakFiles = getPeakFiles(cmd);
+    File mzid = new File(cmd.getOptionValue(ARG_MZID));
     AssayFileSummary assayFileSummary = new AssayFileSummary();
     Report report = new Report();
-    FileType fileType = getFileType(filesToValidate.get(0));
+    FileType fileType = getFileType(mzid);
     File outputFile  = cmd.hasOption(ARG_REPORTFILE) ? new File(cmd.getOptionValue(ARG_REPORTFILE)) : null;
-    if (fileType.equals(FileType.MZID)) {
+    if (fileType.equals(FileType.MZID) && cmd.hasOption(ARG_SCHEMA_VALIDATION) && !cmd.hasOption(ARG_SCHEMA_ONLY_VALIDATION)) {
+      ValidationResult validationResult = validateWithSchema(() -> validateMzidSchema(MZID_SCHEMA, mzid, getMaxSchemaErrors(cmd)),
+          () -> validateMzIdentMLAssay(mzid, cmd), "ERROR: Supplied -mzid file failed XML schema validation: " + mzid);
+      report = validationResult.getReport();
+      assayFileSummary = validationResult.getAssayFileSummary();
+    } else if (fileType.equals(FileType.MZID)) {
       boolean valid = true; // assume true if not validating schema
       SchemaCheckResult schemaResult;
       List<String> schemaErrors = null;
       if (cmd.hasOption(ARG_SCHEMA_VALIDATION) || cmd.hasOption(ARG_SCHEMA_ONLY_VALIDATION)) {
-        schemaResult = validateMzidSchema(MZID_SCHEMA, mzid);
+        schemaResult = validateMzidSchema(MZID_SCHEMA, mzid, getMaxSchemaErrors(cmd));
         valid = schemaResult.isValidAgainstSchema();
         schemaErrors = schemaResult.getErrorMessages();
       }
@@ -129,23 +320,18 @@ public class Validator {
         if (cmd.hasOption(ARG_SCHEMA_ONLY_VALIDATION)) {
           report.setStatusOK();
         } else {
-          ValidationResult validationResult;
-          if (cmd.hasOption(ARG_FAST_VALIDATION)) {
-            validationResult = validateAssayFile(mzid, FileType.MZID, peakFiles, true);
-          } else {
-            validationResult = validateAssayFile(mzid, FileType.MZID, peakFiles);
-          }
+          ValidationResult validationResult = validateMzIdentMLAssay(mzid, cmd);
           report = validationResult.getReport();
           assayFileSummary = validationResult.getAssayFileSummary();
         }
       } else {
-        String message = "ERROR: Supplied -mzid file failed XML schema validation: " + filesToValidate.get(0) +
+        String message = "ERROR: Supplied -mzid file failed XML schema validation: " + mzid +
             (schemaErrors==null ? "" : String.join(",", schemaErrors));
         log.error(message);
         report.setStatus(message);
       }
     } else {
-      String message = "ERROR: Supplied -mzid file is not a valid mzIdentML file: " + filesToValidate.get(0);
+      String message = "ERROR: Supplied -mzid file is not a valid mzIdentML file: " + mzid;
       log.error(message);
       report.setStatus(message);
     }
@@ -153,30 +339,84 @@ public class Validator {
     return report;
   }
 
+  /**
+   * This method validates the content of an mzIdentML file, with its related peak files.
+   *
+   * @param mzid the input mzIdentML file, which may be gzipped.
+   * @param cmd the command line arguments.
+   * @return the validation result, with an error if the files could not be extracted.
+   */
+  private static ValidationResult validateMzIdentMLAssay(File mzid, CommandLine cmd) {
+    File extractedMzid;
+    List<File> peakFiles;
+    try {
+      extractedMzid = getFilesToValidate(mzid, getFileStager(cmd)).get(0);
+      peakFiles = getPeakFiles(cmd);
+    } catch (IOException e) {
+      return getExtractionFailure(mzid, e);
+    }
+    return validateAssayFile(extractedMzid, FileType.MZID, peakFiles, cmd.hasOption(ARG_FAST_VALIDATION), getSampler(cmd), getFragmentIonTolerance(cmd),
+        getCacheLimits(cmd), getFileStager(cmd), getPsmVerification(cmd));
+  }
+
+  /**
+   * This method validates the content of a PRIDE XML file.
+   *
+   * @param pridexml the input PRIDE XML file, which may be gzipped.
+   * @param cmd the command line arguments.
+   * @return the validation result, with an error if the file could not be extracted.
+   */
+  private static ValidationResult validatePrideXMLAssay(File pridexml, CommandLine cmd) {
+    File extractedPridexml;
+    try {
+      extractedPridexml = getFilesToValidate(pridexml, getFileStager(cmd)).get(0);
+    } catch (IOException e) {
+      return getExtractionFailure(pridexml, e);
+    }
+    return validateAssayFile(extractedPridexml, FileType.PRIDEXML, null, false, getSampler(cmd), getFragmentIonTolerance(cmd),
+        getCacheLimits(cmd), getFileStager(cmd), getPsmVerification(cmd));
+  }
+
+  /**
+   * This method gets the validation result of an input file which could not be extracted.
+   *
+   * @param file the input file.
+   * @param e the exception extracting the input file, or its related peak files.
+   * @return the validation result, with the error.
+   */
+  private static ValidationResult getExtractionFailure(File file, IOException e) {
+    log.error("Unable to extract files to validate for: " + file.getPath(), e);
+    Report report = new Report();
+    report.setFileName(file.getAbsolutePath());
+    report.setStatusError(e.getMessage());
+    return new ValidationResult(new AssayFileSummary(), report);
+  }
+
   /**
    * This method validates a PRIDE XML file.
    *
    * @param cmd the command line arguments.
    */
   private static Report validatePrideXML(CommandLine cmd) {
-    List<File> filesToValidate = new ArrayList<>();
-    File file = new File(cmd.getOptionValue(ARG_PRIDEXML));
-    if (file.isDirectory()) {
+    File pridexxml = new File(cmd.getOptionValue(ARG_PRIDEXML));
+    if (pridexxml.isDirectory()) {
       log.error("Unable to validate against directory");
-    } else {
-      filesToValidate.add(file);
     }
-    filesToValidate = extractZipFiles(filesToValidate);
-    File pridexxml = filesToValidate.get(0);
     FileType fileType = getFileType(pridexxml);
     AssayFileSummary assayFileSummary = new AssayFileSummary();
     Report report = new Report();
     File outputFile  = cmd.hasOption(ARG_REPORTFILE) ? new File(cmd.getOptionValue(ARG_REPORTFILE)) : null;
-    if (fileType.equals(FileType.PRIDEXML)) {
+    if (fileType.equals(FileType.PRIDEXML) && cmd.hasOption(ARG_SCHEMA_VALIDATION) && !cmd.hasOption(ARG_SCHEMA_ONLY_VALIDATION)) {
+      ValidationResult validationResult = validateWithSchema(() -> validatePridexmlSchema(PRIDE_XML_SCHEMA, pridexxml, getMaxSchemaErrors(cmd)),
+          () -> validatePrideXMLAssay(pridexxml, cmd),
+          "ERROR: Supplied -pridexml file failed XML schema validation: " + pridexxml);
+      report = validationResult.getReport();
+      assayFileSummary = validationResult.getAssayFileSummary();
+    } else if (fileType.equals(FileType.PRIDEXML)) {
       boolean valid = true; // assume true if not validating schema
       List<String> schemaErrors = null;
       if (cmd.hasOption(ARG_SCHEMA_VALIDATION) || cmd.hasOption(ARG_SCHEMA_ONLY_VALIDATION)) {
-        SchemaCheckResult schemaCheckResult = validatePridexmlSchema(PRIDE_XML_SCHEMA, pridexxml);
+        SchemaCheckResult schemaCheckResult = validatePridexmlSchema(PRIDE_XML_SCHEMA, pridexxml, getMaxSchemaErrors(cmd));
         valid = schemaCheckResult .isValidAgainstSchema();
         schemaErrors = schemaCheckResult .getErrorMessages();
         log.debug("Schema errors: " + String.join(",", schemaErrors));
@@ -185,12 +425,12 @@ public class Validator {
         if(cmd.hasOption(ARG_SCHEMA_ONLY_VALIDATION)) {
           report.setStatusOK();
         } else {
-          ValidationResult validationResult= validateAssayFile(pridexxml, FileType.PRIDEXML, null);
+          ValidationResult validationResult = validatePrideXMLAssay(pridexxml, cmd);
           report = validationResult.getReport();
           assayFileSummary = validationResult.getAssayFileSummary();
         }
       } else {
-        String message = "ERROR: Supplied -pridexml file failed XML schema validation: " + filesToValidate.get(0) + String.join(",", schemaErrors);
+        String message = "ERROR: Supplied -pridexml file failed XML schema validation: " + pridexxml + String.join(",", schemaErrors);
         log.error(message);
         report.setStatus(message);
       }
@@ -210,18 +450,22 @@ public class Validator {
    * @param cmd the command line arguments.
    */
   private static Report validateMzTab(CommandLine cmd) {
-    File file = new File(cmd.getOptionValue(ARG_MZTAB));
-    List<File> filesToValidate = getFilesToValidate(file);
-    List<File> peakFiles = getPeakFiles(cmd);
+    File mztab = new File(cmd.getOptionValue(ARG_MZTAB));
     AssayFileSummary assayFileSummary = new AssayFileSummary();
     Report report = new Report();
-    FileType fileType = getFileType(filesToValidate.get(0));
+    FileType fileType = getFileType(mztab);
     if (fileType.equals(FileType.MZTAB)) {
-      ValidationResult validationResult = validateAssayFile(filesToValidate.get(0), FileType.MZTAB, peakFiles);
+      ValidationResult validationResult;
+      try {
+        validationResult = validateAssayFile(getFilesToValidate(mztab, getFileStager(cmd)).get(0), FileType.MZTAB, getPeakFiles(cmd), false,
+            getSampler(cmd), getFragmentIonTolerance(cmd), getCacheLimits(cmd), getFileStager(cmd), getPsmVerification(cmd));
+      } catch (IOException e) {
+        validationResult = getExtractionFailure(mztab, e);
+      }
       report = validationResult.getReport();
       assayFileSummary = validationResult.getAssayFileSummary();
     } else {
-      String message = "ERROR: Supplied -mztab file is not a valid mzTab file: " + filesToValidate.get(0);
+      String message = "ERROR: Supplied -mztab file is not a valid mzTab file: " + mztab;
       log.error(message);
       report.setStatus(message);
     }
@@ -230,20 +474,248 @@ public class Validator {
     return report;
   }
 
+  /**
+   * This method validates all the result files of a submission manifest, with their related peak files. The assays
+   * are validated concurrently, and each distinct peak file is extracted and copied to a temporary file only once,
+   * however many assays reference it. A report is written for each assay, next to the combined report file.
+   *
+   * @param cmd the command line arguments.
+   * @return the combined report, with an OK status only if all the assays are OK.
+   */
+  private static Report validateSubmission(CommandLine cmd) {
+    Report report = new Report();
+    File manifestFile = new File(cmd.getOptionValue(ARG_MANIFEST));
+    report.setFileName(manifestFile.getAbsolutePath());
+    SubmissionManifest manifest;
+    try {
+      manifest = SubmissionManifest.read(manifestFile);
+    } catch (IOException e) {
+      log.error("Unable to read submission manifest: " + manifestFile.getPath(), e);
+      report.setStatusError("Unable to read submission manifest: " + manifestFile.getPath());
+      return report;
+    }
+    File reportFile = cmd.hasOption(ARG_REPORTFILE) ? new File(cmd.getOptionValue(ARG_REPORTFILE)) : null;
+    File reportDirectory = (reportFile != null ? reportFile : manifestFile).getAbsoluteFile().getParentFile();
+    Map<File, File> extractedPeakFiles = new HashMap<>();
+    Map<File, File> tempPeakFiles = new HashMap<>();
+    List<File> peakFiles = new ArrayList<>(manifest.getPeakFiles());
+    FileStager fileStager = getFileStager(cmd);
+    List<File> extracted;
+    try {
+      extracted = fileStager.extract(peakFiles, null);
+    } catch (IOException e) {
+      log.error("Unable to extract the peak files of submission manifest: " + manifestFile.getPath(), e);
+      report.setStatusError("Unable to extract the peak files of submission manifest: " + manifestFile.getPath() + " " + e.getMessage());
+      return report;
+    }
+    Set<File> distinct = new LinkedHashSet<>();
+    for (int i = 0; i < peakFiles.size(); i++) {
+      File extractedPeakFile = extracted.get(i);
+      extractedPeakFiles.put(peakFiles.get(i), extractedPeakFile);
+      distinct.add(extractedPeakFile);
+    }
+    List<File> distinctExtractedPeakFiles = new ArrayList<>(distinct);
+    List<File> staged = fileStager.stage(distinctExtractedPeakFiles);
+    for (int i = 0; i < distinctExtractedPeakFiles.size(); i++) {
+      File tempPeakFile = staged.get(i);
+      if (tempPeakFile != null && 0 < tempPeakFile.length()) {
+        tempPeakFiles.put(distinctExtractedPeakFiles.get(i), tempPeakFile);
+      }
+    }
+    List<SubmissionManifest.Assay> assays = manifest.getAssays();
+    List<List<File>> assayMsControllerFiles = new ArrayList<>();
+    for (SubmissionManifest.Assay assay : assays) {
+      assayMsControllerFiles.add(getMsControllerFiles(assay, extractedPeakFiles, tempPeakFiles));
+    }
+    SharedMsControllers sharedMsControllers = new SharedMsControllers(assayMsControllerFiles);
+    int threads = cmd.hasOption(ARG_THREADS) ? Integer.parseInt(cmd.getOptionValue(ARG_THREADS)) : Runtime.getRuntime().availableProcessors();
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, assays.size())));
+    List<Future<ValidationResult>> results = new ArrayList<>();
+    for (int i = 0; i < assays.size(); i++) {
+      SubmissionManifest.Assay assay = assays.get(i);
+      List<File> msControllerFiles = assayMsControllerFiles.get(i);
+      results.add(pool.submit(() -> {
+        try {
+          return validateManifestAssay(assay, extractedPeakFiles, msControllerFiles, sharedMsControllers, cmd);
+        } finally {
+          sharedMsControllers.release(msControllerFiles);
+        }
+      }));
+    }
+    pool.shutdown();
+    StringBuilder combined = new StringBuilder();
+    int failed = 0;
+    try {
+      for (int i = 0; i < assays.size(); i++) {
+        File resultFile = assays.get(i).getResultFile();
+        ValidationResult validationResult;
+        try {
+          validationResult = results.get(i).get();
+        } catch (ExecutionException e) {
+          log.error("Exception when validating assay file: " + resultFile.getPath(), e.getCause());
+          Report assayReport = new Report();
+          assayReport.setFileName(resultFile.getAbsolutePath());
+          assayReport.setStatusError("Exception when validating assay file: " + e.getCause());
+          validationResult = new ValidationResult(new AssayFileSummary(), assayReport);
+        }
+        Report assayReport = validationResult.getReport();
+        if (assayReport.getStatus() == null || !assayReport.getStatus().startsWith("OK")) {
+          failed++;
+        }
+        outputReport(validationResult.getAssayFileSummary(), assayReport,
+            new File(reportDirectory, "assay" + (i + 1) + "_" + resultFile.getName() + "_report.txt"), cmd.hasOption(ARG_SKIP_SERIALIZATION));
+        combined.append("Assay ").append(i + 1).append(" of ").append(assays.size()).append(": ").append(resultFile.getPath()).append('\n')
+            .append(assayReport.toString(validationResult.getAssayFileSummary())).append('\n');
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      pool.shutdownNow();
+      report.setStatusError("Interrupted while validating the submission.");
+      return report;
+    } finally {
+      sharedMsControllers.closeAll();
+      tempPeakFiles.values().forEach(Validator::deleteTempFile);
+    }
+    if (failed == 0) {
+      report.setStatusOK();
+    } else {
+      report.setStatusError(failed + " of " + assays.size() + " assays failed validation.");
+    }
+    String summary = "Submission: " + manifestFile.getAbsolutePath() + "\nStatus: " + report.getStatus() + "\n\n" + combined;
+    log.info(summary);
+    if (reportFile != null) {
+      try {
+        log.info("Writing combined report to: " + reportFile.getAbsolutePath());
+        Files.write(reportFile.toPath(), summary.getBytes());
+      } catch (IOException ioe) {
+        log.error("Problem when writing report file: ", ioe);
+      }
+    }
+    return report;
+  }
+
+  /**
+   * This method validates one assay of a submission manifest.
+   *
+   * @param assay the assay.
+   * @param extractedPeakFiles the extracted peak files, by the peak files in the manifest.
+   * @param msControllerFiles the peak files to read for the assay.
+   * @param sharedMsControllers the MS controllers shared between the assays.
+   * @param cmd the command line arguments.
+   * @return the validation result of the assay.
+   */
+  private static ValidationResult validateManifestAssay(SubmissionManifest.Assay assay, Map<File, File> extractedPeakFiles,
+                                                        List<File> msControllerFiles, SharedMsControllers sharedMsControllers,
+                                                        CommandLine cmd) {
+    File resultFile = assay.getResultFile();
+    if (resultFile.getName().toLowerCase().replaceFirst("\\.gz$", "").endsWith("." + FileType.PROBED.toString())) {
+      return new ValidationResult(new AssayFileSummary(), validateProBed(resultFile, null, cmd));
+    }
+    Report report = new Report();
+    report.setFileName(resultFile.getAbsolutePath());
+    FileType fileType = getFileType(resultFile);
+    if (fileType.equals(FileType.UNKNOWN)) {
+      report.setStatusError("Result file is not a valid mzIdentML, PRIDE XML, or mzTab file: " + resultFile.getPath());
+      return new ValidationResult(new AssayFileSummary(), report);
+    }
+    if (cmd.hasOption(ARG_SCHEMA_VALIDATION) && !cmd.hasOption(ARG_SCHEMA_ONLY_VALIDATION) && !fileType.equals(FileType.MZTAB)) {
+      return validateWithSchema(() -> validateManifestSchema(resultFile, fileType, cmd),
+          () -> validateManifestAssayFile(assay, fileType, extractedPeakFiles, msControllerFiles, sharedMsControllers, cmd),
+          "ERROR\nResult file failed XML schema validation: " + resultFile.getPath() + " ");
+    }
+    if (cmd.hasOption(ARG_SCHEMA_ONLY_VALIDATION) && !fileType.equals(FileType.MZTAB)) {
+      SchemaCheckResult schemaResult = validateManifestSchema(resultFile, fileType, cmd);
+      if (!schemaResult.isValidAgainstSchema()) {
+        report.setStatusError("Result file failed XML schema validation: " + resultFile.getPath() + " " +
+            String.join(",", schemaResult.getErrorMessages()));
+        return new ValidationResult(new AssayFileSummary(), report);
+      } else {
+        report.setStatusOK();
+        return new ValidationResult(new AssayFileSummary(), report);
+      }
+    }
+    return validateManifestAssayFile(assay, fileType, extractedPeakFiles, msControllerFiles, sharedMsControllers, cmd);
+  }
+
+  /**
+   * This method validates one result file of a submission manifest against its XML schema.
+   *
+   * @param resultFile the mzIdentML or PRIDE XML result file.
+   * @param fileType the type of the result file.
+   * @param cmd the command line arguments.
+   * @return the XML schema validation result.
+   */
+  private static SchemaCheckResult validateManifestSchema(File resultFile, FileType fileType, CommandLine cmd) {
+    return fileType.equals(FileType.MZID) ?
+        validateMzidSchema(MZID_SCHEMA, resultFile, getMaxSchemaErrors(cmd)) :
+        validatePridexmlSchema(PRIDE_XML_SCHEMA, resultFile, getMaxSchemaErrors(cmd));
+  }
+
+  /**
+   * This method validates the content of one result file of a submission manifest, with its related peak files.
+   *
+   * @param assay the assay.
+   * @param fileType the type of the result file.
+   * @param extractedPeakFiles the extracted peak files, by the peak files in the manifest.
+   * @param msControllerFiles the peak files to read for the assay.
+   * @param sharedMsControllers the MS controllers shared between the assays.
+   * @param cmd the command line arguments.
+   * @return the validation result of the assay.
+   */
+  private static ValidationResult validateManifestAssayFile(SubmissionManifest.Assay assay, FileType fileType, Map<File, File> extractedPeakFiles,
+                                                            List<File> msControllerFiles, SharedMsControllers sharedMsControllers,
+                                                            CommandLine cmd) {
+    List<File> peakFiles = new ArrayList<>();
+    for (File peakFile : assay.getPeakFiles()) {
+      peakFiles.add(extractedPeakFiles.get(peakFile));
+    }
+    File resultFile;
+    try {
+      resultFile = getFilesToValidate(assay.getResultFile(), getFileStager(cmd)).get(0);
+    } catch (IOException e) {
+      return getExtractionFailure(assay.getResultFile(), e);
+    }
+    return validateStagedAssayFile(resultFile, fileType, fileType.equals(FileType.PRIDEXML) ? null : peakFiles, msControllerFiles,
+        sharedMsControllers, cmd.hasOption(ARG_FAST_VALIDATION) && fileType.equals(FileType.MZID), getSampler(cmd), getFragmentIonTolerance(cmd),
+        getCacheLimits(cmd), getPsmVerification(cmd));
+  }
+
+  /**
+   * This method gets the peak files to read for one assay of a submission manifest, i.e. the temporary copies of its
+   * extracted peak files, or else the extracted peak files themselves if any of them could not be copied.
+   *
+   * @param assay the assay.
+   * @param extractedPeakFiles the extracted peak files, by the peak files in the manifest.
+   * @param tempPeakFiles the temporary copies of the extracted peak files.
+   * @return the peak files to read.
+   */
+  private static List<File> getMsControllerFiles(SubmissionManifest.Assay assay, Map<File, File> extractedPeakFiles, Map<File, File> tempPeakFiles) {
+    List<File> peakFiles = new ArrayList<>();
+    List<File> msControllerFiles = new ArrayList<>();
+    for (File peakFile : assay.getPeakFiles()) {
+      File extractedPeakFile = extractedPeakFiles.get(peakFile);
+      peakFiles.add(extractedPeakFile);
+      msControllerFiles.add(tempPeakFiles.get(extractedPeakFile));
+    }
+    return msControllerFiles.contains(null) ? peakFiles : msControllerFiles;
+  }
+
   /**
    * This method gets all the input file ready for validation, if it is extracted.
    *
    * @param file the input file for validation.
+   * @param fileStager the file stager to extract the file with.
    * @return List of extracted files for validation.
+   * @throws IOException if the file could not be extracted.
    */
-  private static List<File> getFilesToValidate(File file) {
+  private static List<File> getFilesToValidate(File file, FileStager fileStager) throws IOException {
     List<File> filesToValidate = new ArrayList<>();
     if (file.isDirectory()) {
       log.error("Unable to validate against directory of mzid files.");
     } else {
       filesToValidate.add(file);
     }
-    filesToValidate = extractZipFiles(filesToValidate);
+    filesToValidate = extractZipFiles(filesToValidate, fileStager);
     return filesToValidate;
   }
 
@@ -252,8 +724,9 @@ public class Validator {
    *
    * @param cmd the command line arguments.
    * @return List of peak files.
+   * @throws IOException if the peak files could not be extracted.
    */
-  private static List<File> getPeakFiles(CommandLine cmd) {
+  private static List<File> getPeakFiles(CommandLine cmd) throws IOException {
     List<File> peakFiles = new ArrayList<>();
     if (cmd.hasOption(ARG_PEAK) || cmd.hasOption(ARG_PEAKS)) {
       String[] peakFilesString = cmd.hasOption(ARG_PEAK) ? cmd.getOptionValues(ARG_PEAK)
@@ -270,7 +743,7 @@ public class Validator {
           log.info("Added peak file: " + peakFile.getPath());
         }
       }
-      peakFiles = extractZipFiles(peakFiles);
+      peakFiles = extractZipFiles(peakFiles, getFileStager(cmd));
     } else {
       log.error("Peak file not supplied with mzIdentML file.");
     }
@@ -281,13 +754,15 @@ public class Validator {
    * This method extracts an input list of files.
    *
    * @param files a list of input zip files to extract.
+   * @param fileStager the file stager to extract the files with.
    * @return a list of extracted files.
+   * @throws IOException if any of the files could not be extracted.
    */
-  public static List<File> extractZipFiles(List<File> files) {
+  public static List<File> extractZipFiles(List<File> files, FileStager fileStager) throws IOException {
     List<File> zippedFiles = findZippedFiles(files);
     if (zippedFiles.size()>0) {
       files.removeAll(zippedFiles);
-      files.addAll(unzipFiles(zippedFiles, zippedFiles.get(0).getParentFile().getAbsoluteFile()));
+      files.addAll(unzipFiles(zippedFiles, zippedFiles.get(0).getParentFile().getAbsoluteFile(), fileStager));
     }
     return files.stream().distinct().collect(Collectors.toList());
   }
@@ -305,51 +780,24 @@ public class Validator {
    * This method extracts a list of iniput gzipped files to an output directory.
    * @param zippedFiles a list of input files to extract.
    * @param outputFolder the output directory.
+   * @param fileStager the file stager to extract the files with.
    * @return a list of files that have been extracted.
+   * @throws IOException if any of the files could not be extracted.
    */
-  private static List<File> unzipFiles(List<File> zippedFiles, File outputFolder) {
-    List<File> unzippedFiles = new ArrayList<>();
-    zippedFiles.parallelStream().forEach(inputFile -> {
-      try {
-        log.info("Unzipping file: " + inputFile.getAbsolutePath());
-        FileInputStream fis = null;
-        GZIPInputStream gs = null;
-        FileOutputStream fos = null;
-        BufferedOutputStream bos = null;
-        try {
-          fis = new FileInputStream(inputFile);
-          gs = new GZIPInputStream(fis);
-          String outputFile = outputFolder + File.separator + inputFile.getName().replace(".gz", "");
-          fos = new FileOutputStream(outputFile);
-          bos = new BufferedOutputStream(fos, 2048);
-          byte data[] = new byte[2048];
-          int count;
-          while ((count = gs.read(data, 0, 2048)) != -1) {
-            bos.write(data, 0, count);
-          }
-          bos.flush();
-          bos.close();
-          unzippedFiles.add(new File(outputFile));
-          log.info("Unzipped file: " + outputFile);
-        } finally {
-          if (fis != null) {
-            fis.close();
-          }
-          if (gs != null) {
-            gs.close();
-          }
-          if (fos != null) {
-            fos.close();
-          }
-          if (bos != null) {
-            bos.close();
-          }
-        }
-      } catch (IOException ioe) {
-        log.error("IOException when unzipping files.", ioe);
-      }
-    });
-    return unzippedFiles;
+  private static List<File> unzipFiles(List<File> zippedFiles, File outputFolder, FileStager fileStager) throws IOException {
+    return fileStager.extract(zippedFiles, outputFolder);
+  }
+
+  /**
+   * This method gets the file stager for the number of threads of the command line arguments, which is shared by all
+   * the validations and conversions with as many threads, so they share its limit of files read from each disk.
+   *
+   * @param cmd the command line arguments.
+   * @return the file stager.
+   */
+  static FileStager getFileStager(CommandLine cmd) {
+    int threads = cmd.hasOption(ARG_THREADS) ? Integer.parseInt(cmd.getOptionValue(ARG_THREADS)) : Runtime.getRuntime().availableProcessors();
+    return FILE_STAGERS.computeIfAbsent(Math.max(1, threads), FileStager::new);
   }
 
   /**
@@ -392,29 +840,94 @@ public class Validator {
   }
 
   /**
-   * This method checks to see if the fragment ions match the spectrum.
+   * This method gets the sampler for the sampled checks of the proteins and peptides, with the sample size and seed
+   * from the -samplesize and -sampleseed arguments, if set.
+   *
+   * @param cmd the command line arguments.
+   * @return the sampler.
+   */
+  private static ValidationSampler getSampler(CommandLine cmd) {
+    return new ValidationSampler(
+        cmd.hasOption(ARG_SAMPLE_SIZE) ? Integer.parseInt(cmd.getOptionValue(ARG_SAMPLE_SIZE)) : ValidationSampler.DEFAULT_SAMPLE_SIZE,
+        cmd.hasOption(ARG_SAMPLE_SEED) ? Long.parseLong(cmd.getOptionValue(ARG_SAMPLE_SEED)) : ValidationSampler.DEFAULT_SEED);
+  }
+
+  /**
+   * This method gets the check of every PSM of a valid file, for the -exhaustive argument, which adds the exact delta
+   * m/z and fragment ion mismatch rates, and their histograms, to the summary, as well as the sampled estimates.
+   *
+   * @param cmd the command line arguments.
+   * @return the check of every PSM, which does nothing without the -exhaustive argument.
+   */
+  private static BiConsumer<DataAccessController, AssayFileSummary> getPsmVerification(CommandLine cmd) {
+    if (!cmd.hasOption(ARG_EXHAUSTIVE_VALIDATION)) {
+      return (controller, summary) -> { };
+    }
+    int threads = cmd.hasOption(ARG_THREADS) ? Integer.parseInt(cmd.getOptionValue(ARG_THREADS)) : Runtime.getRuntime().availableProcessors();
+    FragmentIonMatcher.Tolerance tolerance = getFragmentIonTolerance(cmd);
+    return (controller, summary) -> {
+      log.info("Checking the fragment ions and precursor delta m/z of every PSM.");
+      try {
+        summary.setPsmVerification(new PsmVerifier(threads, tolerance, PsmVerifier.DEFAULT_DELTA_MZ_THRESHOLD).verify(controller));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        log.error("Interrupted while checking every PSM.");
+      } catch (IllegalStateException e) {
+        log.error("Unable to check every PSM: ", e);
+      }
+    };
+  }
+
+  /**
+   * This method checks to see if the fragment ions match the spectrum, i.e. if each fragment ion has a peak within
+   * the m/z tolerance, see getFragmentIonTolerance(CommandLine).
    *
    * @param fragmentIons the fragment ions.
-   * @param spectrum the spectrum.
+   * @param matcher the matcher of the spectrum's peaks.
    * @return true if they match, false otherwise.
    */
-  private static boolean matchingFragmentIons(List<FragmentIon> fragmentIons, Spectrum spectrum) {
-    double[][] massIntensityMap = spectrum.getMassIntensityMap();
-    for (FragmentIon fragmentIon : fragmentIons) {
-      double intensity = fragmentIon.getIntensity();
-      double mz = fragmentIon.getMz();
-      boolean matched = false;
-      for (double[] massIntensity : massIntensityMap) {
-        if (massIntensity[0] == mz && massIntensity[1] == intensity) {
-          matched = true;
-          break;
-        }
-      }
-      if (!matched) {
-        return false;
-      }
+  private static boolean matchingFragmentIons(List<FragmentIon> fragmentIons, FragmentIonMatcher matcher) {
+    double[] mz = new double[fragmentIons.size()];
+    double[] intensity = new double[fragmentIons.size()];
+    for (int i = 0; i < mz.length; i++) {
+      FragmentIon fragmentIon = fragmentIons.get(i);
+      mz[i] = fragmentIon.getMz();
+      intensity[i] = fragmentIon.getIntensity();
     }
-    return true;
+    return matcher.matchesAll(mz, intensity);
+  }
+
+  /**
+   * This method indexes a spectrum's peaks for matching fragment ions.
+   *
+   * @param spectrum the spectrum.
+   * @param tolerance the m/z tolerance.
+   * @return the matcher of the spectrum's peaks.
+   */
+  private static FragmentIonMatcher getFragmentIonMatcher(Spectrum spectrum, FragmentIonMatcher.Tolerance tolerance) {
+    return FragmentIonMatcher.of(spectrum.getMassIntensityMap(), tolerance);
+  }
+
+  /**
+   * This method gets the m/z tolerance for matching fragment ions, which is exact unless set with the
+   * -fragmenttolerance argument, whose value has already been checked when the arguments were parsed.
+   *
+   * @param cmd the command line arguments.
+   * @return the m/z tolerance.
+   */
+  private static FragmentIonMatcher.Tolerance getFragmentIonTolerance(CommandLine cmd) {
+    return FragmentIonMatcher.Tolerance.parse(cmd.getOptionValue(ARG_FRAGMENT_TOLERANCE, FragmentIonMatcher.DEFAULT_TOLERANCE));
+  }
+
+  /**
+   * This method gets the limits of the controllers' bounded caches, from the -cachelimits argument, or the default
+   * limits if it is not set. The argument has been checked when it was parsed, see MainApp.parseArgs().
+   *
+   * @param cmd the command line arguments.
+   * @return the limit of each cache entry.
+   */
+  private static Map<CacheEntry, Integer> getCacheLimits(CommandLine cmd) {
+    return BoundedCachePolicy.parseLimits(cmd.getOptionValue(ARG_CACHE_LIMITS, BoundedCachePolicy.DEFAULT_LIMITS));
   }
 
   /**
@@ -590,14 +1103,26 @@ public class Validator {
    * @return true if a mzML has chromatograms, false otherwise.
    */
   private static boolean getMzMLSummary(File mappedFile, AssayFileSummary assayFileSummary) {
+    String key = mappedFile.getAbsolutePath() + "|" + mappedFile.length() + "|" + mappedFile.lastModified();
+    boolean result = MZML_CHROMATOGRAMS.computeIfAbsent(key, k -> hasChromatogram(mappedFile));
+    if (result) {
+      assayFileSummary.setChromatogram(true);
+    }
+    return result;
+  }
+
+  /**
+   * This method checks if an mzML file has chromatograms or not.
+   * @param mappedFile the input mzML file.
+   * @return true if the mzML has chromatograms, false otherwise.
+   */
+  private static boolean hasChromatogram(File mappedFile) {
     log.info("Getting mzml summary.");
     MzMLControllerImpl mzMLController = null;
     boolean result = false;
     try {
       mzMLController = new MzMLControllerImpl(mappedFile);
       if (mzMLController.hasChromatogram()) {
-        assayFileSummary.setChromatogram(true);
-        mzMLController.close();
         result = true;
       }
     } finally {
@@ -610,37 +1135,44 @@ public class Validator {
   }
 
   /**
-   * This method validates an input assay file.
+   * This method validates an input assay file with the normal approach, i.e. not the fast validation.
    *
-   * @param assayFile the input assay file.
-   * @return an array of objects[2]: a Report object and an AssayFileSummary, respectively.
+   * @see #validateStagedAssayFile(File, FileType, List, List, SharedMsControllers, boolean, ValidationSampler, FragmentIonMatcher.Tolerance, Map, BiConsumer)
    */
-  private static ValidationResult validateAssayFile(File assayFile, FileType type, List<File> dataAccessControllerFiles) {
+  private static ValidationResult validateStagedAssayFile(File assayFile, FileType type, List<File> dataAccessControllerFiles,
+                                                          List<File> msControllerFiles, SharedMsControllers sharedMsControllers,
+                                                          ValidationSampler sampler, FragmentIonMatcher.Tolerance tolerance,
+                                                          Map<CacheEntry, Integer> cacheLimits,
+                                                          BiConsumer<DataAccessController, AssayFileSummary> validController) {
+    // the temp file may be a link to the assay file, which the controller only reads
     File tempAssayFile = createNewTempFile(assayFile);
-    List<File> tempDataAccessControllerFiles = new ArrayList<>();
-    boolean badtempDataAccessControllerFiles = createTempDataAccessControllerFiles(dataAccessControllerFiles, tempDataAccessControllerFiles);
     log.info("Validating assay file: " + assayFile.getAbsolutePath());
     log.info("From temp file: " + tempAssayFile.getAbsolutePath());
     AssayFileSummary assayFileSummary = new AssayFileSummary();
     Report report = new Report();
+    BoundedCachePolicy cachePolicy = new BoundedCachePolicy(cacheLimits);
+    ResultFileController assayFileController = null;
     try {
-      final ResultFileController assayFileController;
       switch(type) {
         case MZID :
           assayFileController = new MzIdentMLControllerImpl(tempAssayFile);
-          assayFileController.addMSController(badtempDataAccessControllerFiles ? dataAccessControllerFiles : tempDataAccessControllerFiles);
+          addMSControllers(assayFileController, msControllerFiles, sharedMsControllers);
           break;
         case PRIDEXML :
           assayFileController = new PrideXmlControllerImpl(tempAssayFile);
           break;
         case MZTAB : assayFileController = new MzTabControllerImpl(tempAssayFile);
-          assayFileController.addMSController(badtempDataAccessControllerFiles ? dataAccessControllerFiles : tempDataAccessControllerFiles);
+          addMSControllers(assayFileController, msControllerFiles, sharedMsControllers);
           break;
         default : log.error("Unrecognized assay fle type: " + type);
           assayFileController = new MzIdentMLControllerImpl(tempAssayFile);
           break;
       }
-      checkSampleDeltaMzErrorRate(assayFileSummary, assayFileController);
+      checkNotCancelled();
+      cachePolicy.apply(assayFileController);
+      List<Peptide> sampledPeptides = samplePeptides(assayFileController, sampler);
+      checkNotCancelled();
+      checkSampleDeltaMzErrorRate(assayFileSummary, sampledPeptides);
       report.setFileName(assayFile.getAbsolutePath());
       assayFileSummary.setNumberOfIdentifiedSpectra(assayFileController.getNumberOfIdentifiedSpectra());
       assayFileSummary.setNumberOfPeptides(assayFileController.getNumberOfPeptides());
@@ -648,52 +1180,121 @@ public class Validator {
       assayFileSummary.setNumberofMissingSpectra(assayFileController.getNumberOfMissingSpectra());
       assayFileSummary.setNumberOfSpectra(assayFileController.getNumberOfSpectra());
       if (assayFileSummary.getNumberofMissingSpectra()<1) {
-        validateProteinsAndPeptides(assayFile, assayFileSummary, assayFileController);
+        checkNotCancelled();
+        cachePolicy.apply(assayFileController);
+        validateProteinsAndPeptides(assayFile, assayFileSummary, assayFileController, sampledPeptides, tolerance);
       } else {
         log.error(MISSING_SPECTRA_ERROR_MESSAGE);
         report.setStatusError(MISSING_SPECTRA_ERROR_MESSAGE);
       }
+      checkNotCancelled();
       scanExtraMetadataDetails(type, dataAccessControllerFiles, assayFileSummary, assayFileController);
+      checkNotCancelled();
       if (StringUtils.isEmpty(report.getStatus())) {
         report.setStatusOK();
+        validController.accept(assayFileController, assayFileSummary);
       }
     } catch (NullPointerException e) {
       log.error("Null pointer Exception when scanning assay file", e);
       report.setStatusError(e.getMessage());
     } finally {
-      deleteAllTempFiles(tempAssayFile, tempDataAccessControllerFiles);
+      cachePolicy.logStatistics();
+      if (assayFileController != null) {
+        assayFileController.close();
+      }
+      deleteTempFile(tempAssayFile);
     }
     return new ValidationResult(assayFileSummary, report);
   }
 
 
   /**
-   * This method validates an input assay file. Based on isFastValidation flag, input files will get validated by one of the two approaches.
+   * This method adds the MS controllers of the peak files to a result file controller, either shared with other
+   * assays, or opened for this controller only.
+   *
+   * @param assayFileController the result file controller.
+   * @param msControllerFiles the peak files to read.
+   * @param sharedMsControllers the MS controllers shared between the assays of a submission, or null.
+   */
+  private static void addMSControllers(ResultFileController assayFileController, List<File> msControllerFiles,
+                                       SharedMsControllers sharedMsControllers) {
+    if (sharedMsControllers != null && assayFileController instanceof ReferencedIdentificationController) {
+      sharedMsControllers.addTo((ReferencedIdentificationController) assayFileController, msControllerFiles);
+    } else {
+      assayFileController.addMSController(msControllerFiles);
+    }
+  }
+
+  /**
+   * This method validates an input assay file, and then hands the controller which read the file, and the summary, to
+   * a consumer if the file is valid, before the controller is discarded.
    *
    * @param assayFile the input assay file.
-   * @return an array of objects[2]: a Report object and an AssayFileSummary, respectively.
+   * @param type the assay file type.
+   * @param dataAccessControllerFiles the input related peak files.
+   * @param isFastValidation true to use the fast validation approach, only for mzIdentML files.
+   * @param sampler the sampler of the proteins and peptides to check.
+   * @param tolerance the m/z tolerance for matching the fragment ions of the sampled peptides.
+   * @param cacheLimits the limit of each of the controller's bounded cache entries.
+   * @param fileStager the file stager to create the temporary peak files with.
+   * @param validController the consumer of the controller, if the file is valid.
+   * @return the validation result, with the report and the summary of the assay file.
    */
-  private static ValidationResult validateAssayFile(File assayFile, FileType type, List<File> dataAccessControllerFiles, boolean isFastValidation) {
-    final int NUMBER_OF_CHECKS = 100;
-    final double DELTA_THRESHOLD = 4.0;
+  private static ValidationResult validateAssayFile(File assayFile, FileType type, List<File> dataAccessControllerFiles, boolean isFastValidation,
+                                                    ValidationSampler sampler, FragmentIonMatcher.Tolerance tolerance,
+                                                    Map<CacheEntry, Integer> cacheLimits, FileStager fileStager,
+                                                    BiConsumer<DataAccessController, AssayFileSummary> validController) {
+    List<File> tempDataAccessControllerFiles = new ArrayList<>();
+    boolean badtempDataAccessControllerFiles = createTempDataAccessControllerFiles(dataAccessControllerFiles, tempDataAccessControllerFiles, fileStager);
+    try {
+      return validateStagedAssayFile(assayFile, type, dataAccessControllerFiles,
+          badtempDataAccessControllerFiles ? dataAccessControllerFiles : tempDataAccessControllerFiles, null, isFastValidation, sampler, tolerance,
+          cacheLimits, validController);
+    } finally {
+      deleteAllTempFiles(null, tempDataAccessControllerFiles);
+    }
+  }
 
+  /**
+   * This method validates an input assay file, using peak files which have already been copied to temporary files,
+   * and then hands the controller which read the file, and the summary, to a consumer if the file is valid, before the
+   * controller is discarded.
+   * Based on isFastValidation flag, input files will get validated by one of the two approaches.
+   *
+   * @param assayFile the input assay file.
+   * @param type the assay file type.
+   * @param dataAccessControllerFiles the input related peak files.
+   * @param msControllerFiles the peak files to read, i.e. the temporary copies of the related peak files.
+   * @param sharedMsControllers the MS controllers shared between the assays of a submission, or null to open the
+   * peak files for this assay only.
+   * @param isFastValidation true to use the fast validation approach, only for mzIdentML files.
+   * @param sampler the sampler of the proteins and peptides to check.
+   * @param tolerance the m/z tolerance for matching the fragment ions of the sampled peptides.
+   * @param cacheLimits the limit of each of the controller's bounded cache entries.
+   * @param validController the consumer of the controller, if the file is valid.
+   * @return the validation result, with the report and the summary of the assay file.
+   */
+  private static ValidationResult validateStagedAssayFile(File assayFile, FileType type, List<File> dataAccessControllerFiles,
+                                                          List<File> msControllerFiles, SharedMsControllers sharedMsControllers,
+                                                          boolean isFastValidation, ValidationSampler sampler,
+                                                          FragmentIonMatcher.Tolerance tolerance, Map<CacheEntry, Integer> cacheLimits,
+                                                          BiConsumer<DataAccessController, AssayFileSummary> validController) {
     if (isFastValidation) {
+      // the temp file may be a link to the assay file, which the controller only reads
       File tempAssayFile = createNewTempFile(assayFile);
-      List<File> tempDataAccessControllerFiles = new ArrayList<>();
-      boolean badtempDataAccessControllerFiles =
-              createTempDataAccessControllerFiles(
-                      dataAccessControllerFiles, tempDataAccessControllerFiles);
       AssayFileSummary assayFileSummary = new AssayFileSummary();
       Report report = new Report();
-      final FastMzIdentMLController assayFileController;
+      FastMzIdentMLController assayFileController = null;
       log.info("Validating assay file: " + assayFile.getAbsolutePath());
       log.info("From temp file: " + tempAssayFile.getAbsolutePath());
 
       try {
         if (type.equals(FileType.MZID)) {
           assayFileController = new FastMzIdentMLController(tempAssayFile);
-          assayFileController.addMSController(badtempDataAccessControllerFiles ? dataAccessControllerFiles : tempDataAccessControllerFiles);
+          checkNotCancelled();
+          assayFileController.addMSController(msControllerFiles);
           assayFileController.doSpectraValidation();
+          checkNotCancelled();
         } else {
           throw new NotImplementedException(
                   "No fast validation implementation for PRIDE XML or MzTAB");
@@ -705,7 +1306,8 @@ public class Validator {
         assayFileSummary.setNumberofMissingSpectra(assayFileController.getNumberOfMissingSpectra());
         assayFileSummary.setNumberOfSpectra(assayFileController.getNumberOfSpectra());
         assayFileSummary.setNumberOfUniquePeptides((assayFileController).getNumberOfUniquePeptides());
-        assayFileSummary.setDeltaMzErrorRate((assayFileController).getSampleDeltaMzErrorRate(NUMBER_OF_CHECKS, DELTA_THRESHOLD));
+        checkNotCancelled();
+        checkSampleDeltaMzErrorRate(assayFileSummary, samplePeptides(assayFileController, sampler));
         assayFileSummary.addPtms(DataConversionUtil.convertAssayPTMs(LightModelsTransformer.transformToCvParam(assayFileController.getIdentifiedUniquePTMs())));
         assayFileSummary.setSearchDatabase(assayFileController.getSearchDataBases().get(0).getName());
         assayFileSummary.setExampleProteinAccession("Not Applicable");
@@ -717,18 +1319,24 @@ public class Validator {
         scanForGeneralMetadata(assayFileController, assayFileSummary);
         scanForInstrument(assayFileController, assayFileSummary);
         scanForSoftware(assayFileController, assayFileSummary);
+        checkNotCancelled();
         if (StringUtils.isEmpty(report.getStatus())) {
           report.setStatusOK();
+          validController.accept(assayFileController, assayFileSummary);
         }
       } catch (NullPointerException e) {
         log.error("Null pointer Exception when scanning assay file", e);
         report.setStatusError(e.getMessage());
       } finally {
-        deleteAllTempFiles(tempAssayFile, tempDataAccessControllerFiles);
+        if (assayFileController != null) {
+          assayFileController.close();
+        }
+        deleteTempFile(tempAssayFile);
       }
       return new ValidationResult(assayFileSummary, report);
     } else {
-      return validateAssayFile(assayFile, type, dataAccessControllerFiles);
+      return validateStagedAssayFile(assayFile, type, dataAccessControllerFiles, msControllerFiles, sharedMsControllers, sampler, tolerance, cacheLimits,
+          validController);
     }
   }
 
@@ -737,13 +1345,14 @@ public class Validator {
    * Creates temp data access controller files.
    * @param dataAccessControllerFiles the input data access controller files
    * @param tempDataAccessControllerFiles the temp data acceess controller files that get created
+   * @param fileStager the file stager to create the temp files with
    * @return true if all the temp files were created OK, false otherwise
    */
-  private static boolean createTempDataAccessControllerFiles(List<File> dataAccessControllerFiles, List<File> tempDataAccessControllerFiles) {
+  private static boolean createTempDataAccessControllerFiles(List<File> dataAccessControllerFiles, List<File> tempDataAccessControllerFiles,
+                                                             FileStager fileStager) {
     boolean badtempDataAccessControllerFiles = true;
     if (CollectionUtils.isNotEmpty(dataAccessControllerFiles)) {
-      for (File dataAccessControllerFile : dataAccessControllerFiles) {
-        File tempDataAccessControllerFile = createNewTempFile(dataAccessControllerFile);
+      for (File tempDataAccessControllerFile : fileStager.stage(dataAccessControllerFiles)) {
         if (tempDataAccessControllerFile!=null && 0<tempDataAccessControllerFile.length()) {
           tempDataAccessControllerFiles.add(tempDataAccessControllerFile);
         }
@@ -760,7 +1369,9 @@ public class Validator {
    * @param tempDataAccessControllerFiles the temp data access controller files to be deleted
    */
   private static void deleteAllTempFiles(File tempAssayFile, List<File> tempDataAccessControllerFiles) {
-    deleteTempFile(tempAssayFile);
+    if (tempAssayFile != null) {
+      deleteTempFile(tempAssayFile);
+    }
     if (CollectionUtils.isNotEmpty(tempDataAccessControllerFiles)) {
       for (File dataAccessControllerFile : tempDataAccessControllerFiles) {
         if (dataAccessControllerFile != null) {
@@ -771,21 +1382,56 @@ public class Validator {
   }
 
   /**
-   * Checks a sampling of the delta m/z error rates.
+   * This method draws the sample of peptides for the sampled checks: a stratified sample of the proteins, and one
+   * peptide drawn at random from each, see ValidationSampler. The same file and seed always draw the same sample.
+   *
+   * @param assayFileController the assay file controller.
+   * @param sampler the sampler.
+   * @return the sampled peptides.
+   */
+  private static List<Peptide> samplePeptides(DataAccessController assayFileController, ValidationSampler sampler) {
+    Random random = sampler.newRandom();
+    List<Peptide> peptides = new ArrayList<>();
+    for (Comparable proteinId : sampler.sample(assayFileController.getProteinIds(), random)) {
+      Protein protein = assayFileController.getProteinById(proteinId);
+      Peptide peptide = protein == null ? null : sampler.pick(protein.getPeptides(), random);
+      if (peptide != null) {
+        peptides.add(peptide);
+      } else {
+        log.error("Unable to read a peptide from protein: " + proteinId);
+      }
+    }
+    log.info("Sampled " + peptides.size() + " peptides, with sample size " + sampler.getSampleSize() + " and seed " + sampler.getSeed() + ".");
+    return peptides;
+  }
+
+  /**
+   * Checks a sampling of the delta m/z error rates, i.e. the fraction of the sampled PSMs whose experimental and
+   * calculated precursor m/z differ by more than the threshold. If none of the sampled PSMs has both m/z values, the
+   * error rate is not a number, and the report says that it was not checked.
    * @param assayFileSummary the assay file summary
-   * @param assayFileController the assay file controller
+   * @param sampledPeptides the sampled peptides, see samplePeptides()
    */
-  private static void checkSampleDeltaMzErrorRate(AssayFileSummary assayFileSummary, ResultFileController assayFileController) {
-    final int NUMBER_OF_CHECKS = 10;
-    List<Boolean> randomChecks = new ArrayList<>();
-    IntStream.range(1, NUMBER_OF_CHECKS).sequential().forEach(i -> randomChecks.add(assayFileController.checkRandomSpectraByDeltaMassThreshold(NUMBER_OF_CHECKS, 4.0)));
-    int checkFalseCounts = 0;
-    for (Boolean check : randomChecks) {
-      if (!check) {
-        checkFalseCounts++;
+  private static void checkSampleDeltaMzErrorRate(AssayFileSummary assayFileSummary, List<Peptide> sampledPeptides) {
+    int checked = 0;
+    int errors = 0;
+    for (Peptide peptide : sampledPeptides) {
+      SpectrumIdentification psm = peptide.getSpectrumIdentification();
+      if (psm != null && psm.getExperimentalMassToCharge() != null && psm.getCalculatedMassToCharge() != null &&
+          psm.getExperimentalMassToCharge() > 0 && psm.getCalculatedMassToCharge() > 0) {
+        checked++;
+        if (Math.abs(psm.getExperimentalMassToCharge() - psm.getCalculatedMassToCharge()) > PsmVerifier.DEFAULT_DELTA_MZ_THRESHOLD) {
+          errors++;
+        }
       }
     }
-    assayFileSummary.setDeltaMzErrorRate(new BigDecimal(((double) checkFalseCounts / (NUMBER_OF_CHECKS*NUMBER_OF_CHECKS))).setScale(2, RoundingMode.HALF_UP).doubleValue());
+    if (checked == 0) {
+      log.warn("Unable to check the delta m/z error rate, no sampled PSM has both an experimental and calculated m/z, of " +
+          sampledPeptides.size() + " sampled.");
+      assayFileSummary.setDeltaMzErrorRate(Double.NaN);
+      return;
+    }
+    assayFileSummary.setDeltaMzErrorRate(new BigDecimal(((double) errors / checked)).setScale(2, RoundingMode.HALF_UP).doubleValue());
   }
 
   /**
@@ -815,59 +1461,28 @@ public class Validator {
    * @param assayFile the assay file (e.g. .mzid file)
    * @param assayFileSummary the assay file summary
    * @param assayFileController the assay file controller (e.g. for mzIdentML etc).
+   * @param sampledPeptides the sampled peptides to check the fragment ions of, see samplePeptides().
+   * @param tolerance the m/z tolerance for matching the fragment ions.
    */
-  private static void validateProteinsAndPeptides(File assayFile, AssayFileSummary assayFileSummary, ResultFileController assayFileController) throws NullPointerException {
-    Set<String> uniquePeptides = new HashSet<>();
-    Set<CvParam> ptms = new HashSet<>();
-    for (Comparable proteinId : assayFileController.getProteinIds()) {
-      for (Peptide peptide : assayFileController.getProteinById(proteinId).getPeptides()) {
-        uniquePeptides.add(peptide.getSequence());
-        for (Modification modification : peptide.getModifications()) {
-          for (CvParam cvParam : modification.getCvParams()) {
-            if (StringUtils.isEmpty(cvParam.getCvLookupID())|| StringUtils.isEmpty(cvParam.getAccession()) || StringUtils.isEmpty(cvParam.getName())) {
-              String message = "A PTM CV Param's ontology, accession, or name is not defined properly: " + cvParam.toString() + " in file: " +  assayFile.getPath();
-              log.error(message);
-              throw new NullPointerException(message);
-            }
-            if (cvParam.getCvLookupID().equalsIgnoreCase(Constant.PSI_MOD) || cvParam.getCvLookupID().equalsIgnoreCase(Constant.UNIMOD)) {
-              ptms.add(cvParam);
-            }
-          }
+  private static void validateProteinsAndPeptides(File assayFile, AssayFileSummary assayFileSummary, ResultFileController assayFileController,
+                                                  List<Peptide> sampledPeptides, FragmentIonMatcher.Tolerance tolerance) throws NullPointerException {
+    PeptideEvidenceAggregator evidence = PeptideEvidenceAggregator.aggregate(assayFileController, assayFile.getPath());
+    boolean matches = true;
+    Map<Comparable, FragmentIonMatcher> spectrumMatchers = new HashMap<>();
+    for (Peptide peptide : sampledPeptides) {
+      if (peptide.getFragmentation() != null && peptide.getFragmentation().size() > 0 && (peptide.getSpectrum() != null) ) {
+        Spectrum spectrum = peptide.getSpectrum();
+        FragmentIonMatcher matcher = spectrum.getId() == null ? getFragmentIonMatcher(spectrum, tolerance) :
+            spectrumMatchers.computeIfAbsent(spectrum.getId(), id -> getFragmentIonMatcher(spectrum, tolerance));
+        if (!matchingFragmentIons(peptide.getFragmentation(), matcher)) {
+          matches = false;
+          break;
         }
       }
     }
-    List<Boolean> matches = new ArrayList<>();
-    matches.add(true);
-    IntStream.range(
-            1,
-            (assayFileController.getNumberOfPeptides() < 100
-                ? assayFileController.getNumberOfPeptides()
-                : 100))
-        .sequential()
-        .forEach(
-            i -> {
-              Protein protein =
-                  assayFileController.getProteinById(
-                      assayFileController.getProteinIds().stream().findAny().orElse(null));
-              Peptide peptide = null;
-              if (protein != null) {
-                peptide = protein.getPeptides().stream().findAny().orElse(null);
-              } else {
-                log.error("Unable to read a random protein.");
-              }
-              if (peptide != null) {
-                if (peptide.getFragmentation() != null && peptide.getFragmentation().size() > 0 && (peptide.getSpectrum() != null) ) {
-                  if (!matchingFragmentIons(peptide.getFragmentation(), peptide.getSpectrum())) {
-                    matches.add(false);
-                  }
-                }
-              } else {
-                log.error("Unable to read peptide form protein: " + protein.toString());
-              }
-            });
-    assayFileSummary.addPtms(DataConversionUtil.convertAssayPTMs(ptms));
-    assayFileSummary.setSpectrumMatchFragmentIons(matches.size() <= 1);
-    assayFileSummary.setNumberOfUniquePeptides(uniquePeptides.size());
+    assayFileSummary.addPtms(DataConversionUtil.convertAssayPTMs(evidence.getPtms()));
+    assayFileSummary.setSpectrumMatchFragmentIons(matches);
+    assayFileSummary.setNumberOfUniquePeptides(evidence.getNumberOfUniquePeptides());
   }
 
   /**
@@ -886,22 +1501,7 @@ public class Validator {
    * @param outputFile the output log file with an OK message if there were no errors
    */
   private static void validateMzidSchema(String schemaLocation, File mzIdentML, File outputFile) {
-    log.info("Validating mzIdentML XML schema for: " + mzIdentML.getPath() + " using schema: " + schemaLocation);
-    ErrorHandlerIface handler = new ValidationErrorHandler();
-    try (BufferedReader br = new BufferedReader(new FileReader(mzIdentML))) {
-      GenericSchemaValidator genericValidator = new GenericSchemaValidator();
-      genericValidator.setSchema(new URI(schemaLocation));
-      genericValidator.setErrorHandler(handler);
-      genericValidator.validate(br);
-      log.info(SCHEMA_OK_MESSAGE + mzIdentML.getName());
-      if (outputFile!=null) {
-        Files.write(outputFile.toPath(), SCHEMA_OK_MESSAGE.getBytes());
-      }
-    } catch (IOException | SAXException e) {
-      log.error("File Not Found or SAX Exception: ", e);
-    } catch (URISyntaxException usi) {
-      log.error("URI syntax exxception: ", usi);
-    }
+    writeSchemaResult(validateMzidSchema(schemaLocation, mzIdentML, SchemaCache.DEFAULT_MAX_ERRORS), outputFile);
   }
 
   /**
@@ -909,27 +1509,12 @@ public class Validator {
    *
    * @param schemaLocation the location of the schema
    * @param mzIdentML the input mzIdentML file.
+   * @param maxErrors the number of errors to stop validating after.
    * @return a SchemaCheckResult - if the mzIdentML passed validation, validAgainstSchema will be true. False otherwise, and contains a list of the error messages.
    */
-  private static SchemaCheckResult validateMzidSchema(String schemaLocation, File mzIdentML) {
+  private static SchemaCheckResult validateMzidSchema(String schemaLocation, File mzIdentML, int maxErrors) {
     log.info("Validating mzIdentML XML schema for: " + mzIdentML.getPath() + " using schema: " + schemaLocation);
-    SchemaCheckResult result = new SchemaCheckResult(false, new ArrayList<>());
-    ValidationErrorHandler handler = new ValidationErrorHandler();
-    try (BufferedReader br = new BufferedReader(new FileReader(mzIdentML))) {
-      GenericSchemaValidator genericValidator = new GenericSchemaValidator();
-      genericValidator.setSchema(new URI(schemaLocation));
-      genericValidator.setErrorHandler(handler);
-      genericValidator.validate(br);
-      log.info(SCHEMA_OK_MESSAGE + mzIdentML.getName());
-      List<String> errorMessages = handler.getErrorMessages();
-      result.setValidAgainstSchema(errorMessages.size()<1);
-      result.setErrorMessages(errorMessages);
-    } catch (IOException | SAXException e) {
-      log.error("Problem reading or parsing the file: ", e);
-    } catch (URISyntaxException usi) {
-      log.error("Unable to parse URI syntax: ", usi);
-    }
-    return result;
+    return validateSchema(schemaLocation, mzIdentML, maxErrors);
   }
 
   /**
@@ -941,29 +1526,7 @@ public class Validator {
    * @param outputFile the output log file with an OK message if there were no errors
    */
   private static void validatePridexmlSchema(String schemaLocation, File pridexml, File outputFile) {
-    log.info("Validating PRIDE XML schema for: " + pridexml.getPath() + " using schema: " + schemaLocation);
-    try {
-      PrideXmlClValidator validator = new PrideXmlClValidator();
-      validator.setSchema(new URL(schemaLocation));
-      BufferedReader br = new BufferedReader(new FileReader(pridexml));
-      XMLValidationErrorHandler xveh = validator.validate(br);
-      final String ERROR_MESSAGES = xveh.getErrorsFormattedAsPlainText();
-      if (StringUtils.isEmpty(ERROR_MESSAGES)) {
-        log.info(SCHEMA_OK_MESSAGE + pridexml.getName());
-        if (outputFile!=null) {
-          Files.write(outputFile.toPath(), SCHEMA_OK_MESSAGE.getBytes());
-        }
-      } else {
-        log.error(ERROR_MESSAGES);
-        if (outputFile!=null) {
-          Files.write(outputFile.toPath(), ERROR_MESSAGES.getBytes());
-        }
-      }
-    } catch (IOException | SAXException e) {
-      log.error("File Not Found or SAX Exception: ", e);
-    } catch (Exception e) {
-      log.error("Exception while validating PRIDE XML schema:", e);
-    }
+    writeSchemaResult(validatePridexmlSchema(schemaLocation, pridexml, SchemaCache.DEFAULT_MAX_ERRORS), outputFile);
   }
 
   /**
@@ -971,51 +1534,238 @@ public class Validator {
    *
    * @param schemaLocation the location of the schema
    * @param pridexml the input PRIDE XML file.
+   * @param maxErrors the number of errors to stop validating after.
    * @return a list of two elements: the first element is a boolean (true or false) if the file passed validation. If false, the 2nd element in the list of the error messages.
    */
-  private static SchemaCheckResult validatePridexmlSchema(String schemaLocation, File pridexml) {
+  private static SchemaCheckResult validatePridexmlSchema(String schemaLocation, File pridexml, int maxErrors) {
     log.info("Validating PRIDE XML schema for: " + pridexml.getPath() + " using schema: " + schemaLocation);
+    return validateSchema(schemaLocation, pridexml, maxErrors);
+  }
+
+  /**
+   * This method validates an input XML file according to the supplied schema, which is compiled only once and
+   * then reused for all files, see SchemaCache.
+   *
+   * @param schemaLocation the location of the schema
+   * @param xmlFile the input XML file, which may be gzipped.
+   * @param maxErrors the number of errors to stop validating after.
+   * @return a SchemaCheckResult - if the file passed validation, validAgainstSchema will be true. False otherwise, and contains a summary of the error messages, by type.
+   */
+  private static SchemaCheckResult validateSchema(String schemaLocation, File xmlFile, int maxErrors) {
+    try (InputStream in = new InterruptibleInputStream(newInputStream(xmlFile))) {
+      return validateSchema(schemaLocation, in, xmlFile, maxErrors);
+    } catch (IOException e) {
+      log.error("Problem reading or parsing the file: ", e);
+      return new SchemaCheckResult(false, new ArrayList<>(Collections.singletonList(e.getMessage())));
+    }
+  }
+
+  /**
+   * This method validates the content of an input XML file, read from a stream, according to the supplied schema.
+   *
+   * @param schemaLocation the location of the schema
+   * @param in the content of the XML file, which is not closed.
+   * @param xmlFile the input XML file the content comes from.
+   * @param maxErrors the number of errors to stop validating after.
+   * @return a SchemaCheckResult - if the file passed validation, validAgainstSchema will be true. False otherwise, and contains a summary of the error messages, by type.
+   */
+  private static SchemaCheckResult validateSchema(String schemaLocation, InputStream in, File xmlFile, int maxErrors) {
     SchemaCheckResult result = new SchemaCheckResult(false, new ArrayList<>());
     try {
-      PrideXmlClValidator validator = new PrideXmlClValidator();
-      validator.setSchema(new URL(schemaLocation));
-      BufferedReader br = new BufferedReader(new FileReader(pridexml));
-      XMLValidationErrorHandler xveh = validator.validate(br);
-      final String ERROR_MESSAGES = xveh.getErrorsFormattedAsPlainText();
-      result.setValidAgainstSchema(StringUtils.isEmpty(ERROR_MESSAGES));
-      if (StringUtils.isEmpty(ERROR_MESSAGES)) {
-        log.info(SCHEMA_OK_MESSAGE + pridexml.getName());
+      List<String> errorMessages = SchemaCache.validate(schemaLocation, in, xmlFile.toURI().toString(), maxErrors);
+      result.setValidAgainstSchema(errorMessages.isEmpty());
+      result.setErrorMessages(errorMessages);
+      if (errorMessages.isEmpty()) {
+        log.info(SCHEMA_OK_MESSAGE + xmlFile.getName());
       } else {
-        log.error(ERROR_MESSAGES);
-        result.setErrorMessages(xveh.getErrorsAsList());
+        log.error(String.join("\n", errorMessages));
       }
-    } catch (Exception e) {
-      log.error("Exception while validating PRIDE XML schema:", e);
+    } catch (IOException | SAXException e) {
+      log.error("Problem reading or parsing the file: ", e);
+      result.setErrorMessages(new ArrayList<>(Collections.singletonList(e.getMessage())));
     }
     return result;
   }
 
+  /**
+   * This method gets the number of XML schema errors to stop validating after.
+   *
+   * @param cmd the command line arguments.
+   * @return the maximum number of XML schema errors.
+   */
+  private static int getMaxSchemaErrors(CommandLine cmd) {
+    return cmd.hasOption(ARG_MAX_SCHEMA_ERRORS) ? Integer.parseInt(cmd.getOptionValue(ARG_MAX_SCHEMA_ERRORS)) : SchemaCache.DEFAULT_MAX_ERRORS;
+  }
+
+  /**
+   * This method runs XML schema validation and the semantic validation of a file at the same time, on their own
+   * threads, as they both read the whole file. If either of them fails first, the other is cancelled: its thread is
+   * interrupted, which stops the schema validation's reading, and the semantic validation between its stages. This
+   * method only returns once both have stopped, so a cancelled validation does not keep its controller and memory
+   * after the job which started it has finished. Otherwise the semantic validation result is returned, with its
+   * status set to the schema errors if there were any.
+   *
+   * @param schemaCheck the XML schema validation.
+   * @param semanticCheck the semantic validation.
+   * @param schemaErrorMessage the start of the status if the file fails XML schema validation, followed by the errors.
+   * @return the merged validation result.
+   */
+  static ValidationResult validateWithSchema(Callable<SchemaCheckResult> schemaCheck, Callable<ValidationResult> semanticCheck,
+                                             String schemaErrorMessage) {
+    ExecutorService pool = Executors.newFixedThreadPool(2, runnable -> {
+      Thread thread = new Thread(runnable, "schema-semantic-validation");
+      thread.setDaemon(true);
+      return thread;
+    });
+    CompletionService<Object> completed = new ExecutorCompletionService<>(pool);
+    Future<Object> schemaFuture = completed.submit(schemaCheck::call);
+    Future<Object> semanticFuture = completed.submit(semanticCheck::call);
+    SchemaCheckResult schemaResult = null;
+    ValidationResult semanticResult = null;
+    String failure = null;
+    try {
+      for (int i = 0; i < 2; i++) {
+        Future<Object> next = completed.take();
+        if (next == schemaFuture) {
+          schemaResult = (SchemaCheckResult) next.get();
+          if (!schemaResult.isValidAgainstSchema()) {
+            log.info("XML schema validation failed, cancelling semantic validation.");
+            semanticFuture.cancel(true);
+            break;
+          }
+        } else {
+          semanticResult = (ValidationResult) next.get();
+          String status = semanticResult.getReport().getStatus();
+          if (status == null || !status.startsWith("OK")) {
+            log.info("Semantic validation failed, cancelling XML schema validation.");
+            schemaFuture.cancel(true);
+            break;
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failure = "Interrupted while validating.";
+    } catch (ExecutionException e) {
+      log.error("Exception when validating: ", e.getCause());
+      failure = "Exception when validating: " + e.getCause();
+    } finally {
+      pool.shutdownNow();
+      awaitTermination(pool);
+    }
+    AssayFileSummary assayFileSummary = semanticResult != null ? semanticResult.getAssayFileSummary() : new AssayFileSummary();
+    Report report = semanticResult != null ? semanticResult.getReport() : new Report();
+    if (failure != null) {
+      report.setStatusError(failure);
+    } else if (schemaResult != null && !schemaResult.isValidAgainstSchema()) {
+      String message = schemaErrorMessage + String.join(",", schemaResult.getErrorMessages());
+      log.error(message);
+      report.setStatus(message);
+    }
+    return new ValidationResult(assayFileSummary, report);
+  }
+
+  /**
+   * This method waits for all the tasks of a thread pool which has been shut down to finish, even if the waiting
+   * thread is interrupted, in which case it is interrupted again afterwards.
+   *
+   * @param pool the thread pool, which has been shut down.
+   */
+  private static void awaitTermination(ExecutorService pool) {
+    boolean interrupted = false;
+    while (!pool.isTerminated()) {
+      try {
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * This method stops a validation which has been cancelled, i.e. whose thread has been interrupted. It is called
+   * between the stages of the semantic validation, as the controllers cannot be stopped while they read a file.
+   *
+   * @throws CancellationException if the validation has been cancelled.
+   */
+  private static void checkNotCancelled() {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new CancellationException("Validation was cancelled.");
+    }
+  }
+
+  /**
+   * This method writes the outcome of XML schema validation to a file: an OK message if there were no errors,
+   * or the error messages otherwise.
+   *
+   * @param result the outcome of XML schema validation.
+   * @param outputFile the output log file, or null to not write one.
+   */
+  private static void writeSchemaResult(SchemaCheckResult result, File outputFile) {
+    if (outputFile!=null) {
+      try {
+        Files.write(outputFile.toPath(), (result.isValidAgainstSchema() ? SCHEMA_OK_MESSAGE :
+            String.join("\n", result.getErrorMessages())).getBytes());
+      } catch (IOException e) {
+        log.error("Problem when writing schema validation output file: ", e);
+      }
+    }
+  }
+
   /**
    * This method validates and input proBed file, checks its columns according to the BED column format, and potentially saves the output to a report file.
    * @param proBed the input proBed file.
    * @param columnFormat the BED column format, e.g the default BED12+13.
    * @param reportFile the file to save the output to.
+   * @param asqlFile the ASQL schema file.
+   * @param threads the number of threads for memory-mapped parallel validation, or 0 to validate in a single stream.
+   * @param nameIndexType the type of index used to check that names are unique.
    */
-  private static Report validateProBed(File proBed, String columnFormat, File reportFile, File asqlFile) {
+  private static Report validateProBed(File proBed, String columnFormat, File reportFile, File asqlFile, int threads, NameIndexType nameIndexType) {
     log.info("Validation proBed file: " + proBed.getPath() + " using column format: " + columnFormat);
     Report report = new Report();
     report.setFileName(proBed.getPath());
-    Set<String> errorMessages = new HashSet<>();
-    int defaultBedColumnCount = Integer.parseInt(columnFormat.substring(columnFormat.indexOf("D")+1, columnFormat.indexOf('+')));
-    int proBedOptionalColumnsCount = Integer.parseInt(columnFormat.substring(columnFormat.indexOf("+")+1));
-    List<AsqlTriple> asqlTriples = (asqlFile!=null ? extractDatatypesAsql(asqlFile) : null);
-    try (Stream<String> stream = Files.lines(proBed.toPath())) {
-      Set<String> uniqueNames = ConcurrentHashMap.newKeySet();
-      stream.parallel().forEach(s -> validateProbeLine(errorMessages, defaultBedColumnCount, proBedOptionalColumnsCount, asqlTriples, uniqueNames, s));
-      if (errorMessages.size()>0) {
-        StringBuffer errorsReported = new StringBuffer();
-        errorMessages.parallelStream().limit(100).forEach(s -> errorsReported.append(s).append("\n"));
-        report.setStatus("ERROR: " + errorMessages.size() + " problems encountered. See below for (up to) the first 100 reported errors : \n" + errorsReported);
+    ProBedErrorAggregator errorAggregator = new ProBedErrorAggregator();
+    int defaultBedColumnCount;
+    int proBedOptionalColumnsCount;
+    try {
+      int[] columnCounts = parseBedColumnFormat(columnFormat);
+      defaultBedColumnCount = columnCounts[0];
+      proBedOptionalColumnsCount = columnCounts[1];
+    } catch (IllegalArgumentException e) {
+      final String FORMAT_MESSAGE = "ERROR: " + e.getMessage();
+      log.error(FORMAT_MESSAGE);
+      report.setStatus(FORMAT_MESSAGE);
+      if (reportFile!=null) {
+        writeProbedReport(report, reportFile);
+      }
+      return report;
+    }
+    List<AsqlTriple> asqlTriples = (asqlFile!=null ? extractDatatypesAsql(asqlFile) : new ArrayList<>());
+    if (asqlTriples.size() != defaultBedColumnCount + proBedOptionalColumnsCount) {
+      final String SCHEMA_MESSAGE = "ERROR: ASQL schema has " + asqlTriples.size() + " columns, but the column format " + columnFormat +
+          " expects " + (defaultBedColumnCount + proBedOptionalColumnsCount) + " columns.";
+      log.error(SCHEMA_MESSAGE);
+      report.setStatus(SCHEMA_MESSAGE);
+      if (reportFile!=null) {
+        writeProbedReport(report, reportFile);
+      }
+      return report;
+    }
+    AsqlSchema schema = AsqlSchema.compile(asqlTriples);
+    try (NameIndex nameIndex = createNameIndex(nameIndexType, proBed)) {
+      if (threads > 0) {
+        new MappedProBedValidator(schema, nameIndex, errorAggregator, threads).validate(proBed.toPath());
+      } else {
+        new ProBedLineValidator(schema, nameIndex, errorAggregator).validate(proBed.toPath());
+      }
+      ProBedLineValidator.reportDeferredDuplicates(schema, nameIndex, proBed.toPath(), errorAggregator);
+      if (errorAggregator.hasErrors()) {
+        report.setStatus("ERROR: " + errorAggregator.getErrorCount() + " problems encountered, of " + errorAggregator.getErrorTypes().size() +
+            " types. See below for the count of each type, its first line numbers, and example lines : \n" + errorAggregator);
       } else {
         report.setStatusOK();
       }
@@ -1035,211 +1785,79 @@ public class Validator {
   }
 
   /**
-   * This method validates a line of a proBed file.
-   * @param errorMessages a set of erro messages to record.
-   * @param defaultBedColumnCount the default BED column count.
-   * @param proBedOptionalColumnsCount the number of proBed extra columns.
-   * @param asqlTriples  the ASQL triples constructed from the .AS file.
-   * @param uniqueNames a running set of the unique names for the proBed file.
-   * @param proBedLine the proBed line to validate.
+   * This method starts the validation of a proBed file according to the input command line arguments.
+   * @param cmd command line arguments.
+
    */
-  private static void validateProbeLine(Set<String> errorMessages, int defaultBedColumnCount, int proBedOptionalColumnsCount, List<AsqlTriple> asqlTriples, Set<String> uniqueNames, String proBedLine) {
-    if (org.apache.commons.lang3.StringUtils.isEmpty(proBedLine)) {
-      logProbedError("Empty blank line encountered", errorMessages);
-    } else {
-      if (proBedLine.charAt(0)=='#') {
-        log.info("Comment: " + proBedLine);
-      } else {
-        String[] fields = proBedLine.split("\\t");
-        if (fields.length!=(defaultBedColumnCount+proBedOptionalColumnsCount)) {
-          final int TOTAL_COLUMNS = defaultBedColumnCount+proBedOptionalColumnsCount;
-          logProbedError("Incorrect number of columns found. Expected " + TOTAL_COLUMNS + " instead have : " + fields.length + "." + LINE_CONTENT + proBedLine, errorMessages);
-        } else {
-          if (isInvalidAsqlTriple(asqlTriples.get(0), fields[0])) {
-            logProbedError("1st column 'chrom' field must not be empty." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(1), fields[1])) {
-            logProbedError("2nd column 'chromStart' " + FIELD_UNSIGNED_INTEGER + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(2), fields[2])) {
-            logProbedError("3rd column 'chromEnd' " + FIELD_UNSIGNED_INTEGER + LINE_CONTENT + proBedLine, errorMessages);
-          } else {
-            int chromStart = Integer.parseInt(fields[1]);
-            int chromEnd = Integer.parseInt(fields[2]);
-            if (chromEnd<chromStart) {
-              logProbedError("2nd and 3rd columns 'chromStart' and 'chromEnd' fields must be in ascending order." + LINE_CONTENT + proBedLine, errorMessages);
-            }
-          }
-          String name = fields[3];
-          if (isInvalidAsqlTriple(asqlTriples.get(3), fields[3])) {
-            logProbedError("4th column 'name' field must not be empty." + LINE_CONTENT + proBedLine, errorMessages);
-          } else {
-            if (uniqueNames.contains(name)) {
-              logProbedError("4th column 'name' field must be unique." + LINE_CONTENT + proBedLine, errorMessages);
-            } else {
-              uniqueNames.add(name);
-            }
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(4), fields[4])) {
-            logProbedError("5th column 'score' " + FIELD_UNSIGNED_INTEGER + LINE_CONTENT + proBedLine, errorMessages);
-          } else {
-            int score = Integer.parseInt(fields[4]);
-            if (score<0 || score >1000) {
-              logProbedError("5th column 'score' field must be between 0 - 1000 inclusive." + LINE_CONTENT + proBedLine, errorMessages);
-            }
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(5), fields[5]) || (!fields[5].equals("-") && !fields[5].equals("+"))) {
-            logProbedError("6th column 'strand' field must not be empty and must be either '-' or '+'." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(6), fields[6])) {
-            logProbedError("7th column 'thickStart' " + FIELD_UNSIGNED_INTEGER + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(7), fields[7])) {
-            logProbedError("8th column 'thickEnd' " + FIELD_UNSIGNED_INTEGER + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          int thickStart = Integer.parseInt(fields[6]);
-          int thickEnd = Integer.parseInt(fields[7]);
-          if (thickEnd<thickStart) {
-            logProbedError("7th and 8th columns 'thickStart' and 'thickEnd' fields must be in ascending order." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(8), fields[8]) || (!fields[8].equals("0"))) {
-            logProbedError("9th column 'reserved' field must not be empty and must be '0'. Line contnent: " + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(9), fields[9])) {
-            logProbedError("10th column 'blockCount' field must be an integer contain at least one digit." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          int blockCount = Integer.parseInt(fields[9]);
-          if (isInvalidAsqlTriple(asqlTriples.get(10), fields[10])) {
-            logProbedError("11th column 'blockSizes' field must not be empty." + LINE_CONTENT + proBedLine, errorMessages);
-          } else {
-            String blockSizes = fields[10];
-            String[] blockSizesSplit = blockSizes.split(",");
-            if (blockSizesSplit.length!=blockCount) {
-              logProbedError("11th column 'blockSizes' field does not have the same amount of blocks as mentioned in 'blockCount'." + LINE_CONTENT + proBedLine, errorMessages);
-            }
-            for (String blockSizePart : blockSizesSplit) {
-              if (org.apache.commons.lang3.StringUtils.isEmpty(blockSizePart) || !blockSizePart.matches("\\d+")) {
-                logProbedError("11th column 'blockSizes' field must list at least one integer containing at least one digit, with multiple values separated by commas." + LINE_CONTENT + proBedLine, errorMessages);
-              }
-            }
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(11), fields[11])) {
-            logProbedError("12th column 'chromStarts' field must not be empty." + LINE_CONTENT + proBedLine, errorMessages);
-          } else {
-            String chromStarts = fields[11];
-            String[] chromStartsSplit = chromStarts.split(",");
-            if (chromStartsSplit.length!=blockCount) {
-              logProbedError("12th column 'chromStarts' field does not have the same amount of blocks as mentioned in 'blockCount'." + LINE_CONTENT + proBedLine, errorMessages);
-            }
-            for (String chromStartsPart : chromStartsSplit) {
-              if (org.apache.commons.lang3.StringUtils.isEmpty(chromStartsPart) || !chromStartsPart.matches("\\d+")) {
-                logProbedError("12th column 'chromStarts' field must list at least one integer containing at least one digit, with multiple values separated by commas." + LINE_CONTENT + proBedLine, errorMessages);
-              }
-            }
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(12), fields[12])) {
-            logProbedError("13th column 'proteinAccession' field must not be empty." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(13), fields[13])) {
-            logProbedError("14th column 'peptideSequence' field must not be empty." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(14), fields[14]) ||
-              (!fields[14].equals("unique") &&
-                  !fields[14].equals("not-unique[same-set]") &&
-                  !fields[14].equals("not-unique[subset]") &&
-                  !fields[14].equals("not-unique[conflict]") &&
-                  !fields[14].equals("not-unique[unknown]"))) {
-            logProbedError("15th column 'uniqueness' field must not be empty and must be either: 1. not-unique[same-set], " +
-                "2. not-unique[subset], 3. not-unique[conflict], or 4. not-unique[unknown]." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(15), fields[15])) {
-            logProbedError("16th column 'genomeRefVersion' field must not be empty." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(16), fields[16])) {
-            logProbedError("17th column 'psmScore' field must not be empty." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(17), fields[17])) {
-            logProbedError("18th column 'fdr' field must not be empty." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(18), fields[18])) {
-            logProbedError("19th column 'modifications' field must not be empty." + LINE_CONTENT + proBedLine, errorMessages);
-          } else {
-            String modifications = fields[18];
-            if (!modifications.equals(".")) {
-              String[] modificationsArray = modifications.split(",");
-              if (modificationsArray.length<1) {
-                logProbedError("19th column 'modifications' field must either be '.' for no modifications, or contain modifications of the format like '5-UNIMOD:4'." + LINE_CONTENT + proBedLine, errorMessages);
-              } else {
-                for (String modification : modificationsArray) {
-                  modification = modification.trim();
-                  if (!modification.matches("\\d+-\\w+:\\d+")) {
-                    logProbedError("19th column 'modifications' field must either be '.' for no modifications, or contain modifications of the format like '5-UNIMOD:4'." + LINE_CONTENT + proBedLine, errorMessages);
-                  }
-                }
-              }
-            }
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(19), fields[19])) {
-            logProbedError("20th column 'charge' field must not be empty and must contain at least one digit." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(20), fields[20])) {
-            logProbedError("21st column 'expMassToCharge' field must not be empty and must contain at least one digit." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(21), fields[21])) {
-            logProbedError("22nd column 'calcMassToCharge' field must not be empty and must contain at least one digit." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(22), fields[22])) {
-            logProbedError("23rd column 'psmRank' field must not be empty and must contain at least one digit." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(23), fields[23])) {
-            logProbedError("24th column 'datasetID' field must not be empty." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-          if (isInvalidAsqlTriple(asqlTriples.get(24), fields[24])) {
-            logProbedError("25th column 'uri' field must not be empty." + LINE_CONTENT + proBedLine, errorMessages);
-          }
-        }
-      }
-    }
+  private static Report validateProBed(CommandLine cmd) {
+    return validateProBed(new File(cmd.getOptionValue(ARG_PROBED)),
+        cmd.hasOption(ARG_REPORTFILE) ? new File(cmd.getOptionValue(ARG_REPORTFILE)) : null, cmd);
   }
 
   /**
-   * This method starts the validation of a proBed file according to the input command line arguments.
+   * This method validates a proBed file, e.g. of a submission manifest, with the column format, ASQL schema, name index
+   * and mapped validation options of the command line arguments.
+   * @param proBed the proBed file, which may be gzipped.
+   * @param REPORT_FILE the report file to write, or null.
    * @param cmd command line arguments.
-
+   * @return the validation report.
    */
-  private static Report validateProBed(CommandLine cmd) {
-    File proBed = new File(cmd.getOptionValue(ARG_PROBED));
+  private static Report validateProBed(File proBed, File REPORT_FILE, CommandLine cmd) {
     String COLUMN_FORMAT = cmd.hasOption(ARG_BED_COLUMN_FORMAT) ? cmd.getOptionValue(ARG_BED_COLUMN_FORMAT) : "BED12+13";
-    File REPORT_FILE = cmd.hasOption(ARG_REPORTFILE) ? new File(cmd.getOptionValue(ARG_REPORTFILE)) : null;
     File ASQL_FILE = null;
     if (cmd.hasOption(ARG_ASQLFILE)) {
-      new File(cmd.getOptionValue(ARG_ASQLFILE));
+      ASQL_FILE = new File(cmd.getOptionValue(ARG_ASQLFILE));
     } else {
-      URL url = Validator.class.getClassLoader().getResource("probed-1.0.0.as");
-      if (url == null) {
-        log.error("Unable to read default proBed ASQL schema file!");
-      } else {
-        try {
-          File tempAs = File.createTempFile("probed_default", ".as");
-          tempAs.deleteOnExit();
-          FileUtils.copyURLToFile(url, tempAs);
-          ASQL_FILE = tempAs;
-        } catch (IOException e) {
-          log.error("Unable to read default proBed ASQL schema file!", e);
+      ASQL_FILE = createDefaultProbedAsqlFile();
+    }
+    int threads = 0;
+    if (cmd.hasOption(ARG_MAPPED_VALIDATION)) {
+      threads = cmd.hasOption(ARG_THREADS) ? Integer.parseInt(cmd.getOptionValue(ARG_THREADS)) : Runtime.getRuntime().availableProcessors();
+    }
+    NameIndexType nameIndexType = NameIndexType.OFFHEAP;
+    if (cmd.hasOption(ARG_NAME_INDEX)) {
+      for (NameIndexType type : NameIndexType.values()) {
+        if (type.toString().equalsIgnoreCase(cmd.getOptionValue(ARG_NAME_INDEX))) {
+          nameIndexType = type;
         }
       }
     }
-    return validateProBed(proBed, COLUMN_FORMAT, REPORT_FILE, ASQL_FILE);
+    if (isGzipped(proBed)) {
+      try {
+        proBed = getFilesToValidate(proBed, getFileStager(cmd)).get(0);
+      } catch (IOException e) {
+        log.error("Unable to extract proBed file: " + proBed.getPath(), e);
+        Report report = new Report();
+        report.setFileName(proBed.getPath());
+        report.setStatus("ERROR: " + e.getMessage());
+        if (REPORT_FILE!=null) {
+          writeProbedReport(report, REPORT_FILE);
+        }
+        return report;
+      }
+    }
+    return validateProBed(proBed, COLUMN_FORMAT, REPORT_FILE, ASQL_FILE, threads, nameIndexType);
   }
 
   /**
-   * This method logs the proBed errors to the error log, and to a Set for them to be iterated over.
-   * @param errorMessage the proBed error message.
-   * @param errors the Set of errors for the message to be added to.
+   * This method creates the index used to check that the names in a proBed file are unique.
+   * @param nameIndexType the type of index.
+   * @param proBed the input proBed file.
+   * @return the name index.
+   * @throws IOException if there are problems creating the index.
    */
-  private static void logProbedError(String errorMessage, Set<String> errors) {
-    log.error(errorMessage);
-    errors.add(errorMessage);
+  private static NameIndex createNameIndex(NameIndexType nameIndexType, File proBed) throws IOException {
+    log.info("Using name index: " + nameIndexType);
+    switch (nameIndexType) {
+      case HEAP:
+        return new HeapNameIndex();
+      case EXACT:
+        return new OffHeapNameIndex(true);
+      case DISK:
+        return new SpillingNameIndex(proBed.length());
+      default:
+        return new OffHeapNameIndex(false);
+    }
   }
 
   /**
@@ -1255,90 +1873,12 @@ public class Validator {
     }
   }
 
-  /**
-   * This method checks if a field is allowed to be null or not.
-   * @param field the field to check.
-   * @param nullable if the field is allowed to be null.
-   * @return true if nullable, flase otherwise.
-   */
-  private static boolean validProbedFieldNullable(String field, boolean nullable) {
-    return (field!=null && !field.equalsIgnoreCase(".")) || nullable;
-  }
-
-  /**
-   * This method checks if a field is a non-empty String.
-   * @param field the field to check.
-   * @return true if the field is not null or empty, false otherwise
-   */
-  private static boolean validProbedFieldString(String field) {
-    return (!org.apache.commons.lang3.StringUtils.isEmpty(field));
-  }
-
-  /**
-   * This method checks if a field is an integer.
-   * @param field the field to check.
-   * @return true if the field is an integer, false otherwise.
-   */
-  private static boolean validProbedFieldInteger(String field) {
-    boolean result = true;
-    if (org.apache.commons.lang3.StringUtils.isEmpty(field) || !field.matches(".*\\d+.*")) {
-      result = false;
-    } else {
-      try {
-        int integer = Integer.parseInt(field);
-        log.debug("Integer OK: " + integer);
-      } catch (NumberFormatException nfe) {
-        log.error("Unable to cast field to an integer.", nfe);
-        result = false;
-      }
-    }
-    return result;
-  }
-  /**
-   * This method checks if a field is an unsigned integer.
-   * @param field the field to check.
-   * @return true if the field is an unsigned integer, false otherwise.
-   */
-  private static boolean validProbedFieldUnsignedInteger(String field) {
-    return !org.apache.commons.lang3.StringUtils.isEmpty(field) && field.matches(".*\\d+.*") && !field.contains("-") && validProbedFieldInteger(field);
-  }
-
-  /**
-   * This method checks if a field is a double.
-   * @param field the field to check.
-   * @return true if the field is a double, false otherwise.
-   */
-  private static boolean validProbedFieldDouble(String field) {
-    boolean result = true;
-    if (org.apache.commons.lang3.StringUtils.isEmpty(field) || !field.matches(".*\\d+.*")) {
-      result = false;
-    } else {
-      try {
-        double doubleNumber = Double.parseDouble(field);
-        log.debug("Field is a double: " + doubleNumber);
-      } catch (NumberFormatException nfe) {
-        log.error("Unable to cast field to a double.", nfe);
-        result = false;
-      }
-    }
-    return result;
-  }
-
-  /**
-   * This method checks if a field is a character.
-   * @param field the field to check.
-   * @return true if the field is a character, false otherwise.
-   */
-  private static boolean validProbedFieldCharacter(String field) {
-    return field.length()==1;
-  }
-
   /**
    * This method extracts all the data type information from an ASQL file.
    * @param asqlFile The input .as file.
    * @return A List of AsqlTriple objects of BED field information, in the order they were specified in the .as file.
    */
-  private static List<AsqlTriple> extractDatatypesAsql(File asqlFile) {
+  static List<AsqlTriple> extractDatatypesAsql(File asqlFile) {
     List<AsqlTriple> result = new ArrayList<>();
     try {
       List<String> lines = Files.readAllLines(asqlFile.toPath());
@@ -1351,6 +1891,7 @@ public class Validator {
           line = lines.get(i);
           line = line.replace(";", "");
           String[] parts = line.split(" {2}", 3);
+          asqlDataType = null;
           if (parts.length==3) {
             for (AsqlDataType asqlDataTypeToCheck : AsqlDataType.values()) {
               if (asqlDataTypeToCheck.toString().equals(parts[0])) {
@@ -1377,39 +1918,6 @@ public class Validator {
 
     return result;
   }
-
-  /**
-   * This method validates a field's value according to the AsqlTriple information for the data type.
-   * @param asqlTriple the information about the data type.
-   * @param value the value to be checked.
-   * @return true if the value is OK, false otherwise.
-   */
-  private static boolean isInvalidAsqlTriple(AsqlTriple asqlTriple, String value) {
-    boolean result = false;
-    switch (asqlTriple.getAsqlDataType()) {
-      case STRING:
-        result = validProbedFieldString(value);
-        break;
-      case INT:
-        result = validProbedFieldInteger(value);
-        break;
-      case UINT:
-        result = validProbedFieldUnsignedInteger(value);
-        break;
-      case CHAR_ONE:
-        result = validProbedFieldCharacter(value);
-        break;
-      case INT_BLOCKCOUNT:
-        result = validProbedFieldString(value); // needs to be validated in relation to the 'blockcount' field's value, handled elsewhere
-        break;
-      case DOUBLE:
-        result = validProbedFieldDouble(value);
-        break;
-      default:
-        log.error("Unrecognized ASQL data type: " + asqlTriple.getAsqlDataType());
-    }
-    return !result;
-  }
 }
 
 
@@ -0,0 +1,305 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static uk.ac.ebi.pride.toolsuite.pgconverter.utils.BedFieldParser.*;
+
+/**
+ * This class is an ASQL schema compiled for validating BED lines. The parsed ASQL triples are compiled once into
+ * an array of column validators, one per column, and the rules between columns of the same line. Well known BED
+ * and proBed columns are recognised by their name and get extra value checks, e.g. 'strand' must be '-' or '+',
+ * so any BED variant described by an ASQL file can be validated, not only BED12+13 proBed.
+ *
+ * @author Tobias Ternent
+ */
+public class AsqlSchema {
+
+  private static final Logger log = LoggerFactory.getLogger(AsqlSchema.class);
+  private static final String NOT_EMPTY = "field must not be empty.";
+  private static final String UNSIGNED_INTEGER = "field must not be empty and must be an unsigned integer containing at least one digit.";
+  private static final String AT_LEAST_ONE_DIGIT = "field must not be empty and must contain at least one digit.";
+  private static final String BLOCK_COUNT = "blockCount";
+  private static final String[] UNIQUENESS_VALUES = {"unique", "not-unique[same-set]", "not-unique[subset]",
+      "not-unique[conflict]", "not-unique[unknown]"};
+  /** proBed columns whose error messages have always used a different name than the one in the proBed .as file. */
+  private static final Map<String, String> DISPLAY_NAMES = new HashMap<>();
+  static {
+    DISPLAY_NAMES.put("genomeReferenceVersion", "genomeRefVersion");
+    DISPLAY_NAMES.put("exp_mass_to_charge", "expMassToCharge");
+  }
+
+  private final ColumnValidator[] columns;
+  private final CrossFieldRule[] crossFieldRules;
+  private final int nameColumn;
+  private final String nameNotUniqueMessage;
+
+  /**
+   * Constructor, sets the compiled validators.
+   *
+   * @param columns the column validators, in column order.
+   * @param crossFieldRules the rules between columns.
+   * @param nameColumn the index of the 'name' column that must be unique, or -1 if there is none.
+   * @param nameNotUniqueMessage the error message for a duplicate name.
+   */
+  private AsqlSchema(ColumnValidator[] columns, CrossFieldRule[] crossFieldRules, int nameColumn, String nameNotUniqueMessage) {
+    this.columns = columns;
+    this.crossFieldRules = crossFieldRules;
+    this.nameColumn = nameColumn;
+    this.nameNotUniqueMessage = nameNotUniqueMessage;
+  }
+
+  /**
+   * This method compiles the ASQL triples from an .AS file into validators.
+   *
+   * @param asqlTriples the ASQL triples, in column order.
+   * @return the compiled schema.
+   */
+  public static AsqlSchema compile(List<AsqlTriple> asqlTriples) {
+    ColumnValidator[] columns = new ColumnValidator[asqlTriples.size()];
+    int nameColumn = -1;
+    for (int i = 0; i < columns.length; i++) {
+      AsqlTriple asqlTriple = asqlTriples.get(i);
+      String name = asqlTriple.getAsqlName().trim();
+      columns[i] = compileColumn(i, name, asqlTriple.getAsqlDataType());
+      if (name.equals("name")) {
+        nameColumn = i;
+      }
+    }
+    List<CrossFieldRule> rules = new ArrayList<>();
+    addAscendingRule(rules, columns, "chromStart", "chromEnd", true);
+    addAscendingRule(rules, columns, "thickStart", "thickEnd", false);
+    int blockCountColumn = indexOf(columns, BLOCK_COUNT);
+    if (blockCountColumn >= 0) {
+      for (int i = 0; i < columns.length; i++) {
+        if (asqlTriples.get(i).getAsqlDataType() == Utility.AsqlDataType.INT_BLOCKCOUNT) {
+          rules.add(blockCountRule(blockCountColumn, i, label(i, columns[i].getName())));
+        }
+      }
+    }
+    return new AsqlSchema(columns, rules.toArray(new CrossFieldRule[0]), nameColumn,
+        nameColumn < 0 ? null : label(nameColumn, columns[nameColumn].getName()) + " field must be unique.");
+  }
+
+  /**
+   * This method compiles the validator of one column, from its data type and name.
+   *
+   * @param column the column index.
+   * @param name the column name.
+   * @param asqlDataType the column's ASQL data type.
+   * @return the column validator.
+   */
+  private static ColumnValidator compileColumn(int column, String name, Utility.AsqlDataType asqlDataType) {
+    String label = label(column, name) + " ";
+    if (asqlDataType == null) {
+      log.error("Unrecognized ASQL data type for column: " + name);
+      return new ColumnValidator(name, (b, s, e) -> false, label + "field has an unrecognized ASQL data type.", null, null);
+    }
+    ColumnValidator.FieldCheck typeCheck;
+    String typeMessage;
+    switch (asqlDataType) {
+      case INT:
+        typeCheck = BedFieldParser::isInteger;
+        typeMessage = AT_LEAST_ONE_DIGIT;
+        break;
+      case UINT:
+        typeCheck = BedFieldParser::isUnsignedInteger;
+        typeMessage = UNSIGNED_INTEGER;
+        break;
+      case CHAR_ONE:
+        typeCheck = (b, s, e) -> charLength(b, s, e) == 1;
+        typeMessage = "field must not be empty and must be a single character.";
+        break;
+      case DOUBLE:
+        typeCheck = BedFieldParser::isDouble;
+        typeMessage = AT_LEAST_ONE_DIGIT;
+        break;
+      default: // STRING and INT_BLOCKCOUNT, which is validated in relation to the 'blockCount' field's value by a rule
+        typeCheck = (b, s, e) -> !isEmpty(s, e);
+        typeMessage = NOT_EMPTY;
+    }
+    ColumnValidator.FieldCheck valueCheck = null;
+    String valueMessage = null;
+    if (asqlDataType == Utility.AsqlDataType.INT_BLOCKCOUNT) {
+      valueCheck = BedFieldParser::isDigitsList;
+      valueMessage = "field must list at least one integer containing at least one digit, with multiple values separated by commas.";
+    }
+    switch (name) {
+      case "score":
+        valueCheck = (b, s, e) -> isInteger(b, s, e) && parseInt(b, s, e) >= 0 && parseInt(b, s, e) <= 1000;
+        valueMessage = "field must be between 0 - 1000 inclusive.";
+        break;
+      case "strand":
+        typeMessage = "field must not be empty and must be either '-' or '+'.";
+        valueCheck = (b, s, e) -> equalsAscii(b, s, e, "-") || equalsAscii(b, s, e, "+");
+        valueMessage = typeMessage;
+        break;
+      case "reserved":
+        typeMessage = "field must not be empty and must be '0'.";
+        valueCheck = (b, s, e) -> equalsAscii(b, s, e, "0");
+        valueMessage = typeMessage;
+        break;
+      case BLOCK_COUNT:
+        typeMessage = "field must be an integer contain at least one digit.";
+        break;
+      case "uniqueness":
+        typeMessage = "field must not be empty and must be either: 1. not-unique[same-set], " +
+            "2. not-unique[subset], 3. not-unique[conflict], or 4. not-unique[unknown].";
+        valueCheck = (b, s, e) -> {
+          for (String value : UNIQUENESS_VALUES) {
+            if (equalsAscii(b, s, e, value)) {
+              return true;
+            }
+          }
+          return false;
+        };
+        valueMessage = typeMessage;
+        break;
+      case "psmScore":
+      case "fdr":
+        typeMessage = NOT_EMPTY;
+        break;
+      case "modifications":
+        valueCheck = BedFieldParser::isModificationList;
+        valueMessage = "field must either be '.' for no modifications, or contain modifications of the format like '5-UNIMOD:4'.";
+        break;
+      default:
+        break;
+    }
+    return new ColumnValidator(name, typeCheck, label + typeMessage, valueCheck, valueMessage == null ? null : label + valueMessage);
+  }
+
+  /**
+   * This method adds a rule that a start column's value must not be greater than an end column's value,
+   * if both columns are in the schema.
+   *
+   * @param rules the rules to add to.
+   * @param columns the column validators.
+   * @param startName the name of the start column.
+   * @param endName the name of the end column.
+   * @param endMustBeValid true to only check the order if the end column has a valid data type.
+   */
+  private static void addAscendingRule(List<CrossFieldRule> rules, ColumnValidator[] columns, String startName, String endName,
+                                       boolean endMustBeValid) {
+    int start = indexOf(columns, startName);
+    int end = indexOf(columns, endName);
+    if (start >= 0 && end >= 0) {
+      rules.add(new CrossFieldRule((b, starts, ends, validTypes) ->
+          (endMustBeValid && !validTypes[end]) || !isInteger(b, starts[start], ends[start]) || !isInteger(b, starts[end], ends[end]) ||
+              parseInt(b, starts[end], ends[end]) >= parseInt(b, starts[start], ends[start]),
+          ordinal(start + 1) + " and " + ordinal(end + 1) + " columns '" + startName + "' and '" + endName +
+              "' fields must be in ascending order."));
+    }
+  }
+
+  /**
+   * This method creates a rule that a block list column must have as many values as the 'blockCount' column.
+   *
+   * @param blockCountColumn the index of the 'blockCount' column.
+   * @param listColumn the index of the block list column.
+   * @param listLabel the ordinal and name of the block list column used for error messages.
+   * @return the rule.
+   */
+  private static CrossFieldRule blockCountRule(int blockCountColumn, int listColumn, String listLabel) {
+    return new CrossFieldRule((b, starts, ends, validTypes) ->
+        !validTypes[listColumn] || !isInteger(b, starts[blockCountColumn], ends[blockCountColumn]) ||
+            countSplitParts(b, starts[listColumn], ends[listColumn], COMMA) == parseInt(b, starts[blockCountColumn], ends[blockCountColumn]),
+        listLabel + " field does not have the same amount of blocks as mentioned in 'blockCount'.");
+  }
+
+  /**
+   * This method finds a column by name.
+   *
+   * @param columns the column validators.
+   * @param name the column name.
+   * @return the column index, or -1 if there is no such column.
+   */
+  private static int indexOf(ColumnValidator[] columns, String name) {
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].getName().equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * This method creates the label of a column used for error messages, e.g. "4th column 'name'".
+   * The proBed columns in DISPLAY_NAMES keep the names used in their earlier error messages.
+   *
+   * @param column the column index.
+   * @param name the column name.
+   * @return the column label.
+   */
+  private static String label(int column, String name) {
+    return ordinal(column + 1) + " column '" + DISPLAY_NAMES.getOrDefault(name, name) + "'";
+  }
+
+  /**
+   * This method formats a number as an English ordinal, e.g. 1st, 2nd, 3rd, 11th, 21st.
+   *
+   * @param number the number.
+   * @return the ordinal.
+   */
+  private static String ordinal(int number) {
+    int lastTwoDigits = number % 100;
+    if (lastTwoDigits >= 11 && lastTwoDigits <= 13) {
+      return number + "th";
+    }
+    switch (number % 10) {
+      case 1:
+        return number + "st";
+      case 2:
+        return number + "nd";
+      case 3:
+        return number + "rd";
+      default:
+        return number + "th";
+    }
+  }
+
+  /**
+   * Gets the number of columns.
+   * @return the number of columns.
+   */
+  public int getColumnCount() {
+    return columns.length;
+  }
+
+  /**
+   * Gets the column validators, in column order.
+   * @return the column validators.
+   */
+  public ColumnValidator[] getColumns() {
+    return columns;
+  }
+
+  /**
+   * Gets the rules between columns.
+   * @return the cross-field rules.
+   */
+  public CrossFieldRule[] getCrossFieldRules() {
+    return crossFieldRules;
+  }
+
+  /**
+   * Gets the index of the 'name' column that must be unique.
+   * @return the column index, or -1 if there is none.
+   */
+  public int getNameColumn() {
+    return nameColumn;
+  }
+
+  /**
+   * Gets the error message for a duplicate name.
+   * @return the error message.
+   */
+  public String getNameNotUniqueMessage() {
+    return nameNotUniqueMessage;
+  }
+}
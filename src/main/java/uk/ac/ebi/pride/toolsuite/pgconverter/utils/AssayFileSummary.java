@@ -13,6 +13,9 @@ import java.util.Set;
  * This class describes the summary information of an assay file.
  */
 public class AssayFileSummary implements Serializable {
+  // The value computed for this class before the PSM verification was added, so older summaries can still be read.
+  private static final long serialVersionUID = 8154176350056884527L;
+
   private int id;
   private String accession;
   private String name;
@@ -36,6 +39,7 @@ public class AssayFileSummary implements Serializable {
   private String exampleProteinAccession;
   private String searchDatabase;
   private double deltaMzErrorRate;
+  private PsmVerification psmVerification;
   private final Set<AssaySampleCvParam> samples;
   private final Set<AssayQuantificationMethodCvParam> quantificationMethods;
   private String experimentalFactor;
@@ -318,6 +322,24 @@ public class AssayFileSummary implements Serializable {
     return deltaMzErrorRate;
   }
 
+  /**
+   * Sets new psmVerification.
+   *
+   * @param psmVerification New value of psmVerification.
+   */
+  public void setPsmVerification(PsmVerification psmVerification) {
+    this.psmVerification = psmVerification;
+  }
+
+  /**
+   * Gets psmVerification, the result of checking every PSM, which is only set for exhaustive validation.
+   *
+   * @return Value of psmVerification, or null if the PSMs were only sampled.
+   */
+  public PsmVerification getPsmVerification() {
+    return psmVerification;
+  }
+
   /**
    * Sets new searchDatabase.
    *
@@ -0,0 +1,486 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class provides allocation-free checks for BED fields held as UTF-8 bytes, i.e. a region of a line buffer.
+ * The checks follow the same rules as the String-based checks that were previously used for proBed validation,
+ * e.g. Integer.parseInt() and Double.parseDouble(), without creating Strings or regular expressions.
+ *
+ * @author Tobias Ternent
+ */
+public final class BedFieldParser {
+
+  public static final byte TAB = '\t';
+  public static final byte COMMA = ',';
+
+  /**
+   * Private constructor, only static methods are provided.
+   */
+  private BedFieldParser() {
+  }
+
+  /**
+   * This method checks if a field is empty.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return true if the field is empty, false otherwise.
+   */
+  public static boolean isEmpty(int start, int end) {
+    return end <= start;
+  }
+
+  /**
+   * This method checks if a field contains at least one digit.
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return true if a digit was found, false otherwise.
+   */
+  public static boolean containsDigit(byte[] buffer, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (isDigit(buffer[i])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * This method checks if a field contains a particular character.
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @param character the ASCII character to look for.
+   * @return true if the character was found, false otherwise.
+   */
+  public static boolean contains(byte[] buffer, int start, int end, byte character) {
+    for (int i = start; i < end; i++) {
+      if (buffer[i] == character) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * This method checks if a field consists only of one or more digits, i.e. "\\d+".
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return true if the field only has digits, false otherwise.
+   */
+  public static boolean isDigits(byte[] buffer, int start, int end) {
+    if (end <= start) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      if (!isDigit(buffer[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * This method checks if a field can be parsed as a Java int, following the rules of Integer.parseInt().
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return true if the field is an integer, false otherwise.
+   */
+  public static boolean isInteger(byte[] buffer, int start, int end) {
+    if (end <= start) {
+      return false;
+    }
+    int i = start;
+    boolean negative = false;
+    if (buffer[i] == '-' || buffer[i] == '+') {
+      negative = buffer[i] == '-';
+      i++;
+      if (i == end) {
+        return false;
+      }
+    }
+    long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+    long value = 0;
+    for (; i < end; i++) {
+      byte b = buffer[i];
+      if (!isDigit(b)) {
+        return false;
+      }
+      value = value * 10 + (b - '0');
+      if (value > limit) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * This method checks if a field is an unsigned integer: an integer that does not contain a '-' character.
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return true if the field is an unsigned integer, false otherwise.
+   */
+  public static boolean isUnsignedInteger(byte[] buffer, int start, int end) {
+    return !contains(buffer, start, end, (byte) '-') && isInteger(buffer, start, end);
+  }
+
+  /**
+   * This method parses a field as an int. The field should have been checked with isInteger() beforehand.
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return the parsed int value.
+   */
+  public static int parseInt(byte[] buffer, int start, int end) {
+    int i = start;
+    boolean negative = false;
+    if (buffer[i] == '-' || buffer[i] == '+') {
+      negative = buffer[i] == '-';
+      i++;
+    }
+    long value = 0;
+    for (; i < end; i++) {
+      value = value * 10 + (buffer[i] - '0');
+    }
+    return (int) (negative ? -value : value);
+  }
+
+  /**
+   * This method checks if a field contains at least one digit and can be parsed as a Java double.
+   * Decimal numbers are checked directly on the bytes, anything else (e.g. hexadecimal floating point)
+   * falls back to Double.parseDouble().
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return true if the field is a double, false otherwise.
+   */
+  public static boolean isDouble(byte[] buffer, int start, int end) {
+    if (!containsDigit(buffer, start, end)) {
+      return false;
+    }
+    if (isDecimalDouble(buffer, start, end)) {
+      return true;
+    }
+    try {
+      Double.parseDouble(toString(buffer, start, end));
+      return true;
+    } catch (NumberFormatException nfe) {
+      return false;
+    }
+  }
+
+  /**
+   * This method checks the plain decimal form accepted by Double.parseDouble(), i.e.
+   * [+-](digits[.digits]|.digits)([eE][+-]digits)[fFdD], surrounded by optional whitespace.
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return true if the field is a decimal double, false otherwise.
+   */
+  private static boolean isDecimalDouble(byte[] buffer, int start, int end) {
+    int i = start;
+    while (i < end && (buffer[i] & 0xff) <= ' ') {
+      i++;
+    }
+    while (end > i && (buffer[end - 1] & 0xff) <= ' ') {
+      end--;
+    }
+    if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+      i++;
+    }
+    int digits = 0;
+    while (i < end && isDigit(buffer[i])) {
+      i++;
+      digits++;
+    }
+    if (i < end && buffer[i] == '.') {
+      i++;
+      while (i < end && isDigit(buffer[i])) {
+        i++;
+        digits++;
+      }
+    }
+    if (digits == 0) {
+      return false;
+    }
+    if (i < end && (buffer[i] == 'e' || buffer[i] == 'E')) {
+      i++;
+      if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+        i++;
+      }
+      int exponentDigits = 0;
+      while (i < end && isDigit(buffer[i])) {
+        i++;
+        exponentDigits++;
+      }
+      if (exponentDigits == 0) {
+        return false;
+      }
+    }
+    if (i < end && (buffer[i] == 'f' || buffer[i] == 'F' || buffer[i] == 'd' || buffer[i] == 'D')) {
+      i++;
+    }
+    return i == end;
+  }
+
+  /**
+   * This method checks if a field is made up of word characters, i.e. "\\w+".
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return true if the field only has word characters, false otherwise.
+   */
+  public static boolean isWord(byte[] buffer, int start, int end) {
+    if (end <= start) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      byte b = buffer[i];
+      if (!(isDigit(b) || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * This method checks if a field is a modification of the format like '5-UNIMOD:4', i.e. "\\d+-\\w+:\\d+",
+   * after trimming any surrounding whitespace.
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return true if the field is a modification, false otherwise.
+   */
+  public static boolean isModification(byte[] buffer, int start, int end) {
+    while (start < end && (buffer[start] & 0xff) <= ' ') {
+      start++;
+    }
+    while (end > start && (buffer[end - 1] & 0xff) <= ' ') {
+      end--;
+    }
+    int dash = indexOf(buffer, start, end, (byte) '-');
+    if (dash < 0 || !isDigits(buffer, start, dash)) {
+      return false;
+    }
+    int colon = lastIndexOf(buffer, dash + 1, end, (byte) ':');
+    return colon >= 0 && isWord(buffer, dash + 1, colon) && isDigits(buffer, colon + 1, end);
+  }
+
+  /**
+   * This method checks if every part of a comma separated field consists only of digits, the same way as splitting
+   * it with String.split(","), e.g. 'blockSizes' or 'chromStarts'.
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return true if every part only has digits, false otherwise.
+   */
+  public static boolean isDigitsList(byte[] buffer, int start, int end) {
+    int splitEnd = splitEnd(buffer, start, end, COMMA);
+    if (splitEnd == start && splitEnd != end) {
+      return true;
+    }
+    int partStart = start;
+    while (true) {
+      int partEnd = partEnd(buffer, partStart, splitEnd, COMMA);
+      if (!isDigits(buffer, partStart, partEnd)) {
+        return false;
+      }
+      if (partEnd >= splitEnd) {
+        return true;
+      }
+      partStart = partEnd + 1;
+    }
+  }
+
+  /**
+   * This method checks if a field is either '.' for no modifications, or a comma separated list of modifications
+   * of the format like '5-UNIMOD:4'.
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return true if the field lists valid modifications, false otherwise.
+   */
+  public static boolean isModificationList(byte[] buffer, int start, int end) {
+    if (equalsAscii(buffer, start, end, ".")) {
+      return true;
+    }
+    int splitEnd = splitEnd(buffer, start, end, COMMA);
+    if (splitEnd == start && splitEnd != end) {
+      return false;
+    }
+    int partStart = start;
+    while (true) {
+      int partEnd = partEnd(buffer, partStart, splitEnd, COMMA);
+      if (!isModification(buffer, partStart, partEnd)) {
+        return false;
+      }
+      if (partEnd >= splitEnd) {
+        return true;
+      }
+      partStart = partEnd + 1;
+    }
+  }
+
+  /**
+   * This method checks if a field is equal to an ASCII value.
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @param value the ASCII value to compare against.
+   * @return true if the field equals the value, false otherwise.
+   */
+  public static boolean equalsAscii(byte[] buffer, int start, int end, String value) {
+    if (end - start != value.length()) {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      if (buffer[start + i] != value.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * This method calculates the number of Java chars a UTF-8 field would decode to, i.e. String.length().
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return the number of UTF-16 chars.
+   */
+  public static int charLength(byte[] buffer, int start, int end) {
+    int length = 0;
+    for (int i = start; i < end; i++) {
+      int b = buffer[i] & 0xff;
+      if (b < 0x80 || b >= 0xc0) {
+        length += b >= 0xf0 ? 2 : 1;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * This method counts the parts of a separated field the same way as String.split(),
+   * i.e. trailing empty parts are not counted.
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @param separator the ASCII separator, e.g. a tab or comma.
+   * @return the number of parts.
+   */
+  public static int countSplitParts(byte[] buffer, int start, int end, byte separator) {
+    int splitEnd = splitEnd(buffer, start, end, separator);
+    if (splitEnd == end) {
+      return 1 + count(buffer, start, end, separator);
+    }
+    return splitEnd == start ? 0 : 1 + count(buffer, start, splitEnd, separator);
+  }
+
+  /**
+   * This method finds the end of the last part of a separated field the same way as String.split(),
+   * i.e. ignoring trailing empty parts.
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @param separator the ASCII separator, e.g. a tab or comma.
+   * @return the end index of the last non-empty part, exclusive.
+   */
+  public static int splitEnd(byte[] buffer, int start, int end, byte separator) {
+    if (!contains(buffer, start, end, separator)) {
+      return end;
+    }
+    while (end > start && buffer[end - 1] == separator) {
+      end--;
+    }
+    return end;
+  }
+
+  /**
+   * This method counts the occurrences of an ASCII character in a field.
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @param character the character to count.
+   * @return the number of occurrences.
+   */
+  public static int count(byte[] buffer, int start, int end, byte character) {
+    int count = 0;
+    for (int i = start; i < end; i++) {
+      if (buffer[i] == character) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * This method finds the end of the part of a separated field that begins at a position.
+   * @param buffer the line buffer.
+   * @param start the start index of the part, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @param separator the ASCII separator, e.g. a tab or comma.
+   * @return the end index of the part, exclusive.
+   */
+  public static int partEnd(byte[] buffer, int start, int end, byte separator) {
+    int i = indexOf(buffer, start, end, separator);
+    return i < 0 ? end : i;
+  }
+
+  /**
+   * This method finds the first index of an ASCII character in a field.
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @param character the character to find.
+   * @return the index of the character, or -1 if it was not found.
+   */
+  public static int indexOf(byte[] buffer, int start, int end, byte character) {
+    for (int i = start; i < end; i++) {
+      if (buffer[i] == character) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * This method finds the last index of an ASCII character in a field.
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @param character the character to find.
+   * @return the index of the character, or -1 if it was not found.
+   */
+  public static int lastIndexOf(byte[] buffer, int start, int end, byte character) {
+    for (int i = end - 1; i >= start; i--) {
+      if (buffer[i] == character) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * This method decodes a field as a UTF-8 String, e.g. for reporting errors.
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return the field as a String.
+   */
+  public static String toString(byte[] buffer, int start, int end) {
+    return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * This method checks if a byte is an ASCII digit.
+   * @param b the byte to check.
+   * @return true if the byte is a digit, false otherwise.
+   */
+  private static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+}
@@ -0,0 +1,659 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.Deflater;
+
+/**
+ * This class writes bigBed files natively, instead of with the UCSC bedToBigBed tool. A BED file, already sorted by
+ * chromosome and start, is read in a single pass: its records are packed into zlib-compressed data blocks as they
+ * are read, and then the chromosome B+ tree and the R-tree index of the data blocks are written after the data.
+ * The number of fields and the autoSql come from the ASQL schema. Zoom levels are not written, which the bigBed
+ * format allows, so browsers read the full data at all scales.
+ *
+ * @author Tobias Ternent
+ */
+public class BigBedWriter {
+
+  private static final Logger log = LoggerFactory.getLogger(BigBedWriter.class);
+  private static final int BIGBED_MAGIC = 0x8789F2EB;
+  private static final int BPT_MAGIC = 0x78CA8C91;
+  private static final int CIRTREE_MAGIC = 0x2468ACE0;
+  private static final int VERSION = 4;
+  private static final int HEADER_SIZE = 64;
+  private static final int TOTAL_SUMMARY_SIZE = 40;
+  private static final int BLOCK_SIZE = 256;
+  private static final int ITEMS_PER_SLOT = 512;
+  private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+  private final String autoSql;
+  private final int fieldCount;
+  private final int definedFieldCount;
+  private final Map<String, Integer> chromSizes;
+
+  /**
+   * Constructor, sets the schema and chromosome sizes of the bigBed file.
+   *
+   * @param autoSql the autoSql text, i.e. the contents of the .as file.
+   * @param fieldCount the total number of fields, i.e. the number of ASQL columns.
+   * @param definedFieldCount the number of standard BED fields, e.g. 12 for BED12+13.
+   * @param chromSizes the chromosome sizes, by chromosome name.
+   */
+  public BigBedWriter(String autoSql, int fieldCount, int definedFieldCount, Map<String, Integer> chromSizes) {
+    this.autoSql = autoSql;
+    this.fieldCount = fieldCount;
+    this.definedFieldCount = definedFieldCount;
+    this.chromSizes = chromSizes;
+  }
+
+  /**
+   * This method reads a chromosome sizes file, with a chromosome name and its size on each line.
+   *
+   * @param chromSizesFile the chromosome sizes file.
+   * @return the chromosome sizes, by chromosome name.
+   * @throws IOException if there are problems reading the file.
+   */
+  public static Map<String, Integer> readChromSizes(File chromSizesFile) throws IOException {
+    Map<String, Integer> result = new HashMap<>();
+    for (String line : Files.readAllLines(chromSizesFile.toPath())) {
+      String[] parts = line.trim().split("\\s+");
+      if (parts.length >= 2 && !parts[0].startsWith("#")) {
+        try {
+          result.put(parts[0], Integer.parseInt(parts[1]));
+        } catch (NumberFormatException e) {
+          throw new IOException("Invalid chromosome size in: " + chromSizesFile.getPath() + "\n" + line);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * This method converts a sorted BED file into a bigBed file.
+   *
+   * @param bed the input BED file, sorted by chromosome and start.
+   * @param bigBed the output bigBed file.
+   * @throws IOException if there are problems reading or writing the files, or the input is not sorted.
+   */
+  public void write(Path bed, Path bigBed) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(bed, StandardCharsets.UTF_8);
+         FileChannel channel = FileChannel.open(bigBed, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+             StandardOpenOption.TRUNCATE_EXISTING)) {
+      LittleEndianOutput out = new LittleEndianOutput(channel);
+      out.skip(HEADER_SIZE);
+      long autoSqlOffset = out.position();
+      out.writeBytes(autoSql.getBytes(StandardCharsets.UTF_8));
+      out.writeByte(0);
+      long totalSummaryOffset = out.position();
+      out.skip(TOTAL_SUMMARY_SIZE);
+      long dataOffset = out.position();
+      out.writeLong(0);
+      DataWriter dataWriter = new DataWriter(out);
+      String line;
+      while ((line = reader.readLine()) != null) {
+        dataWriter.add(line);
+      }
+      dataWriter.finish();
+      long indexOffset = out.position();
+      writeIndex(out, dataWriter.blocks, indexOffset);
+      long chromTreeOffset = out.position();
+      writeChromTree(out, dataWriter.chroms);
+      out.flush();
+
+      ByteBuffer header = newBuffer(HEADER_SIZE);
+      header.putInt(BIGBED_MAGIC);
+      header.putShort((short) VERSION);
+      header.putShort((short) 0);
+      header.putLong(chromTreeOffset);
+      header.putLong(dataOffset);
+      header.putLong(indexOffset);
+      header.putShort((short) fieldCount);
+      header.putShort((short) definedFieldCount);
+      header.putLong(autoSqlOffset);
+      header.putLong(totalSummaryOffset);
+      header.putInt(dataWriter.maxBlockSize);
+      header.putLong(0);
+      writeAt(channel, header, 0);
+      writeAt(channel, dataWriter.summary.toBuffer(), totalSummaryOffset);
+      ByteBuffer itemCount = newBuffer(8);
+      itemCount.putLong(dataWriter.itemCount);
+      writeAt(channel, itemCount, dataOffset);
+      log.info("Wrote bigBed file: " + bigBed + " with " + dataWriter.itemCount + " items in " + dataWriter.blocks.size() +
+          " blocks, on " + dataWriter.chroms.size() + " chromosomes.");
+    }
+  }
+
+  /**
+   * This method writes the R-tree index of the data blocks. Every node is padded to the full block size.
+   *
+   * @param out the output.
+   * @param blocks the data blocks, in file order.
+   * @param indexOffset the offset of the index in the file.
+   * @throws IOException if there are problems writing the file.
+   */
+  private void writeIndex(LittleEndianOutput out, List<Block> blocks, long indexOffset) throws IOException {
+    List<List<Block>> levels = new ArrayList<>();
+    List<Block> level = blocks;
+    levels.add(level);
+    while (level.size() > 1) {
+      List<Block> parents = new ArrayList<>();
+      for (int i = 0; i < level.size(); i += BLOCK_SIZE) {
+        parents.add(Block.enclosing(level.subList(i, Math.min(level.size(), i + BLOCK_SIZE))));
+      }
+      level = parents;
+      levels.add(level);
+    }
+    Block root = level.isEmpty() ? new Block(0, 0, 0, 0, 0, 0) : level.get(0);
+    out.writeInt(CIRTREE_MAGIC);
+    out.writeInt(BLOCK_SIZE);
+    out.writeLong(blocks.size());
+    out.writeInt(root.startChrom);
+    out.writeInt(root.startBase);
+    out.writeInt(root.endChrom);
+    out.writeInt(root.endBase);
+    out.writeLong(indexOffset);
+    out.writeInt(ITEMS_PER_SLOT);
+    out.writeInt(0);
+    if (blocks.isEmpty()) {
+      return;
+    }
+    final int indexNodeSize = 4 + BLOCK_SIZE * 24;
+    final int leafNodeSize = 4 + BLOCK_SIZE * 32;
+    long levelOffset = out.position();
+    for (int i = levels.size() - 2; i >= 1; i--) {
+      List<Block> nodes = levels.get(i);
+      int nodeCount = (nodes.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+      long childLevelOffset = levelOffset + (long) nodeCount * indexNodeSize;
+      int childNodeSize = i == 1 ? leafNodeSize : indexNodeSize;
+      for (int node = 0; node < nodeCount; node++) {
+        int count = Math.min(BLOCK_SIZE, nodes.size() - node * BLOCK_SIZE);
+        out.writeByte(0);
+        out.writeByte(0);
+        out.writeShort(count);
+        for (int j = 0; j < BLOCK_SIZE; j++) {
+          if (j < count) {
+            int child = node * BLOCK_SIZE + j;
+            nodes.get(child).writeBounds(out);
+            out.writeLong(childLevelOffset + (long) child * childNodeSize);
+          } else {
+            out.skip(24);
+          }
+        }
+      }
+      levelOffset = childLevelOffset;
+    }
+    for (int node = 0; node * BLOCK_SIZE < blocks.size(); node++) {
+      int count = Math.min(BLOCK_SIZE, blocks.size() - node * BLOCK_SIZE);
+      out.writeByte(1);
+      out.writeByte(0);
+      out.writeShort(count);
+      for (int j = 0; j < BLOCK_SIZE; j++) {
+        if (j < count) {
+          Block block = blocks.get(node * BLOCK_SIZE + j);
+          block.writeBounds(out);
+          out.writeLong(block.offset);
+          out.writeLong(block.size);
+        } else {
+          out.skip(32);
+        }
+      }
+    }
+  }
+
+  /**
+   * This method writes the B+ tree of the chromosome names, sizes and ids. Every node is padded to the full block size.
+   *
+   * @param out the output.
+   * @param chromIds the chromosome ids, by chromosome name.
+   * @throws IOException if there are problems writing the file.
+   */
+  private void writeChromTree(LittleEndianOutput out, Map<String, Integer> chromIds) throws IOException {
+    List<byte[]> keys = new ArrayList<>();
+    int keySize = 1;
+    for (String chrom : chromIds.keySet()) {
+      byte[] key = chrom.getBytes(StandardCharsets.UTF_8);
+      keys.add(key);
+      keySize = Math.max(keySize, key.length);
+    }
+    keys.sort(BigBedWriter::compareUnsigned);
+    int itemCount = keys.size();
+    int blockSize = Math.max(1, Math.min(BLOCK_SIZE, itemCount));
+    final int valueSize = 8;
+    out.writeInt(BPT_MAGIC);
+    out.writeInt(blockSize);
+    out.writeInt(keySize);
+    out.writeInt(valueSize);
+    out.writeLong(itemCount);
+    out.writeLong(0);
+    if (itemCount == 0) {
+      return;
+    }
+    int levels = 1;
+    for (int count = itemCount; count > blockSize; count = (count + blockSize - 1) / blockSize) {
+      levels++;
+    }
+    final int indexNodeSize = 4 + blockSize * (keySize + 8);
+    final int leafNodeSize = 4 + blockSize * (keySize + valueSize);
+    long levelOffset = out.position();
+    for (int level = levels - 1; level >= 1; level--) {
+      long itemsPerSlot = 1;
+      for (int i = 0; i < level; i++) {
+        itemsPerSlot *= blockSize;
+      }
+      long itemsPerNode = itemsPerSlot * blockSize;
+      int nodeCount = (int) ((itemCount + itemsPerNode - 1) / itemsPerNode);
+      long nextChild = levelOffset + (long) nodeCount * indexNodeSize;
+      int childNodeSize = level == 1 ? leafNodeSize : indexNodeSize;
+      for (long i = 0; i < itemCount; i += itemsPerNode) {
+        int count = (int) Math.min(blockSize, (itemCount - i + itemsPerSlot - 1) / itemsPerSlot);
+        out.writeByte(0);
+        out.writeByte(0);
+        out.writeShort(count);
+        for (int j = 0; j < blockSize; j++) {
+          if (j < count) {
+            writeKey(out, keys.get((int) (i + j * itemsPerSlot)), keySize);
+            out.writeLong(nextChild);
+            nextChild += childNodeSize;
+          } else {
+            out.skip(keySize + 8);
+          }
+        }
+      }
+      levelOffset += (long) nodeCount * indexNodeSize;
+    }
+    for (int i = 0; i < itemCount; i += blockSize) {
+      int count = Math.min(blockSize, itemCount - i);
+      out.writeByte(1);
+      out.writeByte(0);
+      out.writeShort(count);
+      for (int j = 0; j < blockSize; j++) {
+        if (j < count) {
+          byte[] key = keys.get(i + j);
+          String chrom = new String(key, StandardCharsets.UTF_8);
+          writeKey(out, key, keySize);
+          out.writeInt(chromIds.get(chrom));
+          out.writeInt(chromSizes.get(chrom));
+        } else {
+          out.skip(keySize + valueSize);
+        }
+      }
+    }
+  }
+
+  /**
+   * This method writes a B+ tree key, padded with zeros to the key size.
+   */
+  private static void writeKey(LittleEndianOutput out, byte[] key, int keySize) throws IOException {
+    out.writeBytes(key);
+    out.skip(keySize - key.length);
+  }
+
+  /**
+   * This method compares byte arrays as unsigned bytes, i.e. the order of the B+ tree keys.
+   */
+  private static int compareUnsigned(byte[] a, byte[] b) {
+    for (int i = 0; i < Math.min(a.length, b.length); i++) {
+      int result = (a[i] & 0xff) - (b[i] & 0xff);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return a.length - b.length;
+  }
+
+  private static ByteBuffer newBuffer(int size) {
+    return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static void writeAt(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  /**
+   * This class packs the BED records into compressed data blocks, as they are read. A block holds up to
+   * ITEMS_PER_SLOT records of the same chromosome.
+   */
+  private class DataWriter {
+    private final LittleEndianOutput out;
+    private final Map<String, Integer> chroms = new LinkedHashMap<>();
+    private final List<Block> blocks = new ArrayList<>();
+    private final Summary summary = new Summary();
+    private final Deflater deflater = new Deflater();
+    private ByteBuffer block = newBuffer(WRITE_BUFFER_SIZE);
+    private byte[] compressed = new byte[WRITE_BUFFER_SIZE];
+    private int blockItems;
+    private int blockChrom = -1;
+    private int blockStart;
+    private int blockEnd;
+    private String chrom;
+    private int chromId = -1;
+    private int lastStart;
+    private long itemCount;
+    private long lineNumber;
+    private int maxBlockSize;
+
+    /**
+     * Constructor, sets the output.
+     *
+     * @param out the output.
+     */
+    DataWriter(LittleEndianOutput out) {
+      this.out = out;
+    }
+
+    /**
+     * This method adds a BED line to the current data block.
+     *
+     * @param line the BED line.
+     * @throws IOException if there are problems writing the file, or the line is invalid or out of order.
+     */
+    void add(String line) throws IOException {
+      lineNumber++;
+      if (line.isEmpty() || line.startsWith("#") || line.startsWith("track") || line.startsWith("browser")) {
+        return;
+      }
+      int chromEnd = line.indexOf('\t');
+      int startEnd = chromEnd < 0 ? -1 : line.indexOf('\t', chromEnd + 1);
+      if (startEnd < 0) {
+        throw new IOException("Line " + lineNumber + " has fewer than 3 fields.");
+      }
+      int endEnd = line.indexOf('\t', startEnd + 1);
+      String lineChrom = line.substring(0, chromEnd);
+      int start;
+      int end;
+      try {
+        start = Integer.parseInt(line.substring(chromEnd + 1, startEnd));
+        end = Integer.parseInt(endEnd < 0 ? line.substring(startEnd + 1) : line.substring(startEnd + 1, endEnd));
+      } catch (NumberFormatException e) {
+        throw new IOException("Line " + lineNumber + " has an invalid start or end: " + line);
+      }
+      if (!lineChrom.equals(chrom)) {
+        if (chroms.containsKey(lineChrom)) {
+          throw new IOException("Line " + lineNumber + " is not sorted, chromosome " + lineChrom + " was seen before.");
+        }
+        Integer chromSize = chromSizes.get(lineChrom);
+        if (chromSize == null) {
+          throw new IOException("Line " + lineNumber + " has chromosome " + lineChrom + " which is not in the chromosome sizes.");
+        }
+        flushBlock();
+        summary.endChrom();
+        chrom = lineChrom;
+        chromId = chroms.size();
+        chroms.put(chrom, chromId);
+        lastStart = 0;
+      }
+      if (start < lastStart) {
+        throw new IOException("Line " + lineNumber + " is not sorted, its start is before the previous line's start.");
+      }
+      if (end < start || end > chromSizes.get(chrom)) {
+        throw new IOException("Line " + lineNumber + " has an end before its start, or after the end of the chromosome.");
+      }
+      lastStart = start;
+      if (blockItems == ITEMS_PER_SLOT) {
+        flushBlock();
+      }
+      byte[] rest = endEnd < 0 ? new byte[0] : line.substring(endEnd + 1).getBytes(StandardCharsets.UTF_8);
+      ensureCapacity(13 + rest.length);
+      block.putInt(chromId);
+      block.putInt(start);
+      block.putInt(end);
+      block.put(rest);
+      block.put((byte) 0);
+      if (blockItems == 0) {
+        blockChrom = chromId;
+        blockStart = start;
+        blockEnd = end;
+      } else {
+        blockEnd = Math.max(blockEnd, end);
+      }
+      blockItems++;
+      itemCount++;
+      summary.add(start, end);
+    }
+
+    /**
+     * This method writes the remaining data block, and finishes the summary.
+     *
+     * @throws IOException if there are problems writing the file.
+     */
+    void finish() throws IOException {
+      flushBlock();
+      summary.endChrom();
+      deflater.end();
+    }
+
+    private void ensureCapacity(int size) {
+      if (block.remaining() < size) {
+        ByteBuffer larger = newBuffer(Math.max(block.capacity() * 2, block.position() + size));
+        block.flip();
+        larger.put(block);
+        block = larger;
+      }
+    }
+
+    /**
+     * This method compresses the current data block, writes it, and records it for the index.
+     *
+     * @throws IOException if there are problems writing the file.
+     */
+    private void flushBlock() throws IOException {
+      if (blockItems == 0) {
+        return;
+      }
+      int size = block.position();
+      maxBlockSize = Math.max(maxBlockSize, size);
+      deflater.reset();
+      deflater.setInput(block.array(), 0, size);
+      deflater.finish();
+      int compressedSize = 0;
+      while (!deflater.finished()) {
+        if (compressedSize == compressed.length) {
+          compressed = Arrays.copyOf(compressed, compressed.length * 2);
+        }
+        compressedSize += deflater.deflate(compressed, compressedSize, compressed.length - compressedSize);
+      }
+      long offset = out.position();
+      out.writeBytes(compressed, 0, compressedSize);
+      blocks.add(new Block(blockChrom, blockStart, blockChrom, blockEnd, offset, compressedSize));
+      block.clear();
+      blockItems = 0;
+    }
+  }
+
+  /**
+   * A data block, or an R-tree node, with its genomic bounds and its location in the file.
+   */
+  private static class Block {
+    private final int startChrom;
+    private final int startBase;
+    private final int endChrom;
+    private final int endBase;
+    private final long offset;
+    private final long size;
+
+    Block(int startChrom, int startBase, int endChrom, int endBase, long offset, long size) {
+      this.startChrom = startChrom;
+      this.startBase = startBase;
+      this.endChrom = endChrom;
+      this.endBase = endBase;
+      this.offset = offset;
+      this.size = size;
+    }
+
+    /**
+     * This method creates the bounds enclosing sorted blocks.
+     *
+     * @param children the blocks, sorted by start.
+     * @return the enclosing bounds.
+     */
+    static Block enclosing(List<Block> children) {
+      Block first = children.get(0);
+      int endChrom = first.endChrom;
+      int endBase = first.endBase;
+      for (Block child : children) {
+        if (child.endChrom > endChrom || (child.endChrom == endChrom && child.endBase > endBase)) {
+          endChrom = child.endChrom;
+          endBase = child.endBase;
+        }
+      }
+      return new Block(first.startChrom, first.startBase, endChrom, endBase, 0, 0);
+    }
+
+    void writeBounds(LittleEndianOutput out) throws IOException {
+      out.writeInt(startChrom);
+      out.writeInt(startBase);
+      out.writeInt(endChrom);
+      out.writeInt(endBase);
+    }
+  }
+
+  /**
+   * The total summary of the coverage depth, calculated by sweeping over the sorted records of each chromosome.
+   */
+  private static class Summary {
+    private final PriorityQueue<Integer> ends = new PriorityQueue<>();
+    private long basesCovered;
+    private double minVal = Double.MAX_VALUE;
+    private double maxVal = -Double.MAX_VALUE;
+    private double sumData;
+    private double sumSquares;
+    private int position;
+
+    /**
+     * This method adds a record, whose start is not before the previous record's start.
+     */
+    void add(int start, int end) {
+      advance(start);
+      position = start;
+      ends.add(end);
+    }
+
+    /**
+     * This method finishes the current chromosome.
+     */
+    void endChrom() {
+      advance(Integer.MAX_VALUE);
+      position = 0;
+    }
+
+    /**
+     * This method accumulates the coverage depth up to a position.
+     */
+    private void advance(int to) {
+      while (!ends.isEmpty() && position < to) {
+        int next = Math.min(to, ends.peek());
+        accumulate(next - position, ends.size());
+        position = next;
+        while (!ends.isEmpty() && ends.peek() <= position) {
+          ends.poll();
+        }
+      }
+    }
+
+    private void accumulate(long bases, int depth) {
+      if (bases > 0) {
+        basesCovered += bases;
+        minVal = Math.min(minVal, depth);
+        maxVal = Math.max(maxVal, depth);
+        sumData += (double) bases * depth;
+        sumSquares += (double) bases * depth * depth;
+      }
+    }
+
+    ByteBuffer toBuffer() {
+      ByteBuffer buffer = newBuffer(TOTAL_SUMMARY_SIZE);
+      buffer.putLong(basesCovered);
+      buffer.putDouble(basesCovered == 0 ? 0 : minVal);
+      buffer.putDouble(basesCovered == 0 ? 0 : maxVal);
+      buffer.putDouble(sumData);
+      buffer.putDouble(sumSquares);
+      return buffer;
+    }
+  }
+
+  /**
+   * A buffered little-endian output to a file channel, which keeps track of its file position.
+   */
+  private static class LittleEndianOutput {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = newBuffer(WRITE_BUFFER_SIZE);
+    private long flushed;
+
+    LittleEndianOutput(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    long position() {
+      return flushed + buffer.position();
+    }
+
+    void writeByte(int value) throws IOException {
+      ensure(1);
+      buffer.put((byte) value);
+    }
+
+    void writeShort(int value) throws IOException {
+      ensure(2);
+      buffer.putShort((short) value);
+    }
+
+    void writeInt(int value) throws IOException {
+      ensure(4);
+      buffer.putInt(value);
+    }
+
+    void writeLong(long value) throws IOException {
+      ensure(8);
+      buffer.putLong(value);
+    }
+
+    void writeBytes(byte[] bytes) throws IOException {
+      writeBytes(bytes, 0, bytes.length);
+    }
+
+    void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+      while (length > 0) {
+        ensure(1);
+        int chunk = Math.min(length, buffer.remaining());
+        buffer.put(bytes, offset, chunk);
+        offset += chunk;
+        length -= chunk;
+      }
+    }
+
+    void skip(int count) throws IOException {
+      for (int i = 0; i < count; i++) {
+        writeByte(0);
+      }
+    }
+
+    private void ensure(int size) throws IOException {
+      if (buffer.remaining() < size) {
+        flush();
+      }
+    }
+
+    void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        flushed += channel.write(buffer, flushed);
+      }
+      buffer.clear();
+    }
+  }
+}
@@ -0,0 +1,268 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.pride.utilities.data.controller.DataAccessController;
+import uk.ac.ebi.pride.utilities.data.controller.cache.CacheEntry;
+import uk.ac.ebi.pride.utilities.data.controller.impl.ControllerImpl.CachedDataAccessController;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class bounds the caches of a controller while its file is validated. Each limited cache entry, e.g. of the
+ * proteins, peptides, or spectra, is replaced with a map of at most its limit of values, which evicts the least
+ * recently used value when it is full, and which counts its hits, misses, and evictions. Only entries whose values
+ * the controller reads again from the file when they are missing should be limited, not e.g. the lists of IDs,
+ * which it only reads once. The limits are set with the -cachelimits argument, e.g. PROTEIN=20000,SPECTRUM=5000, or
+ * else DEFAULT_LIMITS, as a good limit depends on the heap and the files. The bounded maps are synchronized, including
+ * their bulk operations and iteration, whose views are copies.
+ *
+ * @author Tobias Ternent
+ */
+public class BoundedCachePolicy {
+
+  private static final Logger log = LoggerFactory.getLogger(BoundedCachePolicy.class);
+  public static final String DEFAULT_LIMITS = "PROTEIN=20000,PEPTIDE=50000,SPECTRUM=5000";
+
+  private final Map<CacheEntry, Integer> limits;
+  private final Map<CacheEntry, LruMap> caches = new EnumMap<>(CacheEntry.class);
+
+  /**
+   * Constructor, sets the limit of each cache entry.
+   *
+   * @param limits the largest number of values of each limited cache entry.
+   */
+  public BoundedCachePolicy(Map<CacheEntry, Integer> limits) {
+    this.limits = limits.isEmpty() ? Collections.emptyMap() : new EnumMap<>(limits);
+  }
+
+  /**
+   * This method parses the cache limits, e.g. 'PROTEIN=20000,SPECTRUM=5000'. Cache entries which this version of the
+   * controllers does not have are skipped.
+   *
+   * @param limits the cache limits.
+   * @return the limit of each cache entry.
+   * @throws IllegalArgumentException if a limit cannot be parsed.
+   */
+  public static Map<CacheEntry, Integer> parseLimits(String limits) {
+    Map<CacheEntry, Integer> result = new EnumMap<>(CacheEntry.class);
+    for (String limit : limits.split(",")) {
+      if (limit.trim().isEmpty()) {
+        continue;
+      }
+      String[] parts = limit.split("=");
+      int size;
+      try {
+        size = parts.length == 2 ? Integer.parseInt(parts[1].trim()) : 0;
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Unable to parse cache limit, e.g. PROTEIN=20000: " + limit, e);
+      }
+      if (size < 1) {
+        throw new IllegalArgumentException("Cache limit has to be a cache entry and a size of at least 1, e.g. PROTEIN=20000: " + limit);
+      }
+      CacheEntry cacheEntry = Arrays.stream(CacheEntry.values())
+          .filter(entry -> entry.name().equalsIgnoreCase(parts[0].trim())).findFirst().orElse(null);
+      if (cacheEntry == null) {
+        log.info("Skipping limit of unknown cache entry: " + parts[0].trim());
+      } else {
+        result.put(cacheEntry, size);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * This method bounds the limited caches of a controller, keeping the values which are already cached, up to the
+   * limit. It can be applied again, e.g. after the controller has replaced a cache, and caches which are bounded
+   * already are kept, with their counters.
+   *
+   * @param controller the controller, whose caches are only bounded if it is a CachedDataAccessController.
+   */
+  public void apply(DataAccessController controller) {
+    if (!(controller instanceof CachedDataAccessController) || limits.isEmpty()) {
+      return;
+    }
+    CachedDataAccessController cachedController = (CachedDataAccessController) controller;
+    for (Map.Entry<CacheEntry, Integer> limit : limits.entrySet()) {
+      Object cache = cachedController.getCache().get(limit.getKey());
+      if (cache instanceof LruMap) {
+        continue;
+      }
+      if (cache != null && !(cache instanceof Map)) {
+        log.debug("Not bounding cache entry which is not a map: " + limit.getKey().name());
+        continue;
+      }
+      LruMap lruMap = caches.computeIfAbsent(limit.getKey(), entry -> new LruMap(limit.getValue()));
+      if (cache != null) {
+        lruMap.putAll((Map<?, ?>) cache);
+      }
+      cachedController.getCache().store(limit.getKey(), lruMap);
+      log.debug("Bounded cache entry " + limit.getKey().name() + " to " + limit.getValue() + " values.");
+    }
+  }
+
+  /**
+   * Gets the number of lookups which found a value in a cache entry.
+   *
+   * @param cacheEntry the cache entry.
+   * @return the number of hits, or 0 if the cache entry is not bounded.
+   */
+  public long getHits(CacheEntry cacheEntry) {
+    return caches.containsKey(cacheEntry) ? caches.get(cacheEntry).hits.get() : 0;
+  }
+
+  /**
+   * Gets the number of lookups which did not find a value in a cache entry.
+   *
+   * @param cacheEntry the cache entry.
+   * @return the number of misses, or 0 if the cache entry is not bounded.
+   */
+  public long getMisses(CacheEntry cacheEntry) {
+    return caches.containsKey(cacheEntry) ? caches.get(cacheEntry).misses.get() : 0;
+  }
+
+  /**
+   * Gets the number of values evicted from a cache entry.
+   *
+   * @param cacheEntry the cache entry.
+   * @return the number of evictions, or 0 if the cache entry is not bounded.
+   */
+  public long getEvictions(CacheEntry cacheEntry) {
+    return caches.containsKey(cacheEntry) ? caches.get(cacheEntry).evictions.get() : 0;
+  }
+
+  /**
+   * This method formats the counters of the bounded cache entries, e.g.
+   * 'PROTEIN: 20000/20000 values, 1500 hits, 90000 misses, 70000 evictions'.
+   *
+   * @return the formatted counters, one line per cache entry.
+   */
+  public String statisticsToString() {
+    List<String> lines = new ArrayList<>();
+    for (Map.Entry<CacheEntry, LruMap> cache : caches.entrySet()) {
+      LruMap lruMap = cache.getValue();
+      lines.add(cache.getKey().name() + ": " + lruMap.size() + "/" + lruMap.limit + " values, " + lruMap.hits.get() + " hits, " +
+          lruMap.misses.get() + " misses, " + lruMap.evictions.get() + " evictions");
+    }
+    return String.join(System.lineSeparator(), lines);
+  }
+
+  /**
+   * This method logs the counters of the bounded cache entries.
+   */
+  public void logStatistics() {
+    if (!caches.isEmpty()) {
+      log.info("Cache statistics:" + System.lineSeparator() + statisticsToString());
+    }
+  }
+
+  /**
+   * A map of at most a limit of values, in access order, which evicts the least recently used value when it is full,
+   * and counts its hits, misses, and evictions. Every access locks the map, as even a lookup reorders an access
+   * ordered map, and the key, value, and entry views are copies, so iterating them does not need the lock.
+   */
+  private static class LruMap extends AbstractMap<Object, Object> {
+    private final int limit;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final LinkedHashMap<Object, Object> map;
+
+    /**
+     * Constructor, sets the limit.
+     *
+     * @param limit the largest number of values.
+     */
+    LruMap(int limit) {
+      this.limit = limit;
+      this.map = new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+          if (size() > LruMap.this.limit) {
+            evictions.incrementAndGet();
+            return true;
+          }
+          return false;
+        }
+      };
+    }
+
+    @Override
+    public synchronized Object get(Object key) {
+      Object value = map.get(key);
+      (value == null ? misses : hits).incrementAndGet();
+      return value;
+    }
+
+    @Override
+    public synchronized Object getOrDefault(Object key, Object defaultValue) {
+      Object value = get(key);
+      return value == null ? defaultValue : value;
+    }
+
+    @Override
+    public synchronized Object put(Object key, Object value) {
+      return map.put(key, value);
+    }
+
+    @Override
+    public synchronized Object putIfAbsent(Object key, Object value) {
+      return map.putIfAbsent(key, value);
+    }
+
+    @Override
+    public synchronized void putAll(Map<?, ?> values) {
+      map.putAll(values);
+    }
+
+    @Override
+    public synchronized Object remove(Object key) {
+      return map.remove(key);
+    }
+
+    @Override
+    public synchronized void clear() {
+      map.clear();
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+      return map.containsKey(key);
+    }
+
+    @Override
+    public synchronized boolean containsValue(Object value) {
+      return map.containsValue(value);
+    }
+
+    @Override
+    public synchronized int size() {
+      return map.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+      return map.isEmpty();
+    }
+
+    @Override
+    public synchronized Set<Object> keySet() {
+      return Collections.unmodifiableSet(new LinkedHashSet<>(map.keySet()));
+    }
+
+    @Override
+    public synchronized Collection<Object> values() {
+      return Collections.unmodifiableList(new ArrayList<>(map.values()));
+    }
+
+    @Override
+    public synchronized Set<Map.Entry<Object, Object>> entrySet() {
+      Set<Map.Entry<Object, Object>> entries = new LinkedHashSet<>();
+      for (Map.Entry<Object, Object> entry : map.entrySet()) {
+        entries.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+      }
+      return Collections.unmodifiableSet(entries);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+/**
+ * This class validates the fields of one BED column. It is compiled once from the column's ASQL data type and name,
+ * with a check for the data type, and optionally a check for the value that only runs if the data type is valid.
+ *
+ * @author Tobias Ternent
+ */
+public final class ColumnValidator {
+
+  private final String name;
+  private final FieldCheck typeCheck;
+  private final String typeMessage;
+  private final FieldCheck valueCheck;
+  private final String valueMessage;
+
+  /**
+   * Constructor, sets the column's checks and their error messages.
+   *
+   * @param name the column's name.
+   * @param typeCheck the check of the field's data type.
+   * @param typeMessage the error message if the data type is invalid.
+   * @param valueCheck the check of the field's value, or null if there is none.
+   * @param valueMessage the error message if the value is invalid, or null if there is no value check.
+   */
+  public ColumnValidator(String name, FieldCheck typeCheck, String typeMessage, FieldCheck valueCheck, String valueMessage) {
+    this.name = name;
+    this.typeCheck = typeCheck;
+    this.typeMessage = typeMessage;
+    this.valueCheck = valueCheck;
+    this.valueMessage = valueMessage;
+  }
+
+  /**
+   * This method checks if a field has a valid data type.
+   *
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return true if the data type is valid, false otherwise.
+   */
+  public boolean isValidType(byte[] buffer, int start, int end) {
+    return typeCheck.test(buffer, start, end);
+  }
+
+  /**
+   * This method checks if a field, already of a valid data type, has a valid value.
+   *
+   * @param buffer the line buffer.
+   * @param start the start index of the field, inclusive.
+   * @param end the end index of the field, exclusive.
+   * @return true if the value is valid, false otherwise.
+   */
+  public boolean isValidValue(byte[] buffer, int start, int end) {
+    return valueCheck == null || valueCheck.test(buffer, start, end);
+  }
+
+  /**
+   * Gets the name.
+   * @return the name.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Gets the data type error message.
+   * @return the data type error message.
+   */
+  public String getTypeMessage() {
+    return typeMessage;
+  }
+
+  /**
+   * Gets the value error message.
+   * @return the value error message.
+   */
+  public String getValueMessage() {
+    return valueMessage;
+  }
+
+  /**
+   * A check of a field held as bytes in a line buffer.
+   */
+  public interface FieldCheck {
+    /**
+     * Checks a field.
+     *
+     * @param buffer the line buffer.
+     * @param start the start index of the field, inclusive.
+     * @param end the end index of the field, exclusive.
+     * @return true if the field is valid, false otherwise.
+     */
+    boolean test(byte[] buffer, int start, int end);
+  }
+}
@@ -0,0 +1,60 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+/**
+ * This class validates the relation between fields of the same line, e.g. that 'chromStart' is not after 'chromEnd'.
+ *
+ * @author Tobias Ternent
+ */
+public final class CrossFieldRule {
+
+  private final LineCheck check;
+  private final String message;
+
+  /**
+   * Constructor, sets the check and its error message.
+   *
+   * @param check the check of the line's fields.
+   * @param message the error message if the check fails.
+   */
+  public CrossFieldRule(LineCheck check, String message) {
+    this.check = check;
+    this.message = message;
+  }
+
+  /**
+   * This method checks the fields of a line.
+   *
+   * @param buffer the line buffer.
+   * @param fieldStarts the start indexes of the fields, inclusive.
+   * @param fieldEnds the end indexes of the fields, exclusive.
+   * @param validTypes if each field has a valid data type.
+   * @return true if the fields are valid, false otherwise.
+   */
+  public boolean isValid(byte[] buffer, int[] fieldStarts, int[] fieldEnds, boolean[] validTypes) {
+    return check.test(buffer, fieldStarts, fieldEnds, validTypes);
+  }
+
+  /**
+   * Gets the error message.
+   * @return the error message.
+   */
+  public String getMessage() {
+    return message;
+  }
+
+  /**
+   * A check of the fields of a line held as bytes in a line buffer.
+   */
+  public interface LineCheck {
+    /**
+     * Checks the fields of a line.
+     *
+     * @param buffer the line buffer.
+     * @param fieldStarts the start indexes of the fields, inclusive.
+     * @param fieldEnds the end indexes of the fields, exclusive.
+     * @param validTypes if each field has a valid data type.
+     * @return true if the fields are valid, false otherwise.
+     */
+    boolean test(byte[] buffer, int[] fieldStarts, int[] fieldEnds, boolean[] validTypes);
+  }
+}
@@ -0,0 +1,184 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class gets input files ready for validation or conversion, by extracting gzipped files and creating
+ * temporary files, for many files at once. Files are handled concurrently, but only a few files are read from the
+ * same file system at once, so the time taken grows with the amount of data for each disk, not with the number of
+ * files. Each gzipped file is also decompressed by several threads, see GzipDecompressor, from one pool shared by
+ * all the files, so the number of inflating threads stays bounded however many files are handled at once. The
+ * results are always in the same order as the input files, and the throughput of each file is logged.
+ *
+ * @author Tobias Ternent
+ */
+public class FileStager {
+
+  private static final Logger log = LoggerFactory.getLogger(FileStager.class);
+  private static final int STREAMS_PER_FILE_STORE = 2;
+  private static final String GZIP_EXTENSION = ".gz";
+
+  private final int threads;
+  private final GzipDecompressor decompressor;
+  private final Map<String, Semaphore> fileStoreStreams = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor, sets the number of threads.
+   *
+   * @param threads the maximum number of files to handle at once.
+   */
+  public FileStager(int threads) {
+    this.threads = Math.max(1, threads);
+    this.decompressor = new GzipDecompressor(this.threads);
+  }
+
+  /**
+   * This method extracts gzipped files. Files which are not gzipped are returned as they are. All the files are
+   * handled, even if some of them cannot be extracted.
+   *
+   * @param files the input files.
+   * @param outputFolder the directory to extract to, or null to extract each file next to itself.
+   * @return the extracted files, in the same order as the input files.
+   * @throws IOException if any of the files could not be extracted, with the other failures suppressed.
+   */
+  public List<File> extract(List<File> files, File outputFolder) throws IOException {
+    List<Throwable> failures = new ArrayList<>();
+    List<File> results = forEach(files, file -> {
+      if (!file.getName().endsWith(GZIP_EXTENSION)) {
+        return file;
+      }
+      File directory = outputFolder != null ? outputFolder : file.getAbsoluteFile().getParentFile();
+      File outputFile = new File(directory, file.getName().replace(GZIP_EXTENSION, ""));
+      File partFile = new File(directory, outputFile.getName() + ".part");
+      log.info("Unzipping file: " + file.getAbsolutePath());
+      long start = System.currentTimeMillis();
+      try {
+        decompressor.decompress(file, partFile);
+      } catch (IOException e) {
+        log.error("Deleting partially unzipped file " + partFile.getName() + ": " + partFile.delete());
+        throw new IOException("Unable to unzip file: " + file.getAbsolutePath() + " " + e.getMessage(), e);
+      }
+      Files.move(partFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      logThroughput("Unzipped file: " + outputFile.getPath(), outputFile.length(), start);
+      return outputFile;
+    }, failures);
+    if (!failures.isEmpty()) {
+      IOException exception = new IOException(failures.size() + " of " + files.size() + " files could not be extracted. " +
+          failures.get(0).getMessage(), failures.get(0));
+      failures.subList(1, failures.size()).forEach(exception::addSuppressed);
+      throw exception;
+    }
+    return results;
+  }
+
+  /**
+   * This method creates a new temporary file for each input file. Each temporary file may be a hard or symbolic link
+   * to its input file, so it must only be read.
+   *
+   * @param files the input files.
+   * @return the temporary files, in the same order as the input files, with null for files which could not be staged.
+   * @see Utility#createNewTempFile(File)
+   */
+  public List<File> stage(List<File> files) {
+    return forEach(files, file -> {
+      long start = System.currentTimeMillis();
+      File tempFile = Utility.createNewTempFile(file);
+      if (tempFile != null) {
+        logThroughput("Staged temp file: " + tempFile.getPath(), tempFile.length(), start);
+      }
+      return tempFile;
+    }, new ArrayList<>());
+  }
+
+  /**
+   * This method handles all the input files concurrently, limiting the number of files read from each file system.
+   *
+   * @param files the input files.
+   * @param task the task to handle each file.
+   * @param failures the failures of the tasks, which are added to in the order of the input files.
+   * @return the results, in the same order as the input files, with null for files which failed.
+   */
+  List<File> forEach(List<File> files, FileTask task, List<Throwable> failures) {
+    List<File> results = new ArrayList<>(Collections.nCopies(files.size(), null));
+    if (files.isEmpty()) {
+      return results;
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+    try {
+      List<Future<File>> futures = new ArrayList<>();
+      for (File file : files) {
+        futures.add(pool.submit(() -> {
+          Semaphore streams = fileStoreStreams.computeIfAbsent(getFileStoreName(file), name -> new Semaphore(STREAMS_PER_FILE_STORE));
+          streams.acquire();
+          try {
+            return task.apply(file);
+          } finally {
+            streams.release();
+          }
+        }));
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          results.set(i, futures.get(i).get());
+        } catch (ExecutionException e) {
+          log.error("Problem getting file ready: " + files.get(i).getAbsolutePath(), e.getCause());
+          failures.add(e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.error("Interrupted while getting files ready.");
+      failures.add(new InterruptedIOException("Interrupted while getting files ready."));
+    } finally {
+      pool.shutdownNow();
+    }
+    return results;
+  }
+
+  /**
+   * This method gets the name of the file system a file is on.
+   *
+   * @param file the file.
+   * @return the name of the file system, or an empty string if it is unknown.
+   */
+  private static String getFileStoreName(File file) {
+    try {
+      return Files.getFileStore(file.toPath()).name();
+    } catch (IOException e) {
+      return "";
+    }
+  }
+
+  /**
+   * This method logs how quickly a file was handled.
+   *
+   * @param message the message to log.
+   * @param bytes the size of the file.
+   * @param start the time handling the file started, in milliseconds.
+   */
+  private static void logThroughput(String message, long bytes, long start) {
+    long millis = Math.max(1, System.currentTimeMillis() - start);
+    log.info(String.format("%s (%.1f MB in %d ms, %.1f MB/s)", message, bytes / 1048576.0, millis, bytes / 1048576.0 / (millis / 1000.0)));
+  }
+
+  /**
+   * A task to handle one input file.
+   */
+  interface FileTask {
+    /**
+     * This method handles an input file.
+     *
+     * @param file the input file.
+     * @return the resulting file, or null if it failed.
+     * @throws IOException if there are problems handling the file.
+     */
+    File apply(File file) throws IOException;
+  }
+}
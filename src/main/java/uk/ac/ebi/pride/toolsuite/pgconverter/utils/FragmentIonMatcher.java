@@ -0,0 +1,261 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import java.util.Locale;
+
+/**
+ * This class matches fragment ions against the peaks of one spectrum. The peaks are sorted by m/z once, which is
+ * skipped if they are already sorted, and then each fragment ion is found with a binary search, within an m/z
+ * tolerance in ppm or Da, so matching k fragment ions against n peaks takes O(k log n) instead of O(k n). The default
+ * tolerance is zero, i.e. the m/z has to be the same, as when the peaks were scanned one by one.
+ * Everything is kept in primitive arrays, without boxing. A matcher can be reused for all the peptides of its spectrum.
+ *
+ * @author Tobias Ternent
+ */
+public class FragmentIonMatcher {
+
+  public static final String DEFAULT_TOLERANCE = "0Da";
+  private static final int INSERTION_SORT_SIZE = 16;
+
+  private final double[] mz;
+  private final double[] intensity;
+  private final Tolerance tolerance;
+
+  /**
+   * Constructor, indexes the peaks of a spectrum.
+   *
+   * @param mz the m/z values of the peaks, which are not changed.
+   * @param intensity the intensities of the peaks, in the same order as the m/z values, which are not changed.
+   * @param tolerance the m/z tolerance.
+   */
+  public FragmentIonMatcher(double[] mz, double[] intensity, Tolerance tolerance) {
+    if (mz.length != intensity.length) {
+      throw new IllegalArgumentException("There are " + mz.length + " m/z values but " + intensity.length + " intensities.");
+    }
+    this.mz = mz.clone();
+    this.intensity = intensity.clone();
+    this.tolerance = tolerance;
+    if (!isSorted(this.mz)) {
+      sort(this.mz, this.intensity, 0, this.mz.length - 1);
+    }
+  }
+
+  /**
+   * This method indexes the peaks of a spectrum, from its mass intensity map.
+   *
+   * @param massIntensityMap the peaks, each an array of the m/z and the intensity.
+   * @param tolerance the m/z tolerance.
+   * @return the matcher for the spectrum.
+   */
+  public static FragmentIonMatcher of(double[][] massIntensityMap, Tolerance tolerance) {
+    double[] mz = new double[massIntensityMap.length];
+    double[] intensity = new double[massIntensityMap.length];
+    for (int i = 0; i < massIntensityMap.length; i++) {
+      mz[i] = massIntensityMap[i][0];
+      intensity[i] = massIntensityMap[i][1];
+    }
+    return new FragmentIonMatcher(mz, intensity, tolerance);
+  }
+
+  /**
+   * This method checks if all the fragment ions match a peak of the spectrum.
+   *
+   * @param ionMz the m/z values of the fragment ions.
+   * @param ionIntensity the intensities of the fragment ions, in the same order as the m/z values.
+   * @return true if every fragment ion matches a peak, false otherwise.
+   * @see #matches(double, double)
+   */
+  public boolean matchesAll(double[] ionMz, double[] ionIntensity) {
+    for (int i = 0; i < ionMz.length; i++) {
+      if (!matches(ionMz[i], ionIntensity[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * This method counts how many of the fragment ions match a peak of the spectrum.
+   *
+   * @param ionMz the m/z values of the fragment ions.
+   * @param ionIntensity the intensities of the fragment ions, in the same order as the m/z values.
+   * @return the number of fragment ions which match a peak.
+   * @see #matches(double, double)
+   */
+  public int countMatches(double[] ionMz, double[] ionIntensity) {
+    int matched = 0;
+    for (int i = 0; i < ionMz.length; i++) {
+      matched += matches(ionMz[i], ionIntensity[i]) ? 1 : 0;
+    }
+    return matched;
+  }
+
+  /**
+   * This method checks if a fragment ion matches a peak of the spectrum: the peak's m/z has to be within the
+   * tolerance of the ion's m/z, and its intensity has to be the same as the ion's. So an ion with a NaN intensity
+   * never matches, and an ion with a zero intensity only matches a peak with a zero intensity.
+   *
+   * @param ionMz the m/z of the fragment ion.
+   * @param ionIntensity the intensity of the fragment ion.
+   * @return true if the fragment ion matches a peak, false otherwise.
+   */
+  public boolean matches(double ionMz, double ionIntensity) {
+    double window = tolerance.getWindow(ionMz);
+    double highest = ionMz + window;
+    for (int i = lowerBound(ionMz - window); i < mz.length && mz[i] <= highest; i++) {
+      if (intensity[i] == ionIntensity) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * This method finds the first peak with an m/z of at least a value.
+   *
+   * @param value the lowest m/z.
+   * @return the index of the first peak with at least that m/z, or the number of peaks if there is none.
+   */
+  private int lowerBound(double value) {
+    int low = 0;
+    int high = mz.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (mz[middle] < value) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * This method checks if the m/z values are already in ascending order.
+   *
+   * @param values the m/z values.
+   * @return true if they are sorted, false otherwise.
+   */
+  private static boolean isSorted(double[] values) {
+    for (int i = 1; i < values.length; i++) {
+      if (values[i] < values[i - 1]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * This method sorts the peaks by m/z, keeping each intensity with its m/z.
+   *
+   * @param keys the m/z values.
+   * @param values the intensities.
+   * @param from the first index of the range to sort.
+   * @param to the last index of the range to sort.
+   */
+  private static void sort(double[] keys, double[] values, int from, int to) {
+    while (to - from >= INSERTION_SORT_SIZE) {
+      double pivot = keys[(from + to) >>> 1];
+      int i = from;
+      int j = to;
+      while (i <= j) {
+        while (keys[i] < pivot) {
+          i++;
+        }
+        while (keys[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          swap(keys, values, i++, j--);
+        }
+      }
+      if (j - from < to - i) {
+        sort(keys, values, from, j);
+        from = i;
+      } else {
+        sort(keys, values, i, to);
+        to = j;
+      }
+    }
+    for (int i = from + 1; i <= to; i++) {
+      for (int j = i; j > from && keys[j] < keys[j - 1]; j--) {
+        swap(keys, values, j, j - 1);
+      }
+    }
+  }
+
+  /**
+   * This method swaps two peaks.
+   *
+   * @param keys the m/z values.
+   * @param values the intensities.
+   * @param i the index of one peak.
+   * @param j the index of the other peak.
+   */
+  private static void swap(double[] keys, double[] values, int i, int j) {
+    double key = keys[i];
+    keys[i] = keys[j];
+    keys[j] = key;
+    double value = values[i];
+    values[i] = values[j];
+    values[j] = value;
+  }
+
+  /**
+   * An m/z tolerance, either in parts per million of the m/z, or an absolute value in Daltons.
+   */
+  public static class Tolerance {
+    private final double value;
+    private final boolean ppm;
+
+    /**
+     * Constructor, sets the tolerance.
+     *
+     * @param value the tolerance value.
+     * @param ppm true if the value is in parts per million, false if it is in Daltons.
+     */
+    public Tolerance(double value, boolean ppm) {
+      if (value < 0 || Double.isNaN(value)) {
+        throw new IllegalArgumentException("Tolerance has to be zero or more: " + value);
+      }
+      this.value = value;
+      this.ppm = ppm;
+    }
+
+    /**
+     * This method parses a tolerance, e.g. '10ppm' or '0.02Da'. A value without a unit is in Daltons.
+     *
+     * @param tolerance the tolerance.
+     * @return the parsed tolerance.
+     * @throws IllegalArgumentException if the tolerance cannot be parsed.
+     */
+    public static Tolerance parse(String tolerance) {
+      String lowerCase = tolerance.trim().toLowerCase(Locale.ROOT);
+      try {
+        if (lowerCase.endsWith("ppm")) {
+          return new Tolerance(Double.parseDouble(lowerCase.substring(0, lowerCase.length() - 3).trim()), true);
+        } else if (lowerCase.endsWith("da")) {
+          return new Tolerance(Double.parseDouble(lowerCase.substring(0, lowerCase.length() - 2).trim()), false);
+        } else {
+          return new Tolerance(Double.parseDouble(lowerCase), false);
+        }
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Unable to parse m/z tolerance, e.g. 10ppm or 0.02Da: " + tolerance, e);
+      }
+    }
+
+    /**
+     * This method gets the tolerance around an m/z value.
+     *
+     * @param mz the m/z value.
+     * @return the largest difference from the m/z value which is still a match.
+     */
+    public double getWindow(double mz) {
+      return ppm ? Math.abs(mz) * value / 1.0e6 : value;
+    }
+
+    @Override
+    public String toString() {
+      return value + (ppm ? "ppm" : "Da");
+    }
+  }
+}
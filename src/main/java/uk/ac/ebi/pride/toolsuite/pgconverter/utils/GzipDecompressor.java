@@ -0,0 +1,490 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * This class decompresses gzipped files using several threads. BGZF files, i.e. gzip files made of independent
+ * members which each record their compressed size, as written by bgzip, are inflated block by block in parallel, and
+ * the blocks are written in order. Other gzip files, including multi-member files, can only be inflated in order, so
+ * reading the compressed file, inflating it, and writing the output are pipelined on three threads instead.
+ * All the files decompressed by one instance share one pool of inflating threads, so decompressing several files at
+ * once never inflates on more BGZF threads than the pool has.
+ *
+ * @author Tobias Ternent
+ */
+public class GzipDecompressor {
+
+  private static final Logger log = LoggerFactory.getLogger(GzipDecompressor.class);
+  private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+  private static final int QUEUED_CHUNKS = 4;
+  private static final int BGZF_HEADER_SIZE = 18;
+  private static final int BGZF_MAX_BLOCK_SIZE = 64 * 1024;
+  private static final int BGZF_BLOCKS_PER_TASK = 64;
+  private static final byte[] END_OF_CHUNKS = new byte[0];
+
+  private final int threads;
+  private final ExecutorService pool;
+
+  /**
+   * Constructor, creates the pool of threads to inflate BGZF blocks with, which is shared by all the files being
+   * decompressed. Its threads are daemon threads, which end when they have been idle for a while.
+   *
+   * @param threads the number of threads to inflate BGZF blocks with.
+   */
+  public GzipDecompressor(int threads) {
+    this.threads = Math.max(1, threads);
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(this.threads, this.threads, 30, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "gzip-inflater");
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    this.pool = executor;
+  }
+
+  /**
+   * This method decompresses a gzipped file.
+   *
+   * @param gzip the gzipped file.
+   * @param output the output file.
+   * @return the number of decompressed bytes written.
+   * @throws IOException if there are problems reading or writing the files, or the input is not a valid gzip file.
+   */
+  public long decompress(File gzip, File output) throws IOException {
+    if (isBgzf(gzip)) {
+      try {
+        return decompressBgzf(gzip, output);
+      } catch (NotBgzfException e) {
+        log.info("Not all of the gzip members are BGZF blocks, decompressing in order instead: " + gzip.getPath());
+      }
+    }
+    return decompressPipelined(gzip, output);
+  }
+
+  /**
+   * This method checks if a file starts with a BGZF block.
+   *
+   * @param gzip the gzipped file.
+   * @return true if the file starts with a BGZF block, false otherwise.
+   * @throws IOException if there are problems reading the file.
+   */
+  private static boolean isBgzf(File gzip) throws IOException {
+    try (FileChannel channel = FileChannel.open(gzip.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(BGZF_MAX_BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      while (header.hasRemaining() && channel.read(header) > 0) {
+        // keep reading the first block's header.
+      }
+      header.flip();
+      return getBgzfBlockSize(header) > 0;
+    }
+  }
+
+  /**
+   * This method gets the size of the BGZF block at the start of a buffer, from its 'BC' extra subfield.
+   *
+   * @param buffer the buffer, positioned at the start of a gzip member. Its position is not changed.
+   * @return the total size of the block, or -1 if the buffer does not start with a complete BGZF header.
+   */
+  private static int getBgzfBlockSize(ByteBuffer buffer) {
+    int start = buffer.position();
+    if (buffer.remaining() < BGZF_HEADER_SIZE || (buffer.get(start) & 0xff) != 0x1f || (buffer.get(start + 1) & 0xff) != 0x8b ||
+        buffer.get(start + 2) != 8 || (buffer.get(start + 3) & 4) == 0) {
+      return -1;
+    }
+    int extraLength = buffer.getShort(start + 10) & 0xffff;
+    int subfield = start + 12;
+    int extraEnd = subfield + extraLength;
+    if (extraEnd > buffer.limit()) {
+      return -1;
+    }
+    while (subfield + 4 <= extraEnd) {
+      int subfieldLength = buffer.getShort(subfield + 2) & 0xffff;
+      if (buffer.get(subfield) == 'B' && buffer.get(subfield + 1) == 'C' && subfieldLength == 2) {
+        return (buffer.getShort(subfield + 4) & 0xffff) + 1;
+      }
+      subfield += 4 + subfieldLength;
+    }
+    return -1;
+  }
+
+  /**
+   * This method decompresses a BGZF file, inflating groups of blocks in parallel and writing them in order.
+   *
+   * @param gzip the BGZF file.
+   * @param output the output file.
+   * @return the number of decompressed bytes written.
+   * @throws IOException if there are problems reading or writing the files.
+   * @throws NotBgzfException if a member of the file is not a BGZF block.
+   */
+  private long decompressBgzf(File gzip, File output) throws IOException {
+    Deque<Future<List<byte[]>>> pending = new ArrayDeque<>();
+    long written = 0;
+    try (FileChannel in = FileChannel.open(gzip.toPath(), StandardOpenOption.READ);
+         FileChannel out = FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      List<ByteBuffer> blocks = new ArrayList<>();
+      boolean endOfInput = false;
+      while (!endOfInput || buffer.position() > 0) {
+        endOfInput = endOfInput || in.read(buffer) < 0;
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          int blockSize = getBgzfBlockSize(buffer);
+          if (blockSize < 0 && buffer.remaining() >= BGZF_MAX_BLOCK_SIZE) {
+            throw new NotBgzfException();
+          }
+          if (blockSize < 0 || blockSize > buffer.remaining()) {
+            if (endOfInput) {
+              throw new NotBgzfException();
+            }
+            break;
+          }
+          ByteBuffer block = ByteBuffer.allocate(blockSize).order(ByteOrder.LITTLE_ENDIAN);
+          ByteBuffer slice = buffer.duplicate();
+          slice.limit(slice.position() + blockSize);
+          block.put(slice).flip();
+          buffer.position(buffer.position() + blockSize);
+          blocks.add(block);
+          if (blocks.size() == BGZF_BLOCKS_PER_TASK) {
+            written += submit(pending, blocks, out);
+            blocks = new ArrayList<>();
+          }
+        }
+        buffer.compact();
+      }
+      if (!blocks.isEmpty()) {
+        written += submit(pending, blocks, out);
+      }
+      while (!pending.isEmpty()) {
+        written += writeBlocks(pending.poll(), out);
+      }
+    } finally {
+      for (Future<List<byte[]>> future : pending) {
+        future.cancel(true);
+      }
+    }
+    return written;
+  }
+
+  /**
+   * This method submits a group of blocks to be inflated, first writing the oldest inflated groups if too many are pending.
+   *
+   * @param pending the groups being inflated, in input order.
+   * @param blocks the group of blocks.
+   * @param out the output file.
+   * @return the number of decompressed bytes written.
+   * @throws IOException if there are problems inflating the blocks or writing the output.
+   */
+  private long submit(Deque<Future<List<byte[]>>> pending, List<ByteBuffer> blocks, FileChannel out) throws IOException {
+    long written = 0;
+    while (pending.size() >= threads * QUEUED_CHUNKS) {
+      written += writeBlocks(pending.poll(), out);
+    }
+    pending.add(pool.submit(() -> inflateBlocks(blocks)));
+    return written;
+  }
+
+  /**
+   * This method waits for a group of blocks to be inflated, and writes them.
+   *
+   * @param inflated the group of blocks being inflated.
+   * @param out the output file.
+   * @return the number of decompressed bytes written.
+   * @throws IOException if there are problems inflating the blocks or writing the output.
+   */
+  private static long writeBlocks(Future<List<byte[]>> inflated, FileChannel out) throws IOException {
+    long written = 0;
+    for (byte[] block : getResult(inflated)) {
+      ByteBuffer buffer = ByteBuffer.wrap(block);
+      while (buffer.hasRemaining()) {
+        written += out.write(buffer);
+      }
+    }
+    return written;
+  }
+
+  /**
+   * This method inflates a group of BGZF blocks, and checks their sizes and checksums.
+   *
+   * @param blocks the compressed blocks.
+   * @return the inflated blocks.
+   * @throws IOException if a block is not valid.
+   */
+  private static List<byte[]> inflateBlocks(List<ByteBuffer> blocks) throws IOException {
+    List<byte[]> result = new ArrayList<>(blocks.size());
+    Inflater inflater = new Inflater(true);
+    CRC32 crc = new CRC32();
+    try {
+      for (ByteBuffer block : blocks) {
+        int dataStart = 12 + (block.getShort(10) & 0xffff);
+        int dataEnd = block.limit() - 8;
+        long expectedCrc = block.getInt(dataEnd) & 0xffffffffL;
+        int expectedSize = block.getInt(dataEnd + 4);
+        byte[] data = new byte[expectedSize];
+        inflater.reset();
+        inflater.setInput(block.array(), dataStart, dataEnd - dataStart);
+        int size = 0;
+        while (size < expectedSize && !inflater.finished()) {
+          int count = inflater.inflate(data, size, expectedSize - size);
+          if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+            break;
+          }
+          size += count;
+        }
+        crc.reset();
+        crc.update(data, 0, size);
+        if (size != expectedSize || crc.getValue() != expectedCrc) {
+          throw new IOException("Corrupt BGZF block: size or CRC does not match.");
+        }
+        result.add(data);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt BGZF block.", e);
+    } finally {
+      inflater.end();
+    }
+    return result;
+  }
+
+  /**
+   * This method decompresses a gzip file in order, reading the compressed file and writing the output on their
+   * own threads, while the calling thread inflates. If the gzip data ends before the file does, e.g. with trailing
+   * data which is not gzip, the reader is stopped and the trailing data is ignored, as GZIPInputStream does.
+   *
+   * @param gzip the gzipped file.
+   * @param output the output file.
+   * @return the number of decompressed bytes written.
+   * @throws IOException if there are problems reading or writing the files, or the input is not a valid gzip file.
+   */
+  private static long decompressPipelined(File gzip, File output) throws IOException {
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    BlockingQueue<byte[]> compressed = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+    BlockingQueue<byte[]> inflated = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+    AtomicBoolean inflatingStopped = new AtomicBoolean(false);
+    try {
+      Future<?> reader = pool.submit(() -> {
+        try (InputStream in = new FileInputStream(gzip)) {
+          byte[] chunk = new byte[CHUNK_SIZE];
+          int count;
+          while ((count = in.read(chunk)) != -1) {
+            if (!offerChunk(compressed, count == chunk.length ? chunk : java.util.Arrays.copyOf(chunk, count), inflatingStopped)) {
+              break;
+            }
+            chunk = new byte[CHUNK_SIZE];
+          }
+        } finally {
+          offerChunk(compressed, END_OF_CHUNKS, inflatingStopped);
+        }
+        return null;
+      });
+      Future<Long> writer = pool.submit(() -> {
+        long written = 0;
+        try (OutputStream out = new FileOutputStream(output)) {
+          byte[] chunk;
+          while ((chunk = inflated.take()) != END_OF_CHUNKS) {
+            out.write(chunk);
+            written += chunk.length;
+          }
+        } finally {
+          inflated.clear();
+        }
+        return written;
+      });
+      QueueInputStream queueInput = new QueueInputStream(compressed, reader);
+      try (InputStream in = new GZIPInputStream(queueInput, CHUNK_SIZE)) {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int size = 0;
+        int count;
+        while ((count = in.read(chunk, size, chunk.length - size)) != -1) {
+          size += count;
+          if (size == chunk.length) {
+            putChunk(inflated, chunk, writer);
+            chunk = new byte[CHUNK_SIZE];
+            size = 0;
+          }
+        }
+        if (size > 0) {
+          putChunk(inflated, java.util.Arrays.copyOf(chunk, size), writer);
+        }
+        if (!queueInput.isAtEnd()) {
+          log.warn("Ignored trailing data after the end of the gzip data: " + gzip.getPath());
+        }
+      } finally {
+        inflatingStopped.set(true);
+        putChunk(inflated, END_OF_CHUNKS, writer);
+      }
+      getResult(reader);
+      return getResult(writer);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * This method queues a compressed chunk to be inflated, unless inflating has stopped, e.g. at the end of the gzip
+   * data, so the reader never waits for a queue which nobody takes from.
+   *
+   * @param compressed the queue of chunks to inflate.
+   * @param chunk the chunk.
+   * @param inflatingStopped whether inflating has stopped.
+   * @return true if the chunk was queued, false if inflating has stopped.
+   * @throws InterruptedException if the thread is interrupted.
+   */
+  private static boolean offerChunk(BlockingQueue<byte[]> compressed, byte[] chunk, AtomicBoolean inflatingStopped) throws InterruptedException {
+    while (!inflatingStopped.get()) {
+      if (compressed.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * This method queues an inflated chunk to be written, unless the writer has already failed.
+   *
+   * @param inflated the queue of chunks to write.
+   * @param chunk the chunk.
+   * @param writer the writer.
+   * @throws IOException if the writer has failed, or the thread is interrupted.
+   */
+  private static void putChunk(BlockingQueue<byte[]> inflated, byte[] chunk, Future<Long> writer) throws IOException {
+    try {
+      while (!inflated.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+        if (writer.isDone()) {
+          getResult(writer);
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while decompressing.");
+    }
+  }
+
+  /**
+   * This method gets the result of a task, rethrowing its exception.
+   *
+   * @param future the task.
+   * @param <T> the type of the result.
+   * @return the result.
+   * @throws IOException if the task failed, or the thread is interrupted.
+   */
+  private static <T> T getResult(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while decompressing.");
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * An input stream over the chunks read by another thread.
+   */
+  private static class QueueInputStream extends InputStream {
+    private final BlockingQueue<byte[]> chunks;
+    private final Future<?> reader;
+    private byte[] chunk = new byte[0];
+    private int position = 0;
+
+    /**
+     * Constructor, sets the queue of chunks.
+     *
+     * @param chunks the queue of chunks, ending with an empty chunk.
+     * @param reader the reader, to rethrow its exception from.
+     */
+    QueueInputStream(BlockingQueue<byte[]> chunks, Future<?> reader) {
+      this.chunks = chunks;
+      this.reader = reader;
+    }
+
+    /**
+     * This method takes the next chunk if the current one has been read.
+     *
+     * @return true if there is more input, false at the end of the input.
+     * @throws IOException if the reader failed, or the thread is interrupted.
+     */
+    private boolean fill() throws IOException {
+      if (chunk == END_OF_CHUNKS) {
+        return false;
+      }
+      if (position < chunk.length) {
+        return true;
+      }
+      try {
+        chunk = chunks.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while decompressing.");
+      }
+      position = 0;
+      if (chunk == END_OF_CHUNKS) {
+        getResult(reader);
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * Checks if all the chunks have been read.
+     *
+     * @return true if the end of the input has been read, false otherwise.
+     */
+    boolean isAtEnd() {
+      return chunk == END_OF_CHUNKS;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return fill() ? chunk[position++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int count = Math.min(len, chunk.length - position);
+      System.arraycopy(chunk, position, b, off, count);
+      position += count;
+      return count;
+    }
+
+    /**
+     * This method waits for the next chunk if needed, as GZIPInputStream only looks for another gzip member after
+     * the end of one if there is input available.
+     */
+    @Override
+    public int available() throws IOException {
+      return fill() ? chunk.length - position : 0;
+    }
+  }
+
+  /**
+   * Thrown when a file which started with a BGZF block has a member which is not a BGZF block.
+   */
+  private static class NotBgzfException extends IOException {
+  }
+}
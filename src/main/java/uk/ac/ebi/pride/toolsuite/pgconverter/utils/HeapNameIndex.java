@@ -0,0 +1,19 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class indexes the names as Strings on the heap. It is exact, but uses the most memory.
+ *
+ * @author Tobias Ternent
+ */
+public class HeapNameIndex implements NameIndex {
+
+  private final Set<String> names = ConcurrentHashMap.newKeySet();
+
+  @Override
+  public boolean add(byte[] buffer, int start, int end, long lineNumber, long byteOffset) {
+    return names.add(BedFieldParser.toString(buffer, start, end));
+  }
+}
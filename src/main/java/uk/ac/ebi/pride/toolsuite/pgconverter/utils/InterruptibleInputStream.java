@@ -0,0 +1,53 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * This class is an input stream which stops being read once the reading thread has been interrupted, so a parser
+ * reading it, e.g. for XML schema validation, can be cancelled. Reading then fails with an InterruptedIOException.
+ *
+ * @author Tobias Ternent
+ */
+public class InterruptibleInputStream extends FilterInputStream {
+
+  /**
+   * Constructor, sets the stream to read.
+   *
+   * @param in the stream to read.
+   */
+  public InterruptibleInputStream(InputStream in) {
+    super(in);
+  }
+
+  @Override
+  public int read() throws IOException {
+    checkNotInterrupted();
+    return super.read();
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    checkNotInterrupted();
+    return super.read(b, off, len);
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    checkNotInterrupted();
+    return super.skip(n);
+  }
+
+  /**
+   * This method checks that the reading thread has not been interrupted.
+   *
+   * @throws InterruptedIOException if the reading thread has been interrupted.
+   */
+  private static void checkNotInterrupted() throws InterruptedIOException {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new InterruptedIOException("Reading was cancelled.");
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+/**
+ * This class is a set of 64 bit hashes, with open addressing in a primitive array, so large numbers of e.g. peptide
+ * sequences or PSM IDs can be counted or de-duplicated without keeping every string or boxed value.
+ *
+ * @author Tobias Ternent
+ */
+class LongHashSet {
+  private static final int INITIAL_CAPACITY = 1 << 12;
+  private static final long EMPTY = 0;
+
+  private long[] table = new long[INITIAL_CAPACITY];
+  private boolean containsEmpty = false;
+  private int size = 0;
+
+  /**
+   * This method hashes a string to 64 bits, with FNV-1a over its characters.
+   *
+   * @param value the string.
+   * @return the hash.
+   */
+  static long hash(String value) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < value.length(); i++) {
+      hash ^= value.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  /**
+   * This method adds a hash, if it is not in the set already.
+   *
+   * @param hash the hash.
+   * @return true if it was added, false if it was in the set already.
+   */
+  boolean add(long hash) {
+    if (hash == EMPTY) {
+      if (containsEmpty) {
+        return false;
+      }
+      containsEmpty = true;
+      size++;
+      return true;
+    }
+    if (!insert(table, hash)) {
+      return false;
+    }
+    if (++size * 2 > table.length) {
+      long[] larger = new long[table.length * 2];
+      for (long value : table) {
+        if (value != EMPTY) {
+          insert(larger, value);
+        }
+      }
+      table = larger;
+    }
+    return true;
+  }
+
+  /**
+   * This method inserts a hash into a table, probing linearly from its slot.
+   *
+   * @param table the table, whose length is a power of two.
+   * @param hash the hash, which is not EMPTY.
+   * @return true if it was inserted, false if it was in the table already.
+   */
+  private static boolean insert(long[] table, long hash) {
+    int mask = table.length - 1;
+    long mixed = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+    for (int i = (int) (mixed ^ (mixed >>> 33)) & mask; ; i = (i + 1) & mask) {
+      if (table[i] == EMPTY) {
+        table[i] = hash;
+        return true;
+      } else if (table[i] == hash) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Gets the number of hashes in the set.
+   *
+   * @return the number of hashes.
+   */
+  int size() {
+    return size;
+  }
+}
@@ -0,0 +1,232 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class validates a proBed file in parallel. The file is memory-mapped and split into newline-aligned chunks,
+ * which are validated independently on a ForkJoin pool. The lines in each chunk are counted first, so every chunk
+ * knows the exact line number it starts from, and errors report exact line numbers and byte offsets.
+ *
+ * @author Tobias Ternent
+ */
+public class MappedProBedValidator {
+
+  private static final Logger log = LoggerFactory.getLogger(MappedProBedValidator.class);
+  private static final long MIN_CHUNK_SIZE = 16L * 1024 * 1024;
+  private static final long MAX_CHUNK_SIZE = 256L * 1024 * 1024;
+  private static final int CHUNKS_PER_THREAD = 4;
+  private static final int COUNT_BUFFER_SIZE = 64 * 1024;
+
+  private final AsqlSchema schema;
+  private final NameIndex nameIndex;
+  private final ProBedErrorAggregator errorAggregator;
+  private final int parallelism;
+  private final long chunkSize;
+
+  /**
+   * Constructor, sets the compiled schema of the BED columns, where to record the results, and how many threads to use.
+   *
+   * @param schema the ASQL schema compiled from the .AS file.
+   * @param nameIndex the index of the names seen so far in the proBed file, shared by all threads.
+   * @param errorAggregator the aggregator to record errors to, shared by all threads.
+   * @param parallelism the number of threads to validate with.
+   */
+  public MappedProBedValidator(AsqlSchema schema, NameIndex nameIndex, ProBedErrorAggregator errorAggregator, int parallelism) {
+    this(schema, nameIndex, errorAggregator, parallelism, 0);
+  }
+
+  /**
+   * Constructor, as above, with a fixed chunk size, e.g. to test lines across chunk boundaries with small files.
+   *
+   * @param schema the ASQL schema compiled from the .AS file.
+   * @param nameIndex the index of the names seen so far in the proBed file, shared by all threads.
+   * @param errorAggregator the aggregator to record errors to, shared by all threads.
+   * @param parallelism the number of threads to validate with.
+   * @param chunkSize the size of each chunk before it is extended to the end of a line, or 0 to size the chunks
+   *                  by the file size and the number of threads.
+   */
+  MappedProBedValidator(AsqlSchema schema, NameIndex nameIndex, ProBedErrorAggregator errorAggregator, int parallelism, long chunkSize) {
+    this.schema = schema;
+    this.nameIndex = nameIndex;
+    this.errorAggregator = errorAggregator;
+    this.parallelism = Math.max(1, parallelism);
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * This method validates every line of a proBed file, in parallel chunks.
+   *
+   * @param proBed the proBed file.
+   * @throws IOException if there are problems reading the file.
+   */
+  public void validate(Path proBed) throws IOException {
+    try (FileChannel channel = FileChannel.open(proBed, StandardOpenOption.READ)) {
+      List<Chunk> chunks = splitChunks(channel);
+      log.info("Validating proBed file in " + chunks.size() + " chunks using " + parallelism + " threads.");
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+        pool.invoke(new ChunkTask(channel, chunks, 0, chunks.size(), false));
+        long lineNumber = 1;
+        for (Chunk chunk : chunks) {
+          chunk.firstLineNumber = lineNumber;
+          lineNumber += chunk.lineCount;
+        }
+        pool.invoke(new ChunkTask(channel, chunks, 0, chunks.size(), true));
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      } finally {
+        pool.shutdown();
+      }
+    }
+  }
+
+  /**
+   * This method splits a file into chunks that each start at the beginning of a line, and end after a newline
+   * (apart from the last chunk).
+   *
+   * @param channel the file channel.
+   * @return the list of chunks, in file order.
+   * @throws IOException if there are problems reading the file.
+   */
+  private List<Chunk> splitChunks(FileChannel channel) throws IOException {
+    long size = channel.size();
+    long chunkSize = this.chunkSize > 0 ? this.chunkSize :
+        Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, size / ((long) parallelism * CHUNKS_PER_THREAD)));
+    List<Chunk> chunks = new ArrayList<>();
+    long start = 0;
+    while (start < size) {
+      long end = start + chunkSize >= size ? size : nextLineStart(channel, start + chunkSize);
+      chunks.add(new Chunk(start, end));
+      start = end;
+    }
+    return chunks;
+  }
+
+  /**
+   * This method finds the start of the line after a position.
+   *
+   * @param channel the file channel.
+   * @param position the position to search from.
+   * @return the position after the next newline, or the file size if there is none.
+   * @throws IOException if there are problems reading the file.
+   */
+  private static long nextLineStart(FileChannel channel, long position) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(COUNT_BUFFER_SIZE);
+    long offset = position;
+    while (channel.read(buffer, offset) > 0) {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        if (buffer.get() == '\n') {
+          return offset + buffer.position();
+        }
+      }
+      offset += buffer.limit();
+      buffer.clear();
+    }
+    return channel.size();
+  }
+
+  /**
+   * A newline-aligned region of the proBed file.
+   */
+  private static class Chunk {
+    private final long start;
+    private final long end;
+    private long lineCount;
+    private long firstLineNumber;
+
+    /**
+     * Constructor, sets the region of the file.
+     *
+     * @param start the start offset of the chunk, inclusive.
+     * @param end the end offset of the chunk, exclusive.
+     */
+    Chunk(long start, long end) {
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /**
+   * This task counts the lines of, or validates, a range of chunks. Ranges are split in half until one chunk is left.
+   */
+  private class ChunkTask extends RecursiveAction {
+    private final FileChannel channel;
+    private final List<Chunk> chunks;
+    private final int from;
+    private final int to;
+    private final boolean validate;
+
+    /**
+     * Constructor, sets the range of chunks to process.
+     *
+     * @param channel the file channel.
+     * @param chunks all the chunks of the file.
+     * @param from the first chunk index, inclusive.
+     * @param to the last chunk index, exclusive.
+     * @param validate true to validate the chunks, false to count their lines.
+     */
+    ChunkTask(FileChannel channel, List<Chunk> chunks, int from, int to, boolean validate) {
+      this.channel = channel;
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+      this.validate = validate;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new ChunkTask(channel, chunks, from, middle, validate),
+            new ChunkTask(channel, chunks, middle, to, validate));
+      } else if (to > from) {
+        Chunk chunk = chunks.get(from);
+        try {
+          MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, chunk.start, chunk.end - chunk.start);
+          if (validate) {
+            new ProBedLineValidator(schema, nameIndex, errorAggregator).validate(region, chunk.firstLineNumber, chunk.start);
+          } else {
+            chunk.lineCount = countLines(region);
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+
+    /**
+     * This method counts the newlines in a region.
+     *
+     * @param region the region of the file.
+     * @return the number of newlines.
+     */
+    private long countLines(ByteBuffer region) {
+      byte[] buffer = new byte[COUNT_BUFFER_SIZE];
+      long count = 0;
+      while (region.hasRemaining()) {
+        int length = Math.min(buffer.length, region.remaining());
+        region.get(buffer, 0, length);
+        for (int i = 0; i < length; i++) {
+          if (buffer[i] == '\n') {
+            count++;
+          }
+        }
+      }
+      return count;
+    }
+  }
+}
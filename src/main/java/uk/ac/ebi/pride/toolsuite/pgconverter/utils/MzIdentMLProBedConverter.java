@@ -0,0 +1,434 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * This class converts proteogenomics mzIdentML files directly to proBed, without an intermediate mzTab file.
+ * The mzIdentML file is read once as a stream: the sequence collection (proteins, peptides and peptide evidences
+ * with genomic coordinates) is kept, and then each PSM is written as proBed rows as soon as it is read, one row per
+ * genome-mapped peptide evidence. Memory use depends on the number of peptides, not the number of PSMs.
+ * The genomic coordinates come from the PSI-MS cvParams of the peptide evidences, e.g. 'chromosome name'
+ * (MS:1002637), 'peptide start on chromosome' (MS:1002639), and 'peptide exon nucleotide sizes' (MS:1002642).
+ * Decoy peptide evidences, and ones without a chromosome name or a '+' or '-' chromosome strand (MS:1002638), are
+ * not written, as proBed requires a strand. The PSM score is the first search engine score of the PSM from a known list
+ * of search engine score accessions, e.g. 'MS-GF:SpecEValue' (MS:1002052), and the FDR is the first of its q-values.
+ *
+ * @author Tobias Ternent
+ */
+public class MzIdentMLProBedConverter {
+
+  private static final Logger log = LoggerFactory.getLogger(MzIdentMLProBedConverter.class);
+  private static final String CHROMOSOME_NAME = "MS:1002637";
+  private static final String CHROMOSOME_STRAND = "MS:1002638";
+  private static final String PEPTIDE_START = "MS:1002639";
+  private static final String PEPTIDE_END = "MS:1002640";
+  private static final String EXON_COUNT = "MS:1002641";
+  private static final String EXON_SIZES = "MS:1002642";
+  private static final String EXON_STARTS = "MS:1002643";
+  private static final String GENOME_REFERENCE = "MS:1002644";
+  private static final Set<String> FDR_SCORES = new HashSet<>(Arrays.asList(
+      "MS:1002354", // PSM-level q-value
+      "MS:1002355", // PSM-level FDRScore
+      "MS:1001868", // distinct peptide-level q-value
+      "MS:1001491", // percolator:Q value
+      "MS:1002054", // MS-GF:QValue
+      "MS:1002055")); // MS-GF:PepQValue
+  private static final Set<String> PSM_SCORES = new HashSet<>(Arrays.asList(
+      "MS:1002052", // MS-GF:SpecEValue
+      "MS:1002053", // MS-GF:EValue
+      "MS:1002049", // MS-GF:RawScore
+      "MS:1001330", // X!Tandem:expect
+      "MS:1001331", // X!Tandem:hyperscore
+      "MS:1001171", // Mascot:score
+      "MS:1001172", // Mascot:expectation value
+      "MS:1001328", // OMSSA:evalue
+      "MS:1001329", // OMSSA:pvalue
+      "MS:1001155", // SEQUEST:xcorr
+      "MS:1002252", // Comet:xcorr
+      "MS:1002257", // Comet:expectation value
+      "MS:1001589", // MyriMatch:MVH
+      "MS:1001492", // percolator:score
+      "MS:1001493", // percolator:PEP
+      "MS:1002466", // PeptideShaker PSM score
+      "MS:1002467", // PeptideShaker PSM confidence
+      "MS:1001950")); // PEAKS:peptideScore
+  private static final Set<String> STRANDS = new HashSet<>(Arrays.asList("+", "-"));
+  private static final String NOT_AVAILABLE = ".";
+  private static final String NO_SCORE = "-1";
+  private static final int IO_BUFFER_SIZE = 1024 * 1024;
+
+  private final Map<String, String> accessions = new HashMap<>();
+  private final Map<String, PeptideInfo> peptides = new HashMap<>();
+  private final Map<String, EvidenceInfo> evidences = new HashMap<>();
+  private String datasetId;
+  private long evidencesWithoutStrand;
+
+  /**
+   * This method converts an mzIdentML file, optionally gzipped, to proBed.
+   *
+   * @param mzIdentML the input mzIdentML file.
+   * @param proBed the output proBed file. The rows are written in input order, not sorted.
+   * @return the number of proBed rows written.
+   * @throws IOException if there are problems reading or writing the files, or the mzIdentML is not valid XML.
+   */
+  public long convert(File mzIdentML, File proBed) throws IOException {
+    try (InputStream in = Utility.newInputStream(mzIdentML)) {
+      return convert(in, mzIdentML, proBed);
+    }
+  }
+
+  /**
+   * This method converts mzIdentML content, read from a stream, to proBed.
+   *
+   * @param in the mzIdentML content, which is not closed.
+   * @param mzIdentML the mzIdentML file the content comes from, used for the default dataset ID and in messages.
+   * @param proBed the output proBed file. The rows are written in input order, not sorted.
+   * @return the number of proBed rows written.
+   * @throws IOException if there are problems reading or writing, or the mzIdentML is not valid XML.
+   */
+  public long convert(InputStream in, File mzIdentML, File proBed) throws IOException {
+    log.info("Converting mzIdentML file directly to proBed: " + mzIdentML.getPath());
+    datasetId = FilenameUtils.getBaseName(FilenameUtils.removeExtension(mzIdentML.getName()));
+    evidencesWithoutStrand = 0;
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    long rows = 0;
+    long psms = 0;
+    try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(proBed), StandardCharsets.UTF_8), IO_BUFFER_SIZE)) {
+      XMLStreamReader reader = factory.createXMLStreamReader(in);
+      try {
+        writer.write("# proBed-version\t1.0\n");
+        while (reader.hasNext()) {
+          if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+            continue;
+          }
+          switch (reader.getLocalName()) {
+            case "MzIdentML":
+              String id = reader.getAttributeValue(null, "id");
+              if (id != null && !id.trim().isEmpty()) {
+                datasetId = id.trim();
+              }
+              break;
+            case "DBSequence":
+              accessions.put(reader.getAttributeValue(null, "id"), reader.getAttributeValue(null, "accession"));
+              break;
+            case "Peptide":
+              readPeptide(reader);
+              break;
+            case "PeptideEvidence":
+              readPeptideEvidence(reader);
+              break;
+            case "SpectrumIdentificationItem":
+              rows += writePsm(reader, writer);
+              psms++;
+              break;
+            default:
+              break;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("Unable to read mzIdentML file: " + mzIdentML.getPath(), e);
+    }
+    if (evidencesWithoutStrand > 0) {
+      log.warn("Skipped " + evidencesWithoutStrand + " genome-mapped peptide evidences without a '+' or '-' chromosome strand.");
+    }
+    log.info("Wrote " + rows + " proBed rows from " + psms + " PSMs to: " + proBed.getPath());
+    return rows;
+  }
+
+  /**
+   * This method reads a Peptide element: its sequence and modifications.
+   *
+   * @param reader the reader, at the start of the Peptide element.
+   * @throws XMLStreamException if there are problems reading the XML.
+   */
+  private void readPeptide(XMLStreamReader reader) throws XMLStreamException {
+    String id = reader.getAttributeValue(null, "id");
+    String sequence = "";
+    List<String> modifications = new ArrayList<>();
+    String location = null;
+    String modificationAccession = null;
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        switch (reader.getLocalName()) {
+          case "PeptideSequence":
+            sequence = reader.getElementText().trim();
+            break;
+          case "Modification":
+            location = reader.getAttributeValue(null, "location");
+            modificationAccession = null;
+            break;
+          case "cvParam":
+            String accession = reader.getAttributeValue(null, "accession");
+            if (location != null && (modificationAccession == null || accession.startsWith("UNIMOD:") || accession.startsWith("MOD:"))) {
+              modificationAccession = accession;
+            }
+            break;
+          default:
+            break;
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        if (reader.getLocalName().equals("Modification")) {
+          if (location != null && modificationAccession != null) {
+            modifications.add(location + "-" + modificationAccession);
+          }
+          location = null;
+        } else if (reader.getLocalName().equals("Peptide")) {
+          break;
+        }
+      }
+    }
+    peptides.put(id, new PeptideInfo(sequence, modifications.isEmpty() ? NOT_AVAILABLE : String.join(",", modifications)));
+  }
+
+  /**
+   * This method reads a PeptideEvidence element, and keeps it if it is mapped to a strand of the genome and is not
+   * a decoy.
+   *
+   * @param reader the reader, at the start of the PeptideEvidence element.
+   * @throws XMLStreamException if there are problems reading the XML.
+   */
+  private void readPeptideEvidence(XMLStreamReader reader) throws XMLStreamException {
+    String id = reader.getAttributeValue(null, "id");
+    String peptideRef = reader.getAttributeValue(null, "peptide_ref");
+    String dbSequenceRef = reader.getAttributeValue(null, "dBSequence_ref");
+    boolean decoy = Boolean.parseBoolean(reader.getAttributeValue(null, "isDecoy"));
+    Map<String, String> cvParams = readCvParams(reader, "PeptideEvidence");
+    String chrom = cvParams.get(CHROMOSOME_NAME);
+    if (decoy || chrom == null || chrom.isEmpty()) {
+      return;
+    }
+    String strand = valueOrDefault(cvParams.get(CHROMOSOME_STRAND), NOT_AVAILABLE);
+    if (!STRANDS.contains(strand)) {
+      log.debug("Peptide evidence " + id + " has a chromosome name, but no '+' or '-' chromosome strand: " + strand);
+      evidencesWithoutStrand++;
+      return;
+    }
+    try {
+      long start = Long.parseLong(cvParams.get(PEPTIDE_START).trim());
+      long end = Long.parseLong(cvParams.get(PEPTIDE_END).trim());
+      EvidenceInfo evidence = new EvidenceInfo(chrom, start, end, strand,
+          accessions.getOrDefault(dbSequenceRef, dbSequenceRef), cvParams.getOrDefault(GENOME_REFERENCE, NOT_AVAILABLE));
+      String exonSizes = cvParams.get(EXON_SIZES);
+      String exonStarts = cvParams.get(EXON_STARTS);
+      if (exonSizes != null && exonStarts != null) {
+        evidence.blockCount = cvParams.getOrDefault(EXON_COUNT, Integer.toString(exonSizes.split(",").length));
+        evidence.blockSizes = exonSizes.replace(" ", "");
+        StringBuilder relativeStarts = new StringBuilder();
+        for (String exonStart : exonStarts.split(",")) {
+          relativeStarts.append(relativeStarts.length() > 0 ? "," : "").append(Long.parseLong(exonStart.trim()) - start);
+        }
+        evidence.chromStarts = relativeStarts.toString();
+      }
+      evidences.put(id, evidence);
+      PeptideInfo peptide = peptides.get(peptideRef);
+      if (peptide != null) {
+        peptide.addAccession(evidence.accession);
+      }
+    } catch (NullPointerException | NumberFormatException e) {
+      log.error("Peptide evidence " + id + " has a chromosome name, but invalid or missing chromosome positions.");
+    }
+  }
+
+  /**
+   * This method reads a SpectrumIdentificationItem element, i.e. a PSM, and writes its proBed rows.
+   *
+   * @param reader the reader, at the start of the SpectrumIdentificationItem element.
+   * @param writer the proBed writer.
+   * @return the number of proBed rows written.
+   * @throws XMLStreamException if there are problems reading the XML.
+   * @throws IOException if there are problems writing the proBed file.
+   */
+  private int writePsm(XMLStreamReader reader, BufferedWriter writer) throws XMLStreamException, IOException {
+    String id = reader.getAttributeValue(null, "id");
+    String peptideRef = reader.getAttributeValue(null, "peptide_ref");
+    String charge = valueOrDefault(reader.getAttributeValue(null, "chargeState"), "0");
+    String expMassToCharge = valueOrDefault(reader.getAttributeValue(null, "experimentalMassToCharge"), NO_SCORE);
+    String calcMassToCharge = valueOrDefault(reader.getAttributeValue(null, "calculatedMassToCharge"), NO_SCORE);
+    String rank = valueOrDefault(reader.getAttributeValue(null, "rank"), "1");
+    List<EvidenceInfo> psmEvidences = new ArrayList<>();
+    String psmScore = null;
+    String fdr = null;
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        if (reader.getLocalName().equals("PeptideEvidenceRef")) {
+          EvidenceInfo evidence = evidences.get(reader.getAttributeValue(null, "peptideEvidence_ref"));
+          if (evidence != null) {
+            psmEvidences.add(evidence);
+          }
+        } else if (reader.getLocalName().equals("cvParam")) {
+          String accession = reader.getAttributeValue(null, "accession");
+          String value = reader.getAttributeValue(null, "value");
+          if (isNumber(value)) {
+            if (FDR_SCORES.contains(accession)) {
+              fdr = fdr == null ? value : fdr;
+            } else if (psmScore == null && PSM_SCORES.contains(accession)) {
+              psmScore = value;
+            }
+          }
+        }
+      } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("SpectrumIdentificationItem")) {
+        break;
+      }
+    }
+    PeptideInfo peptide = peptides.get(peptideRef);
+    for (int i = 0; i < psmEvidences.size(); i++) {
+      EvidenceInfo evidence = psmEvidences.get(i);
+      String name = evidence.accession + "_" + id + (psmEvidences.size() > 1 ? "_" + (i + 1) : "");
+      String[] fields = {evidence.chrom, Long.toString(evidence.start), Long.toString(evidence.end), name, "1000",
+          evidence.strand, Long.toString(evidence.start), Long.toString(evidence.end), "0",
+          evidence.blockCount, evidence.blockSizes == null ? Long.toString(evidence.end - evidence.start) : evidence.blockSizes,
+          evidence.chromStarts, evidence.accession, peptide == null ? NOT_AVAILABLE : peptide.sequence,
+          peptide == null || !peptide.isUnique() ? "not-unique[unknown]" : "unique", evidence.genomeReference,
+          valueOrDefault(psmScore, NO_SCORE), valueOrDefault(fdr, NO_SCORE), peptide == null ? NOT_AVAILABLE : peptide.modifications,
+          charge, expMassToCharge, calcMassToCharge, rank, datasetId, NOT_AVAILABLE};
+      writer.write(String.join("\t", fields));
+      writer.write('\n');
+    }
+    return psmEvidences.size();
+  }
+
+  /**
+   * This method reads the cvParams of an element, by accession.
+   *
+   * @param reader the reader, at the start of the element.
+   * @param elementName the name of the element.
+   * @return the values of the element's cvParams, by accession.
+   * @throws XMLStreamException if there are problems reading the XML.
+   */
+  private static Map<String, String> readCvParams(XMLStreamReader reader, String elementName) throws XMLStreamException {
+    Map<String, String> result = new HashMap<>();
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("cvParam")) {
+        result.put(reader.getAttributeValue(null, "accession"), valueOrDefault(reader.getAttributeValue(null, "value"), ""));
+      } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals(elementName)) {
+        break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * This method returns a value, or a default if the value is missing or empty.
+   *
+   * @param value the value.
+   * @param defaultValue the default value.
+   * @return the value, or the default value.
+   */
+  private static String valueOrDefault(String value, String defaultValue) {
+    return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+  }
+
+  /**
+   * This method checks if a value is a number.
+   *
+   * @param value the value.
+   * @return true if the value is a number, false otherwise.
+   */
+  private static boolean isNumber(String value) {
+    if (value == null) {
+      return false;
+    }
+    try {
+      Double.parseDouble(value);
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * The information kept about a peptide: its sequence, modifications, and the proteins it was mapped to.
+   */
+  private static class PeptideInfo {
+    private final String sequence;
+    private final String modifications;
+    private String accession;
+    private boolean unique = true;
+
+    /**
+     * Constructor, sets the sequence and modifications.
+     *
+     * @param sequence the peptide sequence.
+     * @param modifications the modifications in proBed format, or '.' if there are none.
+     */
+    PeptideInfo(String sequence, String modifications) {
+      this.sequence = sequence;
+      this.modifications = modifications;
+    }
+
+    /**
+     * This method records a protein the peptide was mapped to.
+     *
+     * @param proteinAccession the protein accession.
+     */
+    void addAccession(String proteinAccession) {
+      if (accession == null) {
+        accession = proteinAccession;
+      } else if (!accession.equals(proteinAccession)) {
+        unique = false;
+      }
+    }
+
+    /**
+     * Checks if the peptide was mapped to only one protein.
+     *
+     * @return true if the peptide is unique, false otherwise.
+     */
+    boolean isUnique() {
+      return unique;
+    }
+  }
+
+  /**
+   * The genomic location of a peptide evidence.
+   */
+  private static class EvidenceInfo {
+    private final String chrom;
+    private final long start;
+    private final long end;
+    private final String strand;
+    private final String accession;
+    private final String genomeReference;
+    private String blockCount = "1";
+    private String blockSizes;
+    private String chromStarts = "0";
+
+    /**
+     * Constructor, sets the genomic location.
+     *
+     * @param chrom the chromosome name.
+     * @param start the start on the chromosome, zero-based.
+     * @param end the end on the chromosome.
+     * @param strand the strand.
+     * @param accession the protein accession.
+     * @param genomeReference the genome reference version.
+     */
+    EvidenceInfo(String chrom, long start, long end, String strand, String accession, String genomeReference) {
+      this.chrom = chrom;
+      this.start = start;
+      this.end = end;
+      this.strand = strand;
+      this.accession = accession;
+      this.genomeReference = genomeReference;
+    }
+  }
+}
@@ -0,0 +1,283 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.pride.utilities.data.controller.DataAccessController;
+import uk.ac.ebi.pride.utilities.data.controller.impl.ControllerImpl.ReferencedIdentificationController;
+import uk.ac.ebi.pride.utilities.data.core.*;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * This class writes the content of an mzIdentML or PRIDE XML controller as an mzTab 1.0 Summary Identification file,
+ * without building the whole mzTab file in memory. Each protein is read from the controller in turn, and its PRT row
+ * and its PSM rows, one per PSM of the protein, are written as soon as they are read to two spill files next to the
+ * output file. When all the proteins are read, the metadata, with the variable modifications found in the PSMs, and
+ * the section headers are written, and the spill files are appended after them through file channels. Memory use
+ * depends on the number of different modifications, not the number of proteins or PSMs, and the controller's own
+ * caches can be bounded with a BoundedCachePolicy.
+ * Search engine scores, the PEP section, and the optional proteogenomics columns are not written.
+ *
+ * @author Tobias Ternent
+ */
+public class MzTabStreamWriter {
+
+  private static final Logger log = LoggerFactory.getLogger(MzTabStreamWriter.class);
+  private static final String NULL = "null";
+  private static final String NO_FIXED_MODS = "[MS, MS:1002453, No fixed modifications searched, ]";
+  private static final String NO_VARIABLE_MODS = "[MS, MS:1002454, No variable modifications searched, ]";
+  private static final String PROTEIN_SCORE = "[MS, MS:1001171, search engine specific score for proteins, ]";
+  private static final String PSM_SCORE = "[MS, MS:1001143, search engine specific score for PSMs, ]";
+  private static final String PRH = "PRH\taccession\tdescription\ttaxid\tspecies\tdatabase\tdatabase_version\t" +
+      "search_engine\tbest_search_engine_score[1]\tambiguity_members\tmodifications";
+  private static final String PSH = "PSH\tsequence\tPSM_ID\taccession\tunique\tdatabase\tdatabase_version\t" +
+      "search_engine\tsearch_engine_score[1]\tmodifications\tretention_time\tcharge\texp_mass_to_charge\t" +
+      "calc_mass_to_charge\tspectra_ref\tpre\tpost\tstart\tend";
+  private static final int IO_BUFFER_SIZE = 1024 * 1024;
+
+  private final DataAccessController controller;
+  private final String sourceName;
+  private final Map<String, String> variableMods = new LinkedHashMap<>();
+  private String searchEngine = NULL;
+  private long proteins;
+  private long psms;
+
+  /**
+   * Constructor.
+   *
+   * @param controller the open mzIdentML or PRIDE XML controller, which is not closed.
+   * @param sourceName the name of the converted file, for the metadata.
+   */
+  public MzTabStreamWriter(DataAccessController controller, String sourceName) {
+    this.controller = controller;
+    this.sourceName = sourceName;
+  }
+
+  /**
+   * This method writes the mzTab file.
+   *
+   * @param mzTab the output mzTab file.
+   * @throws IOException if there are problems writing to the file system.
+   */
+  public void write(File mzTab) throws IOException {
+    long start = System.currentTimeMillis();
+    File directory = mzTab.getAbsoluteFile().getParentFile();
+    File proteinRows = File.createTempFile("prt", ".spill", directory);
+    File psmRows = File.createTempFile("psm", ".spill", directory);
+    try {
+      List<String> softwares = getSoftwares();
+      searchEngine = softwares.isEmpty() ? NULL : String.join("|", softwares);
+      try (BufferedWriter proteinWriter = newWriter(proteinRows);
+           BufferedWriter psmWriter = newWriter(psmRows)) {
+        for (Comparable proteinId : controller.getProteinIds()) {
+          writeProtein(proteinId, proteinWriter, psmWriter);
+        }
+      }
+      try (BufferedWriter writer = newWriter(mzTab)) {
+        writeMetadata(writer, softwares);
+        writer.write(PRH);
+        writer.newLine();
+      }
+      append(proteinRows, mzTab);
+      try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mzTab, true), StandardCharsets.UTF_8))) {
+        writer.newLine();
+        writer.write(PSH);
+        writer.newLine();
+      }
+      append(psmRows, mzTab);
+    } finally {
+      Files.deleteIfExists(proteinRows.toPath());
+      Files.deleteIfExists(psmRows.toPath());
+    }
+    log.info("Wrote " + proteins + " proteins and " + psms + " PSMs to mzTab in " + (System.currentTimeMillis() - start) + " ms.");
+  }
+
+  /**
+   * This method writes the PRT row of a protein and the PSM rows of its peptides.
+   *
+   * @param proteinId the protein ID.
+   * @param proteinWriter the writer of the PRT rows.
+   * @param psmWriter the writer of the PSM rows.
+   * @throws IOException if there are problems writing to the file system.
+   */
+  private void writeProtein(Comparable proteinId, BufferedWriter proteinWriter, BufferedWriter psmWriter) throws IOException {
+    String accession = value(controller.getProteinAccession(proteinId));
+    SearchDataBase searchDataBase = controller.getSearchDatabase(proteinId);
+    String database = searchDataBase == null ? NULL : value(searchDataBase.getName());
+    Set<String> proteinMods = new LinkedHashSet<>();
+    for (Comparable peptideId : controller.getPeptideIds(proteinId)) {
+      String modifications = getModifications(controller.getPTMs(proteinId, peptideId));
+      if (!modifications.equals(NULL)) {
+        proteinMods.addAll(Arrays.asList(modifications.split(",")));
+      }
+      Peptide peptide = controller.getPeptideByIndex(proteinId, peptideId);
+      SpectrumIdentification psm = peptide == null ? null : peptide.getSpectrumIdentification();
+      psmWriter.write(String.join("\t", "PSM", value(controller.getPeptideSequence(proteinId, peptideId)),
+          psm == null ? value(peptideId) : value(psm.getId()), accession, NULL, database, NULL, searchEngine, NULL,
+          modifications, NULL, psm == null ? NULL : value(psm.getChargeState()),
+          psm == null ? NULL : value(psm.getExperimentalMassToCharge()), psm == null ? NULL : value(psm.getCalculatedMassToCharge()),
+          NULL, NULL, NULL, NULL, NULL));
+      psmWriter.newLine();
+      psms++;
+    }
+    proteinWriter.write(String.join("\t", "PRT", accession, NULL, NULL, NULL, database, NULL, searchEngine, NULL, NULL,
+        proteinMods.isEmpty() ? NULL : String.join(",", proteinMods)));
+    proteinWriter.newLine();
+    proteins++;
+    if (proteins % 10000 == 0) {
+      log.info("Written " + proteins + " proteins and " + psms + " PSMs.");
+    }
+  }
+
+  /**
+   * This method formats the modifications of a PSM as positions and accessions, and keeps each different
+   * modification for the metadata.
+   *
+   * @param modifications the modifications, which may be null.
+   * @return the modifications, or "null" if there are none.
+   */
+  private String getModifications(Collection<Modification> modifications) {
+    if (modifications == null || modifications.isEmpty()) {
+      return NULL;
+    }
+    List<String> formatted = new ArrayList<>();
+    for (Modification modification : modifications) {
+      List<CvParam> cvParams = modification.getCvParams();
+      if (cvParams == null || cvParams.isEmpty() || StringUtils.isEmpty(cvParams.get(0).getAccession())) {
+        continue;
+      }
+      CvParam cvParam = cvParams.get(0);
+      variableMods.putIfAbsent(cvParam.getAccession(), param(cvParam.getCvLookupID(), cvParam.getAccession(), cvParam.getName(), null));
+      formatted.add(modification.getLocation() + "-" + cvParam.getAccession());
+    }
+    return formatted.isEmpty() ? NULL : String.join(",", formatted);
+  }
+
+  /**
+   * This method writes the metadata section.
+   *
+   * @param writer the writer.
+   * @param softwares the software params.
+   * @throws IOException if there are problems writing to the file system.
+   */
+  private void writeMetadata(BufferedWriter writer, List<String> softwares) throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add("mzTab-version\t1.0.0");
+    lines.add("mzTab-mode\tSummary");
+    lines.add("mzTab-type\tIdentification");
+    lines.add("description\tmzTab converted from " + sourceName);
+    List<String> locations = getMsRunLocations();
+    for (int i = 0; i < locations.size(); i++) {
+      lines.add("ms_run[" + (i + 1) + "]-location\t" + locations.get(i));
+    }
+    for (int i = 0; i < softwares.size(); i++) {
+      lines.add("software[" + (i + 1) + "]\t" + softwares.get(i));
+    }
+    lines.add("protein_search_engine_score[1]\t" + PROTEIN_SCORE);
+    lines.add("psm_search_engine_score[1]\t" + PSM_SCORE);
+    lines.add("fixed_mod[1]\t" + NO_FIXED_MODS);
+    if (variableMods.isEmpty()) {
+      lines.add("variable_mod[1]\t" + NO_VARIABLE_MODS);
+    } else {
+      int i = 1;
+      for (String variableMod : variableMods.values()) {
+        lines.add("variable_mod[" + i++ + "]\t" + variableMod);
+      }
+    }
+    for (String line : lines) {
+      writer.write("MTD\t" + line);
+      writer.newLine();
+    }
+    writer.newLine();
+  }
+
+  /**
+   * This method gets the locations of the referenced spectra files, or else of the converted file itself.
+   *
+   * @return the ms_run locations.
+   */
+  private List<String> getMsRunLocations() {
+    List<String> locations = new ArrayList<>();
+    if (controller instanceof ReferencedIdentificationController) {
+      for (SpectraData spectraData : ((ReferencedIdentificationController) controller).getSpectraDataFiles()) {
+        if (StringUtils.isNotEmpty(spectraData.getLocation())) {
+          locations.add(spectraData.getLocation());
+        }
+      }
+    }
+    if (locations.isEmpty()) {
+      locations.add(new File(sourceName).toURI().toString());
+    }
+    return locations;
+  }
+
+  /**
+   * This method gets the software of the controller's metadata as mzTab params.
+   *
+   * @return the software params.
+   */
+  private List<String> getSoftwares() {
+    List<String> softwares = new ArrayList<>();
+    ExperimentMetaData experimentMetaData = controller.getExperimentMetaData();
+    if (experimentMetaData != null && experimentMetaData.getSoftwares() != null) {
+      for (Software software : experimentMetaData.getSoftwares()) {
+        List<CvParam> cvParams = software.getCvParams();
+        if (cvParams != null && !cvParams.isEmpty()) {
+          CvParam cvParam = cvParams.get(0);
+          softwares.add(param(cvParam.getCvLookupID(), cvParam.getAccession(), cvParam.getName(), software.getVersion()));
+        } else if (StringUtils.isNotEmpty(software.getName())) {
+          softwares.add(param(null, null, software.getName(), software.getVersion()));
+        }
+      }
+    }
+    return softwares;
+  }
+
+  /**
+   * This method appends a spill file to the mzTab file through file channels.
+   *
+   * @param spill the spill file.
+   * @param mzTab the mzTab file.
+   * @throws IOException if there are problems reading or writing to the file system.
+   */
+  private static void append(File spill, File mzTab) throws IOException {
+    try (FileChannel in = FileChannel.open(spill.toPath(), StandardOpenOption.READ);
+         FileChannel out = FileChannel.open(mzTab.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      long size = in.size();
+      for (long position = 0; position < size; ) {
+        position += in.transferTo(position, size - position, out);
+      }
+    }
+  }
+
+  /**
+   * This method formats an mzTab param.
+   *
+   * @param label the CV label, which may be null.
+   * @param accession the accession, which may be null.
+   * @param name the name.
+   * @param value the value, which may be null.
+   * @return the param.
+   */
+  private static String param(String label, String accession, String name, String value) {
+    return "[" + clean(label) + ", " + clean(accession) + ", " + clean(name) + ", " + clean(value) + "]";
+  }
+
+  private static String clean(String text) {
+    return text == null ? "" : text.replaceAll("[\\t\\r\\n,\\[\\]]", " ").trim();
+  }
+
+  private static String value(Object value) {
+    return value == null || value.toString().isEmpty() ? NULL : value.toString().replaceAll("[\\t\\r\\n]", " ");
+  }
+
+  private static BufferedWriter newWriter(File file) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), IO_BUFFER_SIZE);
+  }
+}
@@ -0,0 +1,120 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+/**
+ * This class calculates 128-bit hashes of names held as bytes, using the x64 128-bit variant of MurmurHash3.
+ *
+ * @author Tobias Ternent
+ */
+public final class NameHash {
+
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  /**
+   * Private constructor, only static methods are provided.
+   */
+  private NameHash() {
+  }
+
+  /**
+   * This method calculates the 128-bit hash of a name. A hash of all zeroes is never returned,
+   * so it can be used to mark empty slots.
+   *
+   * @param buffer the buffer holding the name.
+   * @param start the start index of the name, inclusive.
+   * @param end the end index of the name, exclusive.
+   * @param hash the array of at least 2 longs to store the high and low 64 bits of the hash in.
+   */
+  public static void hash128(byte[] buffer, int start, int end, long[] hash) {
+    int length = end - start;
+    int blocks = length >>> 4;
+    long h1 = 0;
+    long h2 = 0;
+    for (int i = 0; i < blocks; i++) {
+      int offset = start + (i << 4);
+      long k1 = getLong(buffer, offset);
+      long k2 = getLong(buffer, offset + 8);
+      h1 ^= mixK1(k1);
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+      h2 ^= mixK2(k2);
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+    int tail = start + (blocks << 4);
+    long k1 = 0;
+    long k2 = 0;
+    switch (length & 15) {
+      case 15: k2 ^= ((long) buffer[tail + 14] & 0xff) << 48;
+      case 14: k2 ^= ((long) buffer[tail + 13] & 0xff) << 40;
+      case 13: k2 ^= ((long) buffer[tail + 12] & 0xff) << 32;
+      case 12: k2 ^= ((long) buffer[tail + 11] & 0xff) << 24;
+      case 11: k2 ^= ((long) buffer[tail + 10] & 0xff) << 16;
+      case 10: k2 ^= ((long) buffer[tail + 9] & 0xff) << 8;
+      case 9: k2 ^= ((long) buffer[tail + 8] & 0xff);
+        h2 ^= mixK2(k2);
+      case 8: k1 ^= ((long) buffer[tail + 7] & 0xff) << 56;
+      case 7: k1 ^= ((long) buffer[tail + 6] & 0xff) << 48;
+      case 6: k1 ^= ((long) buffer[tail + 5] & 0xff) << 40;
+      case 5: k1 ^= ((long) buffer[tail + 4] & 0xff) << 32;
+      case 4: k1 ^= ((long) buffer[tail + 3] & 0xff) << 24;
+      case 3: k1 ^= ((long) buffer[tail + 2] & 0xff) << 16;
+      case 2: k1 ^= ((long) buffer[tail + 1] & 0xff) << 8;
+      case 1: k1 ^= ((long) buffer[tail] & 0xff);
+        h1 ^= mixK1(k1);
+      default:
+        break;
+    }
+    h1 ^= length;
+    h2 ^= length;
+    h1 += h2;
+    h2 += h1;
+    h1 = fmix64(h1);
+    h2 = fmix64(h2);
+    h1 += h2;
+    h2 += h1;
+    hash[0] = h1;
+    hash[1] = (h1 == 0 && h2 == 0) ? 1 : h2;
+  }
+
+  /**
+   * This method reads a little-endian long from a buffer.
+   *
+   * @param buffer the buffer.
+   * @param offset the offset to read from.
+   * @return the long value.
+   */
+  private static long getLong(byte[] buffer, int offset) {
+    return ((long) buffer[offset] & 0xff) |
+        (((long) buffer[offset + 1] & 0xff) << 8) |
+        (((long) buffer[offset + 2] & 0xff) << 16) |
+        (((long) buffer[offset + 3] & 0xff) << 24) |
+        (((long) buffer[offset + 4] & 0xff) << 32) |
+        (((long) buffer[offset + 5] & 0xff) << 40) |
+        (((long) buffer[offset + 6] & 0xff) << 48) |
+        (((long) buffer[offset + 7] & 0xff) << 56);
+  }
+
+  private static long mixK1(long k1) {
+    k1 *= C1;
+    k1 = Long.rotateLeft(k1, 31);
+    return k1 * C2;
+  }
+
+  private static long mixK2(long k2) {
+    k2 *= C2;
+    k2 = Long.rotateLeft(k2, 33);
+    return k2 * C1;
+  }
+
+  private static long fmix64(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+}
@@ -0,0 +1,57 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * An index of the names seen in a proBed file, used to check that the 'name' column is unique.
+ * Implementations must be thread-safe, and add a name atomically: if several threads add the same name,
+ * exactly one of them sees it as new.
+ *
+ * @author Tobias Ternent
+ */
+public interface NameIndex extends Closeable {
+
+  /**
+   * This method adds a name to the index.
+   *
+   * @param buffer the buffer holding the name.
+   * @param start the start index of the name, inclusive.
+   * @param end the end index of the name, exclusive.
+   * @param lineNumber the line number the name is on.
+   * @param byteOffset the byte offset of the start of the line.
+   * @return false if the name is already known to be a duplicate, true otherwise.
+   */
+  boolean add(byte[] buffer, int start, int end, long lineNumber, long byteOffset);
+
+  /**
+   * This method reports any duplicates that could not be detected when the names were added, e.g. when the
+   * index was spilled to disk. It should be called once, after all the names have been added.
+   *
+   * @param consumer the consumer of the duplicate names' locations.
+   * @throws IOException if there are problems reading the index.
+   */
+  default void forEachDeferredDuplicate(DuplicateConsumer consumer) throws IOException {
+  }
+
+  /**
+   * This method releases the resources held by the index.
+   */
+  @Override
+  default void close() throws IOException {
+  }
+
+  /**
+   * A consumer of the locations of duplicate names.
+   */
+  interface DuplicateConsumer {
+    /**
+     * Accepts the location of a duplicate name.
+     *
+     * @param lineNumber the line number of the duplicate.
+     * @param byteOffset the byte offset of the start of the line.
+     * @throws IOException if there are problems handling the duplicate.
+     */
+    void accept(long lineNumber, long byteOffset) throws IOException;
+  }
+}
@@ -0,0 +1,206 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class indexes the 128-bit hashes of the names in off-heap open-addressing tables, so the heap use does not
+ * grow with the number of names. The tables are split into segments by the hash, each with its own lock, so that
+ * parallel validation threads rarely contend. Optionally, the names themselves are also stored off-heap and
+ * compared when two hashes are equal, which makes the index exact rather than relying on the 128-bit hash.
+ *
+ * @author Tobias Ternent
+ */
+public class OffHeapNameIndex implements NameIndex {
+
+  private static final int SEGMENT_BITS = 6;
+  private static final int INITIAL_SEGMENT_CAPACITY = 1 << 12;
+  private static final int MAX_SEGMENT_CAPACITY = 1 << 26;
+  private static final int ARENA_PAGE_SIZE = 1 << 20;
+
+  private final boolean exact;
+  private final Segment[] segments;
+  private final ThreadLocal<long[]> hashes = ThreadLocal.withInitial(() -> new long[2]);
+
+  /**
+   * Constructor, sets if the names should be confirmed when their hashes are equal.
+   *
+   * @param exact true to store the names and compare them when their hashes are equal, false to only store hashes.
+   */
+  public OffHeapNameIndex(boolean exact) {
+    this.exact = exact;
+    this.segments = new Segment[1 << SEGMENT_BITS];
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new Segment();
+    }
+  }
+
+  @Override
+  public boolean add(byte[] buffer, int start, int end, long lineNumber, long byteOffset) {
+    long[] hash = hashes.get();
+    NameHash.hash128(buffer, start, end, hash);
+    return segments[(int) (hash[0] >>> (64 - SEGMENT_BITS))].add(hash[0], hash[1], buffer, start, end);
+  }
+
+  /**
+   * This method releases the off-heap tables.
+   */
+  @Override
+  public void close() {
+    for (Segment segment : segments) {
+      segment.release();
+    }
+  }
+
+  /**
+   * An open-addressing table with linear probing, for the names whose hashes start with the same bits.
+   * Each slot holds the 128-bit hash, and in exact mode a reference to the name in the segment's arena.
+   */
+  private class Segment {
+    private final int slotSize = exact ? 24 : 16;
+    private ByteBuffer table;
+    private int capacity;
+    private int size;
+    private List<ByteBuffer> arena = new ArrayList<>();
+
+    /**
+     * Default constructor, allocates the initial table.
+     */
+    Segment() {
+      capacity = INITIAL_SEGMENT_CAPACITY;
+      table = allocate((long) capacity * slotSize);
+    }
+
+    /**
+     * This method adds a name's hash to the table, if it is not already there.
+     *
+     * @param high the high 64 bits of the hash.
+     * @param low the low 64 bits of the hash.
+     * @param buffer the buffer holding the name.
+     * @param start the start index of the name, inclusive.
+     * @param end the end index of the name, exclusive.
+     * @return true if the name was added, false if it was already there.
+     */
+    synchronized boolean add(long high, long low, byte[] buffer, int start, int end) {
+      if (size >= capacity >>> 1) {
+        grow();
+      }
+      int mask = capacity - 1;
+      int slot = (int) low & mask;
+      while (true) {
+        int position = slot * slotSize;
+        long slotHigh = table.getLong(position);
+        long slotLow = table.getLong(position + 8);
+        if (slotHigh == 0 && slotLow == 0) {
+          table.putLong(position, high);
+          table.putLong(position + 8, low);
+          if (exact) {
+            table.putLong(position + 16, store(buffer, start, end));
+          }
+          size++;
+          return true;
+        }
+        if (slotHigh == high && slotLow == low && (!exact || nameEquals(table.getLong(position + 16), buffer, start, end))) {
+          return false;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+
+    /**
+     * This method doubles the capacity of the table, and re-inserts all the slots.
+     */
+    private void grow() {
+      if (capacity >= MAX_SEGMENT_CAPACITY) {
+        throw new IllegalStateException("Name index is full, with " + size + " names in one segment.");
+      }
+      ByteBuffer oldTable = table;
+      int oldCapacity = capacity;
+      capacity <<= 1;
+      table = allocate((long) capacity * slotSize);
+      int mask = capacity - 1;
+      for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+        int oldPosition = oldSlot * slotSize;
+        long high = oldTable.getLong(oldPosition);
+        long low = oldTable.getLong(oldPosition + 8);
+        if (high != 0 || low != 0) {
+          int slot = (int) low & mask;
+          while (table.getLong(slot * slotSize) != 0 || table.getLong(slot * slotSize + 8) != 0) {
+            slot = (slot + 1) & mask;
+          }
+          int position = slot * slotSize;
+          table.putLong(position, high);
+          table.putLong(position + 8, low);
+          if (exact) {
+            table.putLong(position + 16, oldTable.getLong(oldPosition + 16));
+          }
+        }
+      }
+    }
+
+    /**
+     * This method stores a name in the arena, prefixed by its length.
+     *
+     * @param buffer the buffer holding the name.
+     * @param start the start index of the name, inclusive.
+     * @param end the end index of the name, exclusive.
+     * @return the reference to the name, i.e. its page index in the high 32 bits and position in the low 32 bits.
+     */
+    private long store(byte[] buffer, int start, int end) {
+      int length = end - start;
+      ByteBuffer page = arena.isEmpty() ? null : arena.get(arena.size() - 1);
+      if (page == null || page.remaining() < 4 + length) {
+        page = allocate(Math.max(ARENA_PAGE_SIZE, 4 + length));
+        arena.add(page);
+      }
+      long reference = ((long) (arena.size() - 1) << 32) | page.position();
+      page.putInt(length);
+      page.put(buffer, start, length);
+      return reference;
+    }
+
+    /**
+     * This method compares a stored name with a name in a buffer.
+     *
+     * @param reference the reference to the stored name.
+     * @param buffer the buffer holding the name.
+     * @param start the start index of the name, inclusive.
+     * @param end the end index of the name, exclusive.
+     * @return true if the names are equal, false otherwise.
+     */
+    private boolean nameEquals(long reference, byte[] buffer, int start, int end) {
+      ByteBuffer page = arena.get((int) (reference >>> 32));
+      int position = (int) reference;
+      if (page.getInt(position) != end - start) {
+        return false;
+      }
+      position += 4;
+      for (int i = start; i < end; i++, position++) {
+        if (page.get(position) != buffer[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * This method drops the references to the off-heap memory, for it to be freed.
+     */
+    synchronized void release() {
+      table = null;
+      arena = null;
+    }
+  }
+
+  /**
+   * This method allocates an off-heap buffer in the native byte order.
+   *
+   * @param size the size of the buffer, in bytes.
+   * @return the buffer.
+   */
+  private static ByteBuffer allocate(long size) {
+    return ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+  }
+}
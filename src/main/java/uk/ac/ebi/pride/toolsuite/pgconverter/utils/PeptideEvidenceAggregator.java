@@ -0,0 +1,136 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.pride.data.util.Constant;
+import uk.ac.ebi.pride.utilities.data.controller.DataAccessController;
+import uk.ac.ebi.pride.utilities.data.core.CvParam;
+import uk.ac.ebi.pride.utilities.data.core.Modification;
+import uk.ac.ebi.pride.utilities.util.StringUtils;
+
+import java.util.*;
+
+/**
+ * This class gathers the unique peptide sequences, the PTMs, and the protein and peptide counts of an assay file in
+ * a single pass over its peptide evidence. Only the sequence and PTMs of each peptide are read, through the
+ * controller's per-peptide accessors, instead of looking up each full Protein with its peptides, and nothing is kept
+ * for a peptide once it has been counted. The unique sequences are counted
+ * by their 64 bit hashes in a primitive open addressing set, instead of keeping every sequence string, so the chance
+ * of two different sequences being counted as one is negligible, e.g. below one in 100,000 for 10 million sequences.
+ * The PTMs are kept once for each accession.
+ *
+ * @author Tobias Ternent
+ */
+public class PeptideEvidenceAggregator {
+
+  private static final Logger log = LoggerFactory.getLogger(PeptideEvidenceAggregator.class);
+  private static final long PROGRESS_INTERVAL = 1000000;
+
+  private final LongHashSet uniqueSequences = new LongHashSet();
+  private final Map<String, CvParam> ptms = new LinkedHashMap<>();
+  private long numberOfProteins = 0;
+  private long numberOfPeptides = 0;
+
+  /**
+   * This method gathers the peptide evidence of an assay file.
+   *
+   * @param controller the controller of the assay file.
+   * @param fileName the name of the assay file, for error messages.
+   * @return the aggregated peptide evidence.
+   * @throws NullPointerException if a PTM's ontology, accession, or name is not defined.
+   */
+  public static PeptideEvidenceAggregator aggregate(DataAccessController controller, String fileName) throws NullPointerException {
+    long start = System.currentTimeMillis();
+    PeptideEvidenceAggregator aggregator = new PeptideEvidenceAggregator();
+    for (Comparable proteinId : controller.getProteinIds()) {
+      aggregator.numberOfProteins++;
+      Collection<Comparable> peptideIds = controller.getPeptideIds(proteinId);
+      if (peptideIds == null) {
+        continue;
+      }
+      for (Comparable peptideId : peptideIds) {
+        aggregator.addSequence(controller.getPeptideSequence(proteinId, peptideId));
+        Collection<Modification> modifications = controller.getPTMs(proteinId, peptideId);
+        if (modifications != null) {
+          for (Modification modification : modifications) {
+            aggregator.addModification(modification, fileName);
+          }
+        }
+        if (++aggregator.numberOfPeptides % PROGRESS_INTERVAL == 0) {
+          log.info("Read " + aggregator.numberOfPeptides + " peptides.");
+        }
+      }
+    }
+    log.info("Read " + aggregator.numberOfPeptides + " peptides of " + aggregator.numberOfProteins + " proteins, with " +
+        aggregator.getNumberOfUniquePeptides() + " unique sequences and " + aggregator.ptms.size() + " PTMs, in " +
+        (System.currentTimeMillis() - start) + " ms.");
+    return aggregator;
+  }
+
+  /**
+   * This method adds a peptide sequence.
+   *
+   * @param sequence the sequence, which is skipped if it is not defined.
+   */
+  private void addSequence(String sequence) {
+    if (sequence != null) {
+      uniqueSequences.add(LongHashSet.hash(sequence));
+    }
+  }
+
+  /**
+   * This method adds the PSI-MOD and UNIMOD CV params of a modification, checking that they are all defined properly.
+   *
+   * @param modification the modification.
+   * @param fileName the name of the assay file, for error messages.
+   * @throws NullPointerException if a CV param's ontology, accession, or name is not defined.
+   */
+  private void addModification(Modification modification, String fileName) throws NullPointerException {
+    for (CvParam cvParam : modification.getCvParams()) {
+      if (StringUtils.isEmpty(cvParam.getCvLookupID())|| StringUtils.isEmpty(cvParam.getAccession()) || StringUtils.isEmpty(cvParam.getName())) {
+        String message = "A PTM CV Param's ontology, accession, or name is not defined properly: " + cvParam.toString() + " in file: " + fileName;
+        log.error(message);
+        throw new NullPointerException(message);
+      }
+      if (cvParam.getCvLookupID().equalsIgnoreCase(Constant.PSI_MOD) || cvParam.getCvLookupID().equalsIgnoreCase(Constant.UNIMOD)) {
+        ptms.putIfAbsent(cvParam.getAccession(), cvParam);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of unique peptide sequences.
+   *
+   * @return the number of unique sequences.
+   */
+  public int getNumberOfUniquePeptides() {
+    return uniqueSequences.size();
+  }
+
+  /**
+   * Gets the PSI-MOD and UNIMOD PTMs, one for each accession.
+   *
+   * @return the PTMs.
+   */
+  public Set<CvParam> getPtms() {
+    return new LinkedHashSet<>(ptms.values());
+  }
+
+  /**
+   * Gets the number of proteins.
+   *
+   * @return the number of proteins.
+   */
+  public long getNumberOfProteins() {
+    return numberOfProteins;
+  }
+
+  /**
+   * Gets the number of peptides, i.e. of peptide evidence across all the proteins.
+   *
+   * @return the number of peptides.
+   */
+  public long getNumberOfPeptides() {
+    return numberOfPeptides;
+  }
+}
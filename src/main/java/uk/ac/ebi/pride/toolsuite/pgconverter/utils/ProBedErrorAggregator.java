@@ -0,0 +1,241 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class collects proBed validation errors from one or more threads, using a constant amount of memory.
+ * Errors are grouped by their type, i.e. the error message without the line content. For each type it keeps
+ * a count of all the errors, a capped sample of example lines, and the first line numbers it was found on.
+ *
+ * @author Tobias Ternent
+ */
+public class ProBedErrorAggregator {
+
+  private static final Logger log = LoggerFactory.getLogger(ProBedErrorAggregator.class);
+  public static final int DEFAULT_MAX_SAMPLES_PER_TYPE = 5;
+  public static final int DEFAULT_MAX_LINE_NUMBERS_PER_TYPE = 100;
+  public static final int DEFAULT_MAX_ERROR_TYPES = 1000;
+  private static final String OTHER_ERRORS = "Other errors, after the maximum number of different error types was reached.";
+  private static final Comparator<ProBedErrorSample> SAMPLE_ORDER = Comparator.comparingLong(ProBedErrorSample::getLineNumber);
+
+  private final int maxSamplesPerType;
+  private final int maxLineNumbersPerType;
+  private final int maxErrorTypes;
+  private final ConcurrentMap<String, ErrorType> errorTypes = new ConcurrentHashMap<>();
+  private final LongAdder errorCount = new LongAdder();
+
+  /**
+   * Default constructor, uses the default limits.
+   */
+  public ProBedErrorAggregator() {
+    this(DEFAULT_MAX_SAMPLES_PER_TYPE, DEFAULT_MAX_LINE_NUMBERS_PER_TYPE, DEFAULT_MAX_ERROR_TYPES);
+  }
+
+  /**
+   * Constructor, sets the limits of what is kept in memory.
+   *
+   * @param maxSamplesPerType the number of example lines to keep per error type.
+   * @param maxLineNumbersPerType the number of line numbers to keep per error type.
+   * @param maxErrorTypes the number of different error types to keep, others are counted together.
+   */
+  public ProBedErrorAggregator(int maxSamplesPerType, int maxLineNumbersPerType, int maxErrorTypes) {
+    this.maxSamplesPerType = maxSamplesPerType;
+    this.maxLineNumbersPerType = maxLineNumbersPerType;
+    this.maxErrorTypes = maxErrorTypes;
+  }
+
+  /**
+   * This method records an error. The line content is only decoded if the line is kept as an example.
+   *
+   * @param errorType the error message, without the line content.
+   * @param lineNumber the line number of the error.
+   * @param byteOffset the byte offset of the start of the line.
+   * @param line the buffer holding the line, or null if there is no content to report.
+   * @param start the start index of the line, inclusive.
+   * @param end the end index of the line, exclusive.
+   */
+  public void addError(String errorType, long lineNumber, long byteOffset, byte[] line, int start, int end) {
+    errorCount.increment();
+    ErrorType type = errorTypes.get(errorType);
+    if (type == null) {
+      type = errorTypes.size() < maxErrorTypes ?
+          errorTypes.computeIfAbsent(errorType, ErrorType::new) :
+          errorTypes.computeIfAbsent(OTHER_ERRORS, ErrorType::new);
+    }
+    type.count.increment();
+    if (lineNumber < type.lineNumberLimit) {
+      synchronized (type) {
+        offer(type.lineNumbers, lineNumber, maxLineNumbersPerType, Comparator.reverseOrder());
+        type.lineNumberLimit = type.lineNumbers.size() < maxLineNumbersPerType ? Long.MAX_VALUE : type.lineNumbers.peek();
+      }
+    }
+    if (lineNumber < type.sampleLimit) {
+      String lineContent = line == null ? "" : BedFieldParser.toString(line, start, end);
+      ProBedErrorSample sample = new ProBedErrorSample(lineNumber, byteOffset, lineContent);
+      synchronized (type) {
+        if (offer(type.samples, sample, maxSamplesPerType, SAMPLE_ORDER.reversed())) {
+          log.error(sample.toString(errorType));
+        }
+        type.sampleLimit = type.samples.size() < maxSamplesPerType ? Long.MAX_VALUE : type.samples.peek().getLineNumber();
+      }
+    }
+  }
+
+  /**
+   * This method adds an item to a bounded max-heap, which keeps the lowest items.
+   *
+   * @param heap the heap, with its highest item first.
+   * @param item the item to add.
+   * @param capacity the maximum number of items to keep.
+   * @param order the order of the heap.
+   * @return true if the item was kept, false otherwise.
+   */
+  private static <T> boolean offer(PriorityQueue<T> heap, T item, int capacity, Comparator<? super T> order) {
+    if (capacity < 1) {
+      return false;
+    }
+    if (heap.size() < capacity) {
+      heap.add(item);
+      return true;
+    }
+    if (order.compare(item, heap.peek()) > 0) {
+      heap.poll();
+      heap.add(item);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Gets the total number of errors recorded.
+   *
+   * @return the number of errors.
+   */
+  public long getErrorCount() {
+    return errorCount.sum();
+  }
+
+  /**
+   * Checks if any errors were recorded.
+   *
+   * @return true if there were errors, false otherwise.
+   */
+  public boolean hasErrors() {
+    return getErrorCount() > 0;
+  }
+
+  /**
+   * Gets the number of errors of a type.
+   *
+   * @param errorType the error type.
+   * @return the number of errors of that type.
+   */
+  public long getErrorCount(String errorType) {
+    ErrorType type = errorTypes.get(errorType);
+    return type == null ? 0 : type.count.sum();
+  }
+
+  /**
+   * Gets the error types recorded, the most frequent first.
+   *
+   * @return the error types.
+   */
+  public List<String> getErrorTypes() {
+    List<ErrorType> types = new ArrayList<>(errorTypes.values());
+    types.sort(Comparator.comparingLong((ErrorType type) -> type.count.sum()).reversed().thenComparing(type -> type.errorType));
+    List<String> result = new ArrayList<>();
+    types.forEach(type -> result.add(type.errorType));
+    return result;
+  }
+
+  /**
+   * Gets the first line numbers an error type was found on, in ascending order.
+   *
+   * @param errorType the error type.
+   * @return the line numbers.
+   */
+  public List<Long> getLineNumbers(String errorType) {
+    ErrorType type = errorTypes.get(errorType);
+    List<Long> result = new ArrayList<>();
+    if (type != null) {
+      synchronized (type) {
+        result.addAll(type.lineNumbers);
+      }
+      Collections.sort(result);
+    }
+    return result;
+  }
+
+  /**
+   * Gets the example lines of an error type, in line order.
+   *
+   * @param errorType the error type.
+   * @return the example lines.
+   */
+  public List<ProBedErrorSample> getSamples(String errorType) {
+    ErrorType type = errorTypes.get(errorType);
+    List<ProBedErrorSample> result = new ArrayList<>();
+    if (type != null) {
+      synchronized (type) {
+        result.addAll(type.samples);
+      }
+      result.sort(SAMPLE_ORDER);
+    }
+    return result;
+  }
+
+  /**
+   * Outputs a summary of the errors, by type, as a String.
+   *
+   * @return the summary as a properly formatted String.
+   */
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (String errorType : getErrorTypes()) {
+      sb.append(getErrorCount(errorType)).append(" x ").append(errorType);
+      sb.append('\n');
+      List<Long> lineNumbers = getLineNumbers(errorType);
+      sb.append("  First line numbers: ");
+      for (int i = 0; i < lineNumbers.size(); i++) {
+        sb.append(i > 0 ? ", " : "").append(lineNumbers.get(i));
+      }
+      sb.append('\n');
+      for (ProBedErrorSample sample : getSamples(errorType)) {
+        sb.append("  ").append(sample.toString(null));
+        sb.append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * The bounded information kept about one error type.
+   */
+  private static class ErrorType {
+    private final String errorType;
+    private final LongAdder count = new LongAdder();
+    private final PriorityQueue<Long> lineNumbers = new PriorityQueue<>(Comparator.reverseOrder());
+    private final PriorityQueue<ProBedErrorSample> samples = new PriorityQueue<>(SAMPLE_ORDER.reversed());
+    private volatile long lineNumberLimit = Long.MAX_VALUE;
+    private volatile long sampleLimit = Long.MAX_VALUE;
+
+    /**
+     * Constructor, sets the error type.
+     *
+     * @param errorType the error message, without the line content.
+     */
+    ErrorType(String errorType) {
+      this.errorType = errorType;
+    }
+  }
+}
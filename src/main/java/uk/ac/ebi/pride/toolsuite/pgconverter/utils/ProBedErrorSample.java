@@ -0,0 +1,61 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+/**
+ * Class to store an example line of a proBed validation error.
+ *
+ * @author Tobias Ternent
+ */
+public class ProBedErrorSample {
+
+  private final long lineNumber;
+  private final long byteOffset;
+  private final String lineContent;
+
+  /**
+   * Constructor with all the supplied variables of the example line.
+   *
+   * @param lineNumber the line number, starting from 1.
+   * @param byteOffset the byte offset of the start of the line.
+   * @param lineContent the content of the line.
+   */
+  public ProBedErrorSample(long lineNumber, long byteOffset, String lineContent) {
+    this.lineNumber = lineNumber;
+    this.byteOffset = byteOffset;
+    this.lineContent = lineContent;
+  }
+
+  /**
+   * Gets the line number.
+   * @return the line number.
+   */
+  public long getLineNumber() {
+    return lineNumber;
+  }
+
+  /**
+   * Gets the byte offset.
+   * @return the byte offset.
+   */
+  public long getByteOffset() {
+    return byteOffset;
+  }
+
+  /**
+   * Gets the line content.
+   * @return the line content.
+   */
+  public String getLineContent() {
+    return lineContent;
+  }
+
+  /**
+   * Outputs the example line as a String, optionally with its error message.
+   *
+   * @param errorType the error message, or null to only output the line.
+   * @return the example line as a properly formatted String.
+   */
+  public String toString(String errorType) {
+    return "Line " + lineNumber + " (byte offset " + byteOffset + "): " +
+        (errorType == null ? "" : errorType + " ") + "Line content: " + lineContent;
+  }
+}
@@ -0,0 +1,310 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static uk.ac.ebi.pride.toolsuite.pgconverter.utils.BedFieldParser.*;
+
+/**
+ * This class validates proBed, or other BED, lines directly from a byte buffer. Lines are read with NIO, and tab and comma separated
+ * fields are tokenized in place, and checked by the validators compiled from the ASQL schema, so that Strings are
+ * only created when an error is reported.
+ * An instance is not thread-safe, as it re-uses its field index arrays for every line, so parallel validation
+ * uses one instance per thread with a shared name index and error aggregator.
+ *
+ * @author Tobias Ternent
+ */
+public class ProBedLineValidator {
+
+  private static final Logger log = LoggerFactory.getLogger(ProBedLineValidator.class);
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  private static final int MAX_DEFERRED_LINE_LENGTH = 64 * 1024;
+
+  private final AsqlSchema schema;
+  private final int totalColumns;
+  private final ColumnValidator[] columns;
+  private final CrossFieldRule[] crossFieldRules;
+  private final int nameColumn;
+  private final NameIndex nameIndex;
+  private final ProBedErrorAggregator errorAggregator;
+  private final int[] fieldStarts;
+  private final int[] fieldEnds;
+  private final boolean[] validTypes;
+  private byte[] line;
+  private int lineStart;
+  private int lineEnd;
+  private String lineContent;
+  private long lineNumber;
+  private long byteOffset;
+
+  /**
+   * Constructor, sets the compiled schema of the BED columns and where to record the results.
+   *
+   * @param schema the ASQL schema compiled from the .AS file.
+   * @param nameIndex the index of the names seen so far in the proBed file.
+   * @param errorAggregator the aggregator to record errors to.
+   */
+  public ProBedLineValidator(AsqlSchema schema, NameIndex nameIndex, ProBedErrorAggregator errorAggregator) {
+    this.schema = schema;
+    this.totalColumns = schema.getColumnCount();
+    this.columns = schema.getColumns();
+    this.crossFieldRules = schema.getCrossFieldRules();
+    this.nameColumn = schema.getNameColumn();
+    this.nameIndex = nameIndex;
+    this.errorAggregator = errorAggregator;
+    this.fieldStarts = new int[totalColumns];
+    this.fieldEnds = new int[totalColumns];
+    this.validTypes = new boolean[totalColumns];
+  }
+
+  /**
+   * This method reads through a proBed file in a single pass and validates every line.
+   *
+   * @param proBed the proBed file.
+   * @throws IOException if there are problems reading the file.
+   */
+  public void validate(Path proBed) throws IOException {
+    try (FileChannel channel = FileChannel.open(proBed, StandardOpenOption.READ)) {
+      validate(channel::read, 1, 0);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * This method reports the duplicate names that the name index could only find after all the lines were validated.
+   * Each duplicate's line is read back from the file at its byte offset, for the error report.
+   *
+   * @param schema the compiled schema, for the duplicate name error message.
+   * @param nameIndex the index of the names in the proBed file.
+   * @param proBed the proBed file.
+   * @param errorAggregator the aggregator to record errors to.
+   * @throws IOException if there are problems reading the index or the file.
+   */
+  public static void reportDeferredDuplicates(AsqlSchema schema, NameIndex nameIndex, Path proBed, ProBedErrorAggregator errorAggregator) throws IOException {
+    try (FileChannel channel = FileChannel.open(proBed, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate(MAX_DEFERRED_LINE_LENGTH);
+      nameIndex.forEachDeferredDuplicate((lineNumber, byteOffset) -> {
+        buffer.clear();
+        while (buffer.hasRemaining() && channel.read(buffer, byteOffset + buffer.position()) > 0) {
+          if (contains(buffer.array(), 0, buffer.position(), (byte) '\n')) {
+            break;
+          }
+        }
+        int end = partEnd(buffer.array(), 0, buffer.position(), (byte) '\n');
+        errorAggregator.addError(schema.getNameNotUniqueMessage(), lineNumber, byteOffset, buffer.array(), 0, stripCarriageReturn(buffer.array(), 0, end));
+      });
+    }
+  }
+
+  /**
+   * This method validates every line of a region of a proBed file, e.g. a memory-mapped chunk that starts at the
+   * beginning of a line.
+   *
+   * @param region the region of the file, read from its position to its limit.
+   * @param firstLineNumber the line number of the first line in the region, starting from 1.
+   * @param regionOffset the byte offset of the region in the file.
+   * @throws IOException if there are problems reading the region.
+   */
+  public void validate(ByteBuffer region, long firstLineNumber, long regionOffset) throws IOException {
+    validate(target -> {
+      if (!region.hasRemaining()) {
+        return -1;
+      }
+      int length = Math.min(region.remaining(), target.remaining());
+      ByteBuffer slice = region.slice();
+      slice.limit(length);
+      target.put(slice);
+      region.position(region.position() + length);
+      return length;
+    }, firstLineNumber, regionOffset);
+  }
+
+  /**
+   * This method splits the bytes of a source into lines, and validates every line.
+   *
+   * @param source the source to read bytes from.
+   * @param firstLineNumber the line number of the first line, starting from 1.
+   * @param sourceOffset the byte offset of the source in the file.
+   * @throws IOException if there are problems reading the source.
+   */
+  private void validate(ByteSource source, long firstLineNumber, long sourceOffset) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+    long nextLineNumber = firstLineNumber;
+    long bufferOffset = sourceOffset;
+    int start = 0;
+    int scanned = 0;
+    while (true) {
+      int read = source.read(byteBuffer);
+      int limit = byteBuffer.position();
+      if (read < 0) {
+        if (start < limit) {
+          validateLine(buffer, start, stripCarriageReturn(buffer, start, limit), nextLineNumber, bufferOffset + start);
+        }
+        break;
+      }
+      for (int i = scanned; i < limit; i++) {
+        if (buffer[i] == '\n') {
+          validateLine(buffer, start, stripCarriageReturn(buffer, start, i), nextLineNumber++, bufferOffset + start);
+          start = i + 1;
+        }
+      }
+      int remaining = limit - start;
+      if (start == 0 && limit == buffer.length) {
+        byte[] larger = new byte[buffer.length * 2];
+        System.arraycopy(buffer, 0, larger, 0, limit);
+        buffer = larger;
+      } else if (start > 0) {
+        System.arraycopy(buffer, start, buffer, 0, remaining);
+      }
+      byteBuffer = ByteBuffer.wrap(buffer);
+      byteBuffer.position(remaining);
+      bufferOffset += start;
+      start = 0;
+      scanned = remaining;
+    }
+  }
+
+  /**
+   * This method removes a trailing carriage return from a line, i.e. for Windows line endings.
+   *
+   * @param buffer the line buffer.
+   * @param start the start index of the line, inclusive.
+   * @param end the end index of the line, exclusive.
+   * @return the end index of the line without a carriage return.
+   */
+  private static int stripCarriageReturn(byte[] buffer, int start, int end) {
+    return (end > start && buffer[end - 1] == '\r') ? end - 1 : end;
+  }
+
+  /**
+   * This method validates a line of a proBed file.
+   *
+   * @param buffer the buffer holding the line.
+   * @param start the start index of the line, inclusive.
+   * @param end the end index of the line, exclusive, without the line terminator.
+   * @param lineNumber the line number, starting from 1.
+   * @param byteOffset the byte offset of the start of the line in the file.
+   */
+  public void validateLine(byte[] buffer, int start, int end, long lineNumber, long byteOffset) {
+    line = buffer;
+    lineStart = start;
+    lineEnd = end;
+    lineContent = null;
+    this.lineNumber = lineNumber;
+    this.byteOffset = byteOffset;
+    if (isEmpty(start, end)) {
+      logProbedError("Empty blank line encountered");
+    } else if (buffer[start] == '#') {
+      log.info("Comment: " + lineContent());
+    } else {
+      int fieldCount = tokenize(buffer, start, end);
+      if (fieldCount != totalColumns) {
+        logProbedError("Incorrect number of columns found. Expected " + totalColumns + " instead have : " + fieldCount + ".");
+      } else {
+        validateFields(buffer);
+      }
+    }
+  }
+
+  /**
+   * This method finds the tab separated fields of a line, the same way as String.split("\\t").
+   *
+   * @param buffer the buffer holding the line.
+   * @param start the start index of the line, inclusive.
+   * @param end the end index of the line, exclusive.
+   * @return the number of fields found.
+   */
+  private int tokenize(byte[] buffer, int start, int end) {
+    int splitEnd = splitEnd(buffer, start, end, TAB);
+    int fieldCount = 0;
+    int fieldStart = start;
+    while (true) {
+      int fieldEnd = partEnd(buffer, fieldStart, splitEnd, TAB);
+      if (fieldCount < totalColumns) {
+        fieldStarts[fieldCount] = fieldStart;
+        fieldEnds[fieldCount] = fieldEnd;
+      }
+      fieldCount++;
+      if (fieldEnd >= splitEnd) {
+        break;
+      }
+      fieldStart = fieldEnd + 1;
+    }
+    return splitEnd == start && splitEnd != end ? 0 : fieldCount;
+  }
+
+  /**
+   * This method validates the fields of a line with the expected number of columns, using the compiled schema:
+   * first each column's validator, then the rules between columns, then the uniqueness of the name.
+   *
+   * @param b the buffer holding the line.
+   */
+  private void validateFields(byte[] b) {
+    ColumnValidator[] columns = this.columns;
+    int[] starts = fieldStarts;
+    int[] ends = fieldEnds;
+    for (int i = 0; i < columns.length; i++) {
+      ColumnValidator column = columns[i];
+      boolean validType = column.isValidType(b, starts[i], ends[i]);
+      validTypes[i] = validType;
+      if (!validType) {
+        logProbedError(column.getTypeMessage());
+      } else if (!column.isValidValue(b, starts[i], ends[i])) {
+        logProbedError(column.getValueMessage());
+      }
+    }
+    for (CrossFieldRule rule : crossFieldRules) {
+      if (!rule.isValid(b, starts, ends, validTypes)) {
+        logProbedError(rule.getMessage());
+      }
+    }
+    if (nameColumn >= 0 && validTypes[nameColumn] && !nameIndex.add(b, starts[nameColumn], ends[nameColumn], lineNumber, byteOffset)) {
+      logProbedError(schema.getNameNotUniqueMessage());
+    }
+  }
+
+  /**
+   * This method decodes the current line, at most once per line, for error reporting.
+   *
+   * @return the current line as a String.
+   */
+  private String lineContent() {
+    if (lineContent == null) {
+      lineContent = BedFieldParser.toString(line, lineStart, lineEnd);
+    }
+    return lineContent;
+  }
+
+  /**
+   * This method records a proBed error for the current line. Each error is reported at most once per field,
+   * and the line content is only decoded if the aggregator keeps the line as an example.
+   *
+   * @param errorMessage the proBed error message, without the line content.
+   */
+  private void logProbedError(String errorMessage) {
+    errorAggregator.addError(errorMessage, lineNumber, byteOffset, line, lineStart, lineEnd);
+  }
+
+  /**
+   * A source of bytes for the line reader, e.g. a file channel or a memory-mapped region.
+   */
+  private interface ByteSource {
+    /**
+     * Reads bytes into the target buffer.
+     *
+     * @param target the buffer to read bytes into.
+     * @return the number of bytes read, or -1 at the end of the source.
+     * @throws IOException if there are problems reading the source.
+     */
+    int read(ByteBuffer target) throws IOException;
+  }
+}
@@ -0,0 +1,385 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class sorts BED files by chromosome, chromStart and chromEnd, using a bounded amount of memory, instead of
+ * the external sort tool. The input is read in runs which are sorted in memory by several threads and written to
+ * temporary files, and then the runs are merged in a single k-way merge. Lines on chromosomes which are not in the
+ * chromosome sizes are dropped while merging, so no separate filtering pass over the file is needed. If the whole
+ * input fits in one run it is sorted in memory, without any temporary files.
+ * Chromosomes are sorted by their names, as the 'C' locale would, and lines with the same position keep their order.
+ *
+ * @author Tobias Ternent
+ */
+public class ProBedSorter {
+
+  private static final Logger log = LoggerFactory.getLogger(ProBedSorter.class);
+  private static final int MAX_FAN_IN = 128;
+  private static final int IO_BUFFER_SIZE = 1024 * 1024;
+  private static final long MIN_RUN_BYTES = 16L * 1024 * 1024;
+  private static final long LINE_OVERHEAD_BYTES = 96;
+  private static final Comparator<BedLine> LINE_ORDER = Comparator.comparing((BedLine line) -> line.chrom)
+      .thenComparingLong(line -> line.start)
+      .thenComparingLong(line -> line.end);
+
+  private final Map<String, Integer> chromSizes;
+  private final int threads;
+  private final long runBytes;
+
+  /**
+   * Constructor, sizes the runs so that all the threads' runs fit in a quarter of the maximum heap.
+   *
+   * @param chromSizes the chromosome sizes, or null to keep all the chromosomes.
+   * @param threads the number of threads to sort runs with.
+   */
+  public ProBedSorter(Map<String, Integer> chromSizes, int threads) {
+    this(chromSizes, threads, Math.max(MIN_RUN_BYTES, Runtime.getRuntime().maxMemory() / (4L * (Math.max(1, threads) + 1))));
+  }
+
+  /**
+   * Constructor, sets the size of the runs.
+   *
+   * @param chromSizes the chromosome sizes, or null to keep all the chromosomes.
+   * @param threads the number of threads to sort runs with.
+   * @param runBytes the approximate memory used by one run.
+   */
+  public ProBedSorter(Map<String, Integer> chromSizes, int threads, long runBytes) {
+    this.chromSizes = chromSizes;
+    this.threads = Math.max(1, threads);
+    this.runBytes = runBytes;
+  }
+
+  /**
+   * This method sorts a BED file. Header lines, i.e. comment, 'track' and 'browser' lines, are written first,
+   * in their original order. The input and output may be the same file, as the output is only replaced once
+   * the sorted file is complete.
+   *
+   * @param input the BED file to sort.
+   * @param output the sorted BED file.
+   * @return the number of lines written, not including header lines.
+   * @throws IOException if there are problems reading or writing the files.
+   */
+  public long sort(Path input, Path output) throws IOException {
+    File directory = Files.createTempDirectory("probed_sort").toFile();
+    Path sorted = output.resolveSibling(output.getFileName() + ".sorting");
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<String> headers = new ArrayList<>();
+      List<Future<File>> runFutures = new ArrayList<>();
+      List<BedLine> run = null;
+      Semaphore runsInMemory = new Semaphore(threads);
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(input), StandardCharsets.ISO_8859_1), IO_BUFFER_SIZE)) {
+        boolean endOfInput = false;
+        while (!endOfInput) {
+          run = new ArrayList<>();
+          long bytes = 0;
+          String line;
+          while (bytes < runBytes && (line = reader.readLine()) != null) {
+            if (isHeader(line)) {
+              headers.add(line);
+            } else if (!line.isEmpty()) {
+              run.add(new BedLine(line));
+              bytes += LINE_OVERHEAD_BYTES + 2L * line.length();
+            }
+          }
+          endOfInput = bytes < runBytes;
+          if (!endOfInput || !runFutures.isEmpty()) {
+            final List<BedLine> lines = run;
+            final File runFile = new File(directory, "run_" + runFutures.size() + ".bed");
+            runsInMemory.acquire();
+            runFutures.add(pool.submit(() -> {
+              try {
+                writeRun(lines, runFile);
+                return runFile;
+              } finally {
+                runsInMemory.release();
+              }
+            }));
+            run = null;
+          }
+        }
+      }
+      long written;
+      try (BufferedWriter writer = newWriter(sorted.toFile())) {
+        for (String header : headers) {
+          writer.write(header);
+          writer.write('\n');
+        }
+        if (run != null) {
+          log.info("Sorting " + run.size() + " BED lines in memory.");
+          run.sort(LINE_ORDER);
+          written = writeLines(run.iterator(), writer);
+        } else {
+          List<File> runs = new ArrayList<>();
+          for (Future<File> runFuture : runFutures) {
+            runs.add(runFuture.get());
+          }
+          log.info("Merging " + runs.size() + " sorted runs of BED lines.");
+          while (runs.size() > MAX_FAN_IN) {
+            runs = mergePass(runs, directory);
+          }
+          try (RunMerger merger = new RunMerger(runs)) {
+            written = writeLines(merger, writer);
+          }
+        }
+      }
+      Files.move(sorted, output, StandardCopyOption.REPLACE_EXISTING);
+      return written;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while sorting: " + input);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      pool.shutdownNow();
+      Files.deleteIfExists(sorted);
+      FileUtils.deleteQuietly(directory);
+    }
+  }
+
+  /**
+   * This method merges groups of runs into fewer, longer runs, for when there are too many runs to merge at once.
+   *
+   * @param runs the sorted runs.
+   * @param directory the directory for the merged runs.
+   * @return the merged runs.
+   * @throws IOException if there are problems reading or writing the runs.
+   */
+  private static List<File> mergePass(List<File> runs, File directory) throws IOException {
+    List<File> merged = new ArrayList<>();
+    for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+      List<File> group = runs.subList(i, Math.min(runs.size(), i + MAX_FAN_IN));
+      File mergedFile = File.createTempFile("merged_", ".bed", directory);
+      try (RunMerger merger = new RunMerger(group);
+           BufferedWriter writer = newWriter(mergedFile)) {
+        while (merger.hasNext()) {
+          writer.write(merger.next().line);
+          writer.write('\n');
+        }
+      }
+      for (File run : group) {
+        Files.delete(run.toPath());
+      }
+      merged.add(mergedFile);
+    }
+    return merged;
+  }
+
+  /**
+   * This method sorts a run in memory and writes it to a temporary file.
+   *
+   * @param lines the lines of the run.
+   * @param runFile the file to write the sorted run to.
+   * @throws IOException if there are problems writing the file.
+   */
+  private static void writeRun(List<BedLine> lines, File runFile) throws IOException {
+    lines.sort(LINE_ORDER);
+    try (BufferedWriter writer = newWriter(runFile)) {
+      for (BedLine line : lines) {
+        writer.write(line.line);
+        writer.write('\n');
+      }
+    }
+  }
+
+  /**
+   * This method writes sorted lines to the output, dropping lines on chromosomes without a size.
+   *
+   * @param lines the sorted lines.
+   * @param writer the output.
+   * @return the number of lines written.
+   * @throws IOException if there are problems writing the output.
+   */
+  private long writeLines(Iterator<BedLine> lines, BufferedWriter writer) throws IOException {
+    long written = 0;
+    long dropped = 0;
+    Set<String> droppedChroms = new TreeSet<>();
+    while (lines.hasNext()) {
+      BedLine line = lines.next();
+      if (chromSizes == null || chromSizes.containsKey(line.chrom)) {
+        writer.write(line.line);
+        writer.write('\n');
+        written++;
+      } else {
+        dropped++;
+        droppedChroms.add(line.chrom);
+      }
+    }
+    if (dropped > 0) {
+      log.info("Filtered out " + dropped + " lines on chromosomes not in the chromosome sizes: " + droppedChroms);
+    }
+    return written;
+  }
+
+  /**
+   * This method checks if a line is a header line, i.e. a comment, 'track' or 'browser' line.
+   *
+   * @param line the line.
+   * @return true if the line is a header line, false otherwise.
+   */
+  private static boolean isHeader(String line) {
+    return line.startsWith("#") || line.startsWith("track") || line.startsWith("browser");
+  }
+
+  /**
+   * This method opens a buffered writer to a file.
+   *
+   * @param file the file.
+   * @return the writer.
+   * @throws IOException if there are problems opening the file.
+   */
+  private static BufferedWriter newWriter(File file) throws IOException {
+    return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.ISO_8859_1), IO_BUFFER_SIZE);
+  }
+
+  /**
+   * A BED line with its sort key parsed. chromStart and chromEnd are parsed like a numeric sort would, i.e.
+   * from their leading digits, and as 0 if they have none.
+   */
+  private static class BedLine {
+    private final String line;
+    private final String chrom;
+    private final long start;
+    private final long end;
+
+    /**
+     * Constructor, parses the sort key of the line.
+     *
+     * @param line the BED line.
+     */
+    BedLine(String line) {
+      this.line = line;
+      int chromEnd = line.indexOf('\t');
+      int startEnd = chromEnd < 0 ? -1 : line.indexOf('\t', chromEnd + 1);
+      this.chrom = chromEnd < 0 ? line : line.substring(0, chromEnd);
+      this.start = chromEnd < 0 ? 0 : parseLeadingLong(line, chromEnd + 1);
+      this.end = startEnd < 0 ? 0 : parseLeadingLong(line, startEnd + 1);
+    }
+
+    /**
+     * This method parses the leading digits of a field, with an optional minus sign.
+     *
+     * @param line the line.
+     * @param from the start index of the field.
+     * @return the parsed number, or 0 if the field does not start with a number.
+     */
+    private static long parseLeadingLong(String line, int from) {
+      boolean negative = from < line.length() && line.charAt(from) == '-';
+      long value = 0;
+      for (int i = negative ? from + 1 : from; i < line.length(); i++) {
+        char c = line.charAt(i);
+        if (c < '0' || c > '9' || value > (Long.MAX_VALUE - 9) / 10) {
+          break;
+        }
+        value = value * 10 + (c - '0');
+      }
+      return negative ? -value : value;
+    }
+  }
+
+  /**
+   * This class merges sorted runs, from the smallest line to the largest. Equal lines are taken from the earlier
+   * run first, so the merge is stable.
+   */
+  private static class RunMerger implements Iterator<BedLine>, Closeable {
+    private final List<BufferedReader> readers = new ArrayList<>();
+    private final PriorityQueue<RunHead> heads = new PriorityQueue<>((a, b) -> {
+      int result = LINE_ORDER.compare(a.line, b.line);
+      return result != 0 ? result : Integer.compare(a.run, b.run);
+    });
+
+    /**
+     * Constructor, opens the runs.
+     *
+     * @param runs the sorted runs, in input order.
+     * @throws IOException if there are problems reading the runs.
+     */
+    RunMerger(List<File> runs) throws IOException {
+      int bufferSize = (int) Math.max(64 * 1024, IO_BUFFER_SIZE / Math.max(1, runs.size() / 8));
+      try {
+        for (int i = 0; i < runs.size(); i++) {
+          BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(runs.get(i)), StandardCharsets.ISO_8859_1), bufferSize);
+          readers.add(reader);
+          advance(new RunHead(i, reader));
+        }
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+    }
+
+    /**
+     * This method reads the next line of a run, and queues it if there is one.
+     *
+     * @param head the head of the run.
+     * @throws IOException if there are problems reading the run.
+     */
+    private void advance(RunHead head) throws IOException {
+      String line = head.reader.readLine();
+      if (line != null) {
+        head.line = new BedLine(line);
+        heads.add(head);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !heads.isEmpty();
+    }
+
+    @Override
+    public BedLine next() {
+      RunHead head = heads.poll();
+      if (head == null) {
+        throw new NoSuchElementException();
+      }
+      BedLine line = head.line;
+      try {
+        advance(head);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (BufferedReader reader : readers) {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * The current line of a sorted run being merged.
+   */
+  private static class RunHead {
+    private final int run;
+    private final BufferedReader reader;
+    private BedLine line;
+
+    /**
+     * Constructor, sets the run.
+     *
+     * @param run the index of the run, in input order.
+     * @param reader the reader of the run.
+     */
+    RunHead(int run, BufferedReader reader) {
+      this.run = run;
+      this.reader = reader;
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class holds the result of checking every PSM of an assay file, see PsmVerifier: for each PSM, its precursor
+ * delta m/z and the fraction of its fragment ions which match its spectrum, and from these the exact error rates and
+ * their histograms. The per-PSM results are kept in primitive arrays, which are not serialized.
+ *
+ * @author Tobias Ternent
+ */
+public class PsmVerification implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int DELTA_MZ_BINS = 8;
+  private static final int FRAGMENT_ION_MATCH_BINS = 10;
+
+  private final long numberOfPsms;
+  private final double deltaMzThreshold;
+  private final long deltaMzChecked;
+  private final long deltaMzErrors;
+  private final long fragmentIonsChecked;
+  private final long fragmentIonMismatches;
+  private final long[] deltaMzHistogram = new long[DELTA_MZ_BINS + 1];
+  private final long[] fragmentIonMatchHistogram = new long[FRAGMENT_ION_MATCH_BINS + 1];
+  private final transient double[] deltaMz;
+  private final transient float[] fragmentIonMatch;
+
+  /**
+   * Constructor, sets the per-PSM results and counts the errors.
+   *
+   * @param deltaMz the absolute difference between the experimental and calculated precursor m/z of each PSM, or NaN if it could not be checked.
+   * @param fragmentIonMatch the fraction of the fragment ions of each PSM which match its spectrum, or NaN if it has no fragment ions or spectrum.
+   * @param deltaMzThreshold the largest delta m/z which is not an error.
+   */
+  public PsmVerification(double[] deltaMz, float[] fragmentIonMatch, double deltaMzThreshold) {
+    this.deltaMz = deltaMz;
+    this.fragmentIonMatch = fragmentIonMatch;
+    this.numberOfPsms = deltaMz.length;
+    this.deltaMzThreshold = deltaMzThreshold;
+    long deltaChecked = 0;
+    long deltaErrors = 0;
+    for (double delta : deltaMz) {
+      if (!Double.isNaN(delta)) {
+        deltaChecked++;
+        deltaErrors += delta > deltaMzThreshold ? 1 : 0;
+        deltaMzHistogram[delta > deltaMzThreshold ? DELTA_MZ_BINS : Math.min(DELTA_MZ_BINS - 1, (int) (delta / deltaMzThreshold * DELTA_MZ_BINS))]++;
+      }
+    }
+    long fragmentChecked = 0;
+    long fragmentMismatches = 0;
+    for (float match : fragmentIonMatch) {
+      if (!Float.isNaN(match)) {
+        fragmentChecked++;
+        fragmentMismatches += match < 1 ? 1 : 0;
+        fragmentIonMatchHistogram[Math.min(FRAGMENT_ION_MATCH_BINS, (int) (match * FRAGMENT_ION_MATCH_BINS))]++;
+      }
+    }
+    this.deltaMzChecked = deltaChecked;
+    this.deltaMzErrors = deltaErrors;
+    this.fragmentIonsChecked = fragmentChecked;
+    this.fragmentIonMismatches = fragmentMismatches;
+  }
+
+  /**
+   * Gets the number of PSMs checked.
+   *
+   * @return the number of PSMs.
+   */
+  public long getNumberOfPsms() {
+    return numberOfPsms;
+  }
+
+  /**
+   * Gets the fraction of the PSMs with a precursor delta m/z above the threshold, of those which could be checked.
+   *
+   * @return the exact delta m/z error rate.
+   */
+  public double getDeltaMzErrorRate() {
+    return deltaMzChecked == 0 ? 0 : (double) deltaMzErrors / deltaMzChecked;
+  }
+
+  /**
+   * Gets the fraction of the PSMs with fragment ions which do not all match their spectrum, of those with fragment ions.
+   *
+   * @return the exact fragment ion mismatch rate.
+   */
+  public double getFragmentIonMismatchRate() {
+    return fragmentIonsChecked == 0 ? 0 : (double) fragmentIonMismatches / fragmentIonsChecked;
+  }
+
+  /**
+   * Gets the histogram of the precursor delta m/z: equal bins from 0 up to and including the threshold, then one bin for the errors above it.
+   *
+   * @return the number of PSMs in each bin.
+   */
+  public long[] getDeltaMzHistogram() {
+    return deltaMzHistogram.clone();
+  }
+
+  /**
+   * Gets the histogram of the fraction of matching fragment ions: ten bins of 10% each, then one bin for 100%.
+   *
+   * @return the number of PSMs in each bin.
+   */
+  public long[] getFragmentIonMatchHistogram() {
+    return fragmentIonMatchHistogram.clone();
+  }
+
+  /**
+   * Gets the precursor delta m/z of each PSM, which is not available after deserialization.
+   *
+   * @return the delta m/z of each PSM, or NaN if it could not be checked.
+   */
+  public double[] getDeltaMz() {
+    return deltaMz;
+  }
+
+  /**
+   * Gets the fraction of matching fragment ions of each PSM, which is not available after deserialization.
+   *
+   * @return the fraction of matching fragment ions of each PSM, or NaN if it has no fragment ions or spectrum.
+   */
+  public float[] getFragmentIonMatch() {
+    return fragmentIonMatch;
+  }
+
+  /**
+   * This method formats the delta m/z histogram, e.g. '[0.0,0.5): 120, ..., >4.0: 3', where the last bin before the threshold includes the threshold.
+   *
+   * @return the formatted histogram.
+   */
+  public String deltaMzHistogramToString() {
+    List<String> bins = new ArrayList<>();
+    double width = deltaMzThreshold / DELTA_MZ_BINS;
+    for (int i = 0; i < DELTA_MZ_BINS; i++) {
+      bins.add("[" + (i * width) + "," + ((i + 1) * width) + "): " + deltaMzHistogram[i]);
+    }
+    bins.add(">" + deltaMzThreshold + ": " + deltaMzHistogram[DELTA_MZ_BINS]);
+    return String.join(", ", bins);
+  }
+
+  /**
+   * This method formats the fragment ion match histogram, e.g. '0-10%: 4, ..., 100%: 9500'.
+   *
+   * @return the formatted histogram.
+   */
+  public String fragmentIonMatchHistogramToString() {
+    List<String> bins = new ArrayList<>();
+    int width = 100 / FRAGMENT_ION_MATCH_BINS;
+    for (int i = 0; i < FRAGMENT_ION_MATCH_BINS; i++) {
+      bins.add((i * width) + "-" + ((i + 1) * width) + "%: " + fragmentIonMatchHistogram[i]);
+    }
+    bins.add("100%: " + fragmentIonMatchHistogram[FRAGMENT_ION_MATCH_BINS]);
+    return String.join(", ", bins);
+  }
+}
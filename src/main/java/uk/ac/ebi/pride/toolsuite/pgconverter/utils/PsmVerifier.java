@@ -0,0 +1,212 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.pride.utilities.data.controller.DataAccessController;
+import uk.ac.ebi.pride.utilities.data.core.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This class checks every PSM of an assay file, instead of a sample: the precursor delta m/z, i.e. the difference
+ * between the experimental and calculated m/z, and how many of the fragment ions match the spectrum. The controller
+ * is only read by one thread, as it is not thread safe, which collects the values of each PSM into batches of
+ * primitive arrays. The batches are checked on the other threads, with only a few waiting at once, so memory use
+ * stays bounded. Each peptide is read on its own, through the controller's per-peptide accessors, instead of looking up
+ * each full Protein with its peptides. PSMs shared by several proteins are only checked once, de-duplicated by the 64 bit
+ * hashes of their IDs in a primitive open addressing set, as for the unique sequences of a PeptideEvidenceAggregator.
+ *
+ * @author Tobias Ternent
+ */
+public class PsmVerifier {
+
+  private static final Logger log = LoggerFactory.getLogger(PsmVerifier.class);
+  public static final double DEFAULT_DELTA_MZ_THRESHOLD = 4.0;
+  private static final int BATCH_SIZE = 1024;
+  private static final int BATCHES_PER_THREAD = 2;
+  private static final long PROGRESS_INTERVAL = 1000000;
+
+  private final int threads;
+  private final FragmentIonMatcher.Tolerance tolerance;
+  private final double deltaMzThreshold;
+
+  /**
+   * Constructor, sets the number of threads and the tolerances.
+   *
+   * @param threads the number of threads to check the PSMs on.
+   * @param tolerance the m/z tolerance for matching fragment ions.
+   * @param deltaMzThreshold the largest precursor delta m/z which is not an error.
+   */
+  public PsmVerifier(int threads, FragmentIonMatcher.Tolerance tolerance, double deltaMzThreshold) {
+    this.threads = Math.max(1, threads);
+    this.tolerance = tolerance;
+    this.deltaMzThreshold = deltaMzThreshold;
+  }
+
+  /**
+   * This method checks every PSM of an assay file.
+   *
+   * @param controller the controller of the assay file.
+   * @return the result for each PSM, and the exact error rates and histograms.
+   * @throws InterruptedException if interrupted while checking the PSMs.
+   */
+  public PsmVerification verify(DataAccessController controller) throws InterruptedException {
+    long start = System.currentTimeMillis();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    Semaphore waitingBatches = new Semaphore(threads * BATCHES_PER_THREAD);
+    List<Future<BatchResult>> results = new ArrayList<>();
+    LongHashSet checkedPsms = new LongHashSet();
+    long psms = 0;
+    try {
+      Batch batch = new Batch();
+      for (Comparable proteinId : controller.getProteinIds()) {
+        Collection<Comparable> peptideIds = controller.getPeptideIds(proteinId);
+        if (peptideIds == null) {
+          continue;
+        }
+        for (Comparable peptideId : peptideIds) {
+          Peptide peptide = controller.getPeptideByIndex(proteinId, peptideId);
+          if (peptide == null) {
+            continue;
+          }
+          SpectrumIdentification psm = peptide.getSpectrumIdentification();
+          if (psm != null && psm.getId() != null && !checkedPsms.add(LongHashSet.hash(psm.getId().toString()))) {
+            continue;
+          }
+          batch.add(peptide, psm);
+          if (++psms % PROGRESS_INTERVAL == 0) {
+            log.info("Read " + psms + " PSMs to check.");
+          }
+          if (batch.size == BATCH_SIZE) {
+            results.add(submit(pool, waitingBatches, batch));
+            batch = new Batch();
+          }
+        }
+      }
+      if (batch.size > 0) {
+        results.add(submit(pool, waitingBatches, batch));
+      }
+      checkedPsms = null;
+      double[] deltaMz = new double[(int) psms];
+      float[] fragmentIonMatch = new float[(int) psms];
+      int offset = 0;
+      for (Future<BatchResult> result : results) {
+        BatchResult batchResult = result.get();
+        System.arraycopy(batchResult.deltaMz, 0, deltaMz, offset, batchResult.deltaMz.length);
+        System.arraycopy(batchResult.fragmentIonMatch, 0, fragmentIonMatch, offset, batchResult.fragmentIonMatch.length);
+        offset += batchResult.deltaMz.length;
+      }
+      PsmVerification verification = new PsmVerification(deltaMz, fragmentIonMatch, deltaMzThreshold);
+      log.info("Checked all " + psms + " PSMs in " + (System.currentTimeMillis() - start) + " ms, with " + threads + " threads.");
+      return verification;
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Unable to check the PSMs.", e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * This method submits a batch of PSMs to be checked, waiting while too many batches are waiting already.
+   *
+   * @param pool the pool to check the batch on.
+   * @param waitingBatches the permits for the batches waiting to be checked.
+   * @param batch the batch.
+   * @return the future result of the batch.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  private Future<BatchResult> submit(ExecutorService pool, Semaphore waitingBatches, Batch batch) throws InterruptedException {
+    waitingBatches.acquire();
+    return pool.submit(() -> {
+      try {
+        return batch.check();
+      } finally {
+        waitingBatches.release();
+      }
+    });
+  }
+
+  /**
+   * The values of a batch of PSMs, as read from the controller.
+   */
+  private class Batch {
+    private final double[] experimentalMz = new double[BATCH_SIZE];
+    private final double[] calculatedMz = new double[BATCH_SIZE];
+    private final double[][] ionMz = new double[BATCH_SIZE][];
+    private final double[][] ionIntensity = new double[BATCH_SIZE][];
+    private final double[][][] peaks = new double[BATCH_SIZE][][];
+    private int size = 0;
+
+    /**
+     * This method adds a PSM's values to the batch.
+     *
+     * @param peptide the peptide of the PSM.
+     * @param psm the PSM, or null if it is not available.
+     */
+    void add(Peptide peptide, SpectrumIdentification psm) {
+      experimentalMz[size] = Double.NaN;
+      calculatedMz[size] = Double.NaN;
+      if (psm != null) {
+        Double experimental = psm.getExperimentalMassToCharge();
+        Double calculated = psm.getCalculatedMassToCharge();
+        experimentalMz[size] = experimental == null || experimental <= 0 ? Double.NaN : experimental;
+        calculatedMz[size] = calculated == null || calculated <= 0 ? Double.NaN : calculated;
+      }
+      List<FragmentIon> fragmentIons = peptide.getFragmentation();
+      if (fragmentIons != null && !fragmentIons.isEmpty()) {
+        double[] mz = new double[fragmentIons.size()];
+        double[] intensity = new double[fragmentIons.size()];
+        for (int i = 0; i < mz.length; i++) {
+          mz[i] = fragmentIons.get(i).getMz();
+          intensity[i] = fragmentIons.get(i).getIntensity();
+        }
+        ionMz[size] = mz;
+        ionIntensity[size] = intensity;
+        try {
+          Spectrum spectrum = peptide.getSpectrum();
+          peaks[size] = spectrum == null ? null : spectrum.getMassIntensityMap();
+        } catch (RuntimeException e) {
+          log.debug("Unable to read the spectrum of PSM: " + (psm == null ? "" : psm.getId()), e);
+        }
+      }
+      size++;
+    }
+
+    /**
+     * This method checks the PSMs of the batch.
+     *
+     * @return the delta m/z and the fraction of matching fragment ions of each PSM.
+     */
+    BatchResult check() {
+      BatchResult result = new BatchResult(size);
+      for (int i = 0; i < size; i++) {
+        result.deltaMz[i] = Math.abs(experimentalMz[i] - calculatedMz[i]);
+        if (ionMz[i] != null && peaks[i] != null) {
+          FragmentIonMatcher matcher = FragmentIonMatcher.of(peaks[i], tolerance);
+          result.fragmentIonMatch[i] = (float) matcher.countMatches(ionMz[i], ionIntensity[i]) / ionMz[i].length;
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * The results of a batch of PSMs.
+   */
+  private static class BatchResult {
+    private final double[] deltaMz;
+    private final float[] fragmentIonMatch;
+
+    /**
+     * Constructor, sets up the results, as not checked.
+     *
+     * @param size the number of PSMs in the batch.
+     */
+    BatchResult(int size) {
+      deltaMz = new double[size];
+      fragmentIonMatch = new float[size];
+      Arrays.fill(fragmentIonMatch, Float.NaN);
+    }
+  }
+}
@@ -29,6 +29,7 @@ public class Report {
   private int totalSpecra = 0;
   private Set<AssayPTM> uniquePTMs = new HashSet<>();
   private int deltaMzPercent = 0;
+  private boolean deltaMzChecked = true;
   private int identifiedSpectra = 0;
   private int missingIdSpectra = 0;
   private boolean matchFragIons = false;
@@ -41,6 +42,7 @@ public class Report {
   private Set<AssayGroupCvParam> cvParams = new HashSet<>();
   private Set<AssayGroupUserParam> userParams = new HashSet<>();
   private boolean chromatogram = false;
+  private PsmVerification psmVerification = null;
 
   /**
    * Default constructor. No variables are set.
@@ -95,10 +97,26 @@ public class Report {
       sb.append('\n');
       sb.append("Total unique PTMs: ").append(uniquePTMstoString());
       sb.append('\n');
-      sb.append("Delta m/z: ").append(deltaMzPercent).append("%");
+      if (deltaMzChecked) {
+        sb.append("Delta m/z: ").append(deltaMzPercent).append("%");
+      } else {
+        sb.append("Delta m/z: not checked, no sampled PSM has both an experimental and calculated m/z");
+      }
       sb.append('\n');
       sb.append("Match fragment ions: ").append(matchFragIons);
       sb.append('\n');
+      if (psmVerification != null) {
+        sb.append("Verified PSMs: ").append(psmVerification.getNumberOfPsms());
+        sb.append('\n');
+        sb.append("Exact delta m/z: ").append(String.format("%.2f", psmVerification.getDeltaMzErrorRate() * 100.0)).append("%");
+        sb.append('\n');
+        sb.append("Exact fragment ion mismatches: ").append(String.format("%.2f", psmVerification.getFragmentIonMismatchRate() * 100.0)).append("%");
+        sb.append('\n');
+        sb.append("Delta m/z histogram: ").append(psmVerification.deltaMzHistogramToString());
+        sb.append('\n');
+        sb.append("Fragment ion match histogram: ").append(psmVerification.fragmentIonMatchHistogramToString());
+        sb.append('\n');
+      }
     }
     return sb.toString();
   }
@@ -127,8 +145,10 @@ public class Report {
     identifiedSpectra = assayFileSummary.getNumberOfIdentifiedSpectra();
     missingIdSpectra = assayFileSummary.getNumberofMissingSpectra();
     uniquePTMs = assayFileSummary.getPtms();
-    deltaMzPercent = new Double(assayFileSummary.getDeltaMzErrorRate()*100.0).intValue();
+    deltaMzChecked = !Double.isNaN(assayFileSummary.getDeltaMzErrorRate());
+    deltaMzPercent = deltaMzChecked ? new Double(assayFileSummary.getDeltaMzErrorRate()*100.0).intValue() : 0;
     matchFragIons = assayFileSummary.isSpectrumMatchFragmentIons();
+    psmVerification = assayFileSummary.getPsmVerification();
     return this.toString();
   }
 
@@ -460,6 +480,15 @@ public class Report {
     this.deltaMzPercent = deltaMzPercent;
   }
 
+  /**
+   * Sets new deltaMzChecked.
+   *
+   * @param deltaMzChecked New value of deltaMzChecked.
+   */
+  public void setDeltaMzChecked(boolean deltaMzChecked) {
+    this.deltaMzChecked = deltaMzChecked;
+  }
+
   /**
    * Sets new status.
    *
@@ -528,6 +557,15 @@ public class Report {
     return deltaMzPercent;
   }
 
+  /**
+   * Gets deltaMzChecked, i.e. whether any sampled PSM had both an experimental and calculated m/z.
+   *
+   * @return Value of deltaMzChecked.
+   */
+  public boolean isDeltaMzChecked() {
+    return deltaMzChecked;
+  }
+
   /**
    * Gets shortLabel.
    *
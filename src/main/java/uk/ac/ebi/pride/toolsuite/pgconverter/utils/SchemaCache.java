@@ -0,0 +1,322 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import java.io.*;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class validates XML files against XML schemas, which are compiled only once for each JVM and then shared
+ * by all the threads. A schema is loaded from the local schema directory, set with the 'pgconverter.schemadir' system
+ * property, or '.pgconverter/schema' in the user's home directory by default, so a local copy overrides any other.
+ * If it is not there, the copy bundled under 'schema' on the classpath is used, as long as it matches the SHA-256
+ * checksum bundled next to it. Otherwise, it is downloaded from its remote location and saved to the local schema
+ * directory for future runs. So bundled schemas, and schemas which have been downloaded or copied to the local schema
+ * directory, need no network access.
+ *
+ * @author Tobias Ternent
+ */
+public class SchemaCache {
+
+  private static final Logger log = LoggerFactory.getLogger(SchemaCache.class);
+  private static final String SCHEMA_DIRECTORY_PROPERTY = "pgconverter.schemadir";
+  private static final String BUNDLED_SCHEMA_DIRECTORY = "schema/";
+  private static final String CHECKSUM_EXTENSION = ".sha256";
+  private static final int DOWNLOAD_TIMEOUT_MS = 60000;
+  private static final Map<String, Schema> SCHEMAS = new ConcurrentHashMap<>();
+  private static final int MAX_ERROR_TYPES = 100;
+  private static final int EXAMPLES_PER_ERROR_TYPE = 3;
+  private static final String OTHER_ERROR_TYPE = "other";
+  public static final int DEFAULT_MAX_ERRORS = 1000;
+
+  /**
+   * Private constructor, as this class only has static methods.
+   */
+  private SchemaCache() {
+  }
+
+  /**
+   * This method validates an XML file, which may be gzipped, against a schema. The file is streamed, and errors are
+   * counted by their type, keeping only the location and message of the first few errors of each type, so memory use
+   * does not grow with the number of errors. Validation stops once the maximum number of errors is reached.
+   *
+   * @param schemaLocation the remote location of the schema.
+   * @param xmlFile the XML file.
+   * @param maxErrors the number of errors to stop validating after.
+   * @return a summary of the errors, one line for each type of error, which is empty if the file is valid.
+   * @throws IOException if there are problems reading the file or loading the schema.
+   * @throws SAXException if the schema is not valid.
+   */
+  public static List<String> validate(String schemaLocation, File xmlFile, int maxErrors) throws IOException, SAXException {
+    try (InputStream in = Utility.newInputStream(xmlFile)) {
+      return validate(schemaLocation, in, xmlFile.toURI().toString(), maxErrors);
+    }
+  }
+
+  /**
+   * This method validates an XML stream against a schema, in the same way as a file.
+   *
+   * @param schemaLocation the remote location of the schema.
+   * @param in the XML content, which is read until validation finishes or stops, but not closed.
+   * @param systemId the location of the XML content, used in error messages.
+   * @param maxErrors the number of errors to stop validating after.
+   * @return a summary of the errors, one line for each type of error, which is empty if the content is valid.
+   * @throws IOException if there are problems reading the content or loading the schema.
+   * @throws SAXException if the schema is not valid.
+   * @see #validate(String, File, int)
+   */
+  public static List<String> validate(String schemaLocation, InputStream in, String systemId, int maxErrors) throws IOException, SAXException {
+    Validator validator = getSchema(schemaLocation).newValidator();
+    ErrorCollector errors = new ErrorCollector(maxErrors);
+    validator.setErrorHandler(errors);
+    try {
+      validator.validate(new StreamSource(in, systemId));
+    } catch (SAXParseException e) {
+      // already recorded by the error collector, as a fatal error or the last error before stopping.
+    }
+    return errors.getSummary();
+  }
+
+  /**
+   * This method gets a compiled schema, compiling it the first time it is needed.
+   *
+   * @param schemaLocation the remote location of the schema.
+   * @return the compiled schema.
+   * @throws IOException if the schema cannot be found.
+   * @throws SAXException if the schema is not valid.
+   */
+  public static Schema getSchema(String schemaLocation) throws IOException, SAXException {
+    Schema schema = SCHEMAS.get(schemaLocation);
+    if (schema == null) {
+      synchronized (SCHEMAS) {
+        schema = SCHEMAS.get(schemaLocation);
+        if (schema == null) {
+          URL url = findSchema(schemaLocation);
+          log.info("Compiling XML schema: " + url);
+          schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(url);
+          SCHEMAS.put(schemaLocation, schema);
+        }
+      }
+    }
+    return schema;
+  }
+
+  /**
+   * This method finds a local copy of a schema, in the local schema directory or else bundled with the tool,
+   * downloading it to the local schema directory if there is neither.
+   *
+   * @param schemaLocation the remote location of the schema.
+   * @return the URL of the local copy of the schema.
+   * @throws IOException if the schema is not available locally and cannot be downloaded.
+   */
+  private static URL findSchema(String schemaLocation) throws IOException {
+    String name = schemaLocation.substring(schemaLocation.lastIndexOf('/') + 1);
+    File schemaDirectory = new File(System.getProperty(SCHEMA_DIRECTORY_PROPERTY,
+        System.getProperty("user.home") + File.separator + ".pgconverter" + File.separator + "schema"));
+    File localSchema = new File(schemaDirectory, name);
+    if (!localSchema.isFile()) {
+      URL bundledSchema = findBundledSchema(name);
+      if (bundledSchema != null) {
+        return bundledSchema;
+      }
+      log.info("Downloading XML schema " + schemaLocation + " to: " + localSchema.getPath());
+      try {
+        FileUtils.forceMkdir(schemaDirectory);
+        File partFile = File.createTempFile(name, ".part", schemaDirectory);
+        try {
+          FileUtils.copyURLToFile(new URL(schemaLocation), partFile, DOWNLOAD_TIMEOUT_MS, DOWNLOAD_TIMEOUT_MS);
+          Files.move(partFile.toPath(), localSchema.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+          Files.deleteIfExists(partFile.toPath());
+        }
+      } catch (IOException e) {
+        throw new IOException("XML schema " + name + " is not available locally and could not be downloaded. Copy it to: " +
+            schemaDirectory.getPath(), e);
+      }
+    }
+    return localSchema.toURI().toURL();
+  }
+
+  /**
+   * This method finds a schema bundled with the tool, which is only used if its SHA-256 checksum matches the one in
+   * the bundled '.sha256' file of the same name, so a modified copy of the upstream schema is never used.
+   *
+   * @param name the file name of the schema.
+   * @return the URL of the bundled schema, or null if it is not bundled or does not match its checksum.
+   * @throws IOException if the bundled schema or its checksum cannot be read.
+   */
+  private static URL findBundledSchema(String name) throws IOException {
+    ClassLoader classLoader = SchemaCache.class.getClassLoader();
+    URL schema = classLoader.getResource(BUNDLED_SCHEMA_DIRECTORY + name);
+    if (schema == null) {
+      return null;
+    }
+    URL checksum = classLoader.getResource(BUNDLED_SCHEMA_DIRECTORY + name + CHECKSUM_EXTENSION);
+    if (checksum == null) {
+      log.error("Bundled XML schema " + name + " has no checksum, so it is not used.");
+      return null;
+    }
+    String expected;
+    try (InputStream in = checksum.openStream()) {
+      expected = IOUtils.toString(in, StandardCharsets.UTF_8).trim().split("\\s+")[0];
+    }
+    String actual = getSha256(schema);
+    if (!actual.equalsIgnoreCase(expected)) {
+      log.error("Bundled XML schema " + name + " does not match its checksum, so it is not used. Expected: " + expected + ", found: " + actual);
+      return null;
+    }
+    log.info("Using bundled XML schema: " + schema);
+    return schema;
+  }
+
+  /**
+   * This method computes the SHA-256 checksum of a resource.
+   *
+   * @param resource the resource.
+   * @return the checksum, in lower case hexadecimal.
+   * @throws IOException if the resource cannot be read.
+   */
+  private static String getSha256(URL resource) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("SHA-256 is not available.", e);
+    }
+    try (InputStream in = resource.openStream()) {
+      byte[] buffer = new byte[8192];
+      int length;
+      while ((length = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, length);
+      }
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * An error handler which counts the warnings and errors by type, instead of stopping at the first error, and stops
+   * once there are too many errors.
+   */
+  private static class ErrorCollector implements ErrorHandler {
+    private final int maxErrors;
+    private final Map<String, ErrorType> errorTypes = new LinkedHashMap<>();
+    private long errorCount = 0;
+    private boolean stopped = false;
+
+    /**
+     * Constructor, sets the maximum number of errors.
+     *
+     * @param maxErrors the number of errors to stop after.
+     */
+    ErrorCollector(int maxErrors) {
+      this.maxErrors = Math.max(1, maxErrors);
+    }
+
+    @Override
+    public void warning(SAXParseException exception) {
+      log.warn(format(exception));
+    }
+
+    @Override
+    public void error(SAXParseException exception) throws SAXException {
+      add(exception);
+      if (errorCount >= maxErrors) {
+        stopped = true;
+        throw exception;
+      }
+    }
+
+    @Override
+    public void fatalError(SAXParseException exception) throws SAXException {
+      add(exception);
+      throw exception;
+    }
+
+    /**
+     * This method counts an error under its type, which is the error code at the start of the message, e.g.
+     * 'cvc-complex-type.2.4.a', or the whole message if it has no code.
+     *
+     * @param exception the error.
+     */
+    private void add(SAXParseException exception) {
+      errorCount++;
+      String message = String.valueOf(exception.getMessage());
+      int codeEnd = message.indexOf(": ");
+      String type = codeEnd > 0 && message.substring(0, codeEnd).matches("[\\w.-]+") ? message.substring(0, codeEnd) : message;
+      if (!errorTypes.containsKey(type) && errorTypes.size() >= MAX_ERROR_TYPES) {
+        type = OTHER_ERROR_TYPE;
+      }
+      errorTypes.computeIfAbsent(type, key -> new ErrorType()).add(format(exception));
+    }
+
+    /**
+     * This method formats a parsing problem, with its location.
+     *
+     * @param exception the parsing problem.
+     * @return the formatted message.
+     */
+    private static String format(SAXParseException exception) {
+      return "Line " + exception.getLineNumber() + ", column " + exception.getColumnNumber() + ": " + exception.getMessage();
+    }
+
+    /**
+     * Gets the summary of the errors: the total, then each type with its count and first errors.
+     * @return the summary of the errors, which is empty if there were none.
+     */
+    List<String> getSummary() {
+      List<String> summary = new ArrayList<>();
+      if (errorCount > 0) {
+        summary.add(errorCount + " errors of " + errorTypes.size() + " types" +
+            (stopped ? ", validation stopped after the maximum of " + maxErrors + " errors." : "."));
+        errorTypes.forEach((type, errorType) -> summary.add(type + " (" + errorType.count + " times): " +
+            String.join(" | ", errorType.examples)));
+      }
+      return summary;
+    }
+  }
+
+  /**
+   * The count and first few errors of a type of error.
+   */
+  private static class ErrorType {
+    private long count = 0;
+    private final List<String> examples = new ArrayList<>();
+
+    /**
+     * This method counts an error, keeping it if it is one of the first few of its type.
+     *
+     * @param message the formatted error.
+     */
+    void add(String message) {
+      count++;
+      if (examples.size() < EXAMPLES_PER_ERROR_TYPE) {
+        examples.add(message);
+      }
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.pride.data.util.FileUtil;
+import uk.ac.ebi.pride.utilities.data.controller.DataAccessController;
+import uk.ac.ebi.pride.utilities.data.controller.impl.ControllerImpl.MzMLControllerImpl;
+import uk.ac.ebi.pride.utilities.data.controller.impl.ControllerImpl.MzXmlControllerImpl;
+import uk.ac.ebi.pride.utilities.data.controller.impl.ControllerImpl.PeakControllerImpl;
+import uk.ac.ebi.pride.utilities.data.controller.impl.ControllerImpl.ReferencedIdentificationController;
+import uk.ac.ebi.pride.utilities.data.core.SpectraData;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+/**
+ * This class opens and indexes each peak file of a submission only once, however many result files reference it, and
+ * shares its MS controller between the result file controllers. Each result file controller is given views of the
+ * shared MS controllers, which serialise the calls to each MS controller and ignore being closed by the result file
+ * controller. Instead, each MS controller is closed when the last assay which references its peak file is released.
+ *
+ * @author Tobias Ternent
+ */
+public class SharedMsControllers {
+
+  private static final Logger log = LoggerFactory.getLogger(SharedMsControllers.class);
+
+  private final Map<File, Integer> references = new HashMap<>();
+  private final Map<File, DataAccessController> controllers = new HashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param assayPeakFiles the peak files to read for each assay, i.e. the temporary copies of the related peak files.
+   */
+  public SharedMsControllers(Collection<List<File>> assayPeakFiles) {
+    for (List<File> peakFiles : assayPeakFiles) {
+      for (File peakFile : new HashSet<>(peakFiles)) {
+        references.merge(peakFile, 1, Integer::sum);
+      }
+    }
+  }
+
+  /**
+   * This method adds the shared MS controllers of an assay's peak files to its result file controller, matching each
+   * spectra data of the result file to a peak file by name. A peak file's MS controller is opened the first time it
+   * is needed.
+   *
+   * @param controller the result file controller.
+   * @param peakFiles the peak files to read for the assay.
+   */
+  public void addTo(ReferencedIdentificationController controller, List<File> peakFiles) {
+    Map<SpectraData, DataAccessController> msControllers = new HashMap<>();
+    for (SpectraData spectraData : controller.getSpectraDataFiles()) {
+      String realFileName = FileUtil.getRealFileName(spectraData.getLocation());
+      for (File peakFile : peakFiles) {
+        if (peakFile.getName().equals(realFileName)) {
+          msControllers.put(spectraData, getView(peakFile));
+          break;
+        }
+      }
+    }
+    controller.addMSController(msControllers);
+  }
+
+  /**
+   * This method releases an assay's peak files, and closes the MS controller of each peak file which no other assay
+   * references any more.
+   *
+   * @param peakFiles the peak files to read for the assay.
+   */
+  public synchronized void release(List<File> peakFiles) {
+    for (File peakFile : new HashSet<>(peakFiles)) {
+      Integer remaining = references.computeIfPresent(peakFile, (file, count) -> count > 1 ? count - 1 : null);
+      if (remaining == null) {
+        close(peakFile);
+      }
+    }
+  }
+
+  /**
+   * This method closes all the MS controllers which are still open, e.g. after a failure.
+   */
+  public synchronized void closeAll() {
+    for (File peakFile : new ArrayList<>(controllers.keySet())) {
+      close(peakFile);
+    }
+    references.clear();
+  }
+
+  /**
+   * This method gets a view of a peak file's MS controller, opening it if it is not open yet.
+   *
+   * @param peakFile the peak file.
+   * @return the view of the MS controller.
+   */
+  private synchronized DataAccessController getView(File peakFile) {
+    DataAccessController msController = controllers.get(peakFile);
+    if (msController == null) {
+      log.info("Opening peak file once for all its assays: " + peakFile.getAbsolutePath());
+      msController = open(peakFile);
+      controllers.put(peakFile, msController);
+    }
+    DataAccessController shared = msController;
+    return (DataAccessController) Proxy.newProxyInstance(DataAccessController.class.getClassLoader(),
+        new Class<?>[]{DataAccessController.class}, (proxy, method, args) -> {
+          if (method.getName().equals("close") && method.getParameterCount() == 0) {
+            return null;
+          }
+          synchronized (shared) {
+            try {
+              return method.invoke(shared, args);
+            } catch (InvocationTargetException e) {
+              throw e.getCause();
+            }
+          }
+        });
+  }
+
+  /**
+   * This method opens the MS controller for a peak file, by its extension.
+   *
+   * @param peakFile the mzML, mzXML, or peak list file.
+   * @return the MS controller.
+   */
+  private static DataAccessController open(File peakFile) {
+    String name = peakFile.getName().toLowerCase();
+    if (name.endsWith(".mzml")) {
+      return new MzMLControllerImpl(peakFile);
+    } else if (name.endsWith(".mzxml")) {
+      return new MzXmlControllerImpl(peakFile);
+    } else {
+      return new PeakControllerImpl(peakFile);
+    }
+  }
+
+  /**
+   * This method closes a peak file's MS controller, if it is open.
+   *
+   * @param peakFile the peak file.
+   */
+  private void close(File peakFile) {
+    DataAccessController msController = controllers.remove(peakFile);
+    if (msController != null) {
+      log.info("Closing peak file after its last assay: " + peakFile.getAbsolutePath());
+      synchronized (msController) {
+        msController.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,270 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+
+/**
+ * This class spills the 128-bit hashes of the names to disk, so that duplicate names can be found in files
+ * larger than the available memory. Each name's hash, line number and byte offset are appended to one of several
+ * partition files, chosen by the hash, so equal names always end up in the same partition. Duplicates are
+ * found after all the names have been added, by sorting one partition at a time in memory.
+ *
+ * @author Tobias Ternent
+ */
+public class SpillingNameIndex implements NameIndex {
+
+  private static final Logger log = LoggerFactory.getLogger(SpillingNameIndex.class);
+  private static final int RECORD_SIZE = 32;
+  private static final int MIN_PARTITIONS = 16;
+  private static final int MAX_PARTITIONS = 256;
+  private static final long INPUT_BYTES_PER_PARTITION = 1024L * 1024 * 1024;
+  private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+  private final File directory;
+  private final Partition[] partitions;
+  private final int partitionBits;
+  private final ThreadLocal<long[]> hashes = ThreadLocal.withInitial(() -> new long[2]);
+
+  /**
+   * Constructor, creates the temporary directory for the partitions.
+   *
+   * @param expectedBytes the size of the proBed file, used to choose the number of partitions.
+   * @throws IOException if there are problems creating the temporary directory.
+   */
+  public SpillingNameIndex(long expectedBytes) throws IOException {
+    int partitionCount = MIN_PARTITIONS;
+    while (partitionCount < MAX_PARTITIONS && expectedBytes / partitionCount > INPUT_BYTES_PER_PARTITION) {
+      partitionCount <<= 1;
+    }
+    this.partitionBits = Integer.numberOfTrailingZeros(partitionCount);
+    this.directory = Files.createTempDirectory("probed_names").toFile();
+    this.partitions = new Partition[partitionCount];
+    for (int i = 0; i < partitionCount; i++) {
+      partitions[i] = new Partition(new File(directory, "names_" + i + ".bin"));
+    }
+    log.info("Spilling proBed names to " + partitionCount + " partitions in: " + directory.getPath());
+  }
+
+  /**
+   * This method appends the name's hash and location to its partition. Duplicates are only found later.
+   *
+   * @return always true, see forEachDeferredDuplicate().
+   */
+  @Override
+  public boolean add(byte[] buffer, int start, int end, long lineNumber, long byteOffset) {
+    long[] hash = hashes.get();
+    NameHash.hash128(buffer, start, end, hash);
+    try {
+      partitions[(int) (hash[0] >>> (64 - partitionBits))].write(hash[0], hash[1], lineNumber, byteOffset);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return true;
+  }
+
+  /**
+   * This method sorts each partition by hash and line number, and reports every name after the first
+   * occurrence of the same hash, i.e. the same as if the file had been validated in order.
+   *
+   * @param consumer the consumer of the duplicate names' locations.
+   * @throws IOException if there are problems reading the partitions.
+   */
+  @Override
+  public void forEachDeferredDuplicate(DuplicateConsumer consumer) throws IOException {
+    for (Partition partition : partitions) {
+      partition.close();
+      long records = partition.file.length() / RECORD_SIZE;
+      if (records == 0) {
+        continue;
+      }
+      if (records > Integer.MAX_VALUE - 8) {
+        throw new IOException("Too many names in name index partition: " + partition.file.getPath());
+      }
+      int count = (int) records;
+      long[] highs = new long[count];
+      long[] lows = new long[count];
+      long[] lineNumbers = new long[count];
+      long[] byteOffsets = new long[count];
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(partition.file), WRITE_BUFFER_SIZE))) {
+        for (int i = 0; i < count; i++) {
+          highs[i] = in.readLong();
+          lows[i] = in.readLong();
+          lineNumbers[i] = in.readLong();
+          byteOffsets[i] = in.readLong();
+        }
+      }
+      new RecordSorter(highs, lows, lineNumbers, byteOffsets).sort(0, count - 1);
+      for (int i = 1; i < count; i++) {
+        if (highs[i] == highs[i - 1] && lows[i] == lows[i - 1]) {
+          consumer.accept(lineNumbers[i], byteOffsets[i]);
+        }
+      }
+      Files.delete(partition.file.toPath());
+    }
+  }
+
+  /**
+   * This method closes the partitions and deletes the temporary directory.
+   *
+   * @throws IOException if there are problems closing the partitions.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      for (Partition partition : partitions) {
+        partition.close();
+      }
+    } finally {
+      FileUtils.deleteQuietly(directory);
+    }
+  }
+
+  /**
+   * A partition file, opened on the first write.
+   */
+  private static class Partition {
+    private final File file;
+    private DataOutputStream out;
+
+    /**
+     * Constructor, sets the partition file.
+     *
+     * @param file the partition file.
+     */
+    Partition(File file) {
+      this.file = file;
+    }
+
+    /**
+     * This method appends a record to the partition.
+     *
+     * @param high the high 64 bits of the hash.
+     * @param low the low 64 bits of the hash.
+     * @param lineNumber the line number.
+     * @param byteOffset the byte offset.
+     * @throws IOException if there are problems writing the partition.
+     */
+    synchronized void write(long high, long low, long lineNumber, long byteOffset) throws IOException {
+      if (out == null) {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), WRITE_BUFFER_SIZE));
+      }
+      out.writeLong(high);
+      out.writeLong(low);
+      out.writeLong(lineNumber);
+      out.writeLong(byteOffset);
+    }
+
+    /**
+     * This method flushes and closes the partition, if it was opened.
+     *
+     * @throws IOException if there are problems writing the partition.
+     */
+    synchronized void close() throws IOException {
+      if (out != null) {
+        out.close();
+        out = null;
+      }
+    }
+  }
+
+  /**
+   * A quicksort of the records held in parallel arrays, by hash and then line number.
+   */
+  private static class RecordSorter {
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    private final long[] highs;
+    private final long[] lows;
+    private final long[] lineNumbers;
+    private final long[] byteOffsets;
+
+    /**
+     * Constructor, sets the record arrays.
+     *
+     * @param highs the high 64 bits of the hashes.
+     * @param lows the low 64 bits of the hashes.
+     * @param lineNumbers the line numbers.
+     * @param byteOffsets the byte offsets.
+     */
+    RecordSorter(long[] highs, long[] lows, long[] lineNumbers, long[] byteOffsets) {
+      this.highs = highs;
+      this.lows = lows;
+      this.lineNumbers = lineNumbers;
+      this.byteOffsets = byteOffsets;
+    }
+
+    /**
+     * This method sorts a range of records.
+     *
+     * @param from the first index, inclusive.
+     * @param to the last index, inclusive.
+     */
+    void sort(int from, int to) {
+      while (to - from > INSERTION_SORT_THRESHOLD) {
+        int middle = (from + to) >>> 1;
+        if (compare(middle, from) < 0) {
+          swap(middle, from);
+        }
+        if (compare(to, from) < 0) {
+          swap(to, from);
+        }
+        if (compare(to, middle) < 0) {
+          swap(to, middle);
+        }
+        swap(middle, to - 1);
+        int pivot = to - 1;
+        int i = from;
+        int j = to - 1;
+        while (true) {
+          while (compare(++i, pivot) < 0) {
+          }
+          while (compare(--j, pivot) > 0) {
+          }
+          if (i >= j) {
+            break;
+          }
+          swap(i, j);
+        }
+        swap(i, pivot);
+        if (i - from < to - i) {
+          sort(from, i - 1);
+          from = i + 1;
+        } else {
+          sort(i + 1, to);
+          to = i - 1;
+        }
+      }
+      for (int i = from + 1; i <= to; i++) {
+        for (int j = i; j > from && compare(j, j - 1) < 0; j--) {
+          swap(j, j - 1);
+        }
+      }
+    }
+
+    private int compare(int a, int b) {
+      int result = Long.compare(highs[a], highs[b]);
+      if (result == 0) {
+        result = Long.compare(lows[a], lows[b]);
+      }
+      return result != 0 ? result : Long.compare(lineNumbers[a], lineNumbers[b]);
+    }
+
+    private void swap(int a, int b) {
+      long high = highs[a];
+      highs[a] = highs[b];
+      highs[b] = high;
+      long low = lows[a];
+      lows[a] = lows[b];
+      lows[b] = low;
+      long lineNumber = lineNumbers[a];
+      lineNumbers[a] = lineNumbers[b];
+      lineNumbers[b] = lineNumber;
+      long byteOffset = byteOffsets[a];
+      byteOffsets[a] = byteOffsets[b];
+      byteOffsets[b] = byteOffset;
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class reads a file once, decompressing it if it is gzipped, and hands the same content to several consumers,
+ * each reading its own branch stream on its own thread. Each branch buffers only a few chunks, so the file is read
+ * no faster than the slowest consumer, and memory use does not depend on the size of the file. A consumer which
+ * closes its branch early, e.g. once it has found enough errors, stops receiving chunks and no longer holds the
+ * others back.
+ *
+ * @author Tobias Ternent
+ */
+public class StreamTee {
+
+  private static final Logger log = LoggerFactory.getLogger(StreamTee.class);
+  private static final int CHUNK_SIZE = 1024 * 1024;
+  private static final int CHUNKS_PER_BRANCH = 8;
+  private static final long OFFER_TIMEOUT_MS = 100;
+  private static final byte[] END = new byte[0];
+
+  private final File source;
+  private final List<Branch> branches = new CopyOnWriteArrayList<>();
+  private volatile IOException failure;
+
+  /**
+   * Constructor, sets the file to read.
+   *
+   * @param source the file to read, which may be gzipped.
+   */
+  public StreamTee(File source) {
+    this.source = source;
+  }
+
+  /**
+   * This method adds a consumer of the file. All the branches must be added before the file is read.
+   *
+   * @return the stream of the file's content for the consumer, which it must close when it is done.
+   */
+  public InputStream newBranch() {
+    Branch branch = new Branch();
+    branches.add(branch);
+    return branch;
+  }
+
+  /**
+   * This method reads the whole file, and hands each chunk to all the branches which are still open, waiting while
+   * any of them is full. The branches are ended when the file has been read, or when reading it fails.
+   *
+   * @return the number of bytes read, after decompression.
+   * @throws IOException if there are problems reading the file.
+   * @throws InterruptedIOException if interrupted while waiting for a consumer.
+   */
+  public long read() throws IOException {
+    long bytes = 0;
+    long start = System.currentTimeMillis();
+    try (InputStream in = Utility.newInputStream(source)) {
+      byte[] chunk = new byte[CHUNK_SIZE];
+      int length;
+      while ((length = IOUtils.read(in, chunk)) > 0) {
+        bytes += length;
+        if (!hand(length < chunk.length ? Arrays.copyOf(chunk, length) : chunk)) {
+          log.info("All consumers of " + source.getPath() + " have finished, stopping reading it.");
+          break;
+        }
+        chunk = new byte[CHUNK_SIZE];
+      }
+    } catch (IOException e) {
+      failure = e;
+      throw e;
+    } finally {
+      hand(END);
+    }
+    log.info("Read " + bytes + " bytes of " + source.getPath() + " once for " + branches.size() + " consumers in " +
+        (System.currentTimeMillis() - start) + " ms.");
+    return bytes;
+  }
+
+  /**
+   * This method hands a chunk to all the branches which are still open.
+   *
+   * @param chunk the chunk, which is never changed afterwards.
+   * @return true if any branch is still open, false otherwise.
+   * @throws InterruptedIOException if interrupted while waiting for a consumer.
+   */
+  private boolean hand(byte[] chunk) throws InterruptedIOException {
+    boolean open = false;
+    try {
+      for (Branch branch : branches) {
+        while (!branch.closed && !branch.queue.offer(chunk, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+          // the consumer is behind, wait for it.
+        }
+        open |= !branch.closed;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading: " + source.getPath());
+    }
+    return open;
+  }
+
+  /**
+   * The stream of the file's content for one consumer.
+   */
+  private class Branch extends InputStream {
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(CHUNKS_PER_BRANCH);
+    private volatile boolean closed = false;
+    private byte[] chunk;
+    private int position;
+
+    @Override
+    public int read() throws IOException {
+      byte[] single = new byte[1];
+      return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      if (chunk == null || position == chunk.length) {
+        if (chunk == END) {
+          return -1;
+        }
+        try {
+          chunk = queue.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting to read: " + source.getPath());
+        }
+        position = 0;
+        if (chunk == END) {
+          if (failure != null) {
+            throw new IOException("Problem reading: " + source.getPath(), failure);
+          }
+          return -1;
+        }
+      }
+      int count = Math.min(length, chunk.length - position);
+      System.arraycopy(chunk, position, buffer, offset, count);
+      position += count;
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return chunk == null || chunk == END ? 0 : chunk.length - position;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      queue.clear();
+    }
+  }
+}
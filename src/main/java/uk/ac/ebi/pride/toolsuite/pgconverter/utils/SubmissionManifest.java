@@ -0,0 +1,135 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * This class reads a submission manifest, which maps each result file of a submission to its related peak files.
+ * Each line has a result file, followed by its peak files if it has any, separated by tabs. Blank lines and lines
+ * starting with '#' are ignored, and relative paths are relative to the manifest's directory, e.g.:
+ * <pre>
+ * # result file	peak files
+ * assay1.mzid	run1.mgf	run2.mgf
+ * assay2.mzid	run2.mgf
+ * assay3.pride.xml
+ * </pre>
+ *
+ * @author Tobias Ternent
+ */
+public class SubmissionManifest {
+
+  private static final Logger log = LoggerFactory.getLogger(SubmissionManifest.class);
+
+  private final List<Assay> assays;
+
+  /**
+   * Constructor, sets the assays.
+   *
+   * @param assays the assays, in manifest order.
+   */
+  private SubmissionManifest(List<Assay> assays) {
+    this.assays = assays;
+  }
+
+  /**
+   * This method reads a submission manifest file.
+   *
+   * @param manifestFile the manifest file.
+   * @return the submission manifest.
+   * @throws IOException if there are problems reading the file.
+   */
+  public static SubmissionManifest read(File manifestFile) throws IOException {
+    File directory = manifestFile.getAbsoluteFile().getParentFile();
+    List<Assay> assays = new ArrayList<>();
+    for (String line : FileUtils.readLines(manifestFile, StandardCharsets.UTF_8)) {
+      if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+        continue;
+      }
+      String[] parts = line.split("\t");
+      List<File> peakFiles = new ArrayList<>();
+      for (int i = 1; i < parts.length; i++) {
+        if (!parts[i].trim().isEmpty()) {
+          peakFiles.add(resolve(directory, parts[i].trim()));
+        }
+      }
+      assays.add(new Assay(resolve(directory, parts[0].trim()), peakFiles));
+    }
+    SubmissionManifest manifest = new SubmissionManifest(assays);
+    log.info("Read submission manifest with " + assays.size() + " result files and " + manifest.getPeakFiles().size() +
+        " distinct peak files: " + manifestFile.getPath());
+    return manifest;
+  }
+
+  /**
+   * This method resolves a path of the manifest.
+   *
+   * @param directory the manifest's directory.
+   * @param path the path, absolute or relative to the manifest's directory.
+   * @return the file.
+   */
+  private static File resolve(File directory, String path) {
+    File file = new File(path);
+    return file.isAbsolute() ? file : new File(directory, path);
+  }
+
+  /**
+   * Gets the assays, in manifest order.
+   * @return the assays.
+   */
+  public List<Assay> getAssays() {
+    return assays;
+  }
+
+  /**
+   * Gets the distinct peak files of all the assays, in the order they are first referenced.
+   * @return the peak files.
+   */
+  public Set<File> getPeakFiles() {
+    Set<File> result = new LinkedHashSet<>();
+    for (Assay assay : assays) {
+      result.addAll(assay.getPeakFiles());
+    }
+    return result;
+  }
+
+  /**
+   * A result file of a submission, with its related peak files.
+   */
+  public static class Assay {
+    private final File resultFile;
+    private final List<File> peakFiles;
+
+    /**
+     * Constructor, sets the files.
+     *
+     * @param resultFile the result file.
+     * @param peakFiles the related peak files.
+     */
+    public Assay(File resultFile, List<File> peakFiles) {
+      this.resultFile = resultFile;
+      this.peakFiles = peakFiles;
+    }
+
+    /**
+     * Gets the result file.
+     * @return the result file.
+     */
+    public File getResultFile() {
+      return resultFile;
+    }
+
+    /**
+     * Gets the related peak files.
+     * @return the peak files.
+     */
+    public List<File> getPeakFiles() {
+      return peakFiles;
+    }
+  }
+}
@@ -10,9 +10,21 @@ import redis.clients.jedis.*;
 import uk.ac.ebi.pride.utilities.data.controller.cache.CacheEntry;
 import uk.ac.ebi.pride.utilities.data.controller.impl.ControllerImpl.CachedDataAccessController;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import static redis.clients.jedis.Protocol.DEFAULT_TIMEOUT;
 
@@ -59,7 +71,24 @@ public class Utility {
   public static final String ARG_SCHEMA_ONLY_VALIDATION = "schemaonly";
   public static final String ARG_BED_COLUMN_FORMAT = "columnformat";
   public static final String ARG_FAST_VALIDATION = "fastvalidation";
+  public static final String ARG_MAPPED_VALIDATION = "mappedvalidation";
+  public static final String ARG_THREADS = "threads";
+  public static final String ARG_NAME_INDEX = "nameindex";
+  public static final String ARG_INTERMEDIATE_MZTAB = "intermediatemztab";
+  public static final String ARG_BATCH = "batch";
+  public static final String ARG_MANIFEST = "manifest";
+  public static final String ARG_SERVER = "server";
+  public static final String ARG_JOB_MEMORY = "jobmemory";
+  public static final String ARG_MAX_SCHEMA_ERRORS = "maxschemaerrors";
+  public static final String ARG_EXHAUSTIVE_VALIDATION = "exhaustive";
+  public static final String ARG_SAMPLE_SIZE = "samplesize";
+  public static final String ARG_SAMPLE_SEED = "sampleseed";
+  public static final String ARG_FRAGMENT_TOLERANCE = "fragmenttolerance";
+  public static final String ARG_CACHE_LIMITS = "cachelimits";
   public static final String STRING_SEPARATOR = "##";
+  private static final int INPUT_BUFFER_SIZE = 1024 * 1024;
+  private static final Set<String> NETWORK_FILE_STORE_TYPES = new HashSet<>(Arrays.asList("nfs", "nfs4", "cifs", "smbfs", "smb2", "smb3", "afs", "9p", "fuse.sshfs"));
+  private static final Pattern BED_COLUMN_FORMAT = Pattern.compile("\\s*BED(\\d+)(?:\\+(\\d+))?\\s*", Pattern.CASE_INSENSITIVE);
 
   /**
    * The supported file types.
@@ -90,16 +119,39 @@ public class Utility {
     }
   }
 
+  /**
+   * The supported indexes for checking that proBed names are unique.
+   */
+  public enum NameIndexType {HEAP("heap"), OFFHEAP("offheap"), EXACT("exact"), DISK("disk");
+    private String format;
+
+    NameIndexType(String format) {
+      this.format = format;
+    }
+
+    public String toString() {
+      return format;
+    }
+  }
+
   /**
    * Handles exiting cleanly from the tool, and potentially messages Redis if set.
    * @param cmd command line arguments.
    */
   public static void exitCleanly(CommandLine cmd) {
+    notifyCompletion(cmd);
+    log.info("Exiting application.");
+  }
+
+  /**
+   * Messages Redis that an operation has completed, if set.
+   * @param cmd command line arguments.
+   */
+  public static void notifyCompletion(CommandLine cmd) {
     if (cmd.hasOption(ARG_REDIS)) {
       notifyRedisChannel(cmd.getOptionValue(ARG_REDIS_SERVER), cmd.getOptionValue(ARG_REDIS_PORT),
           cmd.hasOption(ARG_REDIS_PASSWORD) ? cmd.getOptionValue(ARG_REDIS_PASSWORD) : "", cmd.getOptionValue(ARG_REDIS_CHANNEL), cmd.getOptionValue(ARG_REDIS_MESSAGE));
-      }
-    log.info("Exiting application.");
+    }
   }
 
   /**
@@ -158,11 +210,53 @@ public class Utility {
   }
 
   /**
-   * Creates a new temporary file, as a copy of an input file. DeleteOnExit() is set.
-   * @param file the source input file to copy from.
+   * Checks if a file is gzipped, by its extension.
+   * @param file the file.
+   * @return true if the file is gzipped, false otherwise.
+   */
+  public static boolean isGzipped(File file) {
+    return file.getName().toLowerCase().endsWith(".gz");
+  }
+
+  /**
+   * Opens an input file to read, decompressing it as it is read if it is gzipped, so it does not need to be
+   * extracted to disk first.
+   * @param file the input file, which may be gzipped.
+   * @return the buffered input stream.
+   * @throws IOException if there are problems opening the file.
+   */
+  public static InputStream newInputStream(File file) throws IOException {
+    InputStream in = Channels.newInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ));
+    try {
+      return isGzipped(file) ? new GZIPInputStream(in, INPUT_BUFFER_SIZE) : new BufferedInputStream(in, INPUT_BUFFER_SIZE);
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Creates a new temporary file for an input file, in a new temporary directory. DeleteOnExit() is set.
+   * The temporary file is a hard link to a regular local input file, or a symbolic link if a hard link is not
+   * possible, e.g. across file systems, so no data is copied. Otherwise the input file is copied.
+   * A hard link shares its inode with the input file, and a symbolic link points to it, so the temporary file must
+   * only be read: writing to it, or changing its permissions, would change the input file. Deleting it only removes
+   * the link.
+   * @param file the source input file.
    * @return the new temporary file. This may be null if it was not created successfully.
    */
   public static File createNewTempFile(File file) {
+    return createNewTempFile(file, NETWORK_FILE_STORE_TYPES);
+  }
+
+  /**
+   * Creates a new temporary file for an input file, which is copied if it is on one of the given types of file store.
+   * @param file the source input file.
+   * @param networkFileStoreTypes the types of network file store, e.g. nfs, whose files are copied.
+   * @return the new temporary file. This may be null if it was not created successfully.
+   * @see #createNewTempFile(File)
+   */
+  static File createNewTempFile(File file, Set<String> networkFileStoreTypes) {
     if(file != null) {
       log.info("Trying to creating File: " +  file.getAbsolutePath());
     }else{
@@ -174,7 +268,9 @@ public class Utility {
       File tempParentFile = tempFile.getParentFile();
       tempFile.deleteOnExit();
       tempParentFile.deleteOnExit();
-      FileUtils.copyFile(file, tempFile);
+      if (!linkTempFile(file, tempFile, networkFileStoreTypes)) {
+        FileUtils.copyFile(file, tempFile);
+      }
     } catch (IOException e) {
       log.error("Problem creating temp fle for: " + file.getPath());
       log.error("Deleting temp file " + tempFile.getName() + ": " + tempFile.delete());
@@ -183,6 +279,143 @@ public class Utility {
     return tempFile;
   }
 
+  /**
+   * Links a temporary file to a regular input file on a local file system, first trying a hard link, and then a
+   * symbolic link.
+   * @param file the source input file.
+   * @param tempFile the temporary file to create.
+   * @param networkFileStoreTypes the types of network file store, whose files are not linked.
+   * @return true if the temporary file was linked, false if it needs to be copied instead.
+   */
+  private static boolean linkTempFile(File file, File tempFile, Set<String> networkFileStoreTypes) {
+    Path source = file.toPath().toAbsolutePath();
+    try {
+      if (!java.nio.file.Files.isRegularFile(source) ||
+          networkFileStoreTypes.contains(java.nio.file.Files.getFileStore(source).type().toLowerCase())) {
+        return false;
+      }
+    } catch (IOException e) {
+      return false;
+    }
+    try {
+      java.nio.file.Files.createLink(tempFile.toPath(), source);
+      log.info("Hard linked temp file " + tempFile.getPath() + " to: " + source);
+      return true;
+    } catch (IOException | UnsupportedOperationException | SecurityException e) {
+      log.debug("Unable to hard link temp file to: " + source, e);
+    }
+    try {
+      java.nio.file.Files.createSymbolicLink(tempFile.toPath(), source);
+      log.info("Symbolically linked temp file " + tempFile.getPath() + " to: " + source);
+      return true;
+    } catch (IOException | UnsupportedOperationException | SecurityException e) {
+      log.debug("Unable to symbolically link temp file to: " + source, e);
+    }
+    return false;
+  }
+
+  /**
+   * This method resolves the input files of a batch, which may be given as a directory, a glob pattern
+   * (e.g. /data/PXD000001/*.mzid), or a manifest file listing one input file per line. In a manifest, blank lines and
+   * lines starting with '#' are ignored, and relative paths are relative to the manifest's directory.
+   * A directory's result files (mzIdentML, PRIDE XML, mzTab and proBed) are used, not its sub-directories.
+   *
+   * @param batch the directory, glob pattern, or manifest file.
+   * @return the input files, sorted by path for a directory or glob pattern, or in manifest order.
+   * @throws IOException if there are problems reading the directory or manifest file.
+   */
+  public static List<File> resolveBatchFiles(String batch) throws IOException {
+    List<File> result = new ArrayList<>();
+    File batchFile = new File(batch);
+    if (batchFile.isDirectory()) {
+      File[] files = batchFile.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          String name = file.getName().toLowerCase();
+          if (file.isFile() && (name.endsWith("." + FileType.MZID.toString()) || name.endsWith("." + FileType.PRIDEXML.toString()) ||
+              name.endsWith("." + FileType.MZTAB.toString()) || name.endsWith("." + FileType.PROBED.toString()))) {
+            result.add(file);
+          }
+        }
+      }
+      Collections.sort(result);
+    } else if (batchFile.isFile()) {
+      File manifestDirectory = batchFile.getAbsoluteFile().getParentFile();
+      for (String line : FileUtils.readLines(batchFile, StandardCharsets.UTF_8)) {
+        line = line.trim();
+        if (!line.isEmpty() && !line.startsWith("#")) {
+          File file = new File(line);
+          result.add(file.isAbsolute() ? file : new File(manifestDirectory, line));
+        }
+      }
+    } else if (StringUtils.containsAny(batch, "*?[{")) {
+      Path pattern = Paths.get(batch).toAbsolutePath().normalize();
+      Path base = pattern.getRoot();
+      for (Path part : pattern) {
+        if (StringUtils.containsAny(part.toString(), "*?[{")) {
+          break;
+        }
+        base = base.resolve(part);
+      }
+      PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.toString());
+      try (Stream<Path> paths = java.nio.file.Files.walk(base)) {
+        paths.filter(path -> java.nio.file.Files.isRegularFile(path) && matcher.matches(path)).sorted().forEach(path -> result.add(path.toFile()));
+      }
+    } else {
+      throw new FileNotFoundException("Batch directory, glob pattern or manifest file not found: " + batch);
+    }
+    log.info("Found " + result.size() + " input files for the batch: " + batch);
+    return result;
+  }
+
+  /**
+   * Parses a BED column format, e.g. 'BED12+13' or 'BED6', into its number of standard BED columns, which has to be
+   * from 3 to 12, and its number of optional columns, which is 0 if the format does not have a '+' part.
+   * @param columnFormat the BED column format.
+   * @return the number of standard BED columns, and the number of optional columns.
+   * @throws IllegalArgumentException if the column format is not a valid BED column format.
+   */
+  public static int[] parseBedColumnFormat(String columnFormat) throws IllegalArgumentException {
+    Matcher matcher = columnFormat == null ? null : BED_COLUMN_FORMAT.matcher(columnFormat);
+    if (matcher == null || !matcher.matches()) {
+      throw new IllegalArgumentException("Invalid BED column format, e.g. BED12+13 or BED6: " + columnFormat);
+    }
+    int defined;
+    int optional;
+    try {
+      defined = Integer.parseInt(matcher.group(1));
+      optional = matcher.group(2) == null ? 0 : Integer.parseInt(matcher.group(2));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid BED column format, e.g. BED12+13 or BED6: " + columnFormat, e);
+    }
+    if (defined < 3 || defined > 12) {
+      throw new IllegalArgumentException("BED column format has to have from 3 to 12 standard BED columns: " + columnFormat);
+    }
+    return new int[]{defined, optional};
+  }
+
+  /**
+   * Creates a temporary copy of the default proBed ASQL schema file, from the resources. DeleteOnExit() is set.
+   * @return the temporary ASQL file. This may be null if it was not created successfully.
+   */
+  public static File createDefaultProbedAsqlFile() {
+    File result = null;
+    URL url = Utility.class.getClassLoader().getResource("probed-1.0.0.as");
+    if (url == null) {
+      log.error("Unable to read default proBed ASQL schema file!");
+    } else {
+      try {
+        File tempAs = File.createTempFile("probed_default", ".as");
+        tempAs.deleteOnExit();
+        FileUtils.copyURLToFile(url, tempAs);
+        result = tempAs;
+      } catch (IOException e) {
+        log.error("Unable to read default proBed ASQL schema file!", e);
+      }
+    }
+    return result;
+  }
+
   /**
    * This method outputs the cache sizes for debugging purposes.
    *
@@ -0,0 +1,120 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class draws the samples for the sampled validation checks, e.g. of the proteins of an assay file. Samples
+ * are stratified: the items are split into as many equal, consecutive strata as the sample size, and one item is
+ * drawn at random from each stratum, so the sample is spread over all the items instead of clustering. The random
+ * numbers come from a fixed seed, so validating the same file again draws the same sample.
+ *
+ * @author Tobias Ternent
+ */
+public class ValidationSampler {
+
+  public static final int DEFAULT_SAMPLE_SIZE = 100;
+  public static final long DEFAULT_SEED = 1L;
+
+  private final int sampleSize;
+  private final long seed;
+
+  /**
+   * Constructor, sets the sample size and seed.
+   *
+   * @param sampleSize the number of items to draw.
+   * @param seed the seed of the random numbers.
+   */
+  public ValidationSampler(int sampleSize, long seed) {
+    if (sampleSize < 1) {
+      throw new IllegalArgumentException("Sample size has to be at least 1: " + sampleSize);
+    }
+    this.sampleSize = sampleSize;
+    this.seed = seed;
+  }
+
+  /**
+   * This method starts a new sequence of random numbers from the seed, for drawing the samples of one file.
+   *
+   * @return the random numbers.
+   */
+  public Random newRandom() {
+    return new Random(seed);
+  }
+
+  /**
+   * This method draws a stratified sample of items, reading them only once. If there are no more items than the
+   * sample size, all the items are returned.
+   *
+   * @param items the items.
+   * @param random the random numbers, see newRandom().
+   * @param <T> the type of the items.
+   * @return the sample, in the same order as the items.
+   */
+  public <T> List<T> sample(Collection<T> items, Random random) {
+    int[] positions = samplePositions(items.size(), random);
+    List<T> sample = new ArrayList<>(positions.length);
+    int position = 0;
+    int next = 0;
+    for (T item : items) {
+      if (next == positions.length) {
+        break;
+      }
+      if (position++ == positions[next]) {
+        sample.add(item);
+        next++;
+      }
+    }
+    return sample;
+  }
+
+  /**
+   * This method draws one item at random.
+   *
+   * @param items the items.
+   * @param random the random numbers, see newRandom().
+   * @param <T> the type of the items.
+   * @return the drawn item, or null if there are no items.
+   */
+  public <T> T pick(List<T> items, Random random) {
+    return items == null || items.isEmpty() ? null : items.get(random.nextInt(items.size()));
+  }
+
+  /**
+   * This method draws the positions of a stratified sample: one at random from each of the equal, consecutive strata.
+   *
+   * @param count the number of items.
+   * @param random the random numbers.
+   * @return the drawn positions, in ascending order.
+   */
+  int[] samplePositions(int count, Random random) {
+    int size = Math.min(sampleSize, count);
+    int[] positions = new int[size];
+    for (int i = 0; i < size; i++) {
+      long start = (long) i * count / size;
+      long end = (long) (i + 1) * count / size;
+      positions[i] = (int) (start + random.nextInt((int) (end - start)));
+    }
+    return positions;
+  }
+
+  /**
+   * Gets the sample size.
+   *
+   * @return the sample size.
+   */
+  public int getSampleSize() {
+    return sampleSize;
+  }
+
+  /**
+   * Gets the seed.
+   *
+   * @return the seed.
+   */
+  public long getSeed() {
+    return seed;
+  }
+}
@@ -0,0 +1,322 @@
+import org.junit.Test;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.BigBedWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.*;
+import static uk.ac.ebi.pride.toolsuite.pgconverter.utils.Utility.parseBedColumnFormat;
+
+/**
+ * This class contains unit tests for writing bigBed files natively. The written files are read back independently of
+ * the writer, following the bigBed format.
+ *
+ * @author Tobias Ternent
+ */
+public class BigBedWriterTest {
+
+  private static final int BIGBED_MAGIC = 0x8789F2EB;
+  private static final int BPT_MAGIC = 0x78CA8C91;
+  private static final int CIRTREE_MAGIC = 0x2468ACE0;
+  private static final int ITEMS_PER_SLOT = 512;
+  private static final int FIRST_CHROM_ITEMS = 1300;
+  private static final int SMALL_CHROMS = 299;
+
+  /**
+   * This test writes a sorted BED6 file with several chromosomes, and enough data blocks for an R-tree with more than
+   * one leaf and a chromosome B+ tree with more than one level, then reads it back and checks the header, both trees,
+   * the item count, and every row.
+   *
+   * @throws Exception if there are problems writing or reading the files.
+   */
+  @Test
+  public void testWriteBigBed() throws Exception {
+    Map<String, Integer> chromSizes = new HashMap<>();
+    List<String> chroms = new ArrayList<>();
+    List<String> lines = new ArrayList<>();
+    chroms.add("chr1");
+    chromSizes.put("chr1", 10000000);
+    for (int i = 0; i < FIRST_CHROM_ITEMS; i++) {
+      lines.add("chr1\t" + (i * 100) + "\t" + (i * 100 + 50 + i % 7) + "\tpeptide_" + i + "\t1000\t" + (i % 2 == 0 ? "+" : "-"));
+    }
+    for (int c = 0; c < SMALL_CHROMS; c++) {
+      String chrom = String.format("chrUn_%04d", c);
+      chroms.add(chrom);
+      chromSizes.put(chrom, 5000 + c);
+      lines.add(chrom + "\t10\t40\t" + chrom + "_a\t500\t+");
+      lines.add(chrom + "\t10\t" + (60 + c) + "\t" + chrom + "_b\t500\t-");
+    }
+    chromSizes.put("chrMissing", 100);
+    Path bed = Files.createTempFile("bigbedwriter", ".bed");
+    Path bigBed = Files.createTempFile("bigbedwriter", ".bb");
+    try {
+      List<String> bedLines = new ArrayList<>();
+      bedLines.add("# proBed-version\t1.0");
+      bedLines.addAll(lines);
+      Files.write(bed, bedLines, StandardCharsets.UTF_8);
+      String autoSql = new String(Files.readAllBytes(new File(getResource("bed6.as").toURI()).toPath()), StandardCharsets.UTF_8);
+      new BigBedWriter(autoSql, 6, 6, chromSizes).write(bed, bigBed);
+
+      ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(bigBed)).order(ByteOrder.LITTLE_ENDIAN);
+      assertEquals("The header should start with the bigBed magic", BIGBED_MAGIC, file.getInt(0));
+      assertEquals("The version should be 4", 4, file.getShort(4));
+      assertEquals("No zoom levels should be written", 0, file.getShort(6));
+      long chromTreeOffset = file.getLong(8);
+      long dataOffset = file.getLong(16);
+      long indexOffset = file.getLong(24);
+      assertEquals("The field count should be set", 6, file.getShort(32));
+      assertEquals("The defined field count should be set", 6, file.getShort(34));
+      long autoSqlOffset = file.getLong(36);
+      long totalSummaryOffset = file.getLong(44);
+      int uncompressBufSize = file.getInt(52);
+      assertEquals("The autoSql should follow the header", 64, autoSqlOffset);
+      assertEquals("The autoSql should be written", autoSql, readString(file, (int) autoSqlOffset));
+      assertEquals("The total summary should follow the autoSql", autoSqlOffset + autoSql.getBytes(StandardCharsets.UTF_8).length + 1, totalSummaryOffset);
+      assertEquals("The data should follow the total summary", totalSummaryOffset + 40, dataOffset);
+      assertTrue("The index should follow the data", indexOffset > dataOffset);
+      assertTrue("The chromosome tree should follow the index", chromTreeOffset > indexOffset && chromTreeOffset < file.capacity());
+      assertEquals("The item count should be written before the data", lines.size(), file.getLong((int) dataOffset));
+
+      Map<String, int[]> chromTree = readChromTree(file, (int) chromTreeOffset);
+      assertEquals("Only the chromosomes with items should be in the tree", chroms.size(), chromTree.size());
+      for (int i = 0; i < chroms.size(); i++) {
+        int[] idAndSize = chromTree.get(chroms.get(i));
+        assertNotNull("Each chromosome should be in the tree: " + chroms.get(i), idAndSize);
+        assertEquals("Chromosome ids should be in file order", i, idAndSize[0]);
+        assertEquals("Chromosome sizes should be written", (int) chromSizes.get(chroms.get(i)), idAndSize[1]);
+      }
+
+      int position = (int) indexOffset;
+      assertEquals("The R-tree should start with its magic", CIRTREE_MAGIC, file.getInt(position));
+      assertEquals("The R-tree block size should be 256", 256, file.getInt(position + 4));
+      long blockCount = file.getLong(position + 8);
+      int[] rootBounds = readBounds(file, position + 16);
+      assertArrayEquals("The R-tree bounds should enclose all the items",
+          new int[]{0, 0, SMALL_CHROMS, 60 + SMALL_CHROMS - 1}, rootBounds);
+      assertEquals("The R-tree should record the end of the data", indexOffset, file.getLong(position + 32));
+      assertEquals("The R-tree items per slot should be 512", ITEMS_PER_SLOT, file.getInt(position + 40));
+      List<String> rows = new ArrayList<>();
+      int[] leaves = new int[1];
+      long blocks = readRTreeNode(file, position + 48, rootBounds, uncompressBufSize, chroms, rows, leaves);
+      assertTrue("The R-tree should have more than one leaf", leaves[0] > 1);
+      assertEquals("The R-tree item count should be the number of data blocks", blockCount, blocks);
+      assertEquals("Every row should be read back, in order", lines, rows);
+    } finally {
+      Files.deleteIfExists(bed);
+      Files.deleteIfExists(bigBed);
+    }
+  }
+
+  /**
+   * This test checks that BED files which are not sorted, or have chromosomes which are not in the chromosome sizes,
+   * are rejected.
+   *
+   * @throws Exception if there are problems writing the files.
+   */
+  @Test
+  public void testRejectUnsortedBed() throws Exception {
+    Map<String, Integer> chromSizes = new HashMap<>();
+    chromSizes.put("chr1", 1000);
+    chromSizes.put("chr2", 1000);
+    List<List<String>> badInputs = Arrays.asList(
+        Arrays.asList("chr1\t100\t200", "chr1\t50\t80"),
+        Arrays.asList("chr1\t100\t200", "chr2\t50\t80", "chr1\t300\t400"),
+        Arrays.asList("chr1\t100\t200", "chr3\t50\t80"),
+        Arrays.asList("chr1\t100\t2000"));
+    for (List<String> badInput : badInputs) {
+      Path bed = Files.createTempFile("bigbedwriter", ".bed");
+      Path bigBed = Files.createTempFile("bigbedwriter", ".bb");
+      try {
+        Files.write(bed, badInput, StandardCharsets.UTF_8);
+        new BigBedWriter("", 3, 3, chromSizes).write(bed, bigBed);
+        fail("Invalid BED file should be rejected: " + badInput);
+      } catch (IOException e) {
+        // expected
+      } finally {
+        Files.deleteIfExists(bed);
+        Files.deleteIfExists(bigBed);
+      }
+    }
+  }
+
+  /**
+   * This test checks parsing BED column formats, with and without optional columns.
+   */
+  @Test
+  public void testParseBedColumnFormat() {
+    assertArrayEquals(new int[]{12, 13}, parseBedColumnFormat("BED12+13"));
+    assertArrayEquals(new int[]{6, 0}, parseBedColumnFormat("BED6"));
+    assertArrayEquals(new int[]{3, 2}, parseBedColumnFormat("bed3+2"));
+    for (String invalid : new String[]{"", "BED", "BED12+", "12+13", "BED2", "BED13+1", "BED99999999999"}) {
+      try {
+        parseBedColumnFormat(invalid);
+        fail("Invalid column format should be rejected: " + invalid);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * This method reads the chromosome B+ tree, checking that the keys of each index node are the first keys of its
+   * children.
+   *
+   * @param file the bigBed file.
+   * @param position the offset of the tree.
+   * @return the chromosome id and size, by chromosome name.
+   */
+  private static Map<String, int[]> readChromTree(ByteBuffer file, int position) {
+    assertEquals("The chromosome tree should start with its magic", BPT_MAGIC, file.getInt(position));
+    int keySize = file.getInt(position + 8);
+    assertEquals("The chromosome tree values should be an id and a size", 8, file.getInt(position + 12));
+    long itemCount = file.getLong(position + 16);
+    Map<String, int[]> result = new LinkedHashMap<>();
+    List<String> firstKeys = new ArrayList<>();
+    boolean multiLevel = readChromTreeNode(file, position + 32, keySize, result, firstKeys);
+    assertTrue("The chromosome tree should have more than one level", multiLevel);
+    assertEquals("The chromosome tree item count should be set", itemCount, result.size());
+    List<String> sorted = new ArrayList<>(result.keySet());
+    Collections.sort(sorted);
+    assertEquals("The chromosome tree keys should be sorted", sorted, new ArrayList<>(result.keySet()));
+    return result;
+  }
+
+  /**
+   * This method reads a node of the chromosome B+ tree, and its children.
+   *
+   * @return true if the node is an index node.
+   */
+  private static boolean readChromTreeNode(ByteBuffer file, int position, int keySize, Map<String, int[]> result, List<String> firstKeys) {
+    boolean isLeaf = file.get(position) == 1;
+    int count = file.getShort(position + 2) & 0xffff;
+    assertTrue("Each node should have items", count > 0);
+    position += 4;
+    for (int i = 0; i < count; i++) {
+      String key = readKey(file, position, keySize);
+      if (i == 0) {
+        firstKeys.add(key);
+      }
+      if (isLeaf) {
+        result.put(key, new int[]{file.getInt(position + keySize), file.getInt(position + keySize + 4)});
+      } else {
+        int keysBefore = firstKeys.size();
+        readChromTreeNode(file, (int) file.getLong(position + keySize), keySize, result, firstKeys);
+        assertEquals("The index key should be the first key of its child", key, firstKeys.get(keysBefore));
+      }
+      position += keySize + 8;
+    }
+    return !isLeaf;
+  }
+
+  /**
+   * This method reads a node of the R-tree, and its children, checking that their bounds are within the node's, and
+   * reads the rows of the data blocks.
+   *
+   * @return the number of data blocks.
+   */
+  private static long readRTreeNode(ByteBuffer file, int position, int[] bounds, int uncompressBufSize,
+                                    List<String> chroms, List<String> rows, int[] leaves) throws Exception {
+    boolean isLeaf = file.get(position) == 1;
+    int count = file.getShort(position + 2) & 0xffff;
+    assertTrue("Each node should have items", count > 0);
+    position += 4;
+    long blocks = 0;
+    for (int i = 0; i < count; i++) {
+      int[] childBounds = readBounds(file, position);
+      assertTrue("Child bounds should start within the node", compare(childBounds[0], childBounds[1], bounds[0], bounds[1]) >= 0);
+      assertTrue("Child bounds should end within the node", compare(childBounds[2], childBounds[3], bounds[2], bounds[3]) <= 0);
+      if (isLeaf) {
+        readBlock(file, (int) file.getLong(position + 16), (int) file.getLong(position + 24), childBounds, uncompressBufSize, chroms, rows);
+        blocks++;
+        position += 32;
+      } else {
+        blocks += readRTreeNode(file, (int) file.getLong(position + 16), childBounds, uncompressBufSize, chroms, rows, leaves);
+        position += 24;
+      }
+    }
+    if (isLeaf) {
+      leaves[0]++;
+    }
+    return blocks;
+  }
+
+  /**
+   * This method inflates a data block, and reads its rows, checking that they are within the block's bounds.
+   */
+  private static void readBlock(ByteBuffer file, int offset, int size, int[] bounds, int uncompressBufSize,
+                                List<String> chroms, List<String> rows) throws Exception {
+    Inflater inflater = new Inflater();
+    inflater.setInput(file.array(), offset, size);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    while (!inflater.finished()) {
+      int length = inflater.inflate(buffer);
+      assertFalse("The data block should be complete", length == 0 && inflater.needsInput());
+      out.write(buffer, 0, length);
+    }
+    inflater.end();
+    assertTrue("The data block should fit in the uncompress buffer", out.size() <= uncompressBufSize);
+    ByteBuffer block = ByteBuffer.wrap(out.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    int items = 0;
+    while (block.hasRemaining()) {
+      int chromId = block.getInt();
+      int start = block.getInt();
+      int end = block.getInt();
+      assertTrue("Rows should be within the block", chromId == bounds[0] && chromId == bounds[2] && start >= bounds[1] && end <= bounds[3]);
+      String rest = readString(block, block.position());
+      block.position(block.position() + rest.getBytes(StandardCharsets.UTF_8).length + 1);
+      rows.add(chroms.get(chromId) + "\t" + start + "\t" + end + (rest.isEmpty() ? "" : "\t" + rest));
+      items++;
+    }
+    assertTrue("A data block should have at most 512 items", items > 0 && items <= ITEMS_PER_SLOT);
+  }
+
+  private static int[] readBounds(ByteBuffer file, int position) {
+    return new int[]{file.getInt(position), file.getInt(position + 4), file.getInt(position + 8), file.getInt(position + 12)};
+  }
+
+  private static int compare(int chromA, int baseA, int chromB, int baseB) {
+    return chromA != chromB ? Integer.compare(chromA, chromB) : Integer.compare(baseA, baseB);
+  }
+
+  private static String readKey(ByteBuffer file, int position, int keySize) {
+    int length = 0;
+    while (length < keySize && file.get(position + length) != 0) {
+      length++;
+    }
+    byte[] key = new byte[length];
+    for (int i = 0; i < length; i++) {
+      key[i] = file.get(position + i);
+    }
+    return new String(key, StandardCharsets.UTF_8);
+  }
+
+  private static String readString(ByteBuffer buffer, int position) {
+    int end = position;
+    while (buffer.get(end) != 0) {
+      end++;
+    }
+    byte[] bytes = new byte[end - position];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = buffer.get(position + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static URL getResource(String name) {
+    URL url = BigBedWriterTest.class.getClassLoader().getResource(name);
+    if (url == null) {
+      throw new IllegalStateException("no file for input found!");
+    }
+    return url;
+  }
+}
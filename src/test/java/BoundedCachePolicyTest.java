@@ -0,0 +1,205 @@
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.ParseException;
+import org.junit.Test;
+import uk.ac.ebi.pride.toolsuite.pgconverter.MainApp;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.BoundedCachePolicy;
+import uk.ac.ebi.pride.utilities.data.controller.DataAccessController;
+import uk.ac.ebi.pride.utilities.data.controller.cache.CacheEntry;
+import uk.ac.ebi.pride.utilities.data.controller.impl.ControllerImpl.CachedDataAccessController;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static uk.ac.ebi.pride.toolsuite.pgconverter.utils.Utility.ARG_CACHE_LIMITS;
+import static uk.ac.ebi.pride.toolsuite.pgconverter.utils.Utility.ARG_VALIDATION;
+
+/**
+ * This class contains unit tests for bounding the caches of a controller while its file is validated.
+ *
+ * @author Tobias Ternent
+ */
+public class BoundedCachePolicyTest {
+
+  /**
+   * This test parses cache limits, and checks that the proteins, peptides, and spectra are bounded by default, that
+   * unknown cache entries are skipped, and that bad limits are not accepted.
+   */
+  @Test
+  public void testParseLimits() {
+    Map<CacheEntry, Integer> defaultLimits = BoundedCachePolicy.parseLimits(BoundedCachePolicy.DEFAULT_LIMITS);
+    assertEquals("The proteins, peptides, and spectra should be bounded by default", 3, defaultLimits.size());
+    assertEquals("The proteins should be bounded by default", 20000, (int) defaultLimits.get(CacheEntry.PROTEIN));
+    assertEquals("The peptides should be bounded by default", 50000, (int) defaultLimits.get(CacheEntry.PEPTIDE));
+    assertEquals("The spectra should be bounded by default", 5000, (int) defaultLimits.get(CacheEntry.SPECTRUM));
+    assertTrue("No limits should leave the caches unbounded", BoundedCachePolicy.parseLimits("").isEmpty());
+    Map<CacheEntry, Integer> limits = BoundedCachePolicy.parseLimits("protein=20000, SPECTRUM = 5000,UNKNOWN=10,");
+    assertEquals("Two limits should be parsed", 2, limits.size());
+    assertEquals("The protein limit should be parsed", 20000, (int) limits.get(CacheEntry.PROTEIN));
+    assertEquals("The spectrum limit should be parsed", 5000, (int) limits.get(CacheEntry.SPECTRUM));
+    for (String bad : new String[]{"PROTEIN", "PROTEIN=abc", "PROTEIN=0", "PROTEIN=-1", "PROTEIN=1=2"}) {
+      try {
+        BoundedCachePolicy.parseLimits(bad);
+        fail("The cache limit should not be parsed: " + bad);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * This test parses the -cachelimits argument, and checks that bad limits are rejected when the arguments are
+   * parsed, before anything is validated.
+   *
+   * @throws Exception if good limits are not accepted.
+   */
+  @Test
+  public void testCacheLimitsArgument() throws Exception {
+    CommandLine cmd = MainApp.parseArgs(new String[]{"-" + ARG_VALIDATION, "-" + ARG_CACHE_LIMITS, "PROTEIN=10000,SPECTRUM=2000"});
+    assertEquals("The limits should be kept", "PROTEIN=10000,SPECTRUM=2000", cmd.getOptionValue(ARG_CACHE_LIMITS));
+    for (String bad : new String[]{"PROTEIN", "PROTEIN=0", "SPECTRUM=abc"}) {
+      try {
+        MainApp.parseArgs(new String[]{"-" + ARG_VALIDATION, "-" + ARG_CACHE_LIMITS, bad});
+        fail("The cache limits should be rejected: " + bad);
+      } catch (ParseException e) {
+        assertTrue("The error should name the argument", e.getMessage().contains("-" + ARG_CACHE_LIMITS));
+      }
+    }
+  }
+
+  /**
+   * This test bounds a cache which already has values, and checks that the least recently used values are evicted,
+   * that the hits, misses, and evictions are counted, and that applying the policy again keeps the cache and counters.
+   */
+  @Test
+  public void testEvictionAndCounters() {
+    Map<CacheEntry, Object> caches = new EnumMap<>(CacheEntry.class);
+    Map<Object, Object> proteins = new LinkedHashMap<>();
+    proteins.put("a", 1);
+    proteins.put("b", 2);
+    proteins.put("c", 3);
+    caches.put(CacheEntry.PROTEIN, proteins);
+    DataAccessController controller = controller(caches);
+    BoundedCachePolicy policy = new BoundedCachePolicy(BoundedCachePolicy.parseLimits("PROTEIN=2,SPECTRUM=1"));
+    policy.apply(controller);
+    Map<Object, Object> bounded = cache(caches, CacheEntry.PROTEIN);
+    assertNotSame("The cache should be replaced", proteins, bounded);
+    assertEquals("The cache should keep the limit of values", 2, bounded.size());
+    assertEquals("The oldest value should be evicted", 1, policy.getEvictions(CacheEntry.PROTEIN));
+
+    assertNull("An evicted value should be a miss", bounded.get("a"));
+    assertEquals("A kept value should be a hit", 2, bounded.get("b"));
+    bounded.put("d", 4);
+    assertEquals("Adding a value to a full cache should evict one", 2, policy.getEvictions(CacheEntry.PROTEIN));
+    assertFalse("The least recently used value should be evicted", bounded.containsKey("c"));
+    assertTrue("The recently used value should be kept", bounded.containsKey("b"));
+    assertEquals("The default should be returned for a missing value", 0, bounded.getOrDefault("c", 0));
+    assertEquals("There should be one hit", 1, policy.getHits(CacheEntry.PROTEIN));
+    assertEquals("There should be two misses", 2, policy.getMisses(CacheEntry.PROTEIN));
+
+    Map<Object, Object> spectra = cache(caches, CacheEntry.SPECTRUM);
+    spectra.put("s1", 1);
+    spectra.put("s2", 2);
+    assertEquals("A cache which was not there should be bounded too", 1, spectra.size());
+    assertEquals("A cache which was not there should count its evictions", 1, policy.getEvictions(CacheEntry.SPECTRUM));
+    assertEquals("An unbounded cache should have no counters", 0, policy.getHits(CacheEntry.PEPTIDE));
+
+    policy.apply(controller);
+    assertSame("A bounded cache should be kept", bounded, cache(caches, CacheEntry.PROTEIN));
+    assertEquals("The counters should be kept", 1, policy.getHits(CacheEntry.PROTEIN));
+    assertTrue("The counters should be formatted",
+        policy.statisticsToString().contains("PROTEIN: 2/2 values, 1 hits, 2 misses, 2 evictions"));
+
+    Map<CacheEntry, Object> unboundedCaches = new EnumMap<>(CacheEntry.class);
+    unboundedCaches.put(CacheEntry.PROTEIN, proteins);
+    new BoundedCachePolicy(BoundedCachePolicy.parseLimits("")).apply(controller(unboundedCaches));
+    assertSame("The caches should not be bounded without limits", proteins, unboundedCaches.get(CacheEntry.PROTEIN));
+  }
+
+  /**
+   * This test reads, writes, and iterates a bounded cache on several threads at once, and checks that nothing fails,
+   * that the cache stays within its limit, and that every lookup is counted.
+   *
+   * @throws Exception if a thread fails.
+   */
+  @Test
+  public void testConcurrentAccess() throws Exception {
+    Map<CacheEntry, Object> caches = new EnumMap<>(CacheEntry.class);
+    BoundedCachePolicy policy = new BoundedCachePolicy(BoundedCachePolicy.parseLimits("PROTEIN=100"));
+    policy.apply(controller(caches));
+    Map<Object, Object> bounded = cache(caches, CacheEntry.PROTEIN);
+    int threads = 4;
+    int lookups = 50000;
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int thread = 0; thread < threads; thread++) {
+        int seed = thread;
+        results.add(pool.submit(() -> {
+          Random random = new Random(seed);
+          for (int i = 0; i < lookups; i++) {
+            int key = random.nextInt(300);
+            if (bounded.get(key) == null) {
+              bounded.put(key, key);
+            }
+            if (i % 1000 == 0) {
+              Map<Object, Object> copy = new HashMap<>();
+              copy.putAll(bounded);
+              for (Object value : bounded.values()) {
+                assertNotNull("A cached value should not be null", value);
+              }
+              for (Map.Entry<Object, Object> entry : bounded.entrySet()) {
+                assertEquals("A cached value should be its key", entry.getKey(), entry.getValue());
+              }
+              assertTrue("A copy should be within the limit", copy.size() <= 100);
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get(1, TimeUnit.MINUTES);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    assertEquals("The cache should be full", 100, bounded.size());
+    assertEquals("Every lookup should be counted", threads * lookups,
+        policy.getHits(CacheEntry.PROTEIN) + policy.getMisses(CacheEntry.PROTEIN));
+    assertTrue("Values should be evicted", policy.getEvictions(CacheEntry.PROTEIN) > 0);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<Object, Object> cache(Map<CacheEntry, Object> caches, CacheEntry cacheEntry) {
+    return (Map<Object, Object>) caches.get(cacheEntry);
+  }
+
+  /**
+   * This method makes a cached controller whose cache entries are kept in the given map.
+   *
+   * @param caches the cache entries.
+   * @return the controller.
+   */
+  private static DataAccessController controller(Map<CacheEntry, Object> caches) {
+    return (DataAccessController) Proxy.newProxyInstance(CachedDataAccessController.class.getClassLoader(),
+        new Class<?>[]{CachedDataAccessController.class}, (proxy, method, args) -> {
+          if (!method.getName().equals("getCache")) {
+            throw new UnsupportedOperationException(method.getName());
+          }
+          return Proxy.newProxyInstance(method.getReturnType().getClassLoader(), new Class<?>[]{method.getReturnType()},
+              (cache, cacheMethod, cacheArgs) -> {
+                if (cacheMethod.getName().equals("get") && cacheArgs.length == 1) {
+                  return caches.get(cacheArgs[0]);
+                } else if (cacheMethod.getName().equals("store") && cacheArgs.length == 2) {
+                  caches.put((CacheEntry) cacheArgs[0], cacheArgs[1]);
+                  return null;
+                }
+                throw new UnsupportedOperationException(cacheMethod.getName());
+              });
+        });
+  }
+}
@@ -1,13 +1,24 @@
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.ebi.pride.toolsuite.pgconverter.Converter;
 import uk.ac.ebi.pride.toolsuite.pgconverter.MainApp;
+import uk.ac.ebi.pride.toolsuite.pgconverter.Validator;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.Report;
 import uk.ac.ebi.pride.utilities.data.controller.impl.ControllerImpl.MzTabControllerImpl;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static uk.ac.ebi.pride.toolsuite.pgconverter.utils.Utility.*;
 
@@ -59,5 +70,133 @@ public class ConverterTest {
     mzTabController.close();
     assertTrue("No errors reported during the conversion from  mzIdentML to MzTab", outputFile.exists());
   }
-  //TODO mzTab to proBed conversion? mzIdentML to proBed validation?
+
+  /**
+   * This test converts an example mzIdentML file to proBed both directly and through an intermediate mzTab file, and
+   * checks that both have the same genomic rows, and that the direct proBed file passes validation.
+   *
+   * @throws Exception if there are problems opening the example file.
+   */
+  @Test
+  public void testConvertMzidToProbedDirectAndIntermediate() throws Exception {
+    URL url = ConverterTest.class.getClassLoader().getResource("test.mzid");
+    if (url == null) {
+      throw new IllegalStateException("no file for input found!");
+    }
+    File inputMzidFile = new File(url.toURI());
+    File proBed = new File(FilenameUtils.removeExtension(inputMzidFile.getAbsolutePath()) + "." + FileType.PROBED.toString());
+    File directProbed = File.createTempFile("direct", ".pro.bed");
+    String[] args = new String[]{"-" + ARG_CONVERSION, "-" + ARG_INPUTFILE, inputMzidFile.getPath(), "-" + ARG_OUTPUTTFORMAT, ARG_PROBED};
+    Converter.startConversion(MainApp.parseArgs(args));
+    Files.copy(proBed.toPath(), directProbed.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    args = new String[]{"-" + ARG_CONVERSION, "-" + ARG_INPUTFILE, inputMzidFile.getPath(), "-" + ARG_OUTPUTTFORMAT, ARG_PROBED, "-" + ARG_INTERMEDIATE_MZTAB};
+    Converter.startConversion(MainApp.parseArgs(args));
+    assertEquals("The direct and intermediate mzTab conversions should have the same genomic rows", genomicRows(proBed), genomicRows(directProbed));
+    args = new String[]{"-" + ARG_VALIDATION, "-" + ARG_PROBED, directProbed.getPath(), "-" + ARG_SKIP_SERIALIZATION};
+    Report report = Validator.startValidation(MainApp.parseArgs(args));
+    assertTrue("No errors reported during the validation of the direct proBed file: " + report.getStatus(), !report.getStatus().startsWith("ERROR"));
+    Files.deleteIfExists(directProbed.toPath());
+  }
+
+  /**
+   * This test converts a batch of a proBed file and a file of an unsupported type to bigBed, from a manifest, and
+   * checks that the proBed file is converted despite the other file failing, and that the summary has an OK line and
+   * a FAILED line, in manifest order.
+   *
+   * @throws Exception if there are problems opening the example file.
+   */
+  @Test
+  public void testBatchConversionWithFailure() throws Exception {
+    URL url = ConverterTest.class.getClassLoader().getResource("test.pro.bed");
+    if (url == null) {
+      throw new IllegalStateException("no file for input found!");
+    }
+    Path directory = Files.createTempDirectory("batch");
+    File goodFile = directory.resolve("good.pro.bed").toFile();
+    Files.copy(new File(url.toURI()).toPath(), goodFile.toPath());
+    File badFile = directory.resolve("bad.txt").toFile();
+    Files.write(badFile.toPath(), "not a result file".getBytes(StandardCharsets.UTF_8));
+    File manifest = directory.resolve("manifest.txt").toFile();
+    Files.write(manifest.toPath(), Arrays.asList("# batch", goodFile.getName(), badFile.getName()), StandardCharsets.UTF_8);
+    File chromSizes = writeChromSizes(goodFile, directory.resolve("chrom.sizes").toFile());
+    File reportFile = directory.resolve("report.txt").toFile();
+    String[] args = new String[]{"-" + ARG_CONVERSION, "-" + ARG_BATCH, manifest.getPath(), "-" + ARG_OUTPUTTFORMAT, ARG_BIGBED,
+        "-" + ARG_CHROMSIZES, chromSizes.getPath(), "-" + ARG_REPORTFILE, reportFile.getPath(), "-" + ARG_THREADS, "2"};
+    Converter.startConversion(MainApp.parseArgs(args));
+
+    List<String> summary = Files.readAllLines(reportFile.toPath(), StandardCharsets.UTF_8);
+    assertEquals("There should be a summary line for each file", 2, summary.size());
+    String[] good = summary.get(0).split("\t");
+    assertEquals("The proBed file should be converted", "OK", good[0]);
+    assertEquals("The first line should be for the proBed file", goodFile.getPath(), good[2]);
+    File bigBed = new File(good[3]);
+    assertTrue("The bigBed file should be written", bigBed.isFile() && bigBed.length() > 0);
+    String[] bad = summary.get(1).split("\t");
+    assertEquals("The unsupported file should fail", "FAILED", bad[0]);
+    assertEquals("The second line should be for the unsupported file", badFile.getPath(), bad[2]);
+    assertTrue("The failure should give the reason", bad[3].startsWith(IOException.class.getName()));
+    FileUtils.deleteDirectory(directory.toFile());
+  }
+
+  /**
+   * This test converts a single file of an unsupported type, which should fail with an IOException.
+   *
+   * @throws Exception if there are problems converting the file.
+   */
+  @Test(expected = IOException.class)
+  public void testConvertUnsupportedFile() throws Exception {
+    File inputFile = File.createTempFile("unsupported", ".txt");
+    inputFile.deleteOnExit();
+    String[] args = new String[]{"-" + ARG_CONVERSION, "-" + ARG_INPUTFILE, inputFile.getPath(), "-" + ARG_OUTPUTTFORMAT, ARG_BIGBED};
+    Converter.startConversion(MainApp.parseArgs(args));
+  }
+
+  /**
+   * This method writes a chromosome sizes file with every chromosome of a proBed file.
+   *
+   * @param proBed the proBed file.
+   * @param chromSizes the chromosome sizes file to write.
+   * @return the chromosome sizes file.
+   * @throws IOException if there are problems reading or writing the files.
+   */
+  private static File writeChromSizes(File proBed, File chromSizes) throws IOException {
+    Set<String> chroms = new LinkedHashSet<>();
+    for (String line : Files.readAllLines(proBed.toPath(), StandardCharsets.UTF_8)) {
+      if (!line.isEmpty() && !line.startsWith("#")) {
+        chroms.add(line.split("\t")[0]);
+      }
+    }
+    List<String> lines = new ArrayList<>();
+    for (String chrom : chroms) {
+      lines.add(chrom + "\t300000000");
+    }
+    Files.write(chromSizes.toPath(), lines, StandardCharsets.UTF_8);
+    return chromSizes;
+  }
+
+  /**
+   * This method reads the genomic columns of the rows of a proBed file, i.e. the chromosome, start, end, strand,
+   * blocks, protein accession, peptide sequence and charge, which do not depend on how the rows were named or scored.
+   *
+   * @param proBed the proBed file.
+   * @return the genomic columns of each row, sorted.
+   * @throws IOException if there are problems reading the file.
+   */
+  private static List<String> genomicRows(File proBed) throws IOException {
+    final int[] genomicColumns = {0, 1, 2, 5, 9, 10, 11, 12, 13, 19};
+    List<String> result = new ArrayList<>();
+    for (String line : Files.readAllLines(proBed.toPath(), StandardCharsets.UTF_8)) {
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split("\t");
+      StringJoiner row = new StringJoiner("\t");
+      for (int column : genomicColumns) {
+        row.add(column < fields.length ? fields[column] : "");
+      }
+      result.add(row.toString());
+    }
+    Collections.sort(result);
+    return result;
+  }
 }
@@ -0,0 +1,170 @@
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.ParseException;
+import org.junit.Test;
+import uk.ac.ebi.pride.toolsuite.pgconverter.MainApp;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.FragmentIonMatcher;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.FragmentIonMatcher.Tolerance;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static uk.ac.ebi.pride.toolsuite.pgconverter.utils.Utility.ARG_FRAGMENT_TOLERANCE;
+import static uk.ac.ebi.pride.toolsuite.pgconverter.utils.Utility.ARG_VALIDATION;
+
+/**
+ * This class contains unit tests for matching fragment ions against the peaks of a spectrum.
+ *
+ * @author Tobias Ternent
+ */
+public class FragmentIonMatcherTest {
+
+  private static final double[] MZ = {100.0, 200.0, 500.0};
+  private static final double[] INTENSITY = {10.0, 20.0, 50.0};
+
+  /**
+   * This test parses tolerances in ppm and Da, and checks that bad tolerances are not accepted.
+   */
+  @Test
+  public void testParseTolerance() {
+    assertEquals("A tolerance in ppm should be parsed", "10.0ppm", Tolerance.parse("10ppm").toString());
+    assertEquals("A tolerance in Da should be parsed", "0.02Da", Tolerance.parse(" 0.02 Da ").toString());
+    assertEquals("A tolerance without a unit should be in Da", "0.5Da", Tolerance.parse("0.5").toString());
+    assertEquals("The default tolerance should be exact", "0.0Da", Tolerance.parse(FragmentIonMatcher.DEFAULT_TOLERANCE).toString());
+    for (String bad : new String[]{"abc", "ppm", "-1Da", "NaN"}) {
+      try {
+        Tolerance.parse(bad);
+        fail("The tolerance should not be parsed: " + bad);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * This test parses the -fragmenttolerance argument, and checks that a bad tolerance is rejected when the arguments
+   * are parsed, before anything is validated.
+   *
+   * @throws Exception if a good tolerance is not accepted.
+   */
+  @Test
+  public void testFragmentToleranceArgument() throws Exception {
+    CommandLine cmd = MainApp.parseArgs(new String[]{"-" + ARG_VALIDATION, "-" + ARG_FRAGMENT_TOLERANCE, "10ppm"});
+    assertEquals("The tolerance should be kept", "10ppm", cmd.getOptionValue(ARG_FRAGMENT_TOLERANCE));
+    for (String bad : new String[]{"abc", "-1Da"}) {
+      try {
+        MainApp.parseArgs(new String[]{"-" + ARG_VALIDATION, "-" + ARG_FRAGMENT_TOLERANCE, bad});
+        fail("The tolerance should be rejected: " + bad);
+      } catch (ParseException e) {
+        assertTrue("The error should name the argument", e.getMessage().contains("-" + ARG_FRAGMENT_TOLERANCE));
+      }
+    }
+  }
+
+  /**
+   * This test matches fragment ions within tolerances in Da and ppm, where a ppm window grows with the m/z.
+   */
+  @Test
+  public void testToleranceWindows() {
+    FragmentIonMatcher exact = new FragmentIonMatcher(MZ, INTENSITY, Tolerance.parse(FragmentIonMatcher.DEFAULT_TOLERANCE));
+    assertTrue("The same m/z should match exactly", exact.matches(100.0, 10.0));
+    assertFalse("A different m/z should not match exactly", exact.matches(100.0001, 10.0));
+
+    FragmentIonMatcher da = new FragmentIonMatcher(MZ, INTENSITY, Tolerance.parse("0.02Da"));
+    assertTrue("An m/z just above the peak should match", da.matches(100.015, 10.0));
+    assertTrue("An m/z just below the peak should match", da.matches(99.985, 10.0));
+    assertFalse("An m/z outside the window should not match", da.matches(100.03, 10.0));
+    assertTrue("A Da window should be the same at a high m/z", da.matches(500.015, 50.0));
+
+    FragmentIonMatcher ppm = new FragmentIonMatcher(MZ, INTENSITY, Tolerance.parse("10ppm"));
+    assertTrue("10 ppm of m/z 500 is 0.005", ppm.matches(500.004, 50.0));
+    assertFalse("10 ppm of m/z 500 is 0.005", ppm.matches(500.006, 50.0));
+    assertTrue("10 ppm of m/z 100 is 0.001", ppm.matches(100.0009, 10.0));
+    assertFalse("10 ppm of m/z 100 is 0.001", ppm.matches(100.004, 10.0));
+    assertFalse("The intensity has to be the same within the m/z window", ppm.matches(500.004, 49.0));
+    assertFalse("An m/z below all the peaks should not match", ppm.matches(50.0, 10.0));
+    assertFalse("An m/z above all the peaks should not match", ppm.matches(900.0, 10.0));
+
+    assertTrue("All the ions should match", da.matchesAll(new double[]{100.01, 200.0}, new double[]{10.0, 20.0}));
+    assertFalse("Not all the ions should match", da.matchesAll(new double[]{100.01, 300.0}, new double[]{10.0, 20.0}));
+    assertEquals("Two ions should match", 2, da.countMatches(new double[]{100.01, 300.0, 499.99}, new double[]{10.0, 20.0, 50.0}));
+  }
+
+  /**
+   * This test matches fragment ions against unsorted peaks, enough for the sort to partition them, and checks that
+   * each m/z keeps its intensity and that the given arrays are not changed.
+   */
+  @Test
+  public void testUnsortedPeaks() {
+    Random random = new Random(7);
+    int peaks = 1000;
+    double[] mz = new double[peaks];
+    double[] intensity = new double[peaks];
+    for (int i = 0; i < peaks; i++) {
+      mz[i] = 100 + random.nextInt(100000) / 100.0;
+      intensity[i] = random.nextInt(10000);
+    }
+    double[] mzCopy = mz.clone();
+    double[] intensityCopy = intensity.clone();
+    FragmentIonMatcher matcher = new FragmentIonMatcher(mz, intensity, Tolerance.parse(FragmentIonMatcher.DEFAULT_TOLERANCE));
+    assertArrayEquals("The m/z values should not be changed", mzCopy, mz, 0);
+    assertArrayEquals("The intensities should not be changed", intensityCopy, intensity, 0);
+    assertEquals("Every peak should match itself", peaks, matcher.countMatches(mz, intensity));
+    double[] otherIntensity = new double[peaks];
+    for (int i = 0; i < peaks; i++) {
+      otherIntensity[i] = intensity[i] + 0.5;
+    }
+    assertEquals("No peak should match with another intensity", 0, matcher.countMatches(mz, otherIntensity));
+
+    double[] reversed = {500.0, 200.0, 100.0};
+    double[] reversedIntensity = {50.0, 20.0, 10.0};
+    FragmentIonMatcher small = new FragmentIonMatcher(reversed, reversedIntensity, Tolerance.parse("0.02Da"));
+    assertEquals("A few reversed peaks should be sorted", 3, small.countMatches(MZ, INTENSITY));
+  }
+
+  /**
+   * This test matches fragment ions against peaks which share their m/z, which all have to be checked for the
+   * intensity, including when many of them need sorting.
+   */
+  @Test
+  public void testDuplicateMz() {
+    double[] mz = {300.0, 200.0, 200.0, 100.0, 200.0};
+    double[] intensity = {30.0, 1.0, 2.0, 10.0, 3.0};
+    FragmentIonMatcher matcher = new FragmentIonMatcher(mz, intensity, Tolerance.parse(FragmentIonMatcher.DEFAULT_TOLERANCE));
+    assertTrue("The first peak of an m/z should match", matcher.matches(200.0, 1.0));
+    assertTrue("The middle peak of an m/z should match", matcher.matches(200.0, 2.0));
+    assertTrue("The last peak of an m/z should match", matcher.matches(200.0, 3.0));
+    assertFalse("Another intensity at the m/z should not match", matcher.matches(200.0, 4.0));
+
+    int peaks = 200;
+    double[] sameMz = new double[peaks];
+    double[] sameMzIntensity = new double[peaks];
+    for (int i = 0; i < peaks; i++) {
+      sameMz[i] = i % 2 == 0 ? 400.0 : 400.0 - i;
+      sameMzIntensity[i] = i;
+    }
+    FragmentIonMatcher many = new FragmentIonMatcher(sameMz, sameMzIntensity, Tolerance.parse(FragmentIonMatcher.DEFAULT_TOLERANCE));
+    assertEquals("Every peak should match itself", peaks, many.countMatches(sameMz, sameMzIntensity));
+  }
+
+  /**
+   * This test checks that an ion with a zero intensity only matches a peak with a zero intensity, and that an ion
+   * with a NaN intensity never matches, as when the peaks were compared one by one.
+   */
+  @Test
+  public void testZeroAndNanIntensity() {
+    FragmentIonMatcher matcher = new FragmentIonMatcher(new double[]{100.0, 200.0, 300.0}, new double[]{10.0, 0.0, Double.NaN},
+        Tolerance.parse("0.02Da"));
+    assertTrue("A zero intensity should match a zero intensity peak", matcher.matches(200.0, 0.0));
+    assertFalse("A zero intensity should not match a peak with an intensity", matcher.matches(100.0, 0.0));
+    assertFalse("A NaN intensity should not match a peak with an intensity", matcher.matches(100.0, Double.NaN));
+    assertFalse("A NaN intensity should not match a NaN intensity peak", matcher.matches(300.0, Double.NaN));
+  }
+
+  /**
+   * This test checks that the m/z values and intensities of the peaks have to be the same length.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testDifferentLengths() {
+    new FragmentIonMatcher(new double[]{100.0, 200.0}, new double[]{10.0}, Tolerance.parse("0.02Da"));
+  }
+}
@@ -0,0 +1,143 @@
+import org.junit.Test;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.GzipDecompressor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class contains unit tests for decompressing gzip and BGZF files.
+ *
+ * @author Tobias Ternent
+ */
+public class GzipDecompressorTest {
+
+  private static final int TRAILING_DATA_SIZE = 24 * 1024 * 1024;
+
+  /**
+   * This test decompresses a gzip file followed by more trailing data than the reader queues, and checks that the
+   * trailing data is ignored instead of leaving the reader waiting for the queue.
+   *
+   * @throws Exception if there are problems decompressing the file.
+   */
+  @Test
+  public void testDecompressWithTrailingData() throws Exception {
+    byte[] data = randomText(100000, 1);
+    File gzip = File.createTempFile("gzipdecompressor", ".gz");
+    File output = File.createTempFile("gzipdecompressor", ".txt");
+    try {
+      try (OutputStream out = new FileOutputStream(gzip)) {
+        GZIPOutputStream gzipOut = new GZIPOutputStream(out);
+        gzipOut.write(data);
+        gzipOut.finish();
+        byte[] trailing = new byte[1024 * 1024];
+        for (int written = 0; written < TRAILING_DATA_SIZE; written += trailing.length) {
+          out.write(trailing);
+        }
+      }
+      long written = new GzipDecompressor(2).decompress(gzip, output);
+      assertEquals("Only the gzip data should be written", data.length, written);
+      assertArrayEquals("The gzip data should be decompressed", data, Files.readAllBytes(output.toPath()));
+    } finally {
+      Files.deleteIfExists(gzip.toPath());
+      Files.deleteIfExists(output.toPath());
+    }
+  }
+
+  /**
+   * This test decompresses several BGZF files at once with one decompressor, so they share its inflating threads.
+   *
+   * @throws Exception if there are problems decompressing the files.
+   */
+  @Test
+  public void testDecompressBgzfConcurrently() throws Exception {
+    GzipDecompressor decompressor = new GzipDecompressor(2);
+    ExecutorService files = Executors.newFixedThreadPool(4);
+    List<File> temporaryFiles = new ArrayList<>();
+    try {
+      List<Future<byte[]>> results = new ArrayList<>();
+      List<byte[]> expected = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        byte[] data = randomText(3 * 1024 * 1024, i);
+        File gzip = File.createTempFile("gzipdecompressor", ".gz");
+        File output = File.createTempFile("gzipdecompressor", ".txt");
+        temporaryFiles.add(gzip);
+        temporaryFiles.add(output);
+        Files.write(gzip.toPath(), bgzf(data));
+        expected.add(data);
+        results.add(files.submit(() -> {
+          decompressor.decompress(gzip, output);
+          return Files.readAllBytes(output.toPath());
+        }));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        assertArrayEquals("Each BGZF file should be decompressed", expected.get(i), results.get(i).get());
+      }
+    } finally {
+      files.shutdownNow();
+      for (File file : temporaryFiles) {
+        Files.deleteIfExists(file.toPath());
+      }
+    }
+  }
+
+  /**
+   * This method compresses data into BGZF blocks of at most 64KB, followed by the empty end-of-file block.
+   *
+   * @param data the data.
+   * @return the BGZF data.
+   */
+  private static byte[] bgzf(byte[] data) {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    for (int start = 0; start < data.length; start += 0xff00) {
+      writeBlock(result, data, start, Math.min(0xff00, data.length - start));
+    }
+    writeBlock(result, data, data.length, 0);
+    return result.toByteArray();
+  }
+
+  private static void writeBlock(ByteArrayOutputStream out, byte[] data, int start, int length) {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    deflater.setInput(data, start, length);
+    deflater.finish();
+    byte[] deflated = new byte[0x10000];
+    int deflatedLength = deflater.deflate(deflated);
+    deflater.end();
+    CRC32 crc = new CRC32();
+    crc.update(data, start, length);
+    int blockSize = 18 + deflatedLength + 8;
+    out.write(new byte[]{0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+        (byte) (blockSize - 1), (byte) ((blockSize - 1) >> 8)}, 0, 18);
+    out.write(deflated, 0, deflatedLength);
+    writeInt(out, (int) crc.getValue());
+    writeInt(out, length);
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, int value) {
+    for (int i = 0; i < 4; i++) {
+      out.write(value >> (8 * i));
+    }
+  }
+
+  private static byte[] randomText(int size, long seed) {
+    Random random = new Random(seed);
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++) {
+      data[i] = (byte) ("ACGT\n".charAt(random.nextInt(5)));
+    }
+    return data;
+  }
+}
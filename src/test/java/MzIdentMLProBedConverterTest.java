@@ -0,0 +1,105 @@
+import org.junit.Test;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.MzIdentMLProBedConverter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class contains unit tests for converting proteogenomics mzIdentML files directly to proBed.
+ *
+ * @author Tobias Ternent
+ */
+public class MzIdentMLProBedConverterTest {
+
+  private static final String MZID = String.join("\n",
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+      "<MzIdentML id=\"PXD000000\" version=\"1.1.0\" xmlns=\"http://psidev.info/psi/pi/mzIdentML/1.1\">",
+      "<SequenceCollection>",
+      "<DBSequence id=\"DBSeq_1\" accession=\"ENSP00000000001\" searchDatabase_ref=\"SDB_1\"/>",
+      "<Peptide id=\"Pep_1\"><PeptideSequence>PEPTIDEK</PeptideSequence>",
+      "<Modification location=\"3\"><cvParam cvRef=\"UNIMOD\" accession=\"UNIMOD:35\" name=\"Oxidation\"/></Modification></Peptide>",
+      "<Peptide id=\"Pep_2\"><PeptideSequence>SEQUENCER</PeptideSequence></Peptide>",
+      evidence("PE_plus", "Pep_1", "false", "+"),
+      evidence("PE_minus", "Pep_2", "false", "-"),
+      evidence("PE_unknown", "Pep_2", "false", "."),
+      evidence("PE_missing", "Pep_2", "false", null),
+      evidence("PE_decoy", "Pep_2", "true", "+"),
+      "</SequenceCollection>",
+      "<DataCollection><AnalysisData><SpectrumIdentificationList id=\"SIL_1\">",
+      "<SpectrumIdentificationResult id=\"SIR_1\" spectrumID=\"index=0\" spectraData_ref=\"SD_1\">",
+      "<SpectrumIdentificationItem id=\"SII_1\" rank=\"1\" chargeState=\"2\" experimentalMassToCharge=\"450.2\" calculatedMassToCharge=\"450.3\" peptide_ref=\"Pep_1\" passThreshold=\"true\">",
+      "<PeptideEvidenceRef peptideEvidence_ref=\"PE_plus\"/>",
+      "<cvParam cvRef=\"PSI-MS\" accession=\"MS:1002050\" name=\"MS-GF:DeNovoScore\" value=\"87\"/>",
+      "<cvParam cvRef=\"PSI-MS\" accession=\"MS:1002054\" name=\"MS-GF:QValue\" value=\"0.001\"/>",
+      "<cvParam cvRef=\"PSI-MS\" accession=\"MS:1002052\" name=\"MS-GF:SpecEValue\" value=\"1.5E-10\"/>",
+      "<cvParam cvRef=\"PSI-MS\" accession=\"MS:1002053\" name=\"MS-GF:EValue\" value=\"2.0E-5\"/>",
+      "</SpectrumIdentificationItem>",
+      "</SpectrumIdentificationResult>",
+      "<SpectrumIdentificationResult id=\"SIR_2\" spectrumID=\"index=1\" spectraData_ref=\"SD_1\">",
+      "<SpectrumIdentificationItem id=\"SII_2\" rank=\"1\" chargeState=\"3\" experimentalMassToCharge=\"350.1\" calculatedMassToCharge=\"350.1\" peptide_ref=\"Pep_2\" passThreshold=\"true\">",
+      "<PeptideEvidenceRef peptideEvidence_ref=\"PE_minus\"/>",
+      "<PeptideEvidenceRef peptideEvidence_ref=\"PE_unknown\"/>",
+      "<PeptideEvidenceRef peptideEvidence_ref=\"PE_missing\"/>",
+      "<PeptideEvidenceRef peptideEvidence_ref=\"PE_decoy\"/>",
+      "<cvParam cvRef=\"PSI-MS\" accession=\"MS:1001117\" name=\"theoretical mass\" value=\"1047.3\"/>",
+      "</SpectrumIdentificationItem>",
+      "</SpectrumIdentificationResult>",
+      "</SpectrumIdentificationList></AnalysisData></DataCollection>",
+      "</MzIdentML>");
+
+  /**
+   * This test converts a small proteogenomics mzIdentML file, and checks that only the peptide evidences on the '+' or
+   * '-' strand are written, and that the PSM score is a search engine score, not just any numeric cvParam.
+   *
+   * @throws Exception if there are problems converting the file.
+   */
+  @Test
+  public void testConvertMzidToProbed() throws Exception {
+    File mzid = File.createTempFile("test", ".mzid");
+    File proBed = File.createTempFile("test", ".pro.bed");
+    try {
+      Files.write(mzid.toPath(), MZID.getBytes(StandardCharsets.UTF_8));
+      long rows = new MzIdentMLProBedConverter().convert(mzid, proBed);
+      List<String> lines = Files.readAllLines(proBed.toPath(), StandardCharsets.UTF_8);
+      assertEquals("Only the evidences on a strand, which are not decoys, should be written", 2, rows);
+      assertEquals("The header and the rows should be written", 3, lines.size());
+      String[] plus = lines.get(1).split("\t");
+      String[] minus = lines.get(2).split("\t");
+      assertEquals("All the proBed columns should be written", 25, plus.length);
+      assertEquals("The strand should be written", "+", plus[5]);
+      assertEquals("The strand should be written", "-", minus[5]);
+      assertEquals(Arrays.asList("chr1", "1000", "1024", "ENSP00000000001_SII_1"), Arrays.asList(plus).subList(0, 4));
+      assertEquals("The PSM score should be the first search engine score", "1.5E-10", plus[16]);
+      assertEquals("The FDR should be the q-value", "0.001", plus[17]);
+      assertEquals("The modifications should be written", "3-UNIMOD:35", plus[18]);
+      assertEquals("A PSM without a search engine score should not get another value as its score", "-1", minus[16]);
+      assertEquals("The dataset ID should be the mzIdentML ID", "PXD000000", plus[23]);
+    } finally {
+      Files.deleteIfExists(mzid.toPath());
+      Files.deleteIfExists(proBed.toPath());
+    }
+  }
+
+  /**
+   * This method creates a genome-mapped PeptideEvidence element.
+   *
+   * @param id the ID.
+   * @param peptideRef the peptide it refers to.
+   * @param decoy the isDecoy attribute.
+   * @param strand the chromosome strand, or null to leave it out.
+   * @return the PeptideEvidence element.
+   */
+  private static String evidence(String id, String peptideRef, String decoy, String strand) {
+    return "<PeptideEvidence id=\"" + id + "\" peptide_ref=\"" + peptideRef + "\" dBSequence_ref=\"DBSeq_1\" isDecoy=\"" + decoy + "\">" +
+        "<cvParam cvRef=\"PSI-MS\" accession=\"MS:1002637\" name=\"chromosome name\" value=\"chr1\"/>" +
+        (strand == null ? "" : "<cvParam cvRef=\"PSI-MS\" accession=\"MS:1002638\" name=\"chromosome strand\" value=\"" + strand + "\"/>") +
+        "<cvParam cvRef=\"PSI-MS\" accession=\"MS:1002639\" name=\"peptide start on chromosome\" value=\"1000\"/>" +
+        "<cvParam cvRef=\"PSI-MS\" accession=\"MS:1002640\" name=\"peptide end on chromosome\" value=\"1024\"/>" +
+        "</PeptideEvidence>";
+  }
+}
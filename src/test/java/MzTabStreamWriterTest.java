@@ -0,0 +1,131 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.MzTabStreamWriter;
+import uk.ac.ebi.pride.utilities.data.controller.DataAccessController;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class contains unit tests for streaming the content of a controller to an mzTab file.
+ *
+ * @author Tobias Ternent
+ */
+public class MzTabStreamWriterTest {
+
+  private Path directory;
+
+  /**
+   * This method creates the output directory.
+   *
+   * @throws Exception if the directory cannot be created.
+   */
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("mztab");
+  }
+
+  /**
+   * This method deletes the output directory.
+   *
+   * @throws Exception if the directory cannot be deleted.
+   */
+  @After
+  public void tearDown() throws Exception {
+    for (File file : Objects.requireNonNull(directory.toFile().listFiles())) {
+      Files.delete(file.toPath());
+    }
+    Files.delete(directory);
+  }
+
+  /**
+   * This test writes the proteins and peptides of a controller, and checks that the metadata comes first, followed by
+   * each section's header and its rows in controller order, and that no spill files are left.
+   *
+   * @throws Exception if there are problems writing the file.
+   */
+  @Test
+  public void testSections() throws Exception {
+    Map<Comparable, List<String>> proteins = new LinkedHashMap<>();
+    int peptides = 0;
+    for (int protein = 0; protein < 300; protein++) {
+      List<String> sequences = new ArrayList<>();
+      for (int peptide = 0; peptide <= protein % 5; peptide++) {
+        sequences.add("PEPTIDE" + (char) ('A' + peptide) + "K");
+        peptides++;
+      }
+      proteins.put("PROT" + protein, sequences);
+    }
+    File mzTab = directory.resolve("test.mztab").toFile();
+    new MzTabStreamWriter(controller(proteins), "test.mzid").write(mzTab);
+
+    List<String> lines = Files.readAllLines(mzTab.toPath(), StandardCharsets.UTF_8);
+    assertEquals("The file should start with the version", "MTD\tmzTab-version\t1.0.0", lines.get(0));
+    assertTrue("The metadata should have the source", lines.contains("MTD\tdescription\tmzTab converted from test.mzid"));
+    assertTrue("The metadata should have no variable modifications",
+        lines.contains("MTD\tvariable_mod[1]\t[MS, MS:1002454, No variable modifications searched, ]"));
+    int prh = lines.indexOf(lines.stream().filter(line -> line.startsWith("PRH\t")).findFirst().orElse(""));
+    int psh = lines.indexOf(lines.stream().filter(line -> line.startsWith("PSH\t")).findFirst().orElse(""));
+    assertTrue("The protein header should follow the metadata", prh > 0 && lines.subList(0, prh).stream().noneMatch(line -> line.startsWith("PRT")));
+    assertTrue("The PSM header should follow the proteins", psh > prh);
+    List<String> prt = new ArrayList<>();
+    List<String> psm = new ArrayList<>();
+    for (String line : lines.subList(prh, lines.size())) {
+      if (line.startsWith("PRT\t")) {
+        assertTrue("A protein row should be before the PSM header", lines.indexOf(line) < psh);
+        prt.add(line);
+      } else if (line.startsWith("PSM\t")) {
+        psm.add(line);
+      }
+    }
+    assertEquals("Every protein should be written", 300, prt.size());
+    assertEquals("Every peptide should be written", peptides, psm.size());
+    assertTrue("The proteins should be in order", prt.get(0).startsWith("PRT\tPROT0\t") && prt.get(299).startsWith("PRT\tPROT299\t"));
+    assertEquals("A PSM row should have the header's columns", lines.get(psh).split("\t").length, psm.get(0).split("\t").length);
+    assertEquals("A protein row should have the header's columns", lines.get(prh).split("\t").length, prt.get(0).split("\t").length);
+    assertTrue("A PSM should have its sequence and protein", psm.get(psm.size() - 1).startsWith("PSM\tPEPTIDEEK\t4\tPROT299\t"));
+    assertEquals("Only the mzTab file should be left", 1, Objects.requireNonNull(directory.toFile().list()).length);
+  }
+
+  /**
+   * This method makes a controller with the given proteins, which only answers the per-protein and per-peptide
+   * accessors the writer reads, without any metadata, PSM details, or modifications.
+   *
+   * @param proteins the peptide sequences of each protein, where the peptide IDs are their indexes.
+   * @return the controller.
+   */
+  private static DataAccessController controller(Map<Comparable, List<String>> proteins) {
+    return (DataAccessController) Proxy.newProxyInstance(DataAccessController.class.getClassLoader(),
+        new Class<?>[]{DataAccessController.class}, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getProteinIds":
+              return new ArrayList<>(proteins.keySet());
+            case "getProteinAccession":
+              return args[0].toString();
+            case "getPeptideIds":
+              List<Comparable> peptideIds = new ArrayList<>();
+              for (int i = 0; i < proteins.get(args[0]).size(); i++) {
+                peptideIds.add(i);
+              }
+              return peptideIds;
+            case "getPeptideSequence":
+              return proteins.get(args[0]).get((Integer) args[1]);
+            case "getPTMs":
+              return Collections.emptyList();
+            case "getSearchDatabase":
+            case "getPeptideByIndex":
+            case "getExperimentMetaData":
+              return null;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+}
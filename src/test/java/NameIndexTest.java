@@ -0,0 +1,184 @@
+import org.junit.Test;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class contains unit tests for the indexes of unique proBed names.
+ *
+ * @author Tobias Ternent
+ */
+public class NameIndexTest {
+
+  private static final int NAMES = 2000;
+  private static final int COPIES = 3;
+
+  /**
+   * This test checks that the heap index finds every duplicate at its later lines, and never at the first occurrence.
+   *
+   * @throws Exception if there are problems with the index.
+   */
+  @Test
+  public void testHeapNameIndex() throws Exception {
+    try (NameIndex nameIndex = new HeapNameIndex()) {
+      assertDuplicates(nameIndex, addInOrder(nameIndex));
+    }
+  }
+
+  /**
+   * This test checks that the off-heap hash index finds every duplicate at its later lines, and never at the first
+   * occurrence.
+   *
+   * @throws Exception if there are problems with the index.
+   */
+  @Test
+  public void testOffHeapNameIndex() throws Exception {
+    try (NameIndex nameIndex = new OffHeapNameIndex(false)) {
+      assertDuplicates(nameIndex, addInOrder(nameIndex));
+    }
+  }
+
+  /**
+   * This test checks that the off-heap indexes still find the duplicates after their tables have grown, i.e. with
+   * more names than fit in the initial tables.
+   *
+   * @throws Exception if there are problems with the index.
+   */
+  @Test
+  public void testOffHeapNameIndexGrows() throws Exception {
+    final int manyNames = 300000;
+    for (boolean exact : new boolean[]{false, true}) {
+      try (NameIndex nameIndex = new OffHeapNameIndex(exact)) {
+        for (int i = 0; i < manyNames; i++) {
+          assertTrue("Each name should be new the first time", add(nameIndex, name(i), i + 1, 0));
+        }
+        for (int i = 0; i < manyNames; i += 1000) {
+          assertFalse("Each name should be a duplicate the second time", add(nameIndex, name(i), manyNames + i + 1, 0));
+        }
+      }
+    }
+  }
+
+  /**
+   * This test checks that the exact off-heap index finds every duplicate at its later lines, and never at the first
+   * occurrence, and that names which only share a prefix are not duplicates.
+   *
+   * @throws Exception if there are problems with the index.
+   */
+  @Test
+  public void testExactOffHeapNameIndex() throws Exception {
+    try (NameIndex nameIndex = new OffHeapNameIndex(true)) {
+      assertDuplicates(nameIndex, addInOrder(nameIndex));
+      assertTrue("A longer name with the same prefix is not a duplicate", add(nameIndex, name(1) + "_longer", 1, 0));
+    }
+  }
+
+  /**
+   * This test checks that the spilling index reports every duplicate after all the names are added, at the lines
+   * after the first occurrence, even when the names were added out of order as by parallel validation, and when the
+   * duplicates are in different partitions.
+   *
+   * @throws Exception if there are problems with the index.
+   */
+  @Test
+  public void testSpillingNameIndex() throws Exception {
+    List<long[]> lines = new ArrayList<>();
+    for (int copy = 0; copy < COPIES; copy++) {
+      for (int i = 0; i < NAMES; i++) {
+        lines.add(new long[]{i, copy * NAMES + i + 1});
+      }
+    }
+    Collections.shuffle(lines, new Random(7));
+    Set<Long> partitions = new HashSet<>();
+    long[] hash = new long[2];
+    try (NameIndex nameIndex = new SpillingNameIndex(0)) {
+      for (long[] line : lines) {
+        assertTrue("The spilling index only finds duplicates afterwards", add(nameIndex, name((int) line[0]), line[1], line[1] * 100));
+        byte[] bytes = name((int) line[0]).getBytes(StandardCharsets.US_ASCII);
+        NameHash.hash128(bytes, 0, bytes.length, hash);
+        partitions.add(hash[0] >>> 60);
+      }
+      assertTrue("The duplicates should be spread over several partitions", partitions.size() > 1);
+      List<Long> duplicateLines = new ArrayList<>();
+      nameIndex.forEachDeferredDuplicate((lineNumber, byteOffset) -> {
+        assertEquals("The byte offset should be kept with its line", lineNumber * 100, byteOffset);
+        duplicateLines.add(lineNumber);
+      });
+      Collections.sort(duplicateLines);
+      assertEquals("Every later occurrence should be a duplicate, but not the first", expectedDuplicateLines(), duplicateLines);
+    }
+  }
+
+  /**
+   * This method adds every name several times, in file order, and collects the lines the index found as duplicates.
+   *
+   * @param nameIndex the name index.
+   * @return the line numbers of the duplicates found while adding.
+   */
+  private static List<Long> addInOrder(NameIndex nameIndex) {
+    List<Long> duplicateLines = new ArrayList<>();
+    for (int copy = 0; copy < COPIES; copy++) {
+      for (int i = 0; i < NAMES; i++) {
+        long lineNumber = copy * NAMES + i + 1;
+        if (!add(nameIndex, name(i), lineNumber, lineNumber * 100)) {
+          duplicateLines.add(lineNumber);
+        }
+      }
+    }
+    return duplicateLines;
+  }
+
+  /**
+   * This method checks the duplicates found while adding, and that the index has no deferred duplicates.
+   *
+   * @param nameIndex the name index.
+   * @param duplicateLines the line numbers of the duplicates found while adding.
+   * @throws IOException if there are problems reading the index.
+   */
+  private static void assertDuplicates(NameIndex nameIndex, List<Long> duplicateLines) throws IOException {
+    assertEquals("Every later occurrence should be a duplicate, but not the first", expectedDuplicateLines(), duplicateLines);
+    nameIndex.forEachDeferredDuplicate((lineNumber, byteOffset) -> fail("No duplicates should be deferred: " + lineNumber));
+  }
+
+  /**
+   * This method gets the line numbers of all the copies after the first, of every name.
+   *
+   * @return the line numbers, in order.
+   */
+  private static List<Long> expectedDuplicateLines() {
+    List<Long> lines = new ArrayList<>();
+    for (long lineNumber = NAMES + 1; lineNumber <= (long) COPIES * NAMES; lineNumber++) {
+      lines.add(lineNumber);
+    }
+    return lines;
+  }
+
+  /**
+   * This method adds a name in the middle of a line buffer, as the validators do.
+   *
+   * @param nameIndex the name index.
+   * @param name the name.
+   * @param lineNumber the line number.
+   * @param byteOffset the byte offset.
+   * @return the result of adding the name.
+   */
+  private static boolean add(NameIndex nameIndex, String name, long lineNumber, long byteOffset) {
+    byte[] line = ("chr1\t100\t" + name + "\t1000").getBytes(StandardCharsets.US_ASCII);
+    int start = "chr1\t100\t".length();
+    return nameIndex.add(line, start, start + name.length(), lineNumber, byteOffset);
+  }
+
+  /**
+   * This method gets a test name.
+   *
+   * @param i the index of the name.
+   * @return the name.
+   */
+  private static String name(int i) {
+    return "peptide_" + i;
+  }
+}
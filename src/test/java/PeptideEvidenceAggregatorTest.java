@@ -0,0 +1,86 @@
+import org.junit.Test;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.PeptideEvidenceAggregator;
+import uk.ac.ebi.pride.utilities.data.controller.DataAccessController;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class contains unit tests for gathering the peptide evidence of an assay file.
+ *
+ * @author Tobias Ternent
+ */
+public class PeptideEvidenceAggregatorTest {
+
+  /**
+   * This test gathers the peptides of proteins which share some of their sequences, enough for the set of sequence
+   * hashes to grow, and checks the protein, peptide, and unique peptide counts.
+   */
+  @Test
+  public void testUniquePeptides() {
+    Map<Comparable, List<String>> proteins = new LinkedHashMap<>();
+    Set<String> uniqueSequences = new HashSet<>();
+    int peptides = 0;
+    for (int protein = 0; protein < 1000; protein++) {
+      List<String> sequences = new ArrayList<>();
+      for (int peptide = 0; peptide < 20; peptide++) {
+        String sequence = "PEPTIDE" + Integer.toString((protein * 20 + peptide) % 7919, 26).toUpperCase(Locale.ROOT) + "K";
+        sequences.add(sequence);
+        uniqueSequences.add(sequence);
+        peptides++;
+      }
+      proteins.put("PROT" + protein, sequences);
+    }
+    proteins.put("EMPTY", Collections.emptyList());
+    PeptideEvidenceAggregator evidence = PeptideEvidenceAggregator.aggregate(controller(proteins), "test.mzid");
+    assertEquals("Every protein should be counted", 1001, evidence.getNumberOfProteins());
+    assertEquals("Every peptide should be counted", peptides, evidence.getNumberOfPeptides());
+    assertEquals("Each sequence should be counted once", uniqueSequences.size(), evidence.getNumberOfUniquePeptides());
+    assertTrue("There should be no PTMs", evidence.getPtms().isEmpty());
+  }
+
+  /**
+   * This test gathers peptides where some have no sequence, which should not be counted as unique peptides, and
+   * where one has an empty sequence, which should.
+   */
+  @Test
+  public void testMissingSequences() {
+    Map<Comparable, List<String>> proteins = new LinkedHashMap<>();
+    proteins.put("PROT1", Arrays.asList("PEPTIDEK", null, "PEPTIDEK"));
+    proteins.put("PROT2", Arrays.asList(null, "", "PEPTIDER"));
+    PeptideEvidenceAggregator evidence = PeptideEvidenceAggregator.aggregate(controller(proteins), "test.mzid");
+    assertEquals("Every peptide should be counted", 6, evidence.getNumberOfPeptides());
+    assertEquals("Only defined sequences should be counted", 3, evidence.getNumberOfUniquePeptides());
+  }
+
+  /**
+   * This method makes a controller with the given proteins, which only answers the per-peptide accessors the
+   * aggregator reads.
+   *
+   * @param proteins the peptide sequences of each protein, where the peptide IDs are their indexes.
+   * @return the controller.
+   */
+  private static DataAccessController controller(Map<Comparable, List<String>> proteins) {
+    return (DataAccessController) Proxy.newProxyInstance(DataAccessController.class.getClassLoader(),
+        new Class<?>[]{DataAccessController.class}, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getProteinIds":
+              return new ArrayList<>(proteins.keySet());
+            case "getPeptideIds":
+              List<Comparable> peptideIds = new ArrayList<>();
+              for (int i = 0; i < proteins.get(args[0]).size(); i++) {
+                peptideIds.add(i);
+              }
+              return peptideIds;
+            case "getPeptideSequence":
+              return proteins.get(args[0]).get((Integer) args[1]);
+            case "getPTMs":
+              return Collections.emptyList();
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+}
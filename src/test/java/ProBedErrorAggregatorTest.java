@@ -0,0 +1,85 @@
+import org.junit.Test;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.ProBedErrorAggregator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class contains unit tests for aggregating proBed validation errors in bounded memory.
+ *
+ * @author Tobias Ternent
+ */
+public class ProBedErrorAggregatorTest {
+
+  private static final String OTHER_ERRORS = "Other errors, after the maximum number of different error types was reached.";
+
+  /**
+   * This test records more error types than the maximum, out of line order, and checks the count of each type, the
+   * first line numbers and example lines kept for each, the other errors counted together, and the exact report.
+   */
+  @Test
+  public void testReport() {
+    ProBedErrorAggregator errorAggregator = new ProBedErrorAggregator(2, 3, 3);
+    add(errorAggregator, "Bad score.", 10);
+    add(errorAggregator, "Bad score.", 5);
+    add(errorAggregator, "Bad chrom.", 3);
+    add(errorAggregator, "Bad strand.", 1);
+    add(errorAggregator, "Bad score.", 7);
+    add(errorAggregator, "Bad name.", 30);
+    add(errorAggregator, "Bad chrom.", 4);
+    add(errorAggregator, "Bad end.", 2);
+    add(errorAggregator, "Bad score.", 20);
+
+    assertTrue("There should be errors", errorAggregator.hasErrors());
+    assertEquals("Every error should be counted", 9, errorAggregator.getErrorCount());
+    assertEquals("The types should be the most frequent first", Arrays.asList("Bad score.", "Bad chrom.", OTHER_ERRORS, "Bad strand."),
+        errorAggregator.getErrorTypes());
+    assertEquals("Each error of a type should be counted", 4, errorAggregator.getErrorCount("Bad score."));
+    assertEquals("Errors after the maximum types should be counted together", 2, errorAggregator.getErrorCount(OTHER_ERRORS));
+    assertEquals("Errors after the maximum types should not have their own type", 0, errorAggregator.getErrorCount("Bad name."));
+    assertEquals("Only the first line numbers should be kept", Arrays.asList(5L, 7L, 10L), errorAggregator.getLineNumbers("Bad score."));
+    assertEquals("The other errors should keep their first line numbers", Arrays.asList(2L, 30L), errorAggregator.getLineNumbers(OTHER_ERRORS));
+    assertEquals("An unknown type should have no line numbers", Collections.emptyList(), errorAggregator.getLineNumbers("Bad name."));
+    assertEquals("Only the first example lines should be kept", 2, errorAggregator.getSamples("Bad score.").size());
+    assertEquals("The examples should be in line order", 5, errorAggregator.getSamples("Bad score.").get(0).getLineNumber());
+
+    assertEquals("The report should list each type with its count, line numbers, and examples", String.join("\n",
+        "4 x Bad score.",
+        "  First line numbers: 5, 7, 10",
+        "  Line 5 (byte offset 50): Line content: line 5",
+        "  Line 7 (byte offset 70): Line content: line 7",
+        "2 x Bad chrom.",
+        "  First line numbers: 3, 4",
+        "  Line 3 (byte offset 30): Line content: line 3",
+        "  Line 4 (byte offset 40): Line content: line 4",
+        "2 x " + OTHER_ERRORS,
+        "  First line numbers: 2, 30",
+        "  Line 2 (byte offset 20): Line content: line 2",
+        "  Line 30 (byte offset 300): Line content: line 30",
+        "1 x Bad strand.",
+        "  First line numbers: 1",
+        "  Line 1 (byte offset 10): Line content: line 1",
+        ""), errorAggregator.toString());
+  }
+
+  /**
+   * This test records errors without line content, and checks that no errors gives an empty report.
+   */
+  @Test
+  public void testNoContent() {
+    ProBedErrorAggregator errorAggregator = new ProBedErrorAggregator();
+    assertFalse("There should be no errors", errorAggregator.hasErrors());
+    assertEquals("The report should be empty", "", errorAggregator.toString());
+    errorAggregator.addError("Duplicate name.", 12, 345, null, 0, 0);
+    assertEquals("The example should have no content", "", errorAggregator.getSamples("Duplicate name.").get(0).getLineContent());
+    assertEquals("The example should keep its byte offset", 345, errorAggregator.getSamples("Duplicate name.").get(0).getByteOffset());
+  }
+
+  private static void add(ProBedErrorAggregator errorAggregator, String errorType, long lineNumber) {
+    byte[] line = ("#line " + lineNumber + "\r").getBytes(StandardCharsets.UTF_8);
+    errorAggregator.addError(errorType, lineNumber, lineNumber * 10, line, 1, line.length - 1);
+  }
+}
@@ -0,0 +1,172 @@
+import org.junit.Test;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.ProBedSorter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class contains unit tests for sorting proBed files.
+ *
+ * @author Tobias Ternent
+ */
+public class ProBedSorterTest {
+
+  private static final int LINES = 1000;
+  private static final String[] CHROMS = {"chr2", "chr10", "chrX", "chr1", "chrUn_unknown"};
+  private static final List<String> HEADERS = Arrays.asList("# proBed-version\t1.0", "track name=test", "browser position chr1:1-100");
+
+  /**
+   * This test sorts a file in runs of one line each, so there are more runs than can be merged at once and they are
+   * first merged in a separate pass, and checks the order, stability, headers, and dropped chromosomes.
+   *
+   * @throws Exception if there are problems sorting the file.
+   */
+  @Test
+  public void testSortWithMergePasses() throws Exception {
+    assertSorted(new ProBedSorter(chromSizes(), 4, 1), false);
+  }
+
+  /**
+   * This test sorts a file in a few runs, merged in a single pass.
+   *
+   * @throws Exception if there are problems sorting the file.
+   */
+  @Test
+  public void testSortWithSingleMerge() throws Exception {
+    assertSorted(new ProBedSorter(chromSizes(), 2, 10000), false);
+  }
+
+  /**
+   * This test sorts a file which fits in one run, in memory.
+   *
+   * @throws Exception if there are problems sorting the file.
+   */
+  @Test
+  public void testSortInMemory() throws Exception {
+    assertSorted(new ProBedSorter(chromSizes(), 1, Long.MAX_VALUE), false);
+  }
+
+  /**
+   * This test sorts a file in place, i.e. with the same input and output file, in several runs and in memory.
+   *
+   * @throws Exception if there are problems sorting the file.
+   */
+  @Test
+  public void testSortInPlace() throws Exception {
+    assertSorted(new ProBedSorter(chromSizes(), 4, 1), true);
+    assertSorted(new ProBedSorter(chromSizes(), 1, Long.MAX_VALUE), true);
+  }
+
+  /**
+   * This test checks that all the chromosomes are kept without chromosome sizes.
+   *
+   * @throws Exception if there are problems sorting the file.
+   */
+  @Test
+  public void testSortKeepsAllChromosomes() throws Exception {
+    List<String> lines = generateLines();
+    Path input = write(lines);
+    Path output = Files.createTempFile("probedsorter", ".sorted.bed");
+    try {
+      long written = new ProBedSorter(null, 2, 1).sort(input, output);
+      assertEquals("Every line should be kept", LINES, written);
+      assertEquals("Every line should be kept", expected(lines, null), Files.readAllLines(output, StandardCharsets.ISO_8859_1));
+    } finally {
+      Files.deleteIfExists(input);
+      Files.deleteIfExists(output);
+    }
+  }
+
+  /**
+   * This method sorts the test lines, and checks the output: headers first in their original order, then the lines
+   * sorted by chromosome name, start and end, with equal lines in their original order, and without the lines on
+   * chromosomes which are not in the chromosome sizes.
+   *
+   * @param sorter the sorter.
+   * @param inPlace true to sort the input file in place.
+   * @throws Exception if there are problems sorting the file.
+   */
+  private static void assertSorted(ProBedSorter sorter, boolean inPlace) throws Exception {
+    List<String> lines = generateLines();
+    Path input = write(lines);
+    Path output = inPlace ? input : Files.createTempFile("probedsorter", ".sorted.bed");
+    try {
+      long written = sorter.sort(input, output);
+      List<String> expected = expected(lines, chromSizes());
+      List<String> actual = Files.readAllLines(output, StandardCharsets.ISO_8859_1);
+      assertEquals("The number of lines written should not include headers or dropped lines", expected.size() - HEADERS.size(), written);
+      assertTrue("Lines on chromosomes without a size should be dropped", expected.size() < lines.size());
+      assertEquals("The lines should be sorted by chromosome, start and end, and stable", expected, actual);
+      assertFalse("The temporary sorting file should be removed", Files.exists(output.resolveSibling(output.getFileName() + ".sorting")));
+    } finally {
+      Files.deleteIfExists(input);
+      Files.deleteIfExists(output);
+    }
+  }
+
+  /**
+   * This method generates the test lines, with the headers at different places, and many lines with the same
+   * chromosome, start and end, which are told apart by their names.
+   *
+   * @return the lines.
+   */
+  private static List<String> generateLines() {
+    Random random = new Random(11);
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < LINES; i++) {
+      if (i % (LINES / HEADERS.size() + 1) == 0) {
+        lines.add(HEADERS.get(i / (LINES / HEADERS.size() + 1)));
+      }
+      int start = random.nextInt(20) * 5;
+      lines.add(CHROMS[random.nextInt(CHROMS.length)] + "\t" + start + "\t" + (start + 10 + random.nextInt(3) * 100) + "\tline_" + i + "\t1000\t+");
+    }
+    return lines;
+  }
+
+  /**
+   * This method sorts the test lines as the sorter should, with a stable sort.
+   *
+   * @param lines the lines.
+   * @param chromSizes the chromosome sizes, or null to keep all the chromosomes.
+   * @return the expected output.
+   */
+  private static List<String> expected(List<String> lines, Map<String, Integer> chromSizes) {
+    List<String> headers = new ArrayList<>();
+    List<String[]> body = new ArrayList<>();
+    for (String line : lines) {
+      if (HEADERS.contains(line)) {
+        headers.add(line);
+      } else if (chromSizes == null || chromSizes.containsKey(line.split("\t")[0])) {
+        body.add(line.split("\t"));
+      }
+    }
+    body.sort(Comparator.comparing((String[] fields) -> fields[0])
+        .thenComparingLong(fields -> Long.parseLong(fields[1]))
+        .thenComparingLong(fields -> Long.parseLong(fields[2])));
+    List<String> result = new ArrayList<>(headers);
+    for (String[] fields : body) {
+      result.add(String.join("\t", fields));
+    }
+    return result;
+  }
+
+  private static Map<String, Integer> chromSizes() {
+    Map<String, Integer> chromSizes = new HashMap<>();
+    for (String chrom : CHROMS) {
+      if (!chrom.startsWith("chrUn")) {
+        chromSizes.put(chrom, 1000000);
+      }
+    }
+    return chromSizes;
+  }
+
+  private static Path write(List<String> lines) throws Exception {
+    Path input = Files.createTempFile("probedsorter", ".bed");
+    Files.write(input, lines, StandardCharsets.ISO_8859_1);
+    return input;
+  }
+}
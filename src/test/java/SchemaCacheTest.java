@@ -0,0 +1,148 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.SchemaCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class contains unit tests for loading XML schemas from the local schema directory, which must work without
+ * network access.
+ *
+ * @author Tobias Ternent
+ */
+public class SchemaCacheTest {
+
+  private static final String SCHEMA = String.join("\n",
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+      "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">",
+      "<xs:element name=\"Experiment\"><xs:complexType><xs:sequence>",
+      "<xs:element name=\"Title\" type=\"xs:string\"/>",
+      "</xs:sequence></xs:complexType></xs:element>",
+      "</xs:schema>");
+
+  private File schemaDirectory;
+  private String previousSchemaDirectory;
+
+  /**
+   * This method sets an empty local schema directory.
+   *
+   * @throws Exception if the directory cannot be created.
+   */
+  @Before
+  public void setUp() throws Exception {
+    schemaDirectory = Files.createTempDirectory("schema").toFile();
+    previousSchemaDirectory = System.setProperty("pgconverter.schemadir", schemaDirectory.getPath());
+  }
+
+  /**
+   * This method restores the local schema directory.
+   *
+   * @throws Exception if the directory cannot be deleted.
+   */
+  @After
+  public void tearDown() throws Exception {
+    if (previousSchemaDirectory == null) {
+      System.clearProperty("pgconverter.schemadir");
+    } else {
+      System.setProperty("pgconverter.schemadir", previousSchemaDirectory);
+    }
+    File[] files = schemaDirectory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        Files.deleteIfExists(file.toPath());
+      }
+    }
+    Files.deleteIfExists(schemaDirectory.toPath());
+  }
+
+  /**
+   * This test validates small files against a schema which is only in the local schema directory, and whose remote
+   * location cannot be reached, and checks that valid files pass and invalid files do not.
+   *
+   * @throws Exception if the schema cannot be loaded.
+   */
+  @Test
+  public void testValidateWithLocalSchema() throws Exception {
+    Files.write(new File(schemaDirectory, "local.xsd").toPath(), SCHEMA.getBytes(StandardCharsets.UTF_8));
+    String schemaLocation = "http://schema.invalid/local.xsd";
+    assertEquals("The file should be valid", 0, validate(schemaLocation, "<Experiment><Title>test</Title></Experiment>").size());
+    assertFalse("A file without a Title should not be valid", validate(schemaLocation, "<Experiment/>").isEmpty());
+  }
+
+  /**
+   * This test checks that a schema which is neither in the local schema directory nor downloadable fails with an
+   * error naming the local schema directory, and that nothing is left in the directory.
+   *
+   * @throws Exception if the local schema directory cannot be listed.
+   */
+  @Test
+  public void testMissingSchema() throws Exception {
+    try {
+      validate("http://schema.invalid/missing.xsd", "<Experiment><Title>test</Title></Experiment>");
+      fail("A missing schema should not be loaded");
+    } catch (IOException e) {
+      assertTrue("The error should say where to copy the schema", e.getMessage().contains(schemaDirectory.getPath()));
+    }
+    assertArrayEquals("Nothing should be left in the local schema directory", new String[0], schemaDirectory.list());
+  }
+
+  /**
+   * This test validates small files against a schema bundled with the tool, with no local schema directory and a
+   * remote location which cannot be reached, and checks that valid files pass, invalid files do not, and that the
+   * local schema directory is not created.
+   *
+   * @throws Exception if the schema cannot be loaded.
+   */
+  @Test
+  public void testValidateWithBundledSchema() throws Exception {
+    File missingDirectory = new File(schemaDirectory, "missing");
+    System.setProperty("pgconverter.schemadir", missingDirectory.getPath());
+    String schemaLocation = "http://schema.invalid/bundled.xsd";
+    assertEquals("The file should be valid", 0, validate(schemaLocation, "<Experiment><Title>test</Title></Experiment>").size());
+    assertFalse("A file without a Title should not be valid", validate(schemaLocation, "<Experiment/>").isEmpty());
+    assertFalse("The local schema directory should not be created", missingDirectory.exists());
+  }
+
+  /**
+   * This test checks that a schema in the local schema directory overrides the bundled schema of the same name.
+   *
+   * @throws Exception if the schema cannot be loaded.
+   */
+  @Test
+  public void testLocalSchemaOverridesBundledSchema() throws Exception {
+    Files.write(new File(schemaDirectory, "bundled.xsd").toPath(), SCHEMA.replace("Title", "Description").getBytes(StandardCharsets.UTF_8));
+    String schemaLocation = "http://override.invalid/bundled.xsd";
+    assertEquals("The file should be valid against the local schema", 0,
+        validate(schemaLocation, "<Experiment><Description>test</Description></Experiment>").size());
+    assertFalse("The file should not be valid against the bundled schema", validate(schemaLocation, "<Experiment><Title>test</Title></Experiment>").isEmpty());
+  }
+
+  /**
+   * This test checks that a bundled schema which does not match its checksum is not used, so a schema which cannot
+   * be downloaded either is missing.
+   *
+   * @throws Exception if the bundled schema cannot be read.
+   */
+  @Test
+  public void testTamperedBundledSchema() throws Exception {
+    assertNotNull("The schema should be bundled", getClass().getClassLoader().getResource("schema/tampered.xsd"));
+    try {
+      validate("http://schema.invalid/tampered.xsd", "<Experiment><Title>test</Title></Experiment>");
+      fail("A schema which does not match its checksum should not be loaded");
+    } catch (IOException e) {
+      assertTrue("The error should say where to copy the schema", e.getMessage().contains(schemaDirectory.getPath()));
+    }
+  }
+
+  private static List<String> validate(String schemaLocation, String xml) throws Exception {
+    return SchemaCache.validate(schemaLocation, new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "test.xml", 10);
+  }
+}
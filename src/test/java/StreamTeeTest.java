@@ -0,0 +1,147 @@
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.StreamTee;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class contains unit tests for reading a file once for several consumers.
+ *
+ * @author Tobias Ternent
+ */
+public class StreamTeeTest {
+
+  private static final int FILE_SIZE = 24 * 1024 * 1024 + 123;
+
+  /**
+   * This test reads a file for one consumer which reads straight away and one which waits, and checks that the file is
+   * not read past the chunks the waiting consumer can buffer, and that both consumers then get the whole file.
+   *
+   * @throws Exception if there are problems reading the file.
+   */
+  @Test
+  public void testSlowConsumerHoldsBackReading() throws Exception {
+    byte[] data = randomBytes(FILE_SIZE);
+    File file = write(data, false);
+    ExecutorService pool = Executors.newCachedThreadPool();
+    try {
+      StreamTee tee = new StreamTee(file);
+      InputStream fast = tee.newBranch();
+      InputStream slow = tee.newBranch();
+      Future<byte[]> fastRead = pool.submit(() -> readAll(fast));
+      Future<Long> read = pool.submit(tee::read);
+      Thread.sleep(500);
+      assertFalse("Reading should wait for the slow consumer", read.isDone());
+      assertFalse("The fast consumer should wait for the slow consumer", fastRead.isDone());
+      Future<byte[]> slowRead = pool.submit(() -> readAll(slow));
+      assertEquals("The whole file should be read", FILE_SIZE, (long) read.get(1, TimeUnit.MINUTES));
+      assertArrayEquals("The fast consumer should get the whole file", data, fastRead.get(1, TimeUnit.MINUTES));
+      assertArrayEquals("The slow consumer should get the whole file", data, slowRead.get(1, TimeUnit.MINUTES));
+    } finally {
+      pool.shutdownNow();
+      Files.deleteIfExists(file.toPath());
+    }
+  }
+
+  /**
+   * This test closes one consumer's branch without reading it, and checks that it does not hold back the other
+   * consumer, and that reading stops early once every consumer has closed its branch.
+   *
+   * @throws Exception if there are problems reading the file.
+   */
+  @Test
+  public void testClosedConsumers() throws Exception {
+    byte[] data = randomBytes(FILE_SIZE);
+    File file = write(data, false);
+    ExecutorService pool = Executors.newCachedThreadPool();
+    try {
+      StreamTee tee = new StreamTee(file);
+      InputStream reading = tee.newBranch();
+      tee.newBranch().close();
+      Future<byte[]> readingRead = pool.submit(() -> readAll(reading));
+      assertEquals("The whole file should be read", FILE_SIZE, tee.read());
+      assertArrayEquals("The open consumer should get the whole file", data, readingRead.get(1, TimeUnit.MINUTES));
+
+      StreamTee closedTee = new StreamTee(file);
+      InputStream first = closedTee.newBranch();
+      byte[] start = new byte[1024];
+      Future<Integer> firstRead = pool.submit(() -> {
+        int length = IOUtils.read(first, start);
+        first.close();
+        return length;
+      });
+      assertTrue("Reading should stop once every consumer has closed its branch", closedTee.read() < FILE_SIZE);
+      assertEquals("The consumer should get the start of the file", start.length, (int) firstRead.get(1, TimeUnit.MINUTES));
+      assertArrayEquals("The consumer should get the start of the file", Arrays.copyOf(data, start.length), start);
+    } finally {
+      pool.shutdownNow();
+      Files.deleteIfExists(file.toPath());
+    }
+  }
+
+  /**
+   * This test reads a truncated gzipped file, and checks that both the reading and the consumer fail, instead of the
+   * consumer taking the truncated content as the whole file.
+   *
+   * @throws Exception if there are problems writing the file.
+   */
+  @Test
+  public void testReadFailure() throws Exception {
+    File file = write(randomBytes(FILE_SIZE), true);
+    ExecutorService pool = Executors.newCachedThreadPool();
+    try {
+      try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+        truncated.setLength(truncated.length() / 2);
+      }
+      StreamTee tee = new StreamTee(file);
+      InputStream branch = tee.newBranch();
+      Future<byte[]> branchRead = pool.submit(() -> readAll(branch));
+      try {
+        tee.read();
+        fail("Reading a truncated file should fail");
+      } catch (IOException e) {
+        // expected
+      }
+      try {
+        branchRead.get(1, TimeUnit.MINUTES);
+        fail("The consumer of a truncated file should fail");
+      } catch (ExecutionException e) {
+        assertTrue("The consumer should get the reading failure", e.getCause() instanceof IOException);
+      }
+    } finally {
+      pool.shutdownNow();
+      Files.deleteIfExists(file.toPath());
+    }
+  }
+
+  private static byte[] readAll(InputStream branch) throws IOException {
+    try (InputStream in = branch) {
+      return IOUtils.toByteArray(in);
+    }
+  }
+
+  private static byte[] randomBytes(int size) {
+    byte[] data = new byte[size];
+    new Random(1).nextBytes(data);
+    return data;
+  }
+
+  private static File write(byte[] data, boolean gzipped) throws IOException {
+    File file = File.createTempFile("streamtee", gzipped ? ".txt.gz" : ".txt");
+    try (OutputStream out = gzipped ? new GZIPOutputStream(new FileOutputStream(file)) : new FileOutputStream(file)) {
+      out.write(data);
+    }
+    return file;
+  }
+}
@@ -0,0 +1,70 @@
+import org.junit.Test;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.ValidationSampler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class contains unit tests for drawing the samples of the sampled validation checks.
+ *
+ * @author Tobias Ternent
+ */
+public class ValidationSamplerTest {
+
+  /**
+   * This test draws samples with a given seed and sample size, and checks that the same seed always draws the same
+   * items, one from each stratum, and that another seed draws other items.
+   */
+  @Test
+  public void testSamplePositions() {
+    List<Integer> items = range(1000);
+    ValidationSampler sampler = new ValidationSampler(10, 42L);
+    List<Integer> sample = sampler.sample(items, sampler.newRandom());
+    assertEquals("The sample should have the sample size", 10, sample.size());
+    for (int i = 0; i < sample.size(); i++) {
+      assertTrue("Item " + sample.get(i) + " should be in stratum " + i, sample.get(i) >= i * 100 && sample.get(i) < (i + 1) * 100);
+    }
+    assertEquals("The same seed should draw the same sample", sample, sampler.sample(items, sampler.newRandom()));
+    assertEquals("The same seed and sample size should draw the same sample", sample,
+        new ValidationSampler(10, 42L).sample(items, new ValidationSampler(10, 42L).newRandom()));
+    ValidationSampler otherSeed = new ValidationSampler(10, 43L);
+    assertNotEquals("Another seed should draw another sample", sample, otherSeed.sample(items, otherSeed.newRandom()));
+
+    ValidationSampler uneven = new ValidationSampler(3, ValidationSampler.DEFAULT_SEED);
+    List<Integer> unevenSample = uneven.sample(range(10), uneven.newRandom());
+    assertTrue("The first stratum should be items 0 to 2", unevenSample.get(0) < 3);
+    assertTrue("The second stratum should be items 3 to 5", unevenSample.get(1) >= 3 && unevenSample.get(1) < 6);
+    assertTrue("The last stratum should be items 6 to 9", unevenSample.get(2) >= 6);
+  }
+
+  /**
+   * This test draws samples from no more items than the sample size, which should return all the items, and checks
+   * that a sample size below 1 is not accepted.
+   */
+  @Test
+  public void testSmallSamples() {
+    ValidationSampler sampler = new ValidationSampler(ValidationSampler.DEFAULT_SAMPLE_SIZE, ValidationSampler.DEFAULT_SEED);
+    assertEquals("All the items should be drawn", range(5), sampler.sample(range(5), sampler.newRandom()));
+    assertEquals("All the items should be drawn", range(100), sampler.sample(range(100), sampler.newRandom()));
+    assertTrue("No items should be drawn", sampler.sample(new ArrayList<Integer>(), sampler.newRandom()).isEmpty());
+    assertNull("No item should be picked", sampler.pick(new ArrayList<Integer>(), sampler.newRandom()));
+    assertEquals("The only item should be picked", 7, (int) sampler.pick(Arrays.asList(7), sampler.newRandom()));
+    try {
+      new ValidationSampler(0, ValidationSampler.DEFAULT_SEED);
+      fail("A sample size of 0 should not be accepted");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static List<Integer> range(int count) {
+    List<Integer> items = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      items.add(i);
+    }
+    return items;
+  }
+}
@@ -4,16 +4,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.ac.ebi.pride.toolsuite.pgconverter.MainApp;
 import uk.ac.ebi.pride.toolsuite.pgconverter.Validator;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.AssayFileSummary;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.Report;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Stream;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static uk.ac.ebi.pride.toolsuite.pgconverter.utils.Utility.*;
 
@@ -50,6 +56,30 @@ public class ValidatorTest {
     assertTrue("No errors reported during the validation of the mzIdentML file", reportStatus(reportFile));
   }
 
+  /**
+   * This test validates one example mzIdentML file with caches bounded to a single protein, peptide, and spectrum, so
+   * values are evicted and read from the file again, and checks that the file is still valid.
+   *
+   * @throws Exception if there are problems opening the example file.
+   */
+  @Test
+  public void testMzidBoundedCachesValidator() throws Exception {
+    URL url = ValidatorTest.class.getClassLoader().getResource("test.mzid");
+    if (url == null) {
+      throw new IllegalStateException("no file for input found!");
+    }
+    File inputMzidFile = new File(url.toURI());
+    url = ValidatorTest.class.getClassLoader().getResource("test.mgf");
+    if (url == null) {
+      throw new IllegalStateException("no file for input found!");
+    }
+    File inputMgfFile = new File(url.toURI());
+    String[] args = new String[]{"-" + ARG_VALIDATION, "-" + ARG_MZID, inputMzidFile.getPath(), "-" + ARG_PEAK, inputMgfFile.getPath(),
+        "-" + ARG_CACHE_LIMITS, "PROTEIN=1,PEPTIDE=1,SPECTRUM=1", "-" + ARG_SKIP_SERIALIZATION};
+    Report report = Validator.startValidation(MainApp.parseArgs(args));
+    assertTrue("No errors reported during the validation of the mzIdentML file: " + report.getStatus(), report.getStatus().startsWith("OK"));
+  }
+
     /**
    * This test validates one example mzIdentML file which is related to a single peak .mgf file
    * with FastMzIdentMLValidation approach (instead of random access file by xxindex)
@@ -227,6 +257,52 @@ public class ValidatorTest {
     assertTrue("No errors reported during the validation of the mzTab file", reportStatus(reportFile));
   }
 
+  /**
+   * This test validates one "purposefully bad" example proBed file, with a duplicate name, a bad strand, a wrong block count,
+   * an empty genome reference version and a bad experimental m/z.
+   *
+   * @throws Exception if there are problems opening the example file.
+   */
+  @Test
+  public void testBadProbedValidator() throws Exception {
+    URL url = ValidatorTest.class.getClassLoader().getResource("bad.pro.bed");
+    if (url == null) {
+      throw new IllegalStateException("no file for input found!");
+    }
+    File inputProbedFile = new File(url.toURI());
+    String[] args = new String[]{"-" + ARG_VALIDATION, "-" + ARG_PROBED, inputProbedFile.getPath(), "-" + ARG_SKIP_SERIALIZATION};
+    Report report = Validator.startValidation(MainApp.parseArgs(args));
+    String status = report.getStatus();
+    assertTrue("Errors correctly reported during the validation of the proBed file", status.startsWith("ERROR"));
+    assertTrue("Duplicate name reported", status.contains("1 x 4th column 'name' field must be unique.\n  First line numbers: 4\n"));
+    assertTrue("Bad strand reported", status.contains("6th column 'strand' field must not be empty and must be either '-' or '+'."));
+    assertTrue("Wrong block count reported", status.contains("11th column 'blockSizes' field does not have the same amount of blocks as mentioned in 'blockCount'."));
+    assertTrue("Empty genome reference version reported", status.contains("16th column 'genomeRefVersion' field must not be empty."));
+    assertTrue("Bad experimental m/z reported", status.contains("21st column 'expMassToCharge' field must not be empty and must contain at least one digit."));
+  }
+
+  /**
+   * This test validates one "purposefully bad" example BED6 file against its own ASQL schema, with its start after its end.
+   *
+   * @throws Exception if there are problems opening the example files.
+   */
+  @Test
+  public void testBadCustomAsqlBedValidator() throws Exception {
+    URL url = ValidatorTest.class.getClassLoader().getResource("bad.bed6.bed");
+    URL asqlUrl = ValidatorTest.class.getClassLoader().getResource("bed6.as");
+    if (url == null || asqlUrl == null) {
+      throw new IllegalStateException("no file for input found!");
+    }
+    File inputBedFile = new File(url.toURI());
+    File asqlFile = new File(asqlUrl.toURI());
+    String[] args = new String[]{"-" + ARG_VALIDATION, "-" + ARG_PROBED, inputBedFile.getPath(), "-" + ARG_ASQLFILE, asqlFile.getPath(),
+        "-" + ARG_BED_COLUMN_FORMAT, "BED6+0", "-" + ARG_SKIP_SERIALIZATION};
+    Report report = Validator.startValidation(MainApp.parseArgs(args));
+    String status = report.getStatus();
+    assertTrue("Errors correctly reported during the validation of the BED file", status.startsWith("ERROR: 1 problems"));
+    assertTrue("Start after end reported", status.contains("2nd and 3rd columns 'chromStart' and 'chromEnd' fields must be in ascending order."));
+  }
+
   /**
    * This test validates one example mzIdentML file which is related to a "purposefully bad" single peak .mgf file (without schema validation).
    *
@@ -285,4 +361,117 @@ public class ValidatorTest {
     }
     assertTrue("Errors correctly reported during the validation of the mzIdentML file", e!=null);
   }
+
+  /**
+   * This test validates a copy of the example mzIdentML file with an attribute the XML schema does not allow, which
+   * the semantic validation ignores. Without -schema the file is valid, and with -schema the report's status is
+   * replaced by the XML schema errors, even though the semantic validation found no errors.
+   *
+   * @throws Exception if there are problems opening the example file.
+   */
+  @Test
+  public void testSchemaInvalidMzidValidator() throws Exception {
+    URL url = ValidatorTest.class.getClassLoader().getResource("test.mzid");
+    if (url == null) {
+      throw new IllegalStateException("no file for input found!");
+    }
+    String mzid = new String(Files.readAllBytes(new File(url.toURI()).toPath()), StandardCharsets.UTF_8);
+    url = ValidatorTest.class.getClassLoader().getResource("test.mgf");
+    if (url == null) {
+      throw new IllegalStateException("no file for input found!");
+    }
+    File inputMgfFile = new File(url.toURI());
+    File inputMzidFile = File.createTempFile("schemaInvalid", ".mzid");
+    try {
+      Files.write(inputMzidFile.toPath(), mzid.replaceFirst("<MzIdentML ", "<MzIdentML schemaInvalid=\"true\" ").getBytes(StandardCharsets.UTF_8));
+      List<String> args = new ArrayList<>();
+      Collections.addAll(args, "-" + ARG_VALIDATION, "-" + ARG_MZID, inputMzidFile.getPath(), "-" + ARG_PEAK, inputMgfFile.getPath(),
+          "-" + ARG_SKIP_SERIALIZATION);
+      Report report = Validator.startValidation(MainApp.parseArgs(args.toArray(new String[0])));
+      assertTrue("The file should be semantically valid: " + report.getStatus(), report.getStatus().startsWith("OK"));
+      args.add("-" + ARG_SCHEMA_VALIDATION);
+      report = Validator.startValidation(MainApp.parseArgs(args.toArray(new String[0])));
+      assertTrue("The status should be the XML schema errors: " + report.getStatus(),
+          report.getStatus().startsWith("ERROR: Supplied -mzid file failed XML schema validation: " + inputMzidFile) &&
+          report.getStatus().contains("schemaInvalid"));
+    } finally {
+      Files.deleteIfExists(inputMzidFile.toPath());
+    }
+  }
+
+  /**
+   * This test validates one example mzIdentML file twice with fast validation and the same sample seed, and checks
+   * that both validations draw the same sample, i.e. report the same delta m/z error rate.
+   *
+   * @throws Exception if there are problems opening the example file.
+   */
+  @Test
+  public void testMzidFastValidatorSampleSeed() throws Exception {
+    URL url = ValidatorTest.class.getClassLoader().getResource("test.mzid");
+    if (url == null) {
+      throw new IllegalStateException("no file for input found!");
+    }
+    File inputMzidFile = new File(url.toURI());
+    url = ValidatorTest.class.getClassLoader().getResource("test.mgf");
+    if (url == null) {
+      throw new IllegalStateException("no file for input found!");
+    }
+    File inputMgfFile = new File(url.toURI());
+    double[] deltaMzErrorRates = new double[2];
+    for (int i = 0; i < deltaMzErrorRates.length; i++) {
+      File reportFile = File.createTempFile("testMzid", ".log");
+      File serialFile = new File(reportFile.getAbsolutePath() + ".ser");
+      try {
+        String[] args = new String[]{"-" + ARG_VALIDATION, "-" + ARG_MZID, inputMzidFile.getPath(), "-" + ARG_PEAK, inputMgfFile.getPath(),
+            "-" + ARG_FAST_VALIDATION, "-" + ARG_SAMPLE_SIZE, "10", "-" + ARG_SAMPLE_SEED, "7", "-" + ARG_REPORTFILE, reportFile.getPath()};
+        Report report = Validator.startValidation(MainApp.parseArgs(args));
+        assertTrue("No errors reported during the validation of the mzIdentML file", report.getStatus().startsWith("OK"));
+        try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(serialFile.toPath()))) {
+          deltaMzErrorRates[i] = ((AssayFileSummary) in.readObject()).getDeltaMzErrorRate();
+        }
+      } finally {
+        Files.deleteIfExists(reportFile.toPath());
+        Files.deleteIfExists(serialFile.toPath());
+      }
+    }
+    assertEquals("The same seed should give the same delta m/z error rate", deltaMzErrorRates[0], deltaMzErrorRates[1], 0.0);
+  }
+
+  /**
+   * This test validates and converts one example mzIdentML file to mzTab in one run, so the controller which validated
+   * the file is converted to mzTab directly, and then does the same with fast validation, whose valid file is
+   * converted separately.
+   *
+   * @throws Exception if there are problems opening the example file.
+   */
+  @Test
+  public void testMzidValidateAndConvertToMztab() throws Exception {
+    URL url = ValidatorTest.class.getClassLoader().getResource("test.mzid");
+    if (url == null) {
+      throw new IllegalStateException("no file for input found!");
+    }
+    File inputMzidFile = new File(url.toURI());
+    url = ValidatorTest.class.getClassLoader().getResource("test.mgf");
+    if (url == null) {
+      throw new IllegalStateException("no file for input found!");
+    }
+    File inputMgfFile = new File(url.toURI());
+    for (boolean fastValidation : new boolean[]{false, true}) {
+      File outputFile = File.createTempFile("testMzid", ".mztab");
+      try {
+        List<String> args = new ArrayList<>();
+        Collections.addAll(args, "-" + ARG_VALIDATION, "-" + ARG_CONVERSION, "-" + ARG_MZID, inputMzidFile.getPath(),
+            "-" + ARG_PEAK, inputMgfFile.getPath(), "-" + ARG_OUTPUTFILE, outputFile.getPath(), "-" + ARG_SKIP_SERIALIZATION);
+        if (fastValidation) {
+          args.add("-" + ARG_FAST_VALIDATION);
+        }
+        Report report = Validator.startValidationAndConversion(MainApp.parseArgs(args.toArray(new String[0])));
+        assertTrue("No errors reported during the validation of the mzIdentML file", report.getStatus().startsWith("OK"));
+        assertTrue("The mzTab file should be written", outputFile.length() > 0 &&
+            new String(Files.readAllBytes(outputFile.toPath()), Charset.defaultCharset()).startsWith("MTD"));
+      } finally {
+        Files.deleteIfExists(outputFile.toPath());
+      }
+    }
+  }
 }
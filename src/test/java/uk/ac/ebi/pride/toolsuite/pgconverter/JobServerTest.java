@@ -0,0 +1,150 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static uk.ac.ebi.pride.toolsuite.pgconverter.utils.Utility.*;
+
+/**
+ * This class contains unit tests for running jobs from the spool directory of a job server.
+ *
+ * @author Tobias Ternent
+ */
+public class JobServerTest {
+
+  private static final long TIMEOUT_MS = 60000;
+
+  private Path spool;
+
+  /**
+   * This method creates the spool directory.
+   *
+   * @throws Exception if the directory cannot be created.
+   */
+  @Before
+  public void setUp() throws Exception {
+    spool = Files.createTempDirectory("spool");
+  }
+
+  /**
+   * This method deletes the spool directory.
+   *
+   * @throws Exception if the directory cannot be deleted.
+   */
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.deleteDirectory(spool.toFile());
+  }
+
+  /**
+   * This test starts servers with numbers of threads which are not positive numbers, which should not be accepted.
+   *
+   * @throws Exception if there are problems parsing the arguments.
+   */
+  @Test
+  public void testInvalidThreads() throws Exception {
+    for (String threads : new String[]{"0", "-1", "abc"}) {
+      try {
+        new JobServer(MainApp.parseArgs(new String[]{"-" + ARG_SERVER, spool.toString(), "-" + ARG_THREADS, threads}), cmd -> { });
+        fail("The number of threads should not be accepted: " + threads);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * This test runs a server on one thread, with a job left running by a previous server, two queued jobs, and jobs
+   * which cannot be read, which start a server, which need more memory than the maximum heap, or which fail. It
+   * checks that the jobs are run oldest first, starting with the job which did not finish, that each job is moved to
+   * 'done' or 'failed' with its status, and that the server stops once the stop file is created.
+   *
+   * @throws Exception if there are problems running the server.
+   */
+  @Test
+  public void testJobs() throws Exception {
+    long now = System.currentTimeMillis();
+    Path incoming = Files.createDirectories(spool.resolve("incoming"));
+    Path running = Files.createDirectories(spool.resolve("running"));
+    writeJob(running, "unfinished", now - 40000, "-v", "-" + ARG_REPORTFILE, "unfinished");
+    writeJob(incoming, "first", now - 30000, "-v", "-" + ARG_REPORTFILE, "first");
+    writeJob(incoming, "second", now - 20000, "-v", "-" + ARG_REPORTFILE, "second");
+    writeJob(incoming, "failing", now - 10000, "-v", "-" + ARG_REPORTFILE, "failing");
+    writeJob(incoming, "unreadable", now, "-v", "-notanoption");
+    writeJob(incoming, "server", now, "-" + ARG_SERVER, spool.toString());
+    long heapMb = Runtime.getRuntime().maxMemory() / (1024L * 1024L);
+    writeJob(incoming, "huge", now, "-v", "-" + ARG_JOB_MEMORY, Long.toString(heapMb + 1));
+
+    List<String> jobs = Collections.synchronizedList(new ArrayList<>());
+    JobServer server = new JobServer(MainApp.parseArgs(new String[]{"-" + ARG_SERVER, spool.toString(), "-" + ARG_THREADS, "1"}), cmd -> {
+      String job = cmd.getOptionValue(ARG_REPORTFILE);
+      jobs.add(job);
+      if (job.equals("failing")) {
+        throw new IllegalStateException("Job failed");
+      }
+    });
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> result = executor.submit(() -> {
+        server.start();
+        return null;
+      });
+      long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+      while (countJobs(spool.resolve("done")) + countJobs(spool.resolve("failed")) < 7 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(100);
+      }
+      Files.createFile(spool.resolve("stop"));
+      result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals("The jobs should be run oldest first, starting with the unfinished job",
+        Arrays.asList("unfinished", "first", "second", "failing"), jobs);
+    assertEquals("The unfinished job should be done", "OK", status("done", "unfinished").split("\t")[0]);
+    assertEquals("The second job should be done", "OK", status("done", "second").split("\t")[0]);
+    assertTrue("The failing job should fail with its exception", status("failed", "failing").startsWith("FAILED") &&
+        status("failed", "failing").endsWith("Job failed"));
+    assertTrue("The unreadable job should fail", status("failed", "unreadable").startsWith("FAILED\t0 ms\tUnable to read job"));
+    assertEquals("A job should not start a server", "FAILED\t0 ms\tJobs cannot start a server.", status("failed", "server"));
+    assertTrue("A job should not need more than the maximum heap", status("failed", "huge").contains("more than the maximum heap"));
+    assertEquals("There should be no jobs left to run", 0, countJobs(incoming) + countJobs(running));
+    assertFalse("The stop file should be removed", Files.exists(spool.resolve("stop")));
+  }
+
+  /**
+   * This method writes a job file, with its last modified time.
+   *
+   * @param directory the directory to write the job to.
+   * @param name the name of the job.
+   * @param lastModified the last modified time of the job.
+   * @param args the job's command line arguments.
+   * @throws Exception if the job cannot be written.
+   */
+  private static void writeJob(Path directory, String name, long lastModified, String... args) throws Exception {
+    Path job = Files.write(directory.resolve(name + ".job"), Arrays.asList(args), StandardCharsets.UTF_8);
+    Files.setLastModifiedTime(job, FileTime.fromMillis(lastModified));
+  }
+
+  private static int countJobs(Path directory) {
+    String[] jobs = directory.toFile().list((dir, name) -> name.endsWith(".job"));
+    return jobs == null ? 0 : jobs.length;
+  }
+
+  private String status(String directory, String name) throws Exception {
+    return new String(Files.readAllBytes(spool.resolve(directory).resolve(name + ".status")), StandardCharsets.UTF_8).trim();
+  }
+}
@@ -0,0 +1,93 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter;
+
+import org.junit.Test;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.AssayFileSummary;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.Report;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.SchemaCheckResult;
+import uk.ac.ebi.pride.toolsuite.pgconverter.utils.ValidationResult;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class contains unit tests for running XML schema validation and semantic validation at the same time.
+ *
+ * @author Tobias Ternent
+ */
+public class ValidatorWithSchemaTest {
+
+  private static final String SCHEMA_ERROR_MESSAGE = "ERROR: Supplied -mzid file failed XML schema validation: test.mzid";
+
+  /**
+   * This test fails the XML schema validation while the semantic validation is still running, and checks that the
+   * semantic validation is cancelled, that the result is only returned once the semantic validation has stopped, and
+   * that the status is replaced by the XML schema errors.
+   *
+   * @throws Exception if the validations do not start.
+   */
+  @Test
+  public void testSchemaFailureCancelsSemanticValidation() throws Exception {
+    CountDownLatch semanticStarted = new CountDownLatch(1);
+    AtomicBoolean semanticInterrupted = new AtomicBoolean(false);
+    AtomicBoolean semanticStopped = new AtomicBoolean(false);
+    ValidationResult result = Validator.validateWithSchema(() -> {
+      assertTrue("The semantic validation should start", semanticStarted.await(30, TimeUnit.SECONDS));
+      return new SchemaCheckResult(false, Arrays.asList("1 errors of 1 types.", "cvc-complex-type.3.2.2 (1 times): schemaInvalid"));
+    }, () -> {
+      semanticStarted.countDown();
+      try {
+        Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+      } catch (InterruptedException e) {
+        semanticInterrupted.set(true);
+        long stopping = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+        while (System.nanoTime() < stopping) {
+          Thread.yield();
+        }
+        semanticStopped.set(true);
+        throw e;
+      }
+      return semanticResult("OK");
+    }, SCHEMA_ERROR_MESSAGE);
+    assertTrue("The semantic validation should be cancelled", semanticInterrupted.get());
+    assertTrue("The result should only be returned once the semantic validation has stopped", semanticStopped.get());
+    assertEquals("The status should be the XML schema errors",
+        SCHEMA_ERROR_MESSAGE + "1 errors of 1 types.,cvc-complex-type.3.2.2 (1 times): schemaInvalid", result.getReport().getStatus());
+  }
+
+  /**
+   * This test passes both validations, finishing the semantic validation first, and checks that the XML schema
+   * validation is still waited for, and the semantic validation result is returned.
+   *
+   * @throws Exception if the validations do not start.
+   */
+  @Test
+  public void testBothValidationsPass() throws Exception {
+    AtomicBoolean schemaFinished = new AtomicBoolean(false);
+    ValidationResult semantic = semanticResult("OK");
+    ValidationResult result = Validator.validateWithSchema(() -> {
+      Thread.sleep(200);
+      schemaFinished.set(true);
+      return new SchemaCheckResult(true, Collections.emptyList());
+    }, () -> semantic, SCHEMA_ERROR_MESSAGE);
+    assertTrue("The XML schema validation should be waited for", schemaFinished.get());
+    assertSame("The semantic validation result should be returned", semantic.getReport(), result.getReport());
+    assertEquals("The status should be the semantic validation's", "OK", result.getReport().getStatus());
+  }
+
+  /**
+   * This method makes a semantic validation result.
+   *
+   * @param status the status of the report.
+   * @return the validation result.
+   */
+  private static ValidationResult semanticResult(String status) {
+    Report report = new Report();
+    report.setStatus(status);
+    return new ValidationResult(new AssayFileSummary(), report);
+  }
+}
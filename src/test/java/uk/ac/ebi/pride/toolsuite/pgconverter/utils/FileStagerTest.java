@@ -0,0 +1,169 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class contains unit tests for getting many input files ready at once, by extracting and staging them.
+ *
+ * @author Tobias Ternent
+ */
+public class FileStagerTest {
+
+  private static final byte[] CONTENT = "BEGIN IONS\nTITLE=spectrum 1\nEND IONS\n".getBytes(StandardCharsets.UTF_8);
+
+  private Path directory;
+
+  /**
+   * This method creates the directory of the input files.
+   *
+   * @throws Exception if the directory cannot be created.
+   */
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("stager");
+  }
+
+  /**
+   * This method deletes the input files.
+   *
+   * @throws Exception if the files cannot be deleted.
+   */
+  @After
+  public void tearDown() throws Exception {
+    FileUtils.deleteDirectory(directory.toFile());
+  }
+
+  /**
+   * This test handles files which finish in the reverse order they were given in, and checks that the results are
+   * still in the order of the input files.
+   *
+   * @throws Exception if there are problems creating the files.
+   */
+  @Test
+  public void testResultOrder() throws Exception {
+    List<File> files = createFiles(8);
+    List<Throwable> failures = new ArrayList<>();
+    List<File> results = new FileStager(8).forEach(files, file -> {
+      try {
+        Thread.sleep(10L * (8 - files.indexOf(file)));
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      return new File(file.getPath() + ".done");
+    }, failures);
+    assertTrue("No file should fail", failures.isEmpty());
+    for (int i = 0; i < files.size(); i++) {
+      assertEquals("The results should be in the order of the input files", files.get(i).getName() + ".done", results.get(i).getName());
+    }
+  }
+
+  /**
+   * This test stages files, and checks that the temporary files are in the order of the input files, with their
+   * content.
+   *
+   * @throws Exception if there are problems creating the files.
+   */
+  @Test
+  public void testStage() throws Exception {
+    List<File> files = createFiles(6);
+    List<File> tempFiles = new FileStager(4).stage(files);
+    try {
+      assertEquals("There should be a temporary file for each input file", files.size(), tempFiles.size());
+      for (int i = 0; i < files.size(); i++) {
+        assertEquals("The temporary files should be in the order of the input files", files.get(i).getName(), tempFiles.get(i).getName());
+        assertArrayEquals("The temporary file should have the input's content", Files.readAllBytes(files.get(i).toPath()),
+            Files.readAllBytes(tempFiles.get(i).toPath()));
+      }
+    } finally {
+      for (File tempFile : tempFiles) {
+        Files.deleteIfExists(tempFile.toPath());
+        Files.deleteIfExists(tempFile.toPath().getParent());
+      }
+    }
+  }
+
+  /**
+   * This test handles more files than the number of streams per file system, on more threads, and checks that no
+   * more than two files on the same file system are handled at once.
+   *
+   * @throws Exception if there are problems creating the files.
+   */
+  @Test
+  public void testStreamsPerFileStore() throws Exception {
+    List<File> files = createFiles(12);
+    AtomicInteger streams = new AtomicInteger();
+    AtomicInteger maxStreams = new AtomicInteger();
+    List<Throwable> failures = new ArrayList<>();
+    new FileStager(8).forEach(files, file -> {
+      maxStreams.accumulateAndGet(streams.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      } finally {
+        streams.decrementAndGet();
+      }
+      return file;
+    }, failures);
+    assertTrue("No file should fail", failures.isEmpty());
+    assertEquals("Only two files should be read from the file system at once", 2, maxStreams.get());
+  }
+
+  /**
+   * This test extracts a valid gzipped file, a file which is not gzipped, and a corrupt gzipped file, and checks that
+   * the failure reaches the caller, naming the corrupt file, while the other files are still extracted, and no
+   * partially extracted file is left.
+   *
+   * @throws Exception if there are problems creating the files.
+   */
+  @Test
+  public void testExtractionFailure() throws Exception {
+    File gzipped = directory.resolve("good.mgf.gz").toFile();
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipped.toPath()))) {
+      out.write(CONTENT);
+    }
+    File plain = Files.write(directory.resolve("plain.mgf"), CONTENT).toFile();
+    File corrupt = Files.write(directory.resolve("bad.mgf.gz"), new byte[]{0x1f, (byte) 0x8b, 8, 0, 1, 2, 3, 4, 5, 6, 7}).toFile();
+    Path output = Files.createDirectory(directory.resolve("output"));
+    try {
+      new FileStager(4).extract(Arrays.asList(gzipped, plain, corrupt), output.toFile());
+      fail("The corrupt file should not be extracted");
+    } catch (IOException e) {
+      assertTrue("The failure should name the corrupt file: " + e.getMessage(), e.getMessage().contains(corrupt.getAbsolutePath()));
+      assertEquals("Only the corrupt file should fail", 0, e.getSuppressed().length);
+    }
+    assertArrayEquals("The valid file should still be extracted", CONTENT, Files.readAllBytes(output.resolve("good.mgf")));
+    assertFalse("No partially extracted file should be left", Files.exists(output.resolve("bad.mgf.part")));
+    assertFalse("The corrupt file should not be extracted", Files.exists(output.resolve("bad.mgf")));
+  }
+
+  /**
+   * This method creates input files in the test directory.
+   *
+   * @param count the number of files.
+   * @return the files.
+   * @throws IOException if the files cannot be written.
+   */
+  private List<File> createFiles(int count) throws IOException {
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      files.add(Files.write(directory.resolve("peaks" + i + ".mgf"), CONTENT).toFile());
+    }
+    return files;
+  }
+}
@@ -0,0 +1,143 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class contains unit tests for validating a proBed file in memory-mapped chunks, with chunks small enough for
+ * lines to cross their boundaries.
+ *
+ * @author Tobias Ternent
+ */
+public class MappedProBedValidatorTest {
+
+  private static final String SCORE_ERROR = "5th column 'score' field must not be empty and must be an unsigned integer containing at least one digit.";
+
+  private Path proBed;
+  private AsqlSchema schema;
+
+  /**
+   * This method compiles a BED6 schema and creates the file to validate.
+   *
+   * @throws Exception if the file cannot be created.
+   */
+  @Before
+  public void setUp() throws Exception {
+    proBed = Files.createTempFile("mapped", ".bed");
+    schema = AsqlSchema.compile(Arrays.asList(
+        new AsqlTriple(Utility.AsqlDataType.STRING, "chrom", "Reference sequence chromosome"),
+        new AsqlTriple(Utility.AsqlDataType.UINT, "chromStart", "Start position"),
+        new AsqlTriple(Utility.AsqlDataType.UINT, "chromEnd", "End position"),
+        new AsqlTriple(Utility.AsqlDataType.STRING, "name", "Unique name"),
+        new AsqlTriple(Utility.AsqlDataType.UINT, "score", "Score"),
+        new AsqlTriple(Utility.AsqlDataType.CHAR_ONE, "strand", "+ or - for strand")));
+  }
+
+  /**
+   * This method deletes the file.
+   *
+   * @throws Exception if the file cannot be deleted.
+   */
+  @After
+  public void tearDown() throws Exception {
+    Files.deleteIfExists(proBed);
+  }
+
+  /**
+   * This test validates lines of the same length, where each line which crosses the end of a chunk has a bad score,
+   * and checks that exactly those lines are reported, with their line numbers and byte offsets.
+   *
+   * @throws Exception if there are problems reading the file.
+   */
+  @Test
+  public void testErrorsAcrossChunkBoundaries() throws Exception {
+    int lines = 500;
+    int lineLength = line(1, "500").length();
+    long chunkSize = 3 * lineLength + lineLength / 2;
+    List<Long> straddling = new ArrayList<>();
+    for (long start = 0; start + chunkSize < (long) lines * lineLength; ) {
+      long lineNumber = (start + chunkSize) / lineLength + 1;
+      straddling.add(lineNumber);
+      start = lineNumber * lineLength;
+    }
+    StringBuilder content = new StringBuilder();
+    for (int i = 1; i <= lines; i++) {
+      content.append(line(i, straddling.contains((long) i) ? "x00" : "500"));
+    }
+    Files.write(proBed, content.toString().getBytes(StandardCharsets.UTF_8));
+
+    ProBedErrorAggregator errorAggregator = new ProBedErrorAggregator(lines, lines, 10);
+    new MappedProBedValidator(schema, new HeapNameIndex(), errorAggregator, 4, chunkSize).validate(proBed);
+    assertEquals("Only the score errors should be reported", Arrays.asList(SCORE_ERROR), errorAggregator.getErrorTypes());
+    assertEquals("Each line across a chunk boundary should be reported", straddling, errorAggregator.getLineNumbers(SCORE_ERROR));
+    List<ProBedErrorSample> samples = errorAggregator.getSamples(SCORE_ERROR);
+    assertEquals("Each line across a chunk boundary should be an example", straddling.size(), samples.size());
+    for (int i = 0; i < samples.size(); i++) {
+      long lineNumber = straddling.get(i);
+      assertEquals("The line number should be exact", lineNumber, samples.get(i).getLineNumber());
+      assertEquals("The byte offset should be the start of the line", (lineNumber - 1) * lineLength, samples.get(i).getByteOffset());
+      assertEquals("The line content should be the whole line", line(lineNumber, "x00").trim(), samples.get(i).getLineContent());
+    }
+  }
+
+  /**
+   * This test validates a file with several kinds of errors, lines of different lengths, comments, Windows line
+   * endings, and no newline at the end, in chunks of a few lines, and checks that the report is the same as from
+   * validating the file line by line.
+   *
+   * @throws Exception if there are problems reading the file.
+   */
+  @Test
+  public void testSameAsLineByLine() throws Exception {
+    StringBuilder content = new StringBuilder("# comment\n");
+    for (int i = 1; i <= 2000; i++) {
+      switch (i % 11) {
+        case 1:
+          content.append("1\t").append(i * 10).append("\t").append(i * 10 - 5).append("\tfeature_").append(i).append("\t500\t-\n");
+          break;
+        case 4:
+          content.append("1\t100\t200\tfeature_").append(i).append("\t500\n");
+          break;
+        case 6:
+          content.append('\n');
+          break;
+        case 8:
+          content.append("chr").append(i).append("\t100\t200\tfeature_").append(i).append("\t-1\t+\r\n");
+          break;
+        case 9:
+          content.append("1\tabc\t200\tfeature_").append(i).append("\t500\t++\n");
+          break;
+        default:
+          content.append("1\t").append(i).append("\t").append(i * 2).append("\tfeature_").append(i).append("\t").append(i % 1000).append("\t+\n");
+      }
+    }
+    content.append("1\t100\t200\tlast\tx\t+");
+    Files.write(proBed, content.toString().getBytes(StandardCharsets.UTF_8));
+
+    ProBedErrorAggregator lineByLine = new ProBedErrorAggregator(5, 5000, 1000);
+    new ProBedLineValidator(schema, new HeapNameIndex(), lineByLine).validate(proBed);
+    for (long chunkSize : new long[]{1, 37, 1000}) {
+      ProBedErrorAggregator mapped = new ProBedErrorAggregator(5, 5000, 1000);
+      new MappedProBedValidator(schema, new HeapNameIndex(), mapped, 4, chunkSize).validate(proBed);
+      assertEquals("The error count should be the same with chunks of " + chunkSize, lineByLine.getErrorCount(), mapped.getErrorCount());
+      assertEquals("The report should be the same with chunks of " + chunkSize, lineByLine.toString(), mapped.toString());
+    }
+    assertTrue("There should be several error types", lineByLine.getErrorTypes().size() > 4);
+    List<Long> scoreLines = lineByLine.getLineNumbers(SCORE_ERROR);
+    assertEquals("The last line, without a newline, should be validated", 2002L, (long) scoreLines.get(scoreLines.size() - 1));
+  }
+
+  private static String line(long number, String score) {
+    return String.format("1\t1000\t2000\tfeature_%05d\t%s\t+\n", number, score);
+  }
+}
@@ -0,0 +1,134 @@
+package uk.ac.ebi.pride.toolsuite.pgconverter.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class contains unit tests for creating the temporary files of input files, which are linked or copied.
+ *
+ * @author Tobias Ternent
+ */
+public class UtilityTest {
+
+  private static final byte[] CONTENT = "BEGIN IONS\nTITLE=spectrum 1\nEND IONS\n".getBytes(StandardCharsets.UTF_8);
+
+  private Path directory;
+  private File tempFile;
+
+  /**
+   * This method creates the directory of the input files.
+   *
+   * @throws Exception if the directory cannot be created.
+   */
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("input");
+  }
+
+  /**
+   * This method deletes the input files and the temporary file.
+   *
+   * @throws Exception if the files cannot be deleted.
+   */
+  @After
+  public void tearDown() throws Exception {
+    if (tempFile != null) {
+      Files.deleteIfExists(tempFile.toPath());
+      Files.deleteIfExists(tempFile.toPath().getParent());
+    }
+    FileUtils.deleteDirectory(directory.toFile());
+  }
+
+  /**
+   * This test creates the temporary file of a regular local file, which should be a hard link to it, i.e. the same
+   * file, and checks that deleting the temporary file keeps the input file.
+   *
+   * @throws Exception if there are problems creating the files.
+   */
+  @Test
+  public void testHardLink() throws Exception {
+    File input = Files.write(directory.resolve("peaks.mgf"), CONTENT).toFile();
+    Assume.assumeTrue("The temporary directory should be on the input's file system",
+        Files.getFileStore(input.toPath()).equals(Files.getFileStore(Paths.get(System.getProperty("java.io.tmpdir")))));
+    tempFile = Utility.createNewTempFile(input);
+    assertNotNull("The temporary file should be created", tempFile);
+    assertEquals("The temporary file should have the input's name", input.getName(), tempFile.getName());
+    assertFalse("The temporary file should not be a symbolic link", Files.isSymbolicLink(tempFile.toPath()));
+    assertTrue("The temporary file should be the input file", Files.isSameFile(input.toPath(), tempFile.toPath()));
+    assertEquals("The input file should have two links", 2, Files.getAttribute(input.toPath(), "unix:nlink"));
+    Files.delete(tempFile.toPath());
+    assertArrayEquals("Deleting the temporary file should keep the input file", CONTENT, Files.readAllBytes(input.toPath()));
+  }
+
+  /**
+   * This test creates the temporary file of a file on another file system than the temporary directory, which cannot
+   * be hard linked, and should be a symbolic link to it instead.
+   *
+   * @throws Exception if there are problems creating the files.
+   */
+  @Test
+  public void testSymbolicLink() throws Exception {
+    Path shm = Paths.get("/dev/shm");
+    Assume.assumeTrue("There should be another file system", Files.isDirectory(shm) && Files.isWritable(shm) &&
+        !Files.getFileStore(shm).equals(Files.getFileStore(Paths.get(System.getProperty("java.io.tmpdir")))));
+    Path otherDirectory = Files.createTempDirectory(shm, "input");
+    try {
+      File input = Files.write(otherDirectory.resolve("peaks.mgf"), CONTENT).toFile();
+      tempFile = Utility.createNewTempFile(input);
+      assertNotNull("The temporary file should be created", tempFile);
+      assertTrue("The temporary file should be a symbolic link", Files.isSymbolicLink(tempFile.toPath()));
+      assertEquals("The link should point to the input file", input.toPath().toAbsolutePath(), Files.readSymbolicLink(tempFile.toPath()));
+    } finally {
+      FileUtils.deleteDirectory(otherDirectory.toFile());
+    }
+  }
+
+  /**
+   * This test creates the temporary file of a file on a network file system, here any file system of the input's
+   * type, which should be copied, not linked.
+   *
+   * @throws Exception if there are problems creating the files.
+   */
+  @Test
+  public void testCopyOnNetworkFileStore() throws Exception {
+    File input = Files.write(directory.resolve("peaks.mgf"), CONTENT).toFile();
+    String type = Files.getFileStore(input.toPath()).type().toLowerCase();
+    tempFile = Utility.createNewTempFile(input, Collections.singleton(type));
+    assertNotNull("The temporary file should be created", tempFile);
+    assertFalse("The temporary file should not be a symbolic link", Files.isSymbolicLink(tempFile.toPath()));
+    assertFalse("The temporary file should be a copy", Files.isSameFile(input.toPath(), tempFile.toPath()));
+    assertArrayEquals("The copy should have the input's content", CONTENT, Files.readAllBytes(tempFile.toPath()));
+    assertEquals("The input file should have one link", 1, Files.getAttribute(input.toPath(), "unix:nlink"));
+  }
+
+  /**
+   * This test creates the temporary file of a symbolic link to a regular file, which is followed, and of a file which
+   * does not exist, which should not be created.
+   *
+   * @throws Exception if there are problems creating the files.
+   */
+  @Test
+  public void testLinkedAndMissingInput() throws Exception {
+    File target = Files.write(directory.resolve("target.mgf"), CONTENT).toFile();
+    File input = Files.createSymbolicLink(directory.resolve("peaks.mgf"), target.toPath()).toFile();
+    tempFile = Utility.createNewTempFile(input);
+    assertNotNull("The temporary file should be created", tempFile);
+    assertArrayEquals("The temporary file should have the target's content", CONTENT, Files.readAllBytes(tempFile.toPath()));
+    Files.delete(tempFile.toPath());
+    Files.delete(tempFile.toPath().getParent());
+    tempFile = null;
+    assertNull("No temporary file should be created for a missing file", Utility.createNewTempFile(directory.resolve("missing.mgf").toFile()));
+  }
+}
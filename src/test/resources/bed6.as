@@ -0,0 +1,10 @@
+table bed6
+"BED6 example"
+(
+string  chrom;  "Reference sequence chromosome"
+uint  chromStart;  "Start position"
+uint  chromEnd;  "End position"
+string  name;  "Unique name"
+uint  score;  "Score"
+char[1]  strand;  "+ or - for strand"
+)